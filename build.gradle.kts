@@ -31,6 +31,24 @@ tasks.test {
 	useJUnitPlatform()
 }
 
+// End-to-end packaging & launch latency benchmark; see JARStrapBench for options
+val bench: SourceSet by sourceSets.creating {
+	compileClasspath += sourceSets.main.get().output
+	runtimeClasspath += sourceSets.main.get().output
+}
+
+configurations[bench.implementationConfigurationName].extendsFrom(configurations.implementation.get())
+configurations[bench.compileOnlyConfigurationName].extendsFrom(configurations.compileOnly.get())
+
+tasks.register<JavaExec>("bench") {
+	group = "verification"
+	description = "Packages synthetic JARs and measures stage times & launch latency"
+	classpath = bench.runtimeClasspath
+	mainClass = "io.github.wasabithumb.jarstrap.bench.JARStrapBench"
+	args("--output", layout.projectDirectory.file("bench_output.txt").asFile.absolutePath)
+	providers.gradleProperty("benchArgs").orNull?.let { args(it.split(' ').filter(String::isNotBlank)) }
+}
+
 java {
 	val javaVersion = JavaVersion.toVersion(17)
 	sourceCompatibility = javaVersion
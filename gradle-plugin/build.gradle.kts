@@ -0,0 +1,47 @@
+plugins {
+	id("java-gradle-plugin")
+}
+
+group = rootProject.group
+version = rootProject.version
+description = "Gradle plugin for packaging executables with JARStrap"
+
+repositories {
+	mavenCentral()
+}
+
+dependencies {
+	// Runtime Dependencies
+	implementation(project(":"))
+
+	// Source Dependencies
+	compileOnly("org.jetbrains:annotations:26.0.1")
+
+	testImplementation("org.junit.jupiter:junit-jupiter:5.10.0")
+	testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+}
+
+tasks.test {
+	useJUnitPlatform()
+}
+
+java {
+	val javaVersion = JavaVersion.toVersion(17)
+	sourceCompatibility = javaVersion
+	targetCompatibility = javaVersion
+}
+
+tasks.compileJava {
+	options.encoding = "UTF-8"
+}
+
+gradlePlugin {
+	plugins {
+		create("jarstrap") {
+			id = "io.github.wasabithumb.jarstrap"
+			implementationClass = "io.github.wasabithumb.jarstrap.gradle.JARStrapPlugin"
+			displayName = "JARStrap"
+			description = project.description
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package io.github.wasabithumb.jarstrap.gradle;
+
+import org.gradle.api.logging.LogLevel;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Forwards packager log records to a Gradle logger
+ */
+final class GradleLogHandler extends Handler {
+
+    private final org.gradle.api.logging.Logger logger;
+
+    GradleLogHandler(@NotNull org.gradle.api.logging.Logger logger) {
+        this.logger = logger;
+    }
+
+    @Override
+    public void publish(@NotNull LogRecord record) {
+        final LogLevel level = toGradle(record.getLevel());
+        if (!this.logger.isEnabled(level)) return;
+        this.logger.log(level, record.getMessage(), record.getThrown());
+    }
+
+    private static @NotNull LogLevel toGradle(@NotNull Level level) {
+        final int value = level.intValue();
+        if (value >= Level.SEVERE.intValue()) return LogLevel.ERROR;
+        if (value >= Level.WARNING.intValue()) return LogLevel.WARN;
+        if (value >= Level.INFO.intValue()) return LogLevel.INFO;
+        return LogLevel.DEBUG;
+    }
+
+    @Override
+    public void flush() { }
+
+    @Override
+    public void close() { }
+
+}
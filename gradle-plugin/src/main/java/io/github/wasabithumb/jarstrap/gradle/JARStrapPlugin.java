@@ -0,0 +1,42 @@
+package io.github.wasabithumb.jarstrap.gradle;
+
+import org.gradle.api.Plugin;
+import org.gradle.api.Project;
+import org.gradle.api.plugins.AppliedPlugin;
+import org.gradle.api.tasks.TaskProvider;
+import org.gradle.jvm.tasks.Jar;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * <p>
+ *     Adds the {@link JARStrapTask} type. When the {@code java} plugin is present, a {@value #TASK_NAME} task is also
+ *     registered which packages the output of the {@code jar} task.
+ * </p>
+ * <p>
+ *     Every task writes into {@code build/jarstrap/<task name>} unless another output directory is set.
+ * </p>
+ * @since 0.3.0
+ */
+public class JARStrapPlugin implements Plugin<Project> {
+
+    public static final String TASK_NAME = "jarstrap";
+
+    @Override
+    public void apply(@NotNull Project project) {
+        project.getTasks().withType(JARStrapTask.class).configureEach((JARStrapTask task) -> {
+            task.getOutputDirectory().convention(
+                    project.getLayout().getBuildDirectory().dir("jarstrap/" + task.getName())
+            );
+        });
+
+        project.getPluginManager().withPlugin("java", (AppliedPlugin applied) -> {
+            final TaskProvider<Jar> jar = project.getTasks().named("jar", Jar.class);
+            project.getTasks().register(TASK_NAME, JARStrapTask.class, (JARStrapTask task) -> {
+                task.setGroup("build");
+                task.setDescription("Packages the JAR into a native executable");
+                task.getSource().convention(jar.flatMap(Jar::getArchiveFile));
+            });
+        });
+    }
+
+}
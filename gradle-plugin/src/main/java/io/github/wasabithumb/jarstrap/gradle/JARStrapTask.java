@@ -0,0 +1,353 @@
+package io.github.wasabithumb.jarstrap.gradle;
+
+import io.github.wasabithumb.jarstrap.packager.PackagerConfig;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileSystemLocation;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.provider.ProviderFactory;
+import org.gradle.api.tasks.*;
+import org.gradle.workers.WorkQueue;
+import org.gradle.workers.WorkerExecutor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <p>
+ *     Packages a runnable JAR into native executables. Every option of the packager which affects the produced
+ *     executables, as well as the manifest mutations, is a declared input, so the task is skipped when nothing
+ *     relevant has changed and its outputs can be restored from the build cache.
+ * </p>
+ * <p>
+ *     Packaging runs through the Worker API, so tasks in other projects may execute at the same time.
+ * </p>
+ * @since 0.3.0
+ * @see PackagerConfig
+ */
+@CacheableTask
+public abstract class JARStrapTask extends DefaultTask {
+
+    public JARStrapTask() {
+        final PackagerConfig defaults = PackagerConfig.defaults();
+        this.getTargets().convention(defaults.targets().stream().map(Object::toString).toList());
+        this.getMinJavaVersion().convention(defaults.minJavaVersion());
+        this.getPreferredJavaVersion().convention(defaults.preferredJavaVersion());
+        this.getLaunchFlags().convention(defaults.launchFlags());
+        this.getInstallPrompt().convention(defaults.installPrompt());
+        this.getAttributionEnabled().convention(defaults.attributionEnabled());
+        this.getBackend().convention(defaults.backend().name());
+        this.getOs().convention(defaults.os().name());
+        this.getProfile().convention(defaults.profile().name());
+        this.getScanClassVersions().convention(defaults.scanClassVersions());
+        this.getShrink().convention(defaults.shrink());
+        this.getKeepRules().convention(defaults.keepRules());
+        this.getBundleRuntime().convention(defaults.bundleRuntime());
+        this.getRuntimeModules().convention(defaults.runtimeModules());
+        this.getRuntimeJdkRelease().convention(this.getBundleRuntime().flatMap((Boolean bundle) -> bundle ?
+                this.resolveRuntimeJdk().map(JARStrapTask::readRelease) :
+                this.getProviderFactory().provider(() -> null)
+        ));
+        this.getResident().convention(defaults.resident());
+        this.getResidentIdleTimeout().convention(defaults.residentIdleTimeout());
+        this.getReproducible().convention(defaults.reproducible());
+        // Read here rather than by the packager, so that the variable is part of the cache key
+        this.getSourceDateEpoch().convention(this.getProviderFactory()
+                .environmentVariable("SOURCE_DATE_EPOCH")
+                .map(JARStrapTask::parseSourceDateEpoch));
+        this.getAutoInstall().convention(defaults.autoInstall());
+    }
+
+    @Inject
+    protected abstract WorkerExecutor getWorkerExecutor();
+
+    @Inject
+    protected abstract ProviderFactory getProviderFactory();
+
+    /**
+     * The JAR to package
+     */
+    @InputFile
+    @PathSensitive(PathSensitivity.NONE)
+    public abstract RegularFileProperty getSource();
+
+    /**
+     * Library JARs to run alongside the source JAR, in class path order. Keyed by their exact contents rather than
+     * normalized as a class path, since the JARs are embedded as they are; see {@link #getLibraryNames()}.
+     * @see PackagerConfig#libraries()
+     */
+    @InputFiles
+    @PathSensitive(PathSensitivity.NAME_ONLY)
+    public abstract ConfigurableFileCollection getLibraries();
+
+    /**
+     * The file names of the {@link #getLibraries() libraries} in class path order. Each name is part of the payload
+     * entry of its library, and the order decides the class path, so both are inputs.
+     */
+    @Input
+    public @NotNull Provider<List<String>> getLibraryNames() {
+        return this.getLibraries().getElements().map((Set<FileSystemLocation> elements) -> {
+            final List<String> ret = new ArrayList<>(elements.size());
+            for (FileSystemLocation element : elements) ret.add(element.getAsFile().getName());
+            return ret;
+        });
+    }
+
+    /**
+     * The targets to build, e.g. {@code x86_64-release}
+     * @see io.github.wasabithumb.jarstrap.packager.PackagerTarget#parse(String)
+     */
+    @Input
+    public abstract ListProperty<String> getTargets();
+
+    /**
+     * @see PackagerConfig#appName()
+     */
+    @Input
+    @Optional
+    public abstract Property<String> getAppName();
+
+    /**
+     * @see PackagerConfig#minJavaVersion()
+     */
+    @Input
+    public abstract Property<Integer> getMinJavaVersion();
+
+    /**
+     * @see PackagerConfig#preferredJavaVersion()
+     */
+    @Input
+    public abstract Property<Integer> getPreferredJavaVersion();
+
+    /**
+     * @see PackagerConfig#launchFlags()
+     */
+    @Input
+    public abstract Property<String> getLaunchFlags();
+
+    /**
+     * @see PackagerConfig#installPrompt()
+     */
+    @Input
+    public abstract Property<String> getInstallPrompt();
+
+    /**
+     * @see PackagerConfig#attributionEnabled()
+     */
+    @Input
+    public abstract Property<Boolean> getAttributionEnabled();
+
+    /**
+     * The name of the {@link io.github.wasabithumb.jarstrap.packager.PackagerBackend backend} to build with
+     */
+    @Input
+    public abstract Property<String> getBackend();
+
+    /**
+     * The name of the {@link io.github.wasabithumb.jarstrap.packager.PackagerOS OS} to build for, the host OS by
+     * default
+     */
+    @Input
+    public abstract Property<String> getOs();
+
+    /**
+     * The name of the {@link io.github.wasabithumb.jarstrap.packager.PackagerProfile profile} to build the stub with
+     */
+    @Input
+    public abstract Property<String> getProfile();
+
+    /**
+     * @see PackagerConfig#scanClassVersions()
+     */
+    @Input
+    public abstract Property<Boolean> getScanClassVersions();
+
+    /**
+     * @see PackagerConfig#shrink()
+     */
+    @Input
+    public abstract Property<Boolean> getShrink();
+
+    /**
+     * @see PackagerConfig#keepRules()
+     */
+    @Input
+    public abstract ListProperty<String> getKeepRules();
+
+    /**
+     * @see PackagerConfig#bundleRuntime()
+     */
+    @Input
+    public abstract Property<Boolean> getBundleRuntime();
+
+    /**
+     * Path to the JDK to build the bundled runtime from. Defaults to the JDK running Gradle. The path itself is not
+     * an input, see {@link #getRuntimeJdkRelease()}.
+     * @see PackagerConfig#runtimeJdk()
+     */
+    @Internal
+    public abstract Property<String> getRuntimeJdk();
+
+    /**
+     * Identifies the {@link #getRuntimeJdk() runtime JDK} by the contents of its {@code release} file (version,
+     * vendor &amp; modules), so that the task reruns when the JDK changes but not when the same JDK is found at
+     * another path. Read from the runtime JDK when {@link #getBundleRuntime() bundling a runtime}, absent otherwise.
+     */
+    @Input
+    @Optional
+    public abstract Property<String> getRuntimeJdkRelease();
+
+    /**
+     * @see PackagerConfig#runtimeModules()
+     */
+    @Input
+    public abstract ListProperty<String> getRuntimeModules();
+
+    /**
+     * @see PackagerConfig#resident()
+     */
+    @Input
+    public abstract Property<Boolean> getResident();
+
+    /**
+     * @see PackagerConfig#residentIdleTimeout()
+     */
+    @Input
+    public abstract Property<Duration> getResidentIdleTimeout();
+
+    /**
+     * @see PackagerConfig#reproducible()
+     */
+    @Input
+    public abstract Property<Boolean> getReproducible();
+
+    /**
+     * Defaults to the {@code SOURCE_DATE_EPOCH} environment variable of the build
+     * @see PackagerConfig#sourceDateEpoch()
+     */
+    @Input
+    @Optional
+    public abstract Property<Long> getSourceDateEpoch();
+
+    /**
+     * @see PackagerConfig#outputName()
+     */
+    @Input
+    @Optional
+    public abstract Property<String> getOutputName();
+
+    /**
+     * Manifest attributes to set on the JAR before packaging
+     */
+    @Input
+    public abstract MapProperty<String, String> getManifestAttributes();
+
+    /**
+     * Manifest attributes to remove from the JAR before packaging. Applied before
+     * {@link #getManifestAttributes() additions}.
+     */
+    @Input
+    public abstract ListProperty<String> getManifestRemovals();
+
+    /**
+     * @see PackagerConfig#autoInstall()
+     */
+    @Internal
+    public abstract Property<Boolean> getAutoInstall();
+
+    /**
+     * @see PackagerConfig#stageTimeouts()
+     */
+    @Internal
+    public abstract MapProperty<String, Duration> getStageTimeouts();
+
+    /**
+     * Where to create the working directory; {@code data}, {@code auto} or a path
+     * @see io.github.wasabithumb.jarstrap.instance.WorkingRoot#parse(String)
+     */
+    @Internal
+    public abstract Property<String> getWorkingRoot();
+
+    /**
+     * The directory to write the executables into. Any other contents are removed when the task runs.
+     */
+    @OutputDirectory
+    public abstract DirectoryProperty getOutputDirectory();
+
+    //
+
+    @TaskAction
+    public void execute() {
+        final WorkQueue queue = this.getWorkerExecutor().noIsolation();
+        queue.submit(PackageAction.class, (PackageAction.Parameters params) -> {
+            params.getSource().set(this.getSource());
+            params.getLibraries().from(this.getLibraries());
+            params.getTargets().set(this.getTargets());
+            params.getAppName().set(this.getAppName());
+            params.getMinJavaVersion().set(this.getMinJavaVersion());
+            params.getPreferredJavaVersion().set(this.getPreferredJavaVersion());
+            params.getLaunchFlags().set(this.getLaunchFlags());
+            params.getInstallPrompt().set(this.getInstallPrompt());
+            params.getAttributionEnabled().set(this.getAttributionEnabled());
+            params.getBackend().set(this.getBackend());
+            params.getOs().set(this.getOs());
+            params.getProfile().set(this.getProfile());
+            params.getScanClassVersions().set(this.getScanClassVersions());
+            params.getShrink().set(this.getShrink());
+            params.getKeepRules().set(this.getKeepRules());
+            params.getBundleRuntime().set(this.getBundleRuntime());
+            params.getRuntimeJdk().set(this.resolveRuntimeJdk());
+            params.getRuntimeModules().set(this.getRuntimeModules());
+            params.getResident().set(this.getResident());
+            params.getResidentIdleTimeout().set(this.getResidentIdleTimeout());
+            params.getReproducible().set(this.getReproducible());
+            params.getSourceDateEpoch().set(this.getSourceDateEpoch());
+            params.getOutputName().set(this.getOutputName());
+            params.getManifestAttributes().set(this.getManifestAttributes());
+            params.getManifestRemovals().set(this.getManifestRemovals());
+            params.getAutoInstall().set(this.getAutoInstall());
+            params.getStageTimeouts().set(this.getStageTimeouts());
+            params.getWorkingRoot().set(this.getWorkingRoot());
+            params.getOutputDirectory().set(this.getOutputDirectory());
+        });
+    }
+
+    private @NotNull Provider<String> resolveRuntimeJdk() {
+        return this.getRuntimeJdk().orElse(this.getProviderFactory().systemProperty("java.home"));
+    }
+
+    private static @Nullable Long parseSourceDateEpoch(@NotNull String value) {
+        // Invalid values are ignored, as by PackagerConfig
+        try {
+            final long ret = Long.parseLong(value.trim());
+            return ret < 0L ? null : ret;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static @NotNull String readRelease(@NotNull String jdk) {
+        final Path release = Path.of(jdk, "release");
+        try {
+            return Files.readString(release, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new GradleException("Failed to read \"" + release + "\"; is " + jdk + " a JDK?", e);
+        }
+    }
+
+}
@@ -0,0 +1,175 @@
+package io.github.wasabithumb.jarstrap.gradle;
+
+import io.github.wasabithumb.jarstrap.JARStrap;
+import io.github.wasabithumb.jarstrap.instance.WorkingRoot;
+import io.github.wasabithumb.jarstrap.manifest.ManifestMutator;
+import io.github.wasabithumb.jarstrap.packager.Packager;
+import io.github.wasabithumb.jarstrap.packager.PackagerBackend;
+import io.github.wasabithumb.jarstrap.packager.PackagerOS;
+import io.github.wasabithumb.jarstrap.packager.PackagerProfile;
+import io.github.wasabithumb.jarstrap.packager.PackagerConfig;
+import io.github.wasabithumb.jarstrap.packager.PackagerTarget;
+import io.github.wasabithumb.jarstrap.util.io.FileUtil;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs a packager for a {@link JARStrapTask}
+ */
+@ApiStatus.Internal
+public abstract class PackageAction implements WorkAction<PackageAction.Parameters> {
+
+    @Override
+    public void execute() {
+        final Parameters params = this.getParameters();
+        final File outputDir = params.getOutputDirectory().get().getAsFile();
+        try {
+            // Stale executables (e.g. of removed targets) must not end up in the cached output
+            File[] stale = outputDir.listFiles();
+            if (stale != null) {
+                for (File file : stale) FileUtil.deleteTree(file.toPath());
+            }
+        } catch (IOException e) {
+            throw new GradleException("Failed to clean output directory " + outputDir, e);
+        }
+
+        final List<PackagerTarget> targets = new ArrayList<>();
+        for (String target : params.getTargets().get()) targets.add(PackagerTarget.parse(target));
+
+        final PackagerConfig.Builder builder = PackagerConfig.builder()
+                .source(params.getSource().get().getAsFile())
+                .libraries(List.copyOf(params.getLibraries().getFiles()))
+                .targets(targets)
+                .appName(params.getAppName().getOrNull())
+                .minJavaVersion(params.getMinJavaVersion().get())
+                .preferredJavaVersion(params.getPreferredJavaVersion().get())
+                .launchFlags(params.getLaunchFlags().get())
+                .installPrompt(params.getInstallPrompt().get())
+                .attributionEnabled(params.getAttributionEnabled().get())
+                .backend(PackagerBackend.valueOf(params.getBackend().get().toUpperCase(Locale.ROOT)))
+                .os(PackagerOS.valueOf(params.getOs().get().toUpperCase(Locale.ROOT)))
+                .profile(PackagerProfile.valueOf(params.getProfile().get().toUpperCase(Locale.ROOT)))
+                .scanClassVersions(params.getScanClassVersions().get())
+                .shrink(params.getShrink().get())
+                .keepRules(params.getKeepRules().get())
+                .bundleRuntime(params.getBundleRuntime().get())
+                .runtimeJdk(params.getRuntimeJdk().isPresent() ? new File(params.getRuntimeJdk().get()) : null)
+                .runtimeModules(params.getRuntimeModules().get())
+                .resident(params.getResident().get())
+                .residentIdleTimeout(params.getResidentIdleTimeout().get())
+                .reproducible(params.getReproducible().get())
+                .outputName(params.getOutputName().getOrNull())
+                .autoInstall(params.getAutoInstall().get())
+                .outputDir(outputDir);
+        if (params.getSourceDateEpoch().isPresent())
+            builder.sourceDateEpoch(params.getSourceDateEpoch().get());
+        for (Map.Entry<String, Duration> entry : params.getStageTimeouts().get().entrySet())
+            builder.stageTimeout(entry.getKey(), entry.getValue());
+
+        final WorkingRoot root = params.getWorkingRoot().isPresent()
+                ? WorkingRoot.parse(params.getWorkingRoot().get())
+                : JARStrap.getDefaultWorkingRoot();
+
+        try (Packager packager = JARStrap.createPackager(root, builder.build(), createLogger())) {
+            packager.manifest((ManifestMutator m) -> {
+                for (String key : params.getManifestRemovals().get()) m.remove(key);
+                for (Map.Entry<String, String> entry : params.getManifestAttributes().get().entrySet())
+                    m.put(entry.getKey(), entry.getValue());
+            });
+            packager.execute();
+        }
+    }
+
+    private static @NotNull Logger createLogger() {
+        final Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        logger.setLevel(Level.FINE);
+        logger.addHandler(new GradleLogHandler(Logging.getLogger(PackageAction.class)));
+        return logger;
+    }
+
+    //
+
+    public interface Parameters extends WorkParameters {
+
+        RegularFileProperty getSource();
+
+        ConfigurableFileCollection getLibraries();
+
+        ListProperty<String> getTargets();
+
+        Property<String> getAppName();
+
+        Property<Integer> getMinJavaVersion();
+
+        Property<Integer> getPreferredJavaVersion();
+
+        Property<String> getLaunchFlags();
+
+        Property<String> getInstallPrompt();
+
+        Property<Boolean> getAttributionEnabled();
+
+        Property<String> getBackend();
+
+        Property<String> getOs();
+
+        Property<String> getProfile();
+
+        Property<Boolean> getScanClassVersions();
+
+        Property<Boolean> getShrink();
+
+        ListProperty<String> getKeepRules();
+
+        Property<Boolean> getBundleRuntime();
+
+        Property<String> getRuntimeJdk();
+
+        ListProperty<String> getRuntimeModules();
+
+        Property<Boolean> getResident();
+
+        Property<Duration> getResidentIdleTimeout();
+
+        Property<Boolean> getReproducible();
+
+        Property<Long> getSourceDateEpoch();
+
+        Property<String> getOutputName();
+
+        MapProperty<String, String> getManifestAttributes();
+
+        ListProperty<String> getManifestRemovals();
+
+        Property<Boolean> getAutoInstall();
+
+        MapProperty<String, Duration> getStageTimeouts();
+
+        Property<String> getWorkingRoot();
+
+        DirectoryProperty getOutputDirectory();
+
+    }
+
+}
@@ -0,0 +1,170 @@
+package io.github.wasabithumb.jarstrap.gradle;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.BuildTask;
+import org.gradle.testkit.runner.GradleRunner;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JARStrapTaskTest {
+
+    private static final String TASK = ":" + JARStrapPlugin.TASK_NAME;
+    private static final String SOURCE_DATE_EPOCH = "SOURCE_DATE_EPOCH";
+    private static final String SETTINGS = """
+            rootProject.name = "functional"
+
+            buildCache {
+                local {
+                    directory = file("build-cache")
+                }
+            }
+            """;
+    private static final String BUILD = """
+            import io.github.wasabithumb.jarstrap.gradle.JARStrapTask
+
+            plugins {
+                java
+                id("io.github.wasabithumb.jarstrap")
+            }
+
+            tasks.jar {
+                manifest.attributes("Main-Class" to "test.Main")
+            }
+
+            tasks.named<JARStrapTask>("jarstrap") {
+                appName = "Functional Test"
+                reproducible = true
+                manifestAttributes.put("X-Test", providers.gradleProperty("attribute").orElse("a"))
+                libraries.from(providers.gradleProperty("library").orElse("a.jar"))
+            }
+            """;
+    private static final String MAIN = """
+            package test;
+
+            public final class Main {
+                public static void main(String[] args) {
+                    System.out.println("Hello");
+                }
+            }
+            """;
+
+    /**
+     * Writes a library JAR with a single resource; the contents are the same for every name
+     */
+    private static void writeLibrary(Path file) throws IOException {
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        try (OutputStream os = Files.newOutputStream(file);
+             JarOutputStream jos = new JarOutputStream(os, manifest)
+        ) {
+            final JarEntry entry = new JarEntry("library.properties");
+            entry.setTime(0L);
+            jos.putNextEntry(entry);
+            jos.write("name=library\n".getBytes(StandardCharsets.UTF_8));
+            jos.closeEntry();
+        }
+    }
+
+    //
+
+    @TempDir
+    Path dir;
+
+    private void writeProject() throws IOException {
+        Files.writeString(this.dir.resolve("settings.gradle.kts"), SETTINGS, StandardCharsets.UTF_8);
+        Files.writeString(this.dir.resolve("build.gradle.kts"), BUILD, StandardCharsets.UTF_8);
+        final Path main = this.dir.resolve("src/main/java/test/Main.java");
+        Files.createDirectories(main.getParent());
+        Files.writeString(main, MAIN, StandardCharsets.UTF_8);
+        writeLibrary(this.dir.resolve("a.jar"));
+        writeLibrary(this.dir.resolve("b.jar"));
+    }
+
+    /**
+     * Runs the packaging task with the given arguments, the environment of the test and, if not null, the given
+     * {@code SOURCE_DATE_EPOCH}, returning the outcome of the task
+     */
+    private TaskOutcome run(String sourceDateEpoch, String... args) {
+        final Map<String, String> env = new HashMap<>(System.getenv());
+        env.remove(SOURCE_DATE_EPOCH);
+        if (sourceDateEpoch != null) env.put(SOURCE_DATE_EPOCH, sourceDateEpoch);
+
+        final List<String> arguments = new ArrayList<>(args.length + 2);
+        arguments.add(TASK);
+        arguments.add("--stacktrace");
+        Collections.addAll(arguments, args);
+
+        final BuildResult result = GradleRunner.create()
+                .withProjectDir(this.dir.toFile())
+                .withPluginClasspath()
+                .withEnvironment(env)
+                .withArguments(arguments)
+                .build();
+
+        final BuildTask task = result.task(TASK);
+        assertNotNull(task, "Task " + TASK + " did not run");
+        return task.getOutcome();
+    }
+
+    @Test
+    void upToDate() throws IOException {
+        this.writeProject();
+        assertEquals(TaskOutcome.SUCCESS, this.run(null));
+        assertTrue(Files.isRegularFile(this.dir.resolve("build/jarstrap/jarstrap/functional_test")));
+        assertEquals(TaskOutcome.UP_TO_DATE, this.run(null));
+    }
+
+    @Test
+    void manifestAttribute() throws IOException {
+        this.writeProject();
+        assertEquals(TaskOutcome.SUCCESS, this.run(null));
+        assertEquals(TaskOutcome.SUCCESS, this.run(null, "-Pattribute=b"));
+        assertEquals(TaskOutcome.UP_TO_DATE, this.run(null, "-Pattribute=b"));
+    }
+
+    @Test
+    void sourceDateEpoch() throws IOException {
+        this.writeProject();
+        assertEquals(TaskOutcome.SUCCESS, this.run("1"));
+        assertEquals(TaskOutcome.SUCCESS, this.run("2"));
+        assertEquals(TaskOutcome.UP_TO_DATE, this.run("2"));
+    }
+
+    @Test
+    void libraryName() throws IOException {
+        this.writeProject();
+        assertEquals(TaskOutcome.SUCCESS, this.run(null));
+
+        // Same contents, but the name is part of the payload
+        assertEquals(TaskOutcome.SUCCESS, this.run(null, "-Plibrary=b.jar"));
+        assertEquals(TaskOutcome.UP_TO_DATE, this.run(null, "-Plibrary=b.jar"));
+    }
+
+    @Test
+    void buildCache() throws IOException {
+        this.writeProject();
+        assertEquals(TaskOutcome.SUCCESS, this.run(null, "--build-cache"));
+
+        final Path output = this.dir.resolve("build/jarstrap/jarstrap/functional_test");
+        final byte[] built = Files.readAllBytes(output);
+        Files.delete(output);
+
+        assertEquals(TaskOutcome.FROM_CACHE, this.run(null, "--build-cache"));
+        assertArrayEquals(built, Files.readAllBytes(output));
+    }
+
+}
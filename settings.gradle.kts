@@ -1 +1,3 @@
-rootProject.name = "jarstrap"
\ No newline at end of file
+rootProject.name = "jarstrap"
+
+include("gradle-plugin")
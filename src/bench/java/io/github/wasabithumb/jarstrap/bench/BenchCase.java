@@ -0,0 +1,53 @@
+package io.github.wasabithumb.jarstrap.bench;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * The synthetic source JARs packaged by the benchmark
+ */
+enum BenchCase {
+    /** Only the main class */
+    TINY("tiny", 0, 0),
+    /** 50 MiB of incompressible data in 1 MiB entries */
+    MEDIUM("50m", 50, 1 << 20),
+    /** 500 MiB of incompressible data in 1 MiB entries */
+    LARGE("500m", 500, 1 << 20),
+    /** 50,000 entries of 256 bytes, stressing per-entry work over raw size */
+    MANY_ENTRIES("many", 50000, 256);
+
+    static @Nullable BenchCase byId(@NotNull String id) {
+        for (BenchCase c : values()) {
+            if (c.id.equals(id)) return c;
+        }
+        return null;
+    }
+
+    //
+
+    private final String id;
+    private final int entries;
+    private final int entrySize;
+
+    BenchCase(@NotNull String id, int entries, int entrySize) {
+        this.id = id;
+        this.entries = entries;
+        this.entrySize = entrySize;
+    }
+
+    @NotNull String id() {
+        return this.id;
+    }
+
+    int entries() {
+        return this.entries;
+    }
+
+    void write(@NotNull Path dest) throws IOException {
+        SyntheticJar.write(dest, this.entries, this.entrySize, this.ordinal());
+    }
+
+}
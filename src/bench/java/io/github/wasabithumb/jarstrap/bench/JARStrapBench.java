@@ -0,0 +1,362 @@
+package io.github.wasabithumb.jarstrap.bench;
+
+import io.github.wasabithumb.jarstrap.JARStrap;
+import io.github.wasabithumb.jarstrap.packager.Packager;
+import io.github.wasabithumb.jarstrap.packager.PackagerProfile;
+import io.github.wasabithumb.jarstrap.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.ConsoleHandler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * <p>
+ *     Packages a set of synthetic JARs (see {@link BenchCase}) as release builds with each
+ *     {@link PackagerProfile profile}, reporting the time taken by each stage and the size of the stub, then runs each
+ *     executable repeatedly and reports launch latency percentiles. Cold launches start with the JAR absent from the
+ *     app directory, so they include extraction; warm launches find it in place.
+ * </p>
+ * <p>
+ *     Warm launches also report the time from exec until the main method is reached, alongside the same for Java
+ *     started directly. The difference is the overhead of the launcher up to spawning the JVM. When both profiles
+ *     run, their stub sizes &amp; median latencies are compared.
+ * </p>
+ * <p>
+ *     Runs offline. Options: {@code --cases tiny,50m,500m,many}, {@code --profiles standard,compact},
+ *     {@code --runs <warm launches>}, {@code --cold-runs <cold launches>}, {@code --work <dir>},
+ *     {@code --output <report file>} and {@code --verbose}.
+ * </p>
+ */
+public final class JARStrapBench {
+
+    private static final long LAUNCH_TIMEOUT_SECONDS = 120L;
+    private static final Pattern ANSI_ESCAPE = Pattern.compile("\\u001B\\[[0-9;]*m");
+
+    public static void main(String[] args) throws Exception {
+        final JARStrapBench bench;
+        try {
+            bench = parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        bench.run();
+    }
+
+    private static @NotNull JARStrapBench parse(String @NotNull [] args) throws IllegalArgumentException {
+        final JARStrapBench ret = new JARStrapBench();
+        for (int i=0; i < args.length; i++) {
+            final String arg = args[i];
+            if (arg.equals("--verbose")) {
+                ret.verbose = true;
+                continue;
+            }
+            if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + arg);
+            final String value = args[++i];
+            switch (arg) {
+                case "--cases" -> {
+                    ret.cases.clear();
+                    for (String id : value.split(",")) {
+                        if (id.isBlank()) continue;
+                        final BenchCase c = BenchCase.byId(id.trim());
+                        if (c == null) throw new IllegalArgumentException("Unknown case: " + id);
+                        ret.cases.add(c);
+                    }
+                }
+                case "--profiles" -> {
+                    ret.profiles.clear();
+                    for (String name : value.split(",")) {
+                        if (name.isBlank()) continue;
+                        try {
+                            ret.profiles.add(PackagerProfile.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+                        } catch (IllegalArgumentException e) {
+                            throw new IllegalArgumentException("Unknown profile: " + name);
+                        }
+                    }
+                }
+                case "--runs" -> ret.runs = parseCount(arg, value);
+                case "--cold-runs" -> ret.coldRuns = parseCount(arg, value);
+                case "--work" -> ret.workDir = Path.of(value);
+                case "--output" -> ret.output = Path.of(value);
+                default -> throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        return ret;
+    }
+
+    private static int parseCount(@NotNull String key, @NotNull String value) throws IllegalArgumentException {
+        try {
+            final int ret = Integer.parseInt(value.trim());
+            if (ret >= 0) return ret;
+        } catch (NumberFormatException ignored) { }
+        throw new IllegalArgumentException("Value for " + key + " must be a non-negative integer (got " + value + ")");
+    }
+
+    private static @NotNull String mib(long bytes) {
+        return String.format(Locale.ROOT, "%.1f MiB", bytes / (double) (1 << 20));
+    }
+
+    private static @NotNull String kib(long bytes) {
+        return String.format(Locale.ROOT, "%.1f KiB", bytes / 1024d);
+    }
+
+    private static @NotNull String label(@NotNull BenchCase c, @NotNull PackagerProfile profile) {
+        return "[" + c.id() + "/" + profile.name().toLowerCase(Locale.ROOT) + "]";
+    }
+
+    //
+
+    private final Set<BenchCase> cases = EnumSet.allOf(BenchCase.class);
+    private final Set<PackagerProfile> profiles = EnumSet.allOf(PackagerProfile.class);
+    private int runs = 20;
+    private int coldRuns = 5;
+    private Path workDir = null;
+    private Path output = null;
+    private boolean verbose = false;
+    private final StringBuilder report = new StringBuilder();
+
+    private JARStrapBench() { }
+
+    private void run() throws Exception {
+        final boolean ownsWorkDir = this.workDir == null;
+        final Path work = ownsWorkDir ? Files.createTempDirectory("jarstrap-bench") : this.workDir;
+        Files.createDirectories(work);
+
+        final boolean launch = System.getProperty("os.name").toLowerCase(Locale.ROOT).contains("linux");
+        this.line("JARStrap benchmark: " + System.getProperty("os.name") + " " + System.getProperty("os.arch") +
+                ", Java " + System.getProperty("java.version") + ", " + Runtime.getRuntime().availableProcessors() +
+                " CPUs");
+        if (!launch) this.line("Launch latency is only measured on Linux");
+
+        try {
+            for (BenchCase c : this.cases) this.runCase(c, work, launch);
+        } finally {
+            if (ownsWorkDir) FileUtil.deleteTree(work);
+        }
+
+        if (this.output != null) {
+            Files.writeString(this.output, this.report, StandardCharsets.UTF_8);
+            System.out.println("Report written to " + this.output.toAbsolutePath());
+        }
+    }
+
+    private void runCase(@NotNull BenchCase c, @NotNull Path work, boolean launch) throws Exception {
+        final Path source = work.resolve(c.id() + ".jar");
+        final long start = System.nanoTime();
+        c.write(source);
+        final long generateNanos = System.nanoTime() - start;
+
+        this.line("");
+        this.line("[" + c.id() + "] source " + mib(Files.size(source)) + ", " + (c.entries() + 2) + " entries, " +
+                "generated in " + TimeUnit.NANOSECONDS.toMillis(generateNanos) + "ms");
+
+        try {
+            if (launch && this.runs > 0) {
+                final List<String> command = List.of(
+                        Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                        "-cp",
+                        source.toString(),
+                        SyntheticJar.MAIN_CLASS
+                );
+                this.launch(command, work);
+                final long[] toMain = new long[this.runs];
+                for (int i=0; i < toMain.length; i++) toMain[i] = this.launch(command, work).toMain();
+                this.line("[" + c.id() + "] direct java exec-to-main: " + Percentiles.of(toMain));
+            }
+
+            final Map<PackagerProfile, ProfileResult> results = new EnumMap<>(PackagerProfile.class);
+            for (PackagerProfile profile : this.profiles)
+                results.put(profile, this.runProfile(c, profile, source, work, launch));
+            this.compare(c, results.get(PackagerProfile.STANDARD), results.get(PackagerProfile.COMPACT));
+        } finally {
+            Files.deleteIfExists(source);
+        }
+    }
+
+    private @NotNull ProfileResult runProfile(
+            @NotNull BenchCase c,
+            @NotNull PackagerProfile profile,
+            @NotNull Path source,
+            @NotNull Path work,
+            boolean launch
+    ) throws Exception {
+        final String label = label(c, profile);
+        final long sourceSize = Files.size(source);
+
+        // Stages which run once per target appear once, with their total time
+        final Map<String, Long> stageNanos = new LinkedHashMap<>();
+        final String appName = "JARStrap Bench " + c.id() + " " + profile.name().toLowerCase(Locale.ROOT);
+        final File out;
+        final long stubSize;
+        final long start = System.nanoTime();
+        try (Packager packager = JARStrap.createPackager(this.logger())) {
+            packager.setSource(source.toFile());
+            packager.setAppName(appName);
+            packager.setAttributionEnabled(false);
+            packager.setOutputDir(work.toFile());
+            packager.setRelease(true);
+            packager.setProfile(profile);
+
+            String stage;
+            while ((stage = packager.nextStage()) != null) {
+                final long stageStart = System.nanoTime();
+                packager.executeStage();
+                stageNanos.merge(stage, System.nanoTime() - stageStart, Long::sum);
+            }
+            out = packager.getOutputFile();
+            // Everything in the executable besides the embedded payload
+            final File payload = new File(new File(packager.getWorkingDir(), "archive"), "payload.bin");
+            stubSize = out.length() - payload.length();
+        }
+        final long packageNanos = System.nanoTime() - start;
+
+        final StringJoiner stages = new StringJoiner(" ");
+        for (Map.Entry<String, Long> entry : stageNanos.entrySet())
+            stages.add(entry.getKey() + "=" + TimeUnit.NANOSECONDS.toMillis(entry.getValue()) + "ms");
+        this.line(label + " packaged in " + TimeUnit.NANOSECONDS.toMillis(packageNanos) + "ms (" +
+                String.format(Locale.ROOT, "%.1f MiB/s", (sourceSize / (double) (1 << 20)) / (packageNanos / 1e9d)) +
+                "), executable " + mib(out.length()) + ", stub " + kib(stubSize));
+        this.line(label + " stages: " + stages);
+
+        if (!launch) {
+            Files.deleteIfExists(out.toPath());
+            return new ProfileResult(stubSize, null);
+        }
+        // The export stage does not carry over the file mode
+        if (!out.setExecutable(true))
+            throw new IOException("Failed to make executable: " + out);
+        final List<String> command = List.of(out.getAbsolutePath());
+        final Path appDir = Path.of(System.getProperty("user.home"), ".jarstrap");
+        Percentiles toMain = null;
+        try {
+            if (this.coldRuns > 0) {
+                final long[] cold = new long[this.coldRuns];
+                for (int i=0; i < cold.length; i++) {
+                    this.clearExtracted(appDir, appName);
+                    cold[i] = this.launch(command, work).wall();
+                }
+                this.line(label + " cold launch: " + Percentiles.of(cold));
+            }
+            if (this.runs > 0) {
+                // Ensures the JAR is extracted, without counting towards the results
+                this.launch(command, work);
+                final long[] warm = new long[this.runs];
+                final long[] warmToMain = new long[this.runs];
+                for (int i=0; i < warm.length; i++) {
+                    final Launch result = this.launch(command, work);
+                    warm[i] = result.wall();
+                    warmToMain[i] = result.toMain();
+                }
+                toMain = Percentiles.of(warmToMain);
+                this.line(label + " warm launch: " + Percentiles.of(warm));
+                this.line(label + " warm exec-to-main: " + toMain);
+            }
+        } finally {
+            this.clearExtracted(appDir, appName);
+            Files.deleteIfExists(out.toPath());
+        }
+        return new ProfileResult(stubSize, toMain);
+    }
+
+    private void compare(@NotNull BenchCase c, @Nullable ProfileResult standard, @Nullable ProfileResult compact) {
+        if (standard == null || compact == null) return;
+        String line = "[" + c.id() + "] compact vs standard: stub " + kib(standard.stubSize()) + " -> " +
+                kib(compact.stubSize()) + String.format(Locale.ROOT, " (%+.1f%%)",
+                100d * (compact.stubSize() - standard.stubSize()) / standard.stubSize());
+        if (standard.toMain() != null && compact.toMain() != null) {
+            line += String.format(Locale.ROOT, ", warm exec-to-main p50 %+.2fms",
+                    (compact.toMain().p50() - standard.toMain().p50()) / 1e6d);
+        }
+        this.line(line);
+    }
+
+    /**
+     * Runs a command to completion. The last line it prints must be the {@link System#nanoTime()} of its main method,
+     * as printed by the {@link SyntheticJar synthetic JARs}.
+     */
+    private @NotNull Launch launch(@NotNull List<String> command, @NotNull Path work) throws IOException, InterruptedException {
+        final Path stdout = work.resolve("stdout.txt");
+        final ProcessBuilder pb = new ProcessBuilder(command)
+                .redirectOutput(stdout.toFile())
+                .redirectError(ProcessBuilder.Redirect.DISCARD);
+
+        // Make the running Java the first one found by the launcher
+        final Map<String, String> env = pb.environment();
+        final String javaBin = Path.of(System.getProperty("java.home"), "bin").toString();
+        final String path = env.get("PATH");
+        env.put("PATH", path == null ? javaBin : javaBin + File.pathSeparator + path);
+
+        final long start = System.nanoTime();
+        final Process process = pb.start();
+        process.getOutputStream().close();
+        if (!process.waitFor(LAUNCH_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            throw new IOException("Process did not exit within " + LAUNCH_TIMEOUT_SECONDS + "s: " + command.get(0));
+        }
+        final long elapsed = System.nanoTime() - start;
+        if (process.exitValue() != 0)
+            throw new IOException("Process exited with code " + process.exitValue() + ": " + command.get(0));
+
+        // The launcher may print around the output of the application
+        final List<String> lines = Files.readAllLines(stdout, StandardCharsets.UTF_8);
+        Files.delete(stdout);
+        for (int i=lines.size() - 1; i >= 0; i--) {
+            final String line = ANSI_ESCAPE.matcher(lines.get(i)).replaceAll("").trim();
+            if (!line.matches("-?\\d+")) continue;
+            return new Launch(elapsed, Long.parseLong(line) - start);
+        }
+        throw new IOException("Process did not print the time its main method was reached: " + command.get(0));
+    }
+
+    /**
+     * Deletes the JARs the launcher extracted for the given app, so that the next launch is cold
+     */
+    private void clearExtracted(@NotNull Path appDir, @NotNull String appName) throws IOException {
+        if (!Files.isDirectory(appDir)) return;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(appDir, appName + "_*")) {
+            for (Path file : stream) Files.deleteIfExists(file);
+        }
+    }
+
+    private @NotNull Logger logger() {
+        final Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        final Level level = this.verbose ? Level.FINE : Level.WARNING;
+        logger.setLevel(level);
+        final ConsoleHandler handler = new ConsoleHandler();
+        handler.setLevel(level);
+        logger.addHandler(handler);
+        return logger;
+    }
+
+    private void line(@NotNull String line) {
+        System.out.println(line);
+        this.report.append(line).append('\n');
+    }
+
+    //
+
+    /**
+     * @param wall The time from exec until the process exited, in nanoseconds
+     * @param toMain The time from exec until the main method was reached, in nanoseconds
+     */
+    private record Launch(long wall, long toMain) { }
+
+    /**
+     * @param toMain Warm exec-to-main latencies, or null if launches were not measured
+     */
+    private record ProfileResult(long stubSize, @Nullable Percentiles toMain) { }
+
+}
@@ -0,0 +1,48 @@
+package io.github.wasabithumb.jarstrap.bench;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Summarizes a set of durations (in nanoseconds) by nearest-rank percentiles
+ */
+record Percentiles(int count, long min, long p50, long p90, long p99, long max) {
+
+    static @NotNull Percentiles of(long @NotNull [] samples) {
+        if (samples.length == 0) throw new IllegalArgumentException("No samples");
+        final long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        return new Percentiles(
+                sorted.length,
+                sorted[0],
+                rank(sorted, 50),
+                rank(sorted, 90),
+                rank(sorted, 99),
+                sorted[sorted.length - 1]
+        );
+    }
+
+    private static long rank(long @NotNull [] sorted, int percentile) {
+        final int n = (int) Math.ceil((percentile / 100d) * sorted.length);
+        return sorted[Math.max(0, n - 1)];
+    }
+
+    private static @NotNull String ms(long nanos) {
+        return String.format(Locale.ROOT, "%.1fms", nanos / 1e6d);
+    }
+
+    //
+
+    @Override
+    public @NotNull String toString() {
+        return "n=" + this.count +
+                " min=" + ms(this.min) +
+                " p50=" + ms(this.p50) +
+                " p90=" + ms(this.p90) +
+                " p99=" + ms(this.p99) +
+                " max=" + ms(this.max);
+    }
+
+}
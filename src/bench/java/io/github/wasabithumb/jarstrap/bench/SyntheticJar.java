@@ -0,0 +1,152 @@
+package io.github.wasabithumb.jarstrap.bench;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+/**
+ * Writes runnable JARs whose main class prints {@link System#nanoTime()} and returns, padded with stored entries of
+ * seeded random data so that every run of the benchmark packages identical bytes. The printed time tells how long
+ * the main method took to be reached, since the monotonic clock is shared by all processes on Linux.
+ */
+final class SyntheticJar {
+
+    static final String MAIN_CLASS = "bench.Main";
+    private static final long ENTRY_TIME = 946684800000L; // 2000-01-01T00:00:00Z
+
+    /**
+     * @param entries The number of padding entries
+     * @param entrySize The size of each padding entry in bytes
+     */
+    static void write(@NotNull Path dest, int entries, int entrySize, long seed) throws IOException {
+        final Manifest manifest = new Manifest();
+        final Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attributes.put(Attributes.Name.MAIN_CLASS, MAIN_CLASS);
+
+        final SplittableRandom random = new SplittableRandom(seed);
+        final byte[] buf = new byte[entrySize];
+        try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(dest), 1 << 16);
+             JarOutputStream jar = new JarOutputStream(os, manifest)
+        ) {
+            putStored(jar, MAIN_CLASS.replace('.', '/') + ".class", mainClass());
+            for (int i=0; i < entries; i++) {
+                random.nextBytes(buf);
+                putStored(jar, "data/" + (i / 1000) + "/" + i + ".bin", buf);
+            }
+        }
+    }
+
+    private static void putStored(@NotNull JarOutputStream jar, @NotNull String name, byte @NotNull [] data) throws IOException {
+        final CRC32 crc = new CRC32();
+        crc.update(data);
+        final JarEntry entry = new JarEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(data.length);
+        entry.setCompressedSize(data.length);
+        entry.setCrc(crc.getValue());
+        entry.setTime(ENTRY_TIME);
+        jar.putNextEntry(entry);
+        jar.write(data);
+        jar.closeEntry();
+    }
+
+    /**
+     * Assembles {@code bench.Main} (Java 8) with a single {@code public static void main(String[])} which runs
+     * {@code System.out.println(System.nanoTime())}
+     */
+    private static byte @NotNull [] mainClass() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);                  // minor
+        out.writeShort(52);                 // major
+        out.writeShort(24);                 // constant pool count
+        utf8(out, MAIN_CLASS.replace('.', '/'));    // #1
+        classRef(out, 1);                           // #2
+        utf8(out, "java/lang/Object");              // #3
+        classRef(out, 3);                           // #4
+        utf8(out, "main");                          // #5
+        utf8(out, "([Ljava/lang/String;)V");        // #6
+        utf8(out, "Code");                          // #7
+        utf8(out, "java/lang/System");              // #8
+        classRef(out, 8);                           // #9
+        utf8(out, "out");                           // #10
+        utf8(out, "Ljava/io/PrintStream;");         // #11
+        nameAndType(out, 10, 11);                   // #12
+        memberRef(out, 9, 9, 12);                   // #13 Fieldref System.out
+        utf8(out, "nanoTime");                      // #14
+        utf8(out, "()J");                           // #15
+        nameAndType(out, 14, 15);                   // #16
+        memberRef(out, 10, 9, 16);                  // #17 Methodref System.nanoTime
+        utf8(out, "java/io/PrintStream");           // #18
+        classRef(out, 18);                          // #19
+        utf8(out, "println");                       // #20
+        utf8(out, "(J)V");                          // #21
+        nameAndType(out, 20, 21);                   // #22
+        memberRef(out, 10, 19, 22);                 // #23 Methodref PrintStream.println
+        out.writeShort(0x0021);             // ACC_PUBLIC | ACC_SUPER
+        out.writeShort(2);                  // this
+        out.writeShort(4);                  // super
+        out.writeShort(0);                  // interfaces
+        out.writeShort(0);                  // fields
+        out.writeShort(1);                  // methods
+        out.writeShort(0x0009);             // ACC_PUBLIC | ACC_STATIC
+        out.writeShort(5);
+        out.writeShort(6);
+        out.writeShort(1);                  // attributes
+        out.writeShort(7);                  // Code
+        out.writeInt(22);
+        out.writeShort(3);                  // max stack
+        out.writeShort(1);                  // max locals
+        out.writeInt(10);                   // code length
+        out.writeByte(0xB2);                // getstatic #13
+        out.writeShort(13);
+        out.writeByte(0xB8);                // invokestatic #17
+        out.writeShort(17);
+        out.writeByte(0xB6);                // invokevirtual #23
+        out.writeShort(23);
+        out.writeByte(0xB1);                // return
+        out.writeShort(0);                  // exception table
+        out.writeShort(0);                  // attributes
+        out.writeShort(0);                  // class attributes
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void utf8(@NotNull DataOutputStream out, @NotNull String value) throws IOException {
+        out.writeByte(1);
+        out.writeUTF(value);
+    }
+
+    private static void classRef(@NotNull DataOutputStream out, int nameIndex) throws IOException {
+        out.writeByte(7);
+        out.writeShort(nameIndex);
+    }
+
+    private static void nameAndType(@NotNull DataOutputStream out, int nameIndex, int descriptorIndex) throws IOException {
+        out.writeByte(12);
+        out.writeShort(nameIndex);
+        out.writeShort(descriptorIndex);
+    }
+
+    private static void memberRef(@NotNull DataOutputStream out, int tag, int classIndex, int nameAndTypeIndex) throws IOException {
+        out.writeByte(tag);
+        out.writeShort(classIndex);
+        out.writeShort(nameAndTypeIndex);
+    }
+
+}
@@ -1,12 +1,24 @@
 package io.github.wasabithumb.jarstrap;
 
+import io.github.wasabithumb.jarstrap.instance.InstanceReaper;
+import io.github.wasabithumb.jarstrap.instance.WorkingRoot;
 import io.github.wasabithumb.jarstrap.packager.Packager;
+import io.github.wasabithumb.jarstrap.packager.PackagerConfig;
+import io.github.wasabithumb.jarstrap.packager.error.PackagerException;
+import io.github.wasabithumb.jarstrap.packager.error.PackagerIOException;
 import io.github.wasabithumb.jarstrap.util.Optimus;
 import io.github.wasabithumb.josdirs.JOSDirs;
+import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -19,7 +31,44 @@ public final class JARStrap {
      */
     @Contract("_ -> new")
     public static @NotNull Packager createPackager(@NotNull Logger logger) {
-        return new Packager(nextInstanceDir(), logger);
+        return createPackager(PackagerConfig.defaults(), logger);
+    }
+
+    /**
+     * Creates a new packager instance with the given initial configuration. The configuration may be shared between
+     * any number of packagers.
+     * @param config The initial configuration for the packager
+     * @param logger The logger for the packager to use
+     * @since 0.3.0
+     * @see #createPackager(Logger)
+     */
+    @Contract("_, _ -> new")
+    public static @NotNull Packager createPackager(@NotNull PackagerConfig config, @NotNull Logger logger) {
+        return createPackager(getDefaultWorkingRoot(), config, logger);
+    }
+
+    /**
+     * Creates a new packager instance with the given initial configuration, placing its working directory within
+     * the given root.
+     * @param root Determines where the working directory of the packager is created
+     * @param config The initial configuration for the packager
+     * @param logger The logger for the packager to use
+     * @since 0.3.0
+     * @see #createPackager(PackagerConfig, Logger)
+     */
+    @Contract("_, _, _ -> new")
+    public static @NotNull Packager createPackager(
+            @NotNull WorkingRoot root,
+            @NotNull PackagerConfig config,
+            @NotNull Logger logger
+    ) {
+        long required = WorkingRoot.BUILD_TREE_RESERVE;
+        final File source = config.source();
+        if (source != null) {
+            // The JAR may be copied, rewritten and embedded into an object & executable
+            required += source.length() << 2;
+        }
+        return new Packager(nextInstanceDir(root.resolve(required)), logger, config);
     }
 
     /**
@@ -33,9 +82,33 @@ public final class JARStrap {
         return createPackager(logger);
     }
 
+    private static volatile WorkingRoot DEFAULT_ROOT = null;
+
+    /**
+     * The root in which {@link #createPackager(PackagerConfig, Logger)} creates working directories. Unless set by
+     * {@link #setDefaultWorkingRoot(WorkingRoot)}, this is read from the {@value WorkingRoot#PROPERTY} system
+     * property and defaults to the {@link WorkingRoot#dataDir() data directory}.
+     * @since 0.3.0
+     */
+    public static @NotNull WorkingRoot getDefaultWorkingRoot() {
+        WorkingRoot root = DEFAULT_ROOT;
+        if (root == null) root = WorkingRoot.fromSystemProperty();
+        return root;
+    }
+
+    /**
+     * Sets the default working root for this process. Passing null restores the default behavior.
+     * @since 0.3.0
+     * @see #getDefaultWorkingRoot()
+     */
+    public static void setDefaultWorkingRoot(@Nullable WorkingRoot root) {
+        DEFAULT_ROOT = root;
+    }
+
     // Determine a constant filesystem to use for JARStrap work.
     private static File DATA_DIR = null;
-    static synchronized @NotNull File dataDir() {
+    @ApiStatus.Internal
+    public static synchronized @NotNull File dataDir() {
         if (DATA_DIR == null) {
             DATA_DIR = JOSDirs.osDirs()
                     .userData()
@@ -47,17 +120,52 @@ public final class JARStrap {
         return DATA_DIR;
     }
 
-    // Shuffles the sequential IDs used for instances.
+    // Shuffles the sequential IDs used for instances. Each process has its own random shuffle, so the names tried
+    // by concurrent processes sharing a root rarely collide; when they do, the directory is not claimed twice.
     private static final Optimus OPTIMUS = Optimus.generate();
+    private static final int MAX_INSTANCE_ATTEMPTS = 64;
 
     // Determine a temporary filesystem within the data filesystem.
     private static int INSTANCE_COUNTER = 1;
-    static synchronized @NotNull File nextInstanceDir() {
-        final int id = OPTIMUS.encode(INSTANCE_COUNTER++);
+    private static final Set<File> SWEPT = new HashSet<>();
+    static synchronized @NotNull File nextInstanceDir(@NotNull File root) throws PackagerException {
+        if (SWEPT.add(root)) {
+            // Collect directories left behind by crashed processes
+            InstanceReaper.sweep(root);
+        }
+
+        try {
+            Files.createDirectories(root.toPath());
+        } catch (IOException e) {
+            throw new PackagerIOException("Failed to create working root", e);
+        }
+
+        // Directory creation is atomic, so whichever process creates the directory owns it
+        for (int attempt=0; attempt < MAX_INSTANCE_ATTEMPTS; attempt++) {
+            final File dir = new File(root, instanceName(OPTIMUS.encode(INSTANCE_COUNTER++)));
+            try {
+                Files.createDirectory(dir.toPath());
+            } catch (FileAlreadyExistsException e) {
+                continue;
+            } catch (IOException e) {
+                throw new PackagerIOException("Failed to create working directory", e);
+            }
+            try {
+                InstanceReaper.mark(dir);
+            } catch (IOException e) {
+                throw new PackagerIOException("Failed to create working directory", e);
+            }
+            return dir;
+        }
+        throw new PackagerException("Failed to claim a working directory in \"" + root.getAbsolutePath() +
+                "\" after " + MAX_INSTANCE_ATTEMPTS + " attempts");
+    }
+
+    private static @NotNull String instanceName(int id) {
         final char[] name = new char[9];
         name[0] = 'I';
         for (int i=0; i < 8; i++) name[8 - i] = Character.forDigit((id >> (i << 2)) & 0xF, 16);
-        return new File(dataDir(), new String(name));
+        return new String(name);
     }
 
 }
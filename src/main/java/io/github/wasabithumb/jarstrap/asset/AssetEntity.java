@@ -5,11 +5,25 @@ import org.jetbrains.annotations.NotNull;
 
 public interface AssetEntity {
 
+    /**
+     * Returned by {@link #size()}, {@link #lastModified()} and {@link #crc()} when the value is not known
+     * @since 0.3.0
+     */
+    long UNKNOWN = -1L;
+
     @Contract("_ -> new")
     static @NotNull AssetEntity file(@NotNull String name) {
         return new File(name);
     }
 
+    /**
+     * @since 0.3.0
+     */
+    @Contract("_, _, _, _ -> new")
+    static @NotNull AssetEntity file(@NotNull String name, long size, long lastModified, long crc) {
+        return new File(name, size, lastModified, crc);
+    }
+
     @Contract("_ -> new")
     static @NotNull AssetEntity directory(@NotNull String name) {
         return new Directory(name);
@@ -23,9 +37,38 @@ public interface AssetEntity {
 
     boolean isDirectory();
 
+    /**
+     * The size of the file in bytes, or {@link #UNKNOWN}
+     * @since 0.3.0
+     */
+    default long size() {
+        return UNKNOWN;
+    }
+
+    /**
+     * The time the file was last modified in milliseconds since the epoch, or {@link #UNKNOWN}
+     * @since 0.3.0
+     */
+    default long lastModified() {
+        return UNKNOWN;
+    }
+
+    /**
+     * The CRC-32 of the file contents, or {@link #UNKNOWN}. Depending on the source, this may require reading the
+     * file.
+     * @since 0.3.0
+     */
+    default long crc() {
+        return UNKNOWN;
+    }
+
     //
 
-    record File(@NotNull String name) implements AssetEntity {
+    record File(@NotNull String name, long size, long lastModified, long crc) implements AssetEntity {
+
+        public File(@NotNull String name) {
+            this(name, UNKNOWN, UNKNOWN, UNKNOWN);
+        }
 
         @Override
         public boolean isFile() {
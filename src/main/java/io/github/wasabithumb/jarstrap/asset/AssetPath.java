@@ -1,22 +1,33 @@
 package io.github.wasabithumb.jarstrap.asset;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Unmodifiable;
 
-import java.nio.CharBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.BitSet;
 import java.util.Collections;
 import java.util.List;
 
+/**
+ * <p>
+ *     A path within an {@link AssetSource}, made up of parts separated by {@code /}. Paths are immutable; the joined
+ *     string, the offsets of each part and the hash are computed once, so reading a path (including
+ *     {@link #charAt(int)}, {@link #part(int)} and {@link #hashCode()}) does not allocate.
+ * </p>
+ * <p>
+ *     Paths are equal when they have the same parts, regardless of how they were created. Paths may be
+ *     {@link #intern() interned} to share instances between many indexes.
+ * </p>
+ */
 public sealed interface AssetPath extends CharSequence {
 
     static @NotNull AssetPath of(@NotNull String @NotNull ... parts) {
-        return new ByParts(Arrays.asList(parts));
+        return new ByParts(parts.clone());
     }
 
     static @NotNull AssetPath parse(@NotNull String path) {
         int len = path.length();
-        BitSet sep = new BitSet(len);
         int sepCount = 0;
         boolean canBeLiteral = true;
         boolean trim = false;
@@ -34,88 +45,194 @@ public sealed interface AssetPath extends CharSequence {
             } else {
                 continue;
             }
-            sep.set(i);
             sepCount++;
         }
 
-        Literal literal = new Literal(path, sep, sepCount);
-        if (canBeLiteral) return literal;
+        if (canBeLiteral) {
+            int[] starts = new int[sepCount + 1];
+            int head = 1;
+            for (int i=0; i < len; i++) {
+                if (path.charAt(i) == '/') starts[head++] = i + 1;
+            }
+            return new Literal(path, starts);
+        }
+
+        List<String> parts = new ArrayList<>(sepCount + 1);
+        int start = 0;
+        for (int i=0; i < len; i++) {
+            c = path.charAt(i);
+            if (c != '/' && c != '\\') continue;
+            parts.add(path.substring(start, i));
+            start = i + 1;
+        }
+        parts.add(path.substring(start));
 
-        List<CharSequence> parts = literal.parts();
         if (trim) {
-            int start = 0;
-            int end = parts.size();
-            if (end != 0 && parts.getFirst().isEmpty()) start++;
-            if ((end - start) > 0 && parts.getLast().isEmpty()) end--;
-            parts = parts.subList(start, end);
+            int from = 0;
+            int to = parts.size();
+            if (to != 0 && parts.get(0).isEmpty()) from++;
+            if ((to - from) > 0 && parts.get(to - 1).isEmpty()) to--;
+            parts = parts.subList(from, to);
         }
-        return new ByParts(parts);
+        return new ByParts(parts.toArray(new String[0]));
     }
 
     //
 
-    @NotNull List<CharSequence> parts();
+    @NotNull @Unmodifiable List<CharSequence> parts();
+
+    /**
+     * The number of parts in this path
+     * @since 0.3.0
+     */
+    int partCount();
+
+    /**
+     * The part at the given index
+     * @since 0.3.0
+     * @throws IndexOutOfBoundsException The index is negative or not less than {@link #partCount()}
+     */
+    @NotNull String part(int index) throws IndexOutOfBoundsException;
+
+    /**
+     * Returns a path made of the parts of this path followed by the parts of the given path
+     * @since 0.3.0
+     */
+    default @NotNull AssetPath resolve(@NotNull AssetPath other) {
+        final int a = this.partCount();
+        final int b = other.partCount();
+        if (a == 0) return other;
+        if (b == 0) return this;
+        final String[] parts = new String[a + b];
+        for (int i=0; i < a; i++) parts[i] = this.part(i);
+        for (int i=0; i < b; i++) parts[a + i] = other.part(i);
+        return new ByParts(parts);
+    }
+
+    /**
+     * Returns a path made of the parts of this path followed by the given part
+     * @since 0.3.0
+     */
+    default @NotNull AssetPath resolve(@NotNull String part) {
+        final int a = this.partCount();
+        final String[] parts = new String[a + 1];
+        for (int i=0; i < a; i++) parts[i] = this.part(i);
+        parts[a] = part;
+        return new ByParts(parts);
+    }
+
+    /**
+     * Returns the path without its last part, or null if this path has no parts
+     * @since 0.3.0
+     */
+    default @Nullable AssetPath parent() {
+        final int a = this.partCount();
+        if (a == 0) return null;
+        final String[] parts = new String[a - 1];
+        for (int i=0; i < parts.length; i++) parts[i] = this.part(i);
+        return new ByParts(parts);
+    }
+
+    /**
+     * Returns a canonical instance equal to this path. The same instance is returned for all equal paths which are
+     * interned, for the lifetime of the process.
+     * @since 0.3.0
+     */
+    default @NotNull AssetPath intern() {
+        return AssetPathInterner.intern(this);
+    }
 
     @Override
     @NotNull String toString();
 
     //
 
+    private static boolean structurallyEqual(@NotNull AssetPath a, @Nullable Object obj) {
+        if (a == obj) return true;
+        if (!(obj instanceof AssetPath b)) return false;
+        if (a.hashCode() != b.hashCode()) return false;
+        if (!a.toString().equals(b.toString())) return false;
+        final int count = a.partCount();
+        if (count != b.partCount()) return false;
+        // Same joined string; the paths are equal if the parts also have the same bounds
+        for (int i=0; i < count; i++) {
+            if (a.part(i).length() != b.part(i).length()) return false;
+        }
+        return true;
+    }
+
+    private static int hash(@NotNull String value, int partCount) {
+        return (value.hashCode() * 31) + partCount;
+    }
+
+    private static @NotNull String[] split(@NotNull String value, int @NotNull [] starts) {
+        final String[] ret = new String[starts.length];
+        for (int i=0; i < starts.length; i++) {
+            int end = (i == starts.length - 1) ? value.length() : (starts[i + 1] - 1);
+            ret[i] = value.substring(starts[i], end);
+        }
+        return ret;
+    }
+
+    //
+
     final class ByParts implements AssetPath {
 
-        private final List<CharSequence> parts;
-        private final int length;
+        private final String[] parts;
+        private final String value;
+        private final int hash;
+        private final List<CharSequence> partList;
+
+        ByParts(@NotNull String @NotNull [] parts) {
+            this.parts = parts;
+            this.value = String.join("/", parts);
+            this.hash = hash(this.value, parts.length);
+            this.partList = Collections.unmodifiableList(Arrays.asList(parts));
+        }
 
-        ByParts(@NotNull List<CharSequence> parts) {
-            this.parts = Collections.unmodifiableList(parts);
-            int length = 0;
-            for (int i=0; i < parts.size(); i++) {
-                if (i != 0) length++;
-                length += parts.get(i).length();
-            }
-            this.length = length;
+        @Override
+        public @NotNull @Unmodifiable List<CharSequence> parts() {
+            return this.partList;
         }
 
         @Override
-        public @NotNull List<CharSequence> parts() {
-            return this.parts;
+        public int partCount() {
+            return this.parts.length;
+        }
+
+        @Override
+        public @NotNull String part(int index) throws IndexOutOfBoundsException {
+            return this.parts[index];
         }
 
         @Override
         public int length() {
-            return this.length;
+            return this.value.length();
         }
 
         @Override
         public char charAt(int i) {
-            if (i < 0 || i >= this.length) {
-                throw new IndexOutOfBoundsException("Index " + i + " out of bounds for length " + this.length);
-            }
-            int len;
-            for (CharSequence part : this.parts) {
-                len = part.length();
-                if (i < len) return part.charAt(i);
-                i -= len;
-                if (i == 0) return '/';
-                i--;
-            }
-            throw new AssertionError();
+            return this.value.charAt(i);
         }
 
         @Override
         public @NotNull CharSequence subSequence(int i, int i1) {
-            return CharBuffer.wrap(this)
-                    .subSequence(i, i1);
+            return this.value.subSequence(i, i1);
+        }
+
+        @Override
+        public boolean equals(@Nullable Object obj) {
+            return structurallyEqual(this, obj);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
         }
 
         @Override
         public @NotNull String toString() {
-            StringBuilder sb = new StringBuilder(this.length);
-            for (int i=0; i < this.parts.size(); i++) {
-                if (i != 0) sb.append('/');
-                sb.append(this.parts.get(i));
-            }
-            return sb.toString();
+            return this.value;
         }
 
     }
@@ -123,34 +240,47 @@ public sealed interface AssetPath extends CharSequence {
     final class Literal implements AssetPath {
 
         private final String value;
-        private final BitSet sep;
-        private final int sepCount;
-        Literal(@NotNull String value, @NotNull BitSet sep, int sepCount) {
+        private final int[] starts;
+        private final int hash;
+        private volatile String[] parts;
+        private volatile List<CharSequence> partList;
+
+        Literal(@NotNull String value, int @NotNull [] starts) {
             this.value = value;
-            this.sep = sep;
-            this.sepCount = sepCount;
+            this.starts = starts;
+            this.hash = hash(value, starts.length);
+            this.parts = null;
+            this.partList = null;
         }
 
-        @Override
-        public @NotNull List<CharSequence> parts() {
-            if (this.sepCount == 0)
-                return Collections.singletonList(this.value);
-
-            CharSequence[] ret = new CharSequence[this.sepCount + 1];
-            int head = 0;
-
-            CharBuffer buf = CharBuffer.wrap(this.value);
-            int start = 0;
-            int end;
+        private @NotNull String[] parts0() {
+            String[] parts = this.parts;
+            if (parts == null) {
+                // Benign race; every thread computes the same parts
+                parts = split(this.value, this.starts);
+                this.parts = parts;
+            }
+            return parts;
+        }
 
-            while ((end = this.sep.nextSetBit(start)) != -1) {
-                ret[head++] = buf.subSequence(start, end);
-                start = end + 1;
+        @Override
+        public @NotNull @Unmodifiable List<CharSequence> parts() {
+            List<CharSequence> list = this.partList;
+            if (list == null) {
+                list = Collections.unmodifiableList(Arrays.asList(this.parts0()));
+                this.partList = list;
             }
-            ret[head] = buf.subSequence(start, buf.length());
+            return list;
+        }
+
+        @Override
+        public int partCount() {
+            return this.starts.length;
+        }
 
-            //noinspection Java9CollectionFactory
-            return Collections.unmodifiableList(Arrays.asList(ret));
+        @Override
+        public @NotNull String part(int index) throws IndexOutOfBoundsException {
+            return this.parts0()[index];
         }
 
         @Override
@@ -168,6 +298,16 @@ public sealed interface AssetPath extends CharSequence {
             return this.value.subSequence(i, i1);
         }
 
+        @Override
+        public boolean equals(@Nullable Object obj) {
+            return structurallyEqual(this, obj);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
         @Override
         public @NotNull String toString() {
             return this.value;
@@ -0,0 +1,22 @@
+package io.github.wasabithumb.jarstrap.asset;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Backs {@link AssetPath#intern()}
+ */
+final class AssetPathInterner {
+
+    private static final ConcurrentMap<AssetPath, AssetPath> POOL = new ConcurrentHashMap<>();
+
+    private AssetPathInterner() { }
+
+    static @NotNull AssetPath intern(@NotNull AssetPath path) {
+        final AssetPath existing = POOL.putIfAbsent(path, path);
+        return existing == null ? path : existing;
+    }
+
+}
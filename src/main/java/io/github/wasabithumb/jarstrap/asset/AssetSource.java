@@ -2,14 +2,25 @@ package io.github.wasabithumb.jarstrap.asset;
 
 import io.github.wasabithumb.jarstrap.asset.impl.archive.ArchiveAssetSource;
 import io.github.wasabithumb.jarstrap.asset.impl.filesystem.FilesystemAssetSource;
+import io.github.wasabithumb.jarstrap.util.io.ByteArrayChannel;
+import io.github.wasabithumb.jarstrap.util.io.FileUtil;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URISyntaxException;
-import java.util.List;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
 
 public interface AssetSource {
 
@@ -54,4 +65,155 @@ public interface AssetSource {
         return this.read(AssetPath.parse(path));
     }
 
+    /**
+     * Opens a file for random access. Unless overridden, the file is read into memory.
+     * @since 0.3.0
+     */
+    default @NotNull SeekableByteChannel open(@NotNull AssetPath path) throws IOException {
+        try (InputStream is = this.read(path)) {
+            return new ByteArrayChannel(is.readAllBytes());
+        }
+    }
+
+    /**
+     * @since 0.3.0
+     * @see #open(AssetPath)
+     */
+    default @NotNull SeekableByteChannel open(@NotNull String path) throws IOException {
+        return this.open(AssetPath.parse(path));
+    }
+
+    /**
+     * <p>
+     *     Lazily walks every entity below this source in pre-order: a directory is always visited before its
+     *     contents. Paths are relative to this source.
+     * </p>
+     * <p>
+     *     The stream may hold resources (such as open directories or archives) and should be closed. Errors that
+     *     occur while the stream is consumed are thrown as {@link UncheckedIOException}.
+     * </p>
+     * @since 0.3.0
+     */
+    default @NotNull Stream<WalkEntry> walk() throws IOException {
+        return walk0(this, AssetPath.of(), this.list());
+    }
+
+    private static @NotNull Stream<WalkEntry> walk0(
+            @NotNull AssetSource source,
+            @NotNull AssetPath prefix,
+            @NotNull List<AssetEntity> entities
+    ) {
+        return entities.stream().flatMap((AssetEntity entity) -> {
+            final WalkEntry self = new WalkEntry(prefix.resolve(entity.name()), entity);
+            if (!entity.isDirectory()) return Stream.of(self);
+            // Listed only once the stream reaches the directory
+            final Stream<WalkEntry> children = Stream.of(entity).flatMap((AssetEntity dir) -> {
+                final AssetSource sub = source.sub(dir.name());
+                try {
+                    return walk0(sub, self.path(), sub.list());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            return Stream.concat(Stream.of(self), children);
+        });
+    }
+
+    /**
+     * Copies a file listed by this source to the given destination, unless the destination is already up to date:
+     * that is, it has the same size as the entity and was last modified at the same time or later. When the
+     * entity's modification time is known, it is applied to the destination.
+     * @param entity A file entity returned by {@link #list()}
+     * @return True if the file was copied, false if it was up to date
+     * @since 0.3.0
+     */
+    default boolean copy(@NotNull AssetEntity entity, @NotNull Path dest) throws IOException {
+        return this.copy(AssetPath.of(entity.name()), entity, dest);
+    }
+
+    /**
+     * Copies a file at the given path within this source, such as one returned by {@link #walk()}
+     * @since 0.3.0
+     * @see #copy(AssetEntity, Path)
+     */
+    default boolean copy(@NotNull AssetPath path, @NotNull AssetEntity entity, @NotNull Path dest) throws IOException {
+        final long size = entity.size();
+        final long lastModified = entity.lastModified();
+        if (size != AssetEntity.UNKNOWN && lastModified != AssetEntity.UNKNOWN && Files.isRegularFile(dest)) {
+            if (Files.size(dest) == size && Files.getLastModifiedTime(dest).toMillis() >= lastModified)
+                return false;
+        }
+        try (SeekableByteChannel channel = this.open(path)) {
+            FileUtil.transfer(channel, dest);
+        }
+        if (lastModified != AssetEntity.UNKNOWN)
+            Files.setLastModifiedTime(dest, FileTime.fromMillis(lastModified));
+        return true;
+    }
+
+    /**
+     * Copies every entity below this source into the given directory. Directories are created while walking, and
+     * files are copied concurrently on the given executor, which bounds the parallelism. Files which are already up
+     * to date are skipped, see {@link #copy(AssetEntity, Path)}.
+     * @since 0.3.0
+     */
+    default void copyTree(@NotNull Path dest, @NotNull Executor executor) throws IOException {
+        Files.createDirectories(dest);
+        final Set<Path> created = new HashSet<>();
+        created.add(dest);
+
+        final List<CompletableFuture<Void>> pending = new ArrayList<>();
+        boolean walked = false;
+        try (Stream<WalkEntry> stream = this.walk()) {
+            final Iterator<WalkEntry> iter = stream.iterator();
+            while (iter.hasNext()) {
+                final WalkEntry entry = iter.next();
+                Path target = dest;
+                for (int i=0; i < entry.path().partCount(); i++) target = target.resolve(entry.path().part(i));
+
+                if (entry.entity().isDirectory()) {
+                    if (created.add(target)) Files.createDirectories(target);
+                    continue;
+                }
+                final Path parent = target.getParent();
+                if (created.add(parent)) Files.createDirectories(parent);
+
+                final Path finalTarget = target;
+                pending.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        this.copy(entry.path(), entry.entity(), finalTarget);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, executor));
+            }
+            walked = true;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            // Copies already submitted must not outlive a failed walk, since the caller may go on to delete the tree
+            if (!walked) {
+                CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0]))
+                        .handle((Void v, Throwable t) -> null)
+                        .join();
+            }
+        }
+
+        try {
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException uio) throw uio.getCause();
+            throw e;
+        }
+    }
+
+    //
+
+    /**
+     * An entity encountered by {@link #walk()}
+     * @param path The path of the entity, relative to the source which was walked
+     * @since 0.3.0
+     */
+    record WalkEntry(@NotNull AssetPath path, @NotNull AssetEntity entity) { }
+
 }
@@ -7,17 +7,14 @@ import io.github.wasabithumb.jarstrap.util.io.StreamUtil;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
-import java.util.zip.ZipInputStream;
 
 public class ArchiveAssetSource implements AssetSource {
 
@@ -40,28 +37,95 @@ public class ArchiveAssetSource implements AssetSource {
         return new ArchiveAssetSource(this.file, this.root + path + "/");
     }
 
+    /**
+     * Lists entries from the central directory, which carries the size, modification time &amp; CRC of each file
+     */
     @Override
     public @NotNull List<AssetEntity> list() throws IOException {
-        List<AssetEntity> ret = new LinkedList<>();
+        List<AssetEntity> ret = new ArrayList<>();
         Pattern p = Pattern.compile("^" + Pattern.quote(this.root) + "([^/]+)(/?)$");
-        try (FileInputStream fis = new FileInputStream(this.file);
-             ZipInputStream zis = new ZipInputStream(fis)
-        ) {
+        try (ZipFile zf = new ZipFile(this.file)) {
+            Enumeration<? extends ZipEntry> entries = zf.entries();
             ZipEntry ze;
             Matcher m;
-            while ((ze = zis.getNextEntry()) != null) {
+            while (entries.hasMoreElements()) {
+                ze = entries.nextElement();
                 m = p.matcher(ze.getName());
                 if (!m.matches()) continue;
                 if (m.groupCount() > 1 && !m.group(2).isEmpty()) {
                     ret.add(AssetEntity.directory(m.group(1)));
                 } else {
-                    ret.add(AssetEntity.file(m.group(1)));
+                    ret.add(AssetEntity.file(m.group(1), ze.getSize(), ze.getTime(), ze.getCrc()));
                 }
             }
         }
         return Collections.unmodifiableList(ret);
     }
 
+    /**
+     * Reads the whole tree from a single pass over the central directory. Directories which have no entry of their
+     * own are still visited.
+     */
+    @Override
+    public @NotNull Stream<WalkEntry> walk() throws IOException {
+        final Map<AssetPath, List<WalkEntry>> children = new HashMap<>();
+        final Set<AssetPath> dirs = new HashSet<>();
+        try (ZipFile zf = new ZipFile(this.file)) {
+            final Enumeration<? extends ZipEntry> entries = zf.entries();
+            while (entries.hasMoreElements()) {
+                final ZipEntry ze = entries.nextElement();
+                final String name = ze.getName();
+                if (!name.startsWith(this.root) || name.length() == this.root.length()) continue;
+
+                final String rel = name.substring(this.root.length());
+                final boolean directory = rel.endsWith("/");
+                final AssetPath path = AssetPath.parse(directory ? rel.substring(0, rel.length() - 1) : rel);
+                if (path.partCount() == 0) continue;
+
+                if (directory) {
+                    addDirectory(children, dirs, path);
+                } else {
+                    final AssetPath parent = path.parent();
+                    if (parent != null && parent.partCount() != 0) addDirectory(children, dirs, parent);
+                    children.computeIfAbsent(parent == null ? AssetPath.of() : parent, (AssetPath k) -> new ArrayList<>())
+                            .add(new WalkEntry(path, AssetEntity.file(
+                                    path.part(path.partCount() - 1),
+                                    ze.getSize(),
+                                    ze.getTime(),
+                                    ze.getCrc()
+                            )));
+                }
+            }
+        }
+        return walk0(children, AssetPath.of());
+    }
+
+    private static void addDirectory(
+            @NotNull Map<AssetPath, List<WalkEntry>> children,
+            @NotNull Set<AssetPath> dirs,
+            @NotNull AssetPath path
+    ) {
+        // Climbs towards the root, listing each directory under its parent until one is already listed, so that every
+        // directory is reachable from the root
+        while (path != null && path.partCount() != 0 && dirs.add(path)) {
+            final AssetPath parent = path.parent();
+            children.computeIfAbsent(parent == null ? AssetPath.of() : parent, (AssetPath k) -> new ArrayList<>())
+                    .add(new WalkEntry(path, AssetEntity.directory(path.part(path.partCount() - 1))));
+            path = parent;
+        }
+    }
+
+    private static @NotNull Stream<WalkEntry> walk0(
+            @NotNull Map<AssetPath, List<WalkEntry>> children,
+            @NotNull AssetPath dir
+    ) {
+        final List<WalkEntry> list = children.get(dir);
+        if (list == null) return Stream.empty();
+        return list.stream().flatMap((WalkEntry entry) -> entry.entity().isDirectory() ?
+                Stream.concat(Stream.of(entry), walk0(children, entry.path())) :
+                Stream.of(entry));
+    }
+
     @Override
     public @NotNull InputStream read(@NotNull AssetPath path) throws IOException {
         boolean close = true;
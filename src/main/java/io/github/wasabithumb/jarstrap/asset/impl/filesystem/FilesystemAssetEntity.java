@@ -1,28 +1,88 @@
 package io.github.wasabithumb.jarstrap.asset.impl.filesystem;
 
 import io.github.wasabithumb.jarstrap.asset.AssetEntity;
+import io.github.wasabithumb.jarstrap.util.io.FileUtil;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * An entity whose attributes are read from the filesystem once, when it is created
+ */
 class FilesystemAssetEntity implements AssetEntity {
 
-    private final java.io.File file;
-    public FilesystemAssetEntity(@NotNull java.io.File file) {
-        this.file = file;
+    static @NotNull FilesystemAssetEntity of(@NotNull Path path) throws IOException {
+        return new FilesystemAssetEntity(path, Files.readAttributes(path, BasicFileAttributes.class));
+    }
+
+    /**
+     * Like {@link #of(Path)}, but does not follow a symbolic link at the path
+     */
+    static @NotNull FilesystemAssetEntity ofNoFollow(@NotNull Path path) throws IOException {
+        return new FilesystemAssetEntity(path, Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS));
+    }
+
+    //
+
+    private final Path path;
+    private final String name;
+    private final boolean file;
+    private final boolean directory;
+    private final long size;
+    private final long lastModified;
+    private volatile long crc = UNKNOWN;
+
+    FilesystemAssetEntity(@NotNull Path path, @NotNull BasicFileAttributes attrs) {
+        this.path = path;
+        this.name = path.getFileName().toString();
+        this.file = attrs.isRegularFile();
+        this.directory = attrs.isDirectory();
+        this.size = this.file ? attrs.size() : UNKNOWN;
+        this.lastModified = attrs.lastModifiedTime().toMillis();
     }
 
     @Override
     public @NotNull String name() {
-        return this.file.getName();
+        return this.name;
     }
 
     @Override
     public boolean isFile() {
-        return this.file.isFile();
+        return this.file;
     }
 
     @Override
     public boolean isDirectory() {
-        return this.file.isDirectory();
+        return this.directory;
+    }
+
+    @Override
+    public long size() {
+        return this.size;
+    }
+
+    @Override
+    public long lastModified() {
+        return this.lastModified;
+    }
+
+    /**
+     * Computed by reading the file the first time it is requested
+     */
+    @Override
+    public long crc() {
+        long crc = this.crc;
+        if (crc == UNKNOWN && this.file) {
+            try {
+                crc = FileUtil.crc32(this.path);
+                this.crc = crc;
+            } catch (IOException ignored) { }
+        }
+        return crc;
     }
 
 }
@@ -9,9 +9,20 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class FilesystemAssetSource implements AssetSource {
 
@@ -22,8 +33,9 @@ public class FilesystemAssetSource implements AssetSource {
 
     private @NotNull File resolve(@NotNull AssetPath path) {
         File ret = this.root;
-        for (CharSequence part : path.parts()) {
-            ret = new File(ret, part.toString());
+        final int count = path.partCount();
+        for (int i=0; i < count; i++) {
+            ret = new File(ret, path.part(i));
         }
         return ret;
     }
@@ -35,24 +47,117 @@ public class FilesystemAssetSource implements AssetSource {
 
     @Override
     public @NotNull List<AssetEntity> list() throws IOException {
-        File[] files = this.root.listFiles();
-        if (files == null)
-            throw new IOException("Path \"" + this.root.getAbsolutePath() + "\" is not a directory");
-
-        int len = files.length;
-        List<AssetEntity> ret = new ArrayList<>(len);
-
-        //noinspection ForLoopReplaceableByForEach
-        for (int i=0; i < files.length; i++) {
-            ret.add(new FilesystemAssetEntity(files[i]));
+        final List<AssetEntity> ret = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(this.root.toPath())) {
+            for (Path path : ds) ret.add(FilesystemAssetEntity.of(path));
+        } catch (NotDirectoryException e) {
+            throw new IOException("Path \"" + this.root.getAbsolutePath() + "\" is not a directory", e);
         }
-
         return Collections.unmodifiableList(ret);
     }
 
+    /**
+     * Walks the directory tree lazily, reading the attributes of each entry once. Symbolic links to directories are
+     * not followed.
+     */
+    @Override
+    public @NotNull Stream<WalkEntry> walk() throws IOException {
+        final Walker walker = new Walker(this.root.toPath());
+        return StreamSupport.stream(walker, false).onClose(walker::close);
+    }
+
     @Override
     public @NotNull InputStream read(@NotNull AssetPath path) throws IOException {
         return new FileInputStream(this.resolve(path));
     }
 
+    /**
+     * Opens the file itself, so that copies can be performed by the kernel
+     */
+    @Override
+    public @NotNull SeekableByteChannel open(@NotNull AssetPath path) throws IOException {
+        return FileChannel.open(this.resolve(path).toPath(), StandardOpenOption.READ);
+    }
+
+    /**
+     * Maps a file into memory, read-only. The mapping remains valid after the method returns.
+     * @throws IOException The file could not be opened, or is larger than 2 GiB
+     * @since 0.3.0
+     */
+    public @NotNull MappedByteBuffer map(@NotNull AssetPath path) throws IOException {
+        try (FileChannel fc = FileChannel.open(this.resolve(path).toPath(), StandardOpenOption.READ)) {
+            final long size = fc.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("File \"" + path + "\" is too large to map (" + size + " bytes)");
+            return fc.map(FileChannel.MapMode.READ_ONLY, 0L, size);
+        }
+    }
+
+    //
+
+    private static final class Walker extends Spliterators.AbstractSpliterator<WalkEntry> {
+
+        private final Deque<Level> stack = new ArrayDeque<>();
+
+        Walker(@NotNull Path root) throws IOException {
+            super(Long.MAX_VALUE, Spliterator.NONNULL | Spliterator.DISTINCT);
+            try {
+                this.stack.push(new Level(root, AssetPath.of()));
+            } catch (NotDirectoryException e) {
+                throw new IOException("Path \"" + root.toAbsolutePath() + "\" is not a directory", e);
+            }
+        }
+
+        @Override
+        public boolean tryAdvance(@NotNull Consumer<? super WalkEntry> action) {
+            try {
+                while (!this.stack.isEmpty()) {
+                    final Level level = this.stack.peek();
+                    if (!level.iterator.hasNext()) {
+                        this.stack.pop().close();
+                        continue;
+                    }
+                    final Path path = level.iterator.next();
+                    final FilesystemAssetEntity entity = FilesystemAssetEntity.ofNoFollow(path);
+                    final AssetPath assetPath = level.prefix.resolve(entity.name());
+                    if (entity.isDirectory()) this.stack.push(new Level(path, assetPath));
+                    action.accept(new WalkEntry(assetPath, entity));
+                    return true;
+                }
+                return false;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (DirectoryIteratorException e) {
+                throw new UncheckedIOException(e.getCause());
+            }
+        }
+
+        void close() {
+            while (!this.stack.isEmpty()) {
+                try {
+                    this.stack.pop().close();
+                } catch (IOException ignored) { }
+            }
+        }
+
+        private static final class Level {
+
+            final DirectoryStream<Path> stream;
+            final Iterator<Path> iterator;
+            final AssetPath prefix;
+
+            Level(@NotNull Path dir, @NotNull AssetPath prefix) throws IOException {
+                this.stream = Files.newDirectoryStream(dir);
+                this.iterator = this.stream.iterator();
+                this.prefix = prefix;
+            }
+
+            void close() throws IOException {
+                this.stream.close();
+            }
+
+        }
+
+    }
+
 }
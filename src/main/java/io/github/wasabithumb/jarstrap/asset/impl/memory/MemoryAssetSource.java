@@ -0,0 +1,138 @@
+package io.github.wasabithumb.jarstrap.asset.impl.memory;
+
+import io.github.wasabithumb.jarstrap.asset.AssetEntity;
+import io.github.wasabithumb.jarstrap.asset.AssetPath;
+import io.github.wasabithumb.jarstrap.asset.AssetSource;
+import io.github.wasabithumb.jarstrap.util.io.ByteArrayChannel;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * An immutable tree of assets held in memory. Useful to read a tree once and copy it out many times.
+ * @since 0.3.0
+ */
+public final class MemoryAssetSource implements AssetSource {
+
+    /**
+     * Reads every file below the given source into memory
+     */
+    @Contract("_ -> new")
+    public static @NotNull MemoryAssetSource copyOf(@NotNull AssetSource source) throws IOException {
+        final Map<AssetPath, byte[]> files = new HashMap<>();
+        final Map<AssetPath, List<WalkEntry>> children = new HashMap<>();
+        children.put(AssetPath.of(), new ArrayList<>());
+
+        try (Stream<WalkEntry> stream = source.walk()) {
+            final Iterator<WalkEntry> iter = stream.iterator();
+            while (iter.hasNext()) {
+                final WalkEntry entry = iter.next();
+                final AssetPath path = entry.path().intern();
+                final AssetEntity entity = entry.entity();
+                AssetEntity copy;
+                if (entity.isDirectory()) {
+                    copy = AssetEntity.directory(entity.name());
+                    children.put(path, new ArrayList<>());
+                } else {
+                    final byte[] content;
+                    try (InputStream is = source.read(path)) {
+                        content = is.readAllBytes();
+                    }
+                    files.put(path, content);
+                    // Computed from the copy, as the entity may read the file again to find its CRC
+                    final CRC32 crc = new CRC32();
+                    crc.update(content);
+                    copy = AssetEntity.file(entity.name(), content.length, entity.lastModified(), crc.getValue());
+                }
+                final AssetPath parent = path.parent();
+                children.get(parent == null ? AssetPath.of() : parent).add(new WalkEntry(path, copy));
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        for (Map.Entry<AssetPath, List<WalkEntry>> entry : children.entrySet())
+            entry.setValue(List.copyOf(entry.getValue()));
+        return new MemoryAssetSource(Collections.unmodifiableMap(files), Collections.unmodifiableMap(children), AssetPath.of());
+    }
+
+    //
+
+    private final Map<AssetPath, byte[]> files;
+    private final Map<AssetPath, List<WalkEntry>> children;
+    private final AssetPath root;
+
+    private MemoryAssetSource(
+            @NotNull Map<AssetPath, byte[]> files,
+            @NotNull Map<AssetPath, List<WalkEntry>> children,
+            @NotNull AssetPath root
+    ) {
+        this.files = files;
+        this.children = children;
+        this.root = root;
+    }
+
+    private byte @NotNull [] content(@NotNull AssetPath path) throws IOException {
+        final AssetPath full = this.root.resolve(path);
+        final byte[] ret = this.files.get(full);
+        if (ret == null) throw new IOException("Path \"" + full + "\" does not exist in memory source");
+        return ret;
+    }
+
+    @Override
+    public @NotNull MemoryAssetSource sub(@NotNull AssetPath path) {
+        return new MemoryAssetSource(this.files, this.children, this.root.resolve(path));
+    }
+
+    @Override
+    public @NotNull List<AssetEntity> list() throws IOException {
+        final List<WalkEntry> entries = this.children.get(this.root);
+        if (entries == null) throw new IOException("Path \"" + this.root + "\" is not a directory in memory source");
+        final List<AssetEntity> ret = new ArrayList<>(entries.size());
+        for (WalkEntry entry : entries) ret.add(entry.entity());
+        return Collections.unmodifiableList(ret);
+    }
+
+    @Override
+    public @NotNull Stream<WalkEntry> walk() throws IOException {
+        if (!this.children.containsKey(this.root))
+            throw new IOException("Path \"" + this.root + "\" is not a directory in memory source");
+        return this.walk0(this.root);
+    }
+
+    private @NotNull Stream<WalkEntry> walk0(@NotNull AssetPath dir) {
+        final int offset = this.root.partCount();
+        return this.children.get(dir).stream().flatMap((WalkEntry entry) -> {
+            final WalkEntry self = offset == 0 ? entry : new WalkEntry(relativize(entry.path(), offset), entry.entity());
+            if (!entry.entity().isDirectory()) return Stream.of(self);
+            return Stream.concat(Stream.of(self), this.walk0(entry.path()));
+        });
+    }
+
+    @Override
+    public @NotNull InputStream read(@NotNull AssetPath path) throws IOException {
+        return new ByteArrayInputStream(this.content(path));
+    }
+
+    @Override
+    public @NotNull SeekableByteChannel open(@NotNull AssetPath path) throws IOException {
+        return new ByteArrayChannel(this.content(path));
+    }
+
+    //
+
+    private static @NotNull AssetPath relativize(@NotNull AssetPath path, int offset) {
+        final String[] parts = new String[path.partCount() - offset];
+        for (int i=0; i < parts.length; i++) parts[i] = path.part(offset + i);
+        return AssetPath.of(parts);
+    }
+
+}
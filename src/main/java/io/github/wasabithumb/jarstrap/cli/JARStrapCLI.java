@@ -0,0 +1,263 @@
+package io.github.wasabithumb.jarstrap.cli;
+
+import io.github.wasabithumb.jarstrap.JARStrap;
+import io.github.wasabithumb.jarstrap.daemon.DaemonClient;
+import io.github.wasabithumb.jarstrap.delta.Delta;
+import io.github.wasabithumb.jarstrap.instance.WorkingRoot;
+import io.github.wasabithumb.jarstrap.daemon.DaemonProtocol;
+import io.github.wasabithumb.jarstrap.daemon.PackagerDaemon;
+import io.github.wasabithumb.jarstrap.packager.PackagerTarget;
+import io.github.wasabithumb.jarstrap.packager.error.PackagerException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.StringJoiner;
+import java.util.logging.ConsoleHandler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>
+ *     Command line entry point. Packaging requests are sent to a {@link PackagerDaemon}, which is started in the
+ *     background on first use and exits after {@link #DEFAULT_IDLE_TIMEOUT} without requests.
+ * </p>
+ * <pre>
+ * jarstrap package [key=value ...]   Package an executable through the daemon
+ * jarstrap daemon                    Run the daemon in the foreground
+ * jarstrap ping                      Check if the daemon is running
+ * jarstrap stop                      Stop the daemon
+ * jarstrap diff &lt;old&gt; &lt;new&gt; &lt;patch&gt;   Write a patch from one executable to another
+ * jarstrap patch &lt;old&gt; &lt;patch&gt; &lt;out&gt;  Apply a patch written by diff
+ *
+ * Options:
+ *   --socket &lt;path&gt;   The socket of the daemon
+ *   --no-spawn        Fail instead of starting a daemon
+ *   --verbose         Print the stage timings &amp; log of the packager, or the debug log of the daemon
+ * </pre>
+ * @since 0.3.0
+ */
+public final class JARStrapCLI {
+
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofHours(3L);
+    private static final long SPAWN_TIMEOUT_MILLIS = 10000L;
+    private static final long SPAWN_POLL_MILLIS = 50L;
+
+    public static void main(@NotNull String @NotNull [] args) {
+        System.exit(new JARStrapCLI(System.out, System.err).run(args));
+    }
+
+    //
+
+    private final PrintStream out;
+    private final PrintStream err;
+
+    public JARStrapCLI(@NotNull PrintStream out, @NotNull PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    /**
+     * Runs the CLI
+     * @return The exit code
+     */
+    public int run(@NotNull String @NotNull [] args) {
+        Path socket = DaemonProtocol.defaultSocket();
+        boolean spawn = true;
+        boolean verbose = false;
+        String command = null;
+        final List<String> params = new ArrayList<>();
+
+        for (int i=0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--socket" -> {
+                    if (++i == args.length) return this.usage("Missing value for --socket");
+                    socket = Path.of(args[i]);
+                }
+                case "--no-spawn" -> spawn = false;
+                case "--verbose" -> verbose = true;
+                default -> {
+                    if (command == null) {
+                        command = arg;
+                    } else {
+                        params.add(arg);
+                    }
+                }
+            }
+        }
+        if (command == null) return this.usage(null);
+
+        try {
+            return switch (command) {
+                case "package" -> this.doPackage(socket, spawn, verbose, params);
+                case "daemon" -> this.doDaemon(socket, verbose);
+                case "ping" -> this.doPing(socket);
+                case "stop" -> this.doStop(socket);
+                case "diff" -> this.doDiff(params);
+                case "patch" -> this.doPatch(params);
+                default -> this.usage("Unknown command \"" + command + "\"");
+            };
+        } catch (IOException e) {
+            this.err.println("error: " + e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 130;
+        }
+    }
+
+    private int doPackage(@NotNull Path socket, boolean spawn, boolean verbose, @NotNull List<String> params) throws IOException, InterruptedException {
+        final Properties request = new Properties();
+        for (String param : params) {
+            final int whereEq = param.indexOf('=');
+            if (whereEq < 1) return this.usage("Expected key=value, got \"" + param + "\"");
+            request.setProperty(param.substring(0, whereEq), param.substring(whereEq + 1));
+        }
+
+        // The daemon does not share our working directory
+        final File cwd = new File(System.getProperty("user.dir"));
+        for (String key : new String[] { "source", "outputDir" }) {
+            final String value = request.getProperty(key);
+            if (value != null) request.setProperty(key, new File(value).getAbsolutePath());
+        }
+        final String libraries = request.getProperty("libraries");
+        if (libraries != null) request.setProperty("libraries", absolutePaths(libraries));
+        final String runtimeJdk = request.getProperty("runtimeJdk");
+        if (runtimeJdk != null && !runtimeJdk.isBlank())
+            request.setProperty("runtimeJdk", new File(runtimeJdk.trim()).getAbsolutePath());
+        final String workingRoot = request.getProperty("workingRoot");
+        if (workingRoot != null && WorkingRoot.parse(workingRoot) instanceof WorkingRoot.Fixed fixed)
+            request.setProperty("workingRoot", fixed.resolve(0L).getAbsolutePath());
+        if (!request.containsKey("outputDir")) request.setProperty("outputDir", cwd.getAbsolutePath());
+        if (verbose && !request.containsKey("logLevel")) request.setProperty("logLevel", "INFO");
+
+        final DaemonClient client = this.connect(socket, spawn);
+        final boolean v = verbose;
+        final Map<PackagerTarget, File> outputs;
+        try {
+            outputs = client.submit(request, new DaemonClient.Listener() {
+                @Override
+                public void stageFinished(@NotNull String stage, long millis) {
+                    if (v) JARStrapCLI.this.err.println("[" + stage + "] " + millis + "ms");
+                }
+
+                @Override
+                public void log(@NotNull Level level, @NotNull String message) {
+                    JARStrapCLI.this.err.println(level.getName() + ": " + message);
+                }
+            });
+        } catch (PackagerException e) {
+            this.err.println("error: " + e.getMessage());
+            return 1;
+        }
+        for (File file : outputs.values()) this.out.println(file.getAbsolutePath());
+        return 0;
+    }
+
+    private int doDaemon(@NotNull Path socket, boolean verbose) throws IOException, InterruptedException {
+        final Logger logger = Logger.getLogger("JARStrap Daemon");
+        logger.setLevel(verbose ? Level.FINE : Level.INFO);
+        if (verbose) {
+            // The root handler only prints INFO and above
+            final ConsoleHandler handler = new ConsoleHandler();
+            handler.setLevel(Level.FINE);
+            logger.addHandler(handler);
+            logger.setUseParentHandlers(false);
+        }
+        final PackagerDaemon daemon = PackagerDaemon.start(socket, logger);
+        daemon.setIdleTimeout(DEFAULT_IDLE_TIMEOUT);
+        logger.log(Level.INFO, "Listening on " + socket);
+        daemon.awaitTermination();
+        return 0;
+    }
+
+    private int doPing(@NotNull Path socket) {
+        try {
+            this.out.println("Daemon running (pid " + new DaemonClient(socket).ping() + ")");
+            return 0;
+        } catch (IOException e) {
+            this.out.println("Daemon not running");
+            return 1;
+        }
+    }
+
+    private int doStop(@NotNull Path socket) throws IOException {
+        if (!DaemonClient.isAlive(socket)) {
+            this.out.println("Daemon not running");
+            return 0;
+        }
+        new DaemonClient(socket).stop();
+        return 0;
+    }
+
+    private int doDiff(@NotNull List<String> params) throws IOException {
+        if (params.size() != 3) return this.usage("Expected <old> <new> <patch>");
+        final Delta.Result result = Delta.create(Path.of(params.get(0)), Path.of(params.get(1)), Path.of(params.get(2)));
+        this.out.println("Wrote " + result.patchSize() + " byte patch (" + result.copied() + " bytes copied, " +
+                result.literal() + " bytes new)");
+        return 0;
+    }
+
+    private int doPatch(@NotNull List<String> params) throws IOException {
+        if (params.size() != 3) return this.usage("Expected <old> <patch> <out>");
+        Delta.apply(Path.of(params.get(0)), Path.of(params.get(1)), Path.of(params.get(2)));
+        return 0;
+    }
+
+    private @NotNull DaemonClient connect(@NotNull Path socket, boolean spawn) throws IOException, InterruptedException {
+        final DaemonClient client = new DaemonClient(socket);
+        if (DaemonClient.isAlive(socket)) return client;
+        if (!spawn) throw new IOException("No daemon listening on " + socket);
+
+        // Start a daemon in the background with the same JVM & classpath
+        final String java = ProcessHandle.current().info().command()
+                .orElse(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        final File log = new File(JARStrap.dataDir(), "daemon.log");
+        Files.createDirectories(log.getParentFile().toPath());
+        new ProcessBuilder(
+                java,
+                "-cp", System.getProperty("java.class.path"),
+                JARStrapCLI.class.getName(),
+                "--socket", socket.toString(),
+                "daemon"
+        )
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(log))
+                .start();
+
+        final long deadline = System.currentTimeMillis() + SPAWN_TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            if (DaemonClient.isAlive(socket)) return client;
+            Thread.sleep(SPAWN_POLL_MILLIS);
+        }
+        throw new IOException("Daemon did not start within " + SPAWN_TIMEOUT_MILLIS + "ms (see " + log + ")");
+    }
+
+    /**
+     * Makes each element of a list separated by {@link File#pathSeparator} absolute
+     */
+    private static @NotNull String absolutePaths(@NotNull String value) {
+        final StringJoiner ret = new StringJoiner(File.pathSeparator);
+        for (String path : value.split(File.pathSeparator)) {
+            if (!path.isBlank()) ret.add(new File(path).getAbsolutePath());
+        }
+        return ret.toString();
+    }
+
+    private int usage(@Nullable String message) {
+        if (message != null) this.err.println("error: " + message);
+        this.err.println("usage: jarstrap [--socket <path>] [--no-spawn] [--verbose] <package|daemon|ping|stop|diff|patch> [args ...]");
+        return 2;
+    }
+
+}
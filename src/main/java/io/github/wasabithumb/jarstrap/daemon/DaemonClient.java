@@ -0,0 +1,169 @@
+package io.github.wasabithumb.jarstrap.daemon;
+
+import io.github.wasabithumb.jarstrap.packager.PackagerTarget;
+import io.github.wasabithumb.jarstrap.packager.error.PackagerException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Unmodifiable;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+
+/**
+ * Sends requests to a {@link PackagerDaemon}. Each request uses its own connection, so a client may be shared between
+ * threads.
+ * @since 0.3.0
+ */
+public final class DaemonClient {
+
+    /**
+     * True if a daemon is listening on the given socket
+     */
+    public static boolean isAlive(@NotNull Path socket) {
+        try {
+            new DaemonClient(socket).ping();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    //
+
+    private final Path socket;
+
+    public DaemonClient(@NotNull Path socket) {
+        this.socket = socket;
+    }
+
+    /**
+     * @return The PID of the daemon
+     */
+    public long ping() throws IOException {
+        final Properties request = new Properties();
+        request.setProperty(DaemonProtocol.KEY_COMMAND, DaemonProtocol.COMMAND_PING);
+        final String[] pong = new String[1];
+        this.exchange(request, (String event, String payload) -> {
+            if (event.equals(DaemonProtocol.PONG)) pong[0] = payload;
+        });
+        if (pong[0] == null) throw new IOException("Daemon did not reply to ping");
+        try {
+            return Long.parseLong(pong[0]);
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed ping reply: " + pong[0], e);
+        }
+    }
+
+    /**
+     * Asks the daemon to shut down once requests in progress have finished
+     */
+    public void stop() throws IOException {
+        final Properties request = new Properties();
+        request.setProperty(DaemonProtocol.KEY_COMMAND, DaemonProtocol.COMMAND_STOP);
+        this.exchange(request, (String event, String payload) -> { });
+    }
+
+    /**
+     * Packages an executable. The keys of the request are named after the properties of
+     * {@link io.github.wasabithumb.jarstrap.packager.PackagerConfig PackagerConfig}, e.g. {@code appName} or
+     * {@code targets}. Paths are resolved by the daemon, so they should be absolute.
+     * @return The files written, by target
+     * @throws PackagerException The daemon failed to package the executable
+     * @throws IOException Communication with the daemon failed
+     */
+    public @NotNull @Unmodifiable Map<PackagerTarget, File> submit(
+            @NotNull Properties request,
+            @NotNull Listener listener
+    ) throws IOException, PackagerException {
+        final Map<PackagerTarget, File> outputs = new LinkedHashMap<>();
+        final String[] error = new String[1];
+        final boolean[] ok = new boolean[1];
+        this.exchange(request, (String event, String payload) -> {
+            switch (event) {
+                case DaemonProtocol.STAGE -> listener.stageStarted(payload);
+                case DaemonProtocol.STAGE_DONE -> {
+                    int whereSpace = payload.lastIndexOf(' ');
+                    listener.stageFinished(
+                            payload.substring(0, whereSpace),
+                            Long.parseLong(payload.substring(whereSpace + 1))
+                    );
+                }
+                case DaemonProtocol.LOG -> {
+                    int whereSpace = payload.indexOf(' ');
+                    listener.log(Level.parse(payload.substring(0, whereSpace)), payload.substring(whereSpace + 1));
+                }
+                case DaemonProtocol.OUTPUT -> {
+                    int whereSpace = payload.indexOf(' ');
+                    outputs.put(
+                            PackagerTarget.parse(payload.substring(0, whereSpace)),
+                            new File(payload.substring(whereSpace + 1))
+                    );
+                }
+                case DaemonProtocol.OK -> ok[0] = true;
+                case DaemonProtocol.ERROR -> error[0] = payload;
+                default -> { }
+            }
+        });
+        if (error[0] != null) throw new PackagerException(error[0]);
+        if (!ok[0]) throw new IOException("Daemon closed the connection before completing the request");
+        return Collections.unmodifiableMap(outputs);
+    }
+
+    private void exchange(@NotNull Properties request, @NotNull EventConsumer consumer) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.connect(UnixDomainSocketAddress.of(this.socket));
+
+            final Writer writer = new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8);
+            request.store(writer, null);
+            writer.flush();
+            channel.shutdownOutput();
+
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    Channels.newInputStream(channel),
+                    StandardCharsets.UTF_8
+            ));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final int whereSpace = line.indexOf(' ');
+                if (whereSpace == -1) continue;
+                try {
+                    consumer.accept(line.substring(0, whereSpace), DaemonProtocol.unescape(line.substring(whereSpace + 1)));
+                } catch (RuntimeException e) {
+                    throw new IOException("Malformed event from daemon: " + line, e);
+                }
+            }
+        }
+    }
+
+    //
+
+    /**
+     * Receives progress of a request submitted to the daemon
+     */
+    public interface Listener {
+
+        default void stageStarted(@NotNull String stage) { }
+
+        default void stageFinished(@NotNull String stage, long millis) { }
+
+        default void log(@NotNull Level level, @NotNull String message) { }
+
+    }
+
+    @FunctionalInterface
+    private interface EventConsumer {
+
+        void accept(@NotNull String event, @NotNull String payload);
+
+    }
+
+}
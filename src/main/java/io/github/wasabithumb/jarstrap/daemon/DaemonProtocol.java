@@ -0,0 +1,86 @@
+package io.github.wasabithumb.jarstrap.daemon;
+
+import io.github.wasabithumb.jarstrap.JARStrap;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.nio.file.Path;
+
+/**
+ * <p>
+ *     The wire format spoken between {@link DaemonClient} and {@link PackagerDaemon}. A client connects, writes a
+ *     request in {@link java.util.Properties#store(java.io.Writer, String) properties} format and shuts down its
+ *     output. The daemon then streams back one event per line: the event name, a space, and an escaped payload.
+ * </p>
+ * <p>
+ *     A request ends with exactly one {@link #OK} or {@link #ERROR} event, or {@link #PONG} for a ping.
+ * </p>
+ */
+@ApiStatus.Internal
+public final class DaemonProtocol {
+
+    /** The request key holding the command; {@code package} (default), {@code ping} or {@code stop} */
+    public static final String KEY_COMMAND = "command";
+    public static final String COMMAND_PACKAGE = "package";
+    public static final String COMMAND_PING = "ping";
+    public static final String COMMAND_STOP = "stop";
+
+    /** A stage is starting. Payload: the stage ID */
+    public static final String STAGE = "STAGE";
+    /** A stage has finished. Payload: the stage ID and the time taken in milliseconds */
+    public static final String STAGE_DONE = "STAGE_DONE";
+    /** A log record. Payload: the level name and the message */
+    public static final String LOG = "LOG";
+    /** An executable was written. Payload: the target and the absolute path */
+    public static final String OUTPUT = "OUTPUT";
+    /** The request succeeded. Payload: the total time taken in milliseconds */
+    public static final String OK = "OK";
+    /** The request failed. Payload: a description of the error */
+    public static final String ERROR = "ERROR";
+    /** Reply to a ping. Payload: the PID of the daemon */
+    public static final String PONG = "PONG";
+
+    private DaemonProtocol() { }
+
+    /**
+     * The socket used when none is specified, within a private directory of the JARStrap data directory
+     */
+    public static @NotNull Path defaultSocket() {
+        return new File(new File(JARStrap.dataDir(), "daemon"), "daemon.sock").toPath();
+    }
+
+    public static @NotNull String escape(@NotNull String payload) {
+        final StringBuilder sb = new StringBuilder(payload.length());
+        for (int i=0; i < payload.length(); i++) {
+            char c = payload.charAt(i);
+            switch (c) {
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                default -> sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    public static @NotNull String unescape(@NotNull String payload) {
+        if (payload.indexOf('\\') == -1) return payload;
+        final StringBuilder sb = new StringBuilder(payload.length());
+        for (int i=0; i < payload.length(); i++) {
+            char c = payload.charAt(i);
+            if (c != '\\' || i == (payload.length() - 1)) {
+                sb.append(c);
+                continue;
+            }
+            c = payload.charAt(++i);
+            switch (c) {
+                case 'n' -> sb.append('\n');
+                case 'r' -> sb.append('\r');
+                default -> sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+}
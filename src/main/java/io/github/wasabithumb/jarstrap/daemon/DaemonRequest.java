@@ -0,0 +1,171 @@
+package io.github.wasabithumb.jarstrap.daemon;
+
+import io.github.wasabithumb.jarstrap.JARStrap;
+import io.github.wasabithumb.jarstrap.instance.WorkingRoot;
+import io.github.wasabithumb.jarstrap.manifest.ManifestMutator;
+import io.github.wasabithumb.jarstrap.packager.PackagerArch;
+import io.github.wasabithumb.jarstrap.packager.PackagerBackend;
+import io.github.wasabithumb.jarstrap.packager.PackagerOS;
+import io.github.wasabithumb.jarstrap.packager.PackagerProfile;
+import io.github.wasabithumb.jarstrap.packager.PackagerConfig;
+import io.github.wasabithumb.jarstrap.packager.PackagerTarget;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.logging.Level;
+
+/**
+ * <p>
+ *     Interprets a packaging request. Keys are named after the {@link PackagerConfig} properties:
+ *     {@code source}, {@code libraries} (separated by the platform path separator), {@code arch}, {@code release},
+ *     {@code os}, {@code targets} (comma separated, e.g. {@code x86_64-release,x86-release}), {@code appName},
+ *     {@code minJavaVersion}, {@code preferredJavaVersion}, {@code launchFlags}, {@code installPrompt},
+ *     {@code outputDir}, {@code outputName}, {@code autoInstall}, {@code attributionEnabled}, {@code backend},
+ *     {@code profile}, {@code scanClassVersions}, {@code shrink}, {@code keepRules} (comma separated),
+ *     {@code bundleRuntime}, {@code runtimeJdk}, {@code runtimeModules} (comma separated), {@code resident},
+ *     {@code residentIdleTimeout} (in seconds or ISO-8601), {@code reproducible} and {@code sourceDateEpoch}.
+ * </p>
+ * <p>
+ *     Additionally, {@code timeout.<stage>} sets a stage timeout (in seconds or ISO-8601), {@code manifest.<key>}
+ *     sets a manifest attribute, {@code manifestRemove} lists manifest attributes to remove, {@code workingRoot}
+ *     chooses where the working directory is created and {@code logLevel} sets which log records are sent back.
+ * </p>
+ * <p>
+ *     Paths are resolved by the daemon, so clients should send absolute paths.
+ * </p>
+ */
+final class DaemonRequest {
+
+    private static final String TIMEOUT_PREFIX = "timeout.";
+    private static final String MANIFEST_PREFIX = "manifest.";
+
+    private final Properties props;
+
+    DaemonRequest(@NotNull Properties props) {
+        this.props = props;
+    }
+
+    @NotNull String command() {
+        return this.props.getProperty(DaemonProtocol.KEY_COMMAND, DaemonProtocol.COMMAND_PACKAGE);
+    }
+
+    @NotNull Level logLevel() throws IllegalArgumentException {
+        return Level.parse(this.props.getProperty("logLevel", "WARNING").toUpperCase(Locale.ROOT));
+    }
+
+    @NotNull WorkingRoot workingRoot() {
+        final String value = this.props.getProperty("workingRoot");
+        if (value == null) return JARStrap.getDefaultWorkingRoot();
+        return WorkingRoot.parse(value);
+    }
+
+    @NotNull PackagerConfig config() throws IllegalArgumentException {
+        final PackagerConfig.Builder builder = PackagerConfig.builder();
+        for (String key : this.props.stringPropertyNames()) {
+            final String value = this.props.getProperty(key);
+            if (key.startsWith(TIMEOUT_PREFIX)) {
+                builder.stageTimeout(key.substring(TIMEOUT_PREFIX.length()), parseDuration(value));
+                continue;
+            }
+            switch (key) {
+                case "source" -> builder.source(new File(value));
+                case "libraries" -> {
+                    for (String path : value.split(File.pathSeparator)) {
+                        if (!path.isBlank()) builder.library(new File(path));
+                    }
+                }
+                case "arch" -> builder.arch(PackagerArch.valueOf(value.trim().toUpperCase(Locale.ROOT)));
+                case "release" -> builder.release(Boolean.parseBoolean(value.trim()));
+                case "os" -> builder.os(PackagerOS.valueOf(value.trim().toUpperCase(Locale.ROOT)));
+                case "targets" -> builder.targets(parseTargets(value));
+                case "appName" -> builder.appName(value);
+                case "minJavaVersion" -> builder.minJavaVersion(parseInt(key, value));
+                case "preferredJavaVersion" -> builder.preferredJavaVersion(parseInt(key, value));
+                case "launchFlags" -> builder.launchFlags(value);
+                case "installPrompt" -> builder.installPrompt(value);
+                case "outputDir" -> builder.outputDir(new File(value));
+                case "outputName" -> builder.outputName(value);
+                case "autoInstall" -> builder.autoInstall(Boolean.parseBoolean(value.trim()));
+                case "attributionEnabled" -> builder.attributionEnabled(Boolean.parseBoolean(value.trim()));
+                case "backend" -> builder.backend(PackagerBackend.valueOf(value.trim().toUpperCase(Locale.ROOT)));
+                case "profile" -> builder.profile(PackagerProfile.valueOf(value.trim().toUpperCase(Locale.ROOT)));
+                case "scanClassVersions" -> builder.scanClassVersions(Boolean.parseBoolean(value.trim()));
+                case "shrink" -> builder.shrink(Boolean.parseBoolean(value.trim()));
+                case "keepRules" -> {
+                    for (String rule : value.split(",")) {
+                        if (!rule.isBlank()) builder.keep(rule);
+                    }
+                }
+                case "bundleRuntime" -> builder.bundleRuntime(Boolean.parseBoolean(value.trim()));
+                case "runtimeJdk" -> builder.runtimeJdk(value.isBlank() ? null : new File(value.trim()));
+                case "runtimeModules" -> {
+                    for (String module : value.split(",")) {
+                        if (!module.isBlank()) builder.runtimeModule(module.trim());
+                    }
+                }
+                case "resident" -> builder.resident(Boolean.parseBoolean(value.trim()));
+                case "residentIdleTimeout" -> builder.residentIdleTimeout(parseDuration(value));
+                case "reproducible" -> builder.reproducible(Boolean.parseBoolean(value.trim()));
+                case "sourceDateEpoch" -> builder.sourceDateEpoch(parseLong(key, value));
+                default -> { }
+            }
+        }
+        return builder.build();
+    }
+
+    void applyManifest(@NotNull ManifestMutator manifest) {
+        final String remove = this.props.getProperty("manifestRemove");
+        if (remove != null) {
+            for (String key : remove.split(",")) {
+                if (!key.isBlank()) manifest.remove(key.trim());
+            }
+        }
+        for (String key : this.props.stringPropertyNames()) {
+            if (!key.startsWith(MANIFEST_PREFIX)) continue;
+            manifest.put(key.substring(MANIFEST_PREFIX.length()), this.props.getProperty(key));
+        }
+    }
+
+    //
+
+    private static @NotNull List<PackagerTarget> parseTargets(@NotNull String value) {
+        final List<PackagerTarget> ret = new ArrayList<>();
+        for (String part : value.split(",")) {
+            if (!part.isBlank()) ret.add(PackagerTarget.parse(part));
+        }
+        return ret;
+    }
+
+    private static int parseInt(@NotNull String key, @NotNull String value) throws IllegalArgumentException {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Value of \"" + key + "\" is not an integer: " + value, e);
+        }
+    }
+
+    private static long parseLong(@NotNull String key, @NotNull String value) throws IllegalArgumentException {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Value of \"" + key + "\" is not an integer: " + value, e);
+        }
+    }
+
+    private static @NotNull Duration parseDuration(@NotNull String value) throws IllegalArgumentException {
+        final String trimmed = value.trim();
+        try {
+            if (!trimmed.isEmpty() && trimmed.chars().allMatch(Character::isDigit))
+                return Duration.ofSeconds(Long.parseLong(trimmed));
+            return Duration.parse(trimmed);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid duration: " + value, e);
+        }
+    }
+
+}
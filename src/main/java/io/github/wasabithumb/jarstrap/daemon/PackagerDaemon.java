@@ -0,0 +1,349 @@
+package io.github.wasabithumb.jarstrap.daemon;
+
+import io.github.wasabithumb.jarstrap.JARStrap;
+import io.github.wasabithumb.jarstrap.packager.Packager;
+import io.github.wasabithumb.jarstrap.packager.PackagerTarget;
+import io.github.wasabithumb.jarstrap.packager.error.PackagerException;
+import io.github.wasabithumb.jarstrap.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * <p>
+ *     A long-lived process which accepts packaging requests over a Unix domain socket. Since the daemon outlives each
+ *     request, the extracted tool, the probed native toolchain and the object cache stay warm, and the JIT has
+ *     already compiled the packager; each request only pays for its own build.
+ * </p>
+ * <p>
+ *     Requests are served concurrently, up to one per available processor. For each request, the daemon reports the
+ *     start &amp; duration of every stage, the log records of the packager and the files written. See
+ *     {@link DaemonClient} for the client side and {@link DaemonProtocol} for the wire format.
+ * </p>
+ * @since 0.3.0
+ */
+public final class PackagerDaemon implements AutoCloseable {
+
+    private static final long WATCHDOG_INTERVAL_MILLIS = 5000L;
+
+    /**
+     * Binds the given socket and starts serving requests. Any client which can connect may have the daemon read and
+     * write files as the current user, so the directory of the socket is created private to the current user if it
+     * does not exist, and must be private to the current user if it does.
+     * @throws IOException Another daemon is already listening on the socket, the directory of the socket is
+     * accessible to other users, or the socket could not be bound
+     */
+    public static @NotNull PackagerDaemon start(@NotNull Path socket, @NotNull Logger logger) throws IOException {
+        final Path parent = socket.toAbsolutePath().getParent();
+        if (parent != null) {
+            final Path grandparent = parent.getParent();
+            if (grandparent != null) Files.createDirectories(grandparent);
+            FileUtil.createPrivateDirectory(parent);
+        }
+        if (Files.exists(socket)) {
+            if (DaemonClient.isAlive(socket))
+                throw new IOException("A daemon is already listening on " + socket);
+            // Left behind by a daemon which did not shut down cleanly
+            Files.deleteIfExists(socket);
+        }
+
+        final ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            server.bind(UnixDomainSocketAddress.of(socket));
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+
+        final PackagerDaemon ret = new PackagerDaemon(socket, logger, server);
+        ret.startThreads();
+        return ret;
+    }
+
+    //
+
+    private final Path socket;
+    private final Logger logger;
+    private final ServerSocketChannel server;
+    private final ExecutorService workers;
+    private final CountDownLatch terminated;
+    private final AtomicBoolean closed;
+    private final AtomicInteger active;
+    private volatile long lastActivity;
+    private volatile Duration idleTimeout;
+
+    private PackagerDaemon(@NotNull Path socket, @NotNull Logger logger, @NotNull ServerSocketChannel server) {
+        this.socket = socket;
+        this.logger = logger;
+        this.server = server;
+        this.workers = Executors.newFixedThreadPool(
+                Math.max(2, Runtime.getRuntime().availableProcessors()),
+                (Runnable r) -> {
+                    Thread t = new Thread(r, "JARStrap Daemon Worker");
+                    t.setDaemon(true);
+                    return t;
+                }
+        );
+        this.terminated = new CountDownLatch(1);
+        this.closed = new AtomicBoolean(false);
+        this.active = new AtomicInteger(0);
+        this.lastActivity = System.currentTimeMillis();
+        this.idleTimeout = null;
+    }
+
+    /**
+     * The socket this daemon listens on
+     */
+    public @NotNull Path socket() {
+        return this.socket;
+    }
+
+    /**
+     * Sets the amount of time the daemon may go without requests before shutting itself down, or null to run until
+     * {@link #close() closed}
+     */
+    public void setIdleTimeout(@Nullable Duration idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Blocks until the daemon has been closed and all in-flight requests have finished
+     */
+    public void awaitTermination() throws InterruptedException {
+        this.terminated.await();
+        //noinspection ResultOfMethodCallIgnored
+        this.workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops accepting requests. Requests which are in progress are allowed to finish.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!this.closed.compareAndSet(false, true)) return;
+        try {
+            this.server.close();
+            this.workers.shutdown();
+            Files.deleteIfExists(this.socket);
+        } finally {
+            this.terminated.countDown();
+        }
+    }
+
+    //
+
+    private void startThreads() {
+        final Thread acceptor = new Thread(this::acceptLoop, "JARStrap Daemon");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        final Thread watchdog = new Thread(this::watchdogLoop, "JARStrap Daemon Watchdog");
+        watchdog.setDaemon(true);
+        watchdog.start();
+    }
+
+    private void acceptLoop() {
+        while (!this.closed.get()) {
+            final SocketChannel channel;
+            try {
+                channel = this.server.accept();
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                this.logger.log(Level.WARNING, "Failed to accept daemon connection", e);
+                continue;
+            }
+            this.active.incrementAndGet();
+            this.lastActivity = System.currentTimeMillis();
+            try {
+                this.workers.execute(() -> {
+                    try {
+                        this.handle(channel);
+                    } finally {
+                        this.lastActivity = System.currentTimeMillis();
+                        this.active.decrementAndGet();
+                    }
+                });
+            } catch (RuntimeException e) {
+                // Closed while accepting
+                this.active.decrementAndGet();
+                try {
+                    channel.close();
+                } catch (IOException ignored) { }
+            }
+        }
+    }
+
+    private void watchdogLoop() {
+        try {
+            while (!this.closed.get()) {
+                //noinspection BusyWait
+                Thread.sleep(WATCHDOG_INTERVAL_MILLIS);
+                final Duration timeout = this.idleTimeout;
+                if (timeout == null || this.active.get() != 0) continue;
+                if (System.currentTimeMillis() - this.lastActivity < timeout.toMillis()) continue;
+                this.logger.log(Level.INFO, "Daemon idle for " + timeout + ", shutting down");
+                this.close();
+            }
+        } catch (InterruptedException ignored) {
+        } catch (IOException e) {
+            this.logger.log(Level.WARNING, "Failed to close idle daemon", e);
+        }
+    }
+
+    private void handle(@NotNull SocketChannel channel) {
+        try (channel) {
+            final Properties props = new Properties();
+            props.load(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+
+            final EventSink sink = new EventSink(new BufferedWriter(new OutputStreamWriter(
+                    Channels.newOutputStream(channel),
+                    StandardCharsets.UTF_8
+            )));
+            final DaemonRequest request = new DaemonRequest(props);
+            switch (request.command()) {
+                case DaemonProtocol.COMMAND_PACKAGE -> this.handlePackage(request, sink);
+                case DaemonProtocol.COMMAND_PING -> sink.send(DaemonProtocol.PONG, Long.toString(ProcessHandle.current().pid()));
+                case DaemonProtocol.COMMAND_STOP -> {
+                    sink.send(DaemonProtocol.OK, "0");
+                    this.close();
+                }
+                default -> sink.send(DaemonProtocol.ERROR, "Unknown command \"" + request.command() + "\"");
+            }
+        } catch (IOException e) {
+            this.logger.log(Level.FINE, "Daemon connection failed", e);
+        }
+    }
+
+    private void handlePackage(@NotNull DaemonRequest request, @NotNull EventSink sink) throws IOException {
+        final long start = System.nanoTime();
+        final Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        try {
+            logger.setLevel(request.logLevel());
+            logger.addHandler(new EventHandler(sink));
+            try (Packager packager = JARStrap.createPackager(request.workingRoot(), request.config(), logger)) {
+                request.applyManifest(packager.getManifest());
+                String stage;
+                while ((stage = packager.nextStage()) != null) {
+                    sink.send(DaemonProtocol.STAGE, stage);
+                    final long stageStart = System.nanoTime();
+                    packager.executeStage();
+                    sink.send(DaemonProtocol.STAGE_DONE, stage + " " + millisSince(stageStart));
+                }
+                for (Map.Entry<PackagerTarget, File> entry : packager.getOutputFiles().entrySet()) {
+                    sink.send(DaemonProtocol.OUTPUT, entry.getKey() + " " + entry.getValue().getAbsolutePath());
+                }
+            }
+            sink.send(DaemonProtocol.OK, Long.toString(millisSince(start)));
+        } catch (PackagerException | IllegalArgumentException e) {
+            this.logger.log(Level.FINE, "Daemon request failed", e);
+            sink.send(DaemonProtocol.ERROR, describe(e));
+        } catch (RuntimeException e) {
+            this.logger.log(Level.WARNING, "Daemon request failed unexpectedly", e);
+            sink.send(DaemonProtocol.ERROR, describe(e));
+        } catch (Error e) {
+            // Tell the client what happened before the worker dies
+            this.logger.log(Level.SEVERE, "Daemon request failed with an error", e);
+            try {
+                sink.send(DaemonProtocol.ERROR, describe(e));
+            } catch (IOException e2) {
+                e.addSuppressed(e2);
+            }
+            throw e;
+        }
+    }
+
+    private static long millisSince(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - nanos);
+    }
+
+    private static @NotNull String describe(@NotNull Throwable t) {
+        final StringBuilder sb = new StringBuilder();
+        Throwable cur = t;
+        while (cur != null) {
+            if (!sb.isEmpty()) sb.append("\nCaused by: ");
+            sb.append(cur.getMessage() == null ? cur.getClass().getName() : cur.getMessage());
+            cur = cur.getCause();
+        }
+        return sb.toString();
+    }
+
+    //
+
+    private static final class EventSink {
+
+        private final Writer writer;
+        private boolean broken = false;
+
+        EventSink(@NotNull Writer writer) {
+            this.writer = writer;
+        }
+
+        synchronized void send(@NotNull String event, @NotNull String payload) throws IOException {
+            if (this.broken) throw new IOException("Client disconnected");
+            try {
+                this.writer.write(event);
+                this.writer.write(' ');
+                this.writer.write(DaemonProtocol.escape(payload));
+                this.writer.write('\n');
+                this.writer.flush();
+            } catch (IOException e) {
+                this.broken = true;
+                throw e;
+            }
+        }
+
+    }
+
+    private static final class EventHandler extends Handler {
+
+        private final EventSink sink;
+
+        EventHandler(@NotNull EventSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void publish(@NotNull LogRecord record) {
+            String message = record.getMessage();
+            if (record.getThrown() != null) message += "\n" + describe(record.getThrown());
+            try {
+                this.sink.send(DaemonProtocol.LOG, record.getLevel().getName() + " " + message);
+            } catch (IOException ignored) {
+                // Reported by the next stage event
+            }
+        }
+
+        @Override
+        public void flush() { }
+
+        @Override
+        public void close() { }
+
+    }
+
+}
@@ -0,0 +1,212 @@
+package io.github.wasabithumb.jarstrap.delta;
+
+import io.github.wasabithumb.jarstrap.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * <p>
+ *     Binary patches between two versions of a packaged executable. A patch rebuilds the new version from the old
+ *     one, mostly by copying ranges of the old file; only what cannot be found in it is stored. The executable is
+ *     compared piece by piece: each entry of the embedded JAR (and of each library) separately, and the launcher
+ *     stub in content-defined chunks. Entries which did not change are copied wherever they moved to, so a patch is
+ *     roughly the size of the changed entries. Central directory headers which only changed by the position of
+ *     their entry cost 4 bytes each.
+ * </p>
+ * <p>
+ *     Applying a patch only requires this class. The old file and the result are verified against the SHA-256 digests
+ *     stored in the patch. All integers are big-endian:
+ * </p>
+ * <pre>
+ * magic        8 bytes  "JSDELTA1"
+ * old file     u64 size, SHA-256 (32 bytes)
+ * new file     u64 size, SHA-256 (32 bytes)
+ * operations   DEFLATE (zlib) stream of u8 opcodes, each followed by its operands:
+ *                0 COPY  u64 offset, u32 length   copy a range of the old file
+ *                1 DATA  u32 length, data         write the given data
+ *                2 END
+ * </pre>
+ * @since 0.3.0
+ */
+public final class Delta {
+
+    private static final byte[] MAGIC = "JSDELTA1".getBytes(StandardCharsets.US_ASCII);
+    private static final int DIGEST_SIZE = 32;
+    static final int OP_COPY = 0;
+    static final int OP_DATA = 1;
+    static final int OP_END = 2;
+
+    /**
+     * Writes a patch which turns {@code oldFile} into {@code newFile}. Both files must be smaller than 2 GiB.
+     * @param dest The file to write the patch to, which is replaced if it exists
+     */
+    public static @NotNull Result create(@NotNull Path oldFile, @NotNull Path newFile, @NotNull Path dest) throws IOException {
+        final byte[] oldDigest = FileUtil.sha256(oldFile);
+        final byte[] newDigest = FileUtil.sha256(newFile);
+        final long oldSize;
+        final long newSize;
+        final DeltaWriter writer;
+
+        try (FileChannel oldChannel = FileChannel.open(oldFile, StandardOpenOption.READ);
+             FileChannel newChannel = FileChannel.open(newFile, StandardOpenOption.READ);
+             OutputStream os = new BufferedOutputStream(Files.newOutputStream(dest), 65536)
+        ) {
+            oldSize = oldChannel.size();
+            newSize = newChannel.size();
+            final ByteBuffer oldBuf = map(oldChannel, oldFile);
+            final ByteBuffer newBuf = map(newChannel, newFile);
+
+            final DataOutputStream header = new DataOutputStream(os);
+            header.write(MAGIC);
+            header.writeLong(oldSize);
+            header.write(oldDigest);
+            header.writeLong(newSize);
+            header.write(newDigest);
+            header.flush();
+
+            final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+            try {
+                final DeflaterOutputStream dos = new DeflaterOutputStream(os, deflater, 65536);
+                final DataOutputStream ops = new DataOutputStream(dos);
+                writer = new DeltaWriter(oldBuf, newBuf, ops);
+                writer.write();
+                ops.flush();
+                dos.finish();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        return new Result(oldSize, newSize, Files.size(dest), writer.copied, writer.literal);
+    }
+
+    /**
+     * Applies a patch created by {@link #create(Path, Path, Path)} to {@code oldFile}. The result is written to a
+     * temporary file next to {@code dest} and moved into place once its digest is verified, so {@code dest} may be
+     * {@code oldFile} itself. The result takes the permissions of {@code oldFile}.
+     * @throws IOException The patch is malformed, was not created from {@code oldFile}, or the result does not match
+     */
+    public static void apply(@NotNull Path oldFile, @NotNull Path patch, @NotNull Path dest) throws IOException {
+        final Path parent = dest.toAbsolutePath().getParent();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(patch), 65536))) {
+            final byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) throw new IOException("Not a patch: " + patch);
+
+            final long oldSize = in.readLong();
+            final byte[] oldDigest = new byte[DIGEST_SIZE];
+            in.readFully(oldDigest);
+            final long newSize = in.readLong();
+            final byte[] newDigest = new byte[DIGEST_SIZE];
+            in.readFully(newDigest);
+
+            if (Files.size(oldFile) != oldSize || !Arrays.equals(FileUtil.sha256(oldFile), oldDigest)) {
+                throw new IOException("Patch does not apply to " + oldFile + " (expected SHA-256 " +
+                        HexFormat.of().formatHex(oldDigest) + ")");
+            }
+
+            final Path tmp = Files.createTempFile(parent, dest.getFileName().toString() + ".", ".part");
+            try {
+                final Inflater inflater = new Inflater();
+                try (FileChannel oldChannel = FileChannel.open(oldFile, StandardOpenOption.READ);
+                     FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+                ) {
+                    final DataInputStream ops = new DataInputStream(new InflaterInputStream(in, inflater, 65536));
+                    apply(oldChannel, oldSize, ops, out);
+                } finally {
+                    inflater.end();
+                }
+
+                if (Files.size(tmp) != newSize || !Arrays.equals(FileUtil.sha256(tmp), newDigest))
+                    throw new IOException("Patched file does not match the expected SHA-256 " + HexFormat.of().formatHex(newDigest));
+                copyMode(oldFile, tmp);
+                Files.move(tmp, dest, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
+
+    private static void apply(
+            @NotNull FileChannel old,
+            long oldSize,
+            @NotNull DataInputStream ops,
+            @NotNull FileChannel out
+    ) throws IOException {
+        final byte[] buf = new byte[65536];
+        while (true) {
+            final int op = ops.read();
+            switch (op) {
+                case OP_COPY -> {
+                    final long from = ops.readLong();
+                    final long length = ops.readInt() & 0xFFFFFFFFL;
+                    if (from < 0L || from + length > oldSize)
+                        throw new IOException("Patch copies outside of the old file (" + from + "+" + length + ")");
+                    long done = 0L;
+                    while (done < length) {
+                        final long n = old.transferTo(from + done, length - done, out);
+                        if (n <= 0L) throw new EOFException("Old file changed while patching");
+                        done += n;
+                    }
+                }
+                case OP_DATA -> {
+                    long remaining = ops.readInt() & 0xFFFFFFFFL;
+                    while (remaining > 0L) {
+                        final int n = (int) Math.min(remaining, buf.length);
+                        ops.readFully(buf, 0, n);
+                        final ByteBuffer wrapped = ByteBuffer.wrap(buf, 0, n);
+                        while (wrapped.hasRemaining()) out.write(wrapped);
+                        remaining -= n;
+                    }
+                }
+                case OP_END -> {
+                    return;
+                }
+                case -1 -> throw new EOFException("Patch is truncated");
+                default -> throw new IOException("Unknown patch operation: " + op);
+            }
+        }
+    }
+
+    private static void copyMode(@NotNull Path src, @NotNull Path dest) throws IOException {
+        try {
+            Files.setPosixFilePermissions(dest, Files.getPosixFilePermissions(src));
+        } catch (UnsupportedOperationException e) {
+            if (Files.isExecutable(src) && !dest.toFile().setExecutable(true))
+                throw new IOException("Failed to make patched file executable");
+        }
+    }
+
+    private static @NotNull ByteBuffer map(@NotNull FileChannel fc, @NotNull Path file) throws IOException {
+        final long size = fc.size();
+        if (size > Integer.MAX_VALUE) throw new IOException("File is too large to diff: " + file);
+        return fc.map(FileChannel.MapMode.READ_ONLY, 0L, size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private Delta() { }
+
+    //
+
+    /**
+     * @param patchSize The size of the patch in bytes
+     * @param copied The number of bytes of the new file copied from the old file
+     * @param literal The number of bytes of the new file stored in the patch, before compression
+     */
+    public record Result(long oldSize, long newSize, long patchSize, long copied, long literal) { }
+
+}
@@ -0,0 +1,268 @@
+package io.github.wasabithumb.jarstrap.delta;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * <p>
+ *     Splits the contents of an executable into segments which are likely to reappear unchanged in the next version.
+ *     Every ZIP record found (a local entry with its data, or a central directory header) is one segment, so that
+ *     the embedded JAR and libraries are compared entry by entry wherever they sit within the file. The bytes in
+ *     between, such as the launcher stub and the payload header, are cut into chunks at content-defined boundaries
+ *     (a gear hash), so that an insertion only disturbs the chunks around it.
+ * </p>
+ * <p>
+ *     Records are primarily taken from the central directory of each archive found through its end record, since the
+ *     local header of an entry written with a data descriptor does not hold its size. Such an entry extends to the
+ *     next local header (or the central directory), which includes the descriptor. Elsewhere, a local record is only
+ *     recognized when its header is consistent and the bytes after it start another ZIP signature, which rules out
+ *     matches within compressed data in practice. Either way the segments only guide the search for matches; the
+ *     patch is correct whatever they are.
+ * </p>
+ */
+final class DeltaSegments {
+
+    static final int KIND_CHUNK = 0;
+    static final int KIND_LOCAL = 1;
+    static final int KIND_CENTRAL = 2;
+
+    /** Offset of the local header offset within a central directory header */
+    static final int CENTRAL_OFFSET_FIELD = 42;
+
+    /** Local entries larger than this are also compared chunk by chunk when they do not match as a whole */
+    static final int MAX_CHUNK = 16384;
+    private static final int MIN_CHUNK = 256;
+    private static final int WINDOW = 64;
+    private static final long BOUNDARY_MASK = 0xFFE0000000000000L; // ~2 KiB average
+
+    private static final int LOCAL_HEADER_SIG = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIG = 0x02014b50;
+    private static final int END_SIG = 0x06054b50;
+    private static final int ZIP64_END_SIG = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_SIZE = 22;
+    private static final int ZIP64_END_SIZE = 56;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+    private static final long MAX_U32 = 0xFFFFFFFFL;
+
+    private static final long[] GEAR = new long[256];
+    static {
+        final SplittableRandom random = new SplittableRandom(0x4A53444C54413031L);
+        for (int i=0; i < GEAR.length; i++) GEAR[i] = random.nextLong();
+    }
+
+    /**
+     * Passes every segment of the buffer to the sink, in order. The buffer must be little-endian.
+     */
+    static void scan(@NotNull ByteBuffer buf, @NotNull Sink sink) throws IOException {
+        final int n = buf.limit();
+        final List<Record> known = records(buf);
+        int next = 0;
+        int gap = 0;
+        int i = 0;
+        while (i <= n - 4) {
+            // Records within another, such as those of a stored nested archive, are part of the outer record
+            while (next < known.size() && known.get(next).start() < i) next++;
+            final int bound = next < known.size() ? known.get(next).start() : n;
+            if (i == bound) {
+                final Record record = known.get(next++);
+                chunk(buf, gap, i, sink);
+                sink.accept(record.kind(), i, record.length());
+                i += record.length();
+                gap = i;
+                continue;
+            }
+
+            if (buf.get(i) != 'P' || buf.get(i + 1) != 'K') {
+                i++;
+                continue;
+            }
+
+            final int sig = buf.getInt(i);
+            final int kind;
+            final int length;
+            if (sig == LOCAL_HEADER_SIG) {
+                kind = KIND_LOCAL;
+                length = localLength(buf, i);
+            } else if (sig == CENTRAL_HEADER_SIG) {
+                kind = KIND_CENTRAL;
+                length = centralLength(buf, i);
+            } else {
+                i++;
+                continue;
+            }
+            if (length < 0 || i + length > bound) {
+                i++;
+                continue;
+            }
+
+            chunk(buf, gap, i, sink);
+            sink.accept(kind, i, length);
+            i += length;
+            gap = i;
+        }
+        chunk(buf, gap, n, sink);
+    }
+
+    /**
+     * Passes the content-defined chunks of a range of the buffer to the sink, in order
+     */
+    static void chunk(@NotNull ByteBuffer buf, int start, int end, @NotNull Sink sink) throws IOException {
+        int pos = start;
+        while (pos < end) {
+            final int limit = Math.min(end, pos + MAX_CHUNK);
+            int cut = limit;
+            long h = 0L;
+            for (int i = Math.max(pos, pos + MIN_CHUNK - WINDOW); i < limit; i++) {
+                h = (h << 1) + GEAR[buf.get(i) & 0xFF];
+                if ((h & BOUNDARY_MASK) == 0L && i >= pos + MIN_CHUNK) {
+                    cut = i + 1;
+                    break;
+                }
+            }
+            sink.accept(KIND_CHUNK, pos, cut - pos);
+            pos = cut;
+        }
+    }
+
+    /**
+     * Returns the records of every archive whose end record and central directory are consistent, sorted by start
+     */
+    private static @NotNull List<Record> records(@NotNull ByteBuffer buf) {
+        final List<Record> ret = new ArrayList<>();
+        for (int i = 0; i <= buf.limit() - END_SIZE; i++) {
+            if (buf.get(i) == 'P' && buf.get(i + 1) == 'K' && buf.getInt(i) == END_SIG) archive(buf, i, ret);
+        }
+        ret.sort(Comparator.comparingInt(Record::start));
+        return ret;
+    }
+
+    private static void archive(@NotNull ByteBuffer buf, int endPos, @NotNull List<Record> out) {
+        if ((long) endPos + END_SIZE + u16(buf, endPos + 20) > buf.limit()) return;
+        long cdSize = u32(buf, endPos + 12);
+        long cdOffset = u32(buf, endPos + 16);
+        int cdEnd = endPos;
+
+        // The ZIP64 end record is located by position rather than by its offset, which is shifted by prepended data
+        final int locator = endPos - ZIP64_LOCATOR_SIZE;
+        if (locator >= ZIP64_END_SIZE && buf.getInt(locator) == ZIP64_LOCATOR_SIG) {
+            cdEnd = locator - ZIP64_END_SIZE;
+            if (buf.getInt(cdEnd) != ZIP64_END_SIG) return;
+            cdSize = buf.getLong(cdEnd + 40);
+            cdOffset = buf.getLong(cdEnd + 48);
+        }
+
+        // Data may be prepended to the archive, in which case offsets are shifted
+        if (cdSize < 0L || cdSize > cdEnd || cdOffset < 0L) return;
+        final int cdStart = (int) (cdEnd - cdSize);
+        final long base = cdStart - cdOffset;
+        if (base < 0L) return;
+
+        final List<Record> records = new ArrayList<>();
+        int[] locals = new int[16];
+        int count = 0;
+        int pos = cdStart;
+        while (pos < cdEnd) {
+            if (cdEnd - pos < CENTRAL_HEADER_SIZE || buf.getInt(pos) != CENTRAL_HEADER_SIG) return;
+            final int nameLen = u16(buf, pos + 28);
+            final int extraLen = u16(buf, pos + 30);
+            final int length = CENTRAL_HEADER_SIZE + nameLen + extraLen + u16(buf, pos + 32);
+            if (length > cdEnd - pos) return;
+
+            long offset = u32(buf, pos + CENTRAL_OFFSET_FIELD);
+            if (offset == MAX_U32) offset = zip64Offset(buf, pos, pos + CENTRAL_HEADER_SIZE + nameLen, extraLen);
+            final long local = base + offset;
+            if (offset < 0L || local + LOCAL_HEADER_SIZE > cdStart || buf.getInt((int) local) != LOCAL_HEADER_SIG) return;
+
+            if (count == locals.length) locals = Arrays.copyOf(locals, count * 2);
+            locals[count++] = (int) local;
+            records.add(new Record(KIND_CENTRAL, pos, length));
+            pos += length;
+        }
+
+        // Each entry extends to the next, which covers its data descriptor if it has one
+        Arrays.sort(locals, 0, count);
+        for (int i=0; i < count; i++) {
+            final int start = locals[i];
+            if (i + 1 < count && locals[i + 1] == start) continue;
+            final int end = i + 1 < count ? locals[i + 1] : cdStart;
+            records.add(new Record(KIND_LOCAL, start, end - start));
+        }
+        out.addAll(records);
+    }
+
+    /**
+     * Reads the local header offset from the ZIP64 extra field of a central directory header, or returns -1
+     */
+    private static long zip64Offset(@NotNull ByteBuffer buf, int header, int extraStart, int extraLen) {
+        final int extraEnd = extraStart + extraLen;
+        int e = extraStart;
+        while (e + 4 <= extraEnd) {
+            final int id = u16(buf, e);
+            final int len = u16(buf, e + 2);
+            if (e + 4 + len > extraEnd) break;
+            if (id == ZIP64_EXTRA_ID) {
+                // Only the fields which overflowed are present, in this order
+                int z = e + 4;
+                if (u32(buf, header + 24) == MAX_U32) z += 8;
+                if (u32(buf, header + 20) == MAX_U32) z += 8;
+                return z + 8 <= e + 4 + len ? buf.getLong(z) : -1L;
+            }
+            e += 4 + len;
+        }
+        return -1L;
+    }
+
+    private static int localLength(@NotNull ByteBuffer buf, int i) {
+        if (buf.limit() - i < LOCAL_HEADER_SIZE) return -1;
+        if ((u16(buf, i + 6) & FLAG_DATA_DESCRIPTOR) != 0) return -1;
+        final long compressedSize = u32(buf, i + 18);
+        if (compressedSize == 0xFFFFFFFFL) return -1;
+        return recordLength(buf, i, LOCAL_HEADER_SIZE + (long) u16(buf, i + 26) + u16(buf, i + 28) + compressedSize);
+    }
+
+    private static int centralLength(@NotNull ByteBuffer buf, int i) {
+        if (buf.limit() - i < CENTRAL_HEADER_SIZE) return -1;
+        return recordLength(buf, i, CENTRAL_HEADER_SIZE + (long) u16(buf, i + 28) + u16(buf, i + 30) + u16(buf, i + 32));
+    }
+
+    private static int recordLength(@NotNull ByteBuffer buf, int i, long length) {
+        final long end = i + length;
+        if (end > buf.limit() - 4) return -1;
+        final int next = buf.getInt((int) end);
+        if (next != LOCAL_HEADER_SIG && next != CENTRAL_HEADER_SIG && next != END_SIG && next != ZIP64_END_SIG)
+            return -1;
+        return (int) length;
+    }
+
+    private static int u16(@NotNull ByteBuffer buf, int index) {
+        return buf.getShort(index) & 0xFFFF;
+    }
+
+    private static long u32(@NotNull ByteBuffer buf, int index) {
+        return buf.getInt(index) & 0xFFFFFFFFL;
+    }
+
+    //
+
+    private record Record(int kind, int start, int length) { }
+
+    @FunctionalInterface
+    interface Sink {
+
+        void accept(int kind, int start, int length) throws IOException;
+
+    }
+
+}
@@ -0,0 +1,161 @@
+package io.github.wasabithumb.jarstrap.delta;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Writes the operations of a patch, matching the {@link DeltaSegments segments} of the new file against those of
+ * the old file. Adjacent operations are merged as they are emitted.
+ */
+final class DeltaWriter {
+
+    private final ByteBuffer old;
+    private final ByteBuffer cur;
+    private final DataOutputStream out;
+    private final Map<Long, Integer> segments = new HashMap<>();
+    private final Map<Long, Integer> centralHeaders = new HashMap<>();
+    private final CRC32C crc = new CRC32C();
+    private final byte[] copyBuf = new byte[65536];
+
+    private int op = -1;
+    private long opFrom = 0L;
+    private long opLength = 0L;
+    long copied = 0L;
+    long literal = 0L;
+
+    DeltaWriter(@NotNull ByteBuffer old, @NotNull ByteBuffer cur, @NotNull DataOutputStream out) {
+        this.old = old;
+        this.cur = cur;
+        this.out = out;
+    }
+
+    void write() throws IOException {
+        DeltaSegments.scan(this.old, this::index);
+        DeltaSegments.scan(this.cur, this::match);
+        this.flush();
+        this.out.writeByte(Delta.OP_END);
+    }
+
+    //
+
+    private void index(int kind, int start, int length) throws IOException {
+        if (kind == DeltaSegments.KIND_CENTRAL) {
+            this.centralHeaders.putIfAbsent(this.centralKey(this.old, start, length), start);
+            return;
+        }
+        this.segments.putIfAbsent(this.key(this.old, start, length), start);
+        if (kind == DeltaSegments.KIND_LOCAL && length > DeltaSegments.MAX_CHUNK)
+            DeltaSegments.chunk(this.old, start, start + length, this::index);
+    }
+
+    private void match(int kind, int start, int length) throws IOException {
+        if (kind == DeltaSegments.KIND_CENTRAL) {
+            this.matchCentral(start, length);
+            return;
+        }
+
+        final Integer from = this.segments.get(this.key(this.cur, start, length));
+        if (from != null && this.old.slice(from, length).equals(this.cur.slice(start, length))) {
+            this.copy(from, length);
+        } else if (kind == DeltaSegments.KIND_LOCAL && length > DeltaSegments.MAX_CHUNK) {
+            DeltaSegments.chunk(this.cur, start, start + length, this::match);
+        } else {
+            this.literal(start, length);
+        }
+    }
+
+    /**
+     * Central directory headers usually differ only by the offset of their entry, which moves whenever anything
+     * before it changes size. They are matched without it, and the offset is written as a literal when it differs.
+     */
+    private void matchCentral(int start, int length) throws IOException {
+        final int field = DeltaSegments.CENTRAL_OFFSET_FIELD;
+        final Integer from = this.centralHeaders.get(this.centralKey(this.cur, start, length));
+        if (from == null ||
+                !this.old.slice(from, field).equals(this.cur.slice(start, field)) ||
+                !this.old.slice(from + field + 4, length - field - 4).equals(this.cur.slice(start + field + 4, length - field - 4))
+        ) {
+            this.literal(start, length);
+            return;
+        }
+
+        if (this.old.getInt(from + field) == this.cur.getInt(start + field)) {
+            this.copy(from, length);
+        } else {
+            this.copy(from, field);
+            this.literal(start + field, 4);
+            this.copy(from + field + 4, length - field - 4);
+        }
+    }
+
+    private long key(@NotNull ByteBuffer buf, int start, int length) {
+        this.crc.reset();
+        this.crc.update(buf.slice(start, length));
+        return ((long) length << 32) | this.crc.getValue();
+    }
+
+    private long centralKey(@NotNull ByteBuffer buf, int start, int length) {
+        final int field = DeltaSegments.CENTRAL_OFFSET_FIELD;
+        this.crc.reset();
+        this.crc.update(buf.slice(start, field));
+        this.crc.update(buf.slice(start + field + 4, length - field - 4));
+        return ((long) length << 32) | this.crc.getValue();
+    }
+
+    //
+
+    private void copy(long from, int length) throws IOException {
+        this.copied += length;
+        if (this.op == Delta.OP_COPY && this.opFrom + this.opLength == from && this.opLength + length <= Integer.MAX_VALUE) {
+            this.opLength += length;
+            return;
+        }
+        this.flush();
+        this.op = Delta.OP_COPY;
+        this.opFrom = from;
+        this.opLength = length;
+    }
+
+    private void literal(int start, int length) throws IOException {
+        this.literal += length;
+        if (this.op == Delta.OP_DATA && this.opLength + length <= Integer.MAX_VALUE) {
+            this.opLength += length;
+            return;
+        }
+        this.flush();
+        this.op = Delta.OP_DATA;
+        this.opFrom = start;
+        this.opLength = length;
+    }
+
+    private void flush() throws IOException {
+        switch (this.op) {
+            case Delta.OP_COPY -> {
+                this.out.writeByte(Delta.OP_COPY);
+                this.out.writeLong(this.opFrom);
+                this.out.writeInt((int) this.opLength);
+            }
+            case Delta.OP_DATA -> {
+                this.out.writeByte(Delta.OP_DATA);
+                this.out.writeInt((int) this.opLength);
+                int pos = (int) this.opFrom;
+                int remaining = (int) this.opLength;
+                while (remaining > 0) {
+                    final int n = Math.min(remaining, this.copyBuf.length);
+                    this.cur.get(pos, this.copyBuf, 0, n);
+                    this.out.write(this.copyBuf, 0, n);
+                    pos += n;
+                    remaining -= n;
+                }
+            }
+        }
+        this.op = -1;
+    }
+
+}
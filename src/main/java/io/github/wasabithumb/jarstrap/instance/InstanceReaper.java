@@ -0,0 +1,203 @@
+package io.github.wasabithumb.jarstrap.instance;
+
+import io.github.wasabithumb.jarstrap.util.io.FileUtil;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * <p>
+ *     Disposes of packager working directories off the calling thread. A directory is first renamed into the
+ *     {@code trash} directory next to it (a cheap, atomic operation) and then deleted by a daemon thread.
+ * </p>
+ * <p>
+ *     Each instance directory carries an owner marker naming the process which created it and the host it ran on.
+ *     {@link #sweep(File)} uses this marker to collect directories left behind by processes that have since died.
+ *     Directories owned by another host are never collected, since the root may be on a share seen by several hosts
+ *     whose processes cannot be checked from here.
+ * </p>
+ */
+@ApiStatus.Internal
+public final class InstanceReaper {
+
+    public static final String TRASH_DIR = "trash";
+    public static final String OWNER_FILE = ".owner";
+    private static final Pattern INSTANCE_NAME = Pattern.compile("^I[0-9a-f]{8}$");
+    private static final long UNMARKED_GRACE = TimeUnit.MINUTES.toMillis(10L);
+    private static final Logger LOGGER = Logger.getLogger(InstanceReaper.class.getName());
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor((Runnable r) -> {
+        Thread t = new Thread(r, "JARStrap Reaper");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    /**
+     * Records the current process as the owner of the given instance directory
+     */
+    public static void mark(@NotNull File dir) throws IOException {
+        final ProcessHandle self = ProcessHandle.current();
+        final String content = self.pid() + ":" + startTime(self) + ":" + HostName.VALUE;
+        Files.writeString(new File(dir, OWNER_FILE).toPath(), content, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Moves the given directory into the trash and schedules its deletion. If the directory cannot be moved, it is
+     * deleted synchronously instead.
+     */
+    public static void dispose(@NotNull File dir) throws IOException {
+        final Path path = dir.toPath();
+        if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) return;
+
+        final Path trashed;
+        try {
+            trashed = moveToTrash(path);
+        } catch (IOException e) {
+            FileUtil.deleteTree(path);
+            return;
+        }
+        EXECUTOR.execute(() -> deleteQuietly(trashed));
+    }
+
+    /**
+     * Schedules a sweep of the given root directory. Any instance directories whose owning process is no longer
+     * running are removed, as is anything left over in the trash.
+     */
+    public static void sweep(@NotNull File root) {
+        final Path rootPath = root.toPath();
+        EXECUTOR.execute(() -> sweep0(rootPath));
+    }
+
+    //
+
+    private static void sweep0(@NotNull Path root) {
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(root)) {
+            for (Path child : ds) {
+                if (!INSTANCE_NAME.matcher(child.getFileName().toString()).matches()) continue;
+                if (!isOrphaned(child)) continue;
+                LOGGER.log(Level.FINE, "Collecting orphaned instance directory {0}", child);
+                try {
+                    deleteQuietly(moveToTrash(child));
+                } catch (IOException e) {
+                    deleteQuietly(child);
+                }
+            }
+        } catch (NoSuchFileException ignored) {
+            return;
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to sweep " + root, e);
+        }
+
+        final Path trash = root.resolve(TRASH_DIR);
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(trash)) {
+            for (Path child : ds) deleteQuietly(child);
+        } catch (NoSuchFileException ignored) {
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to empty " + trash, e);
+        }
+    }
+
+    private static boolean isOrphaned(@NotNull Path dir) {
+        final Path marker = dir.resolve(OWNER_FILE);
+        String content;
+        try {
+            content = Files.readString(marker, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            // No marker; either from an older version or still being created
+            return isStale(dir);
+        }
+
+        // An unreadable marker may still be being written, and names no host
+        final String[] parts = content.split(":", 3);
+        if (parts.length != 3) return isStale(dir);
+        long pid;
+        long start;
+        try {
+            pid = Long.parseLong(parts[0]);
+            start = Long.parseLong(parts[1]);
+        } catch (NumberFormatException e) {
+            return isStale(dir);
+        }
+
+        // The process table of another host cannot be checked
+        if (!parts[2].equals(HostName.VALUE)) return false;
+
+        final Optional<ProcessHandle> handle = ProcessHandle.of(pid);
+        if (handle.isEmpty() || !handle.get().isAlive()) return true;
+
+        // Guard against PID reuse; start times are derived from clock ticks, so allow some slack
+        final long actualStart = startTime(handle.get());
+        if (start == -1L || actualStart == -1L) return false;
+        return Math.abs(start - actualStart) > 1000L;
+    }
+
+    private static boolean isStale(@NotNull Path dir) {
+        try {
+            long age = System.currentTimeMillis() - Files.getLastModifiedTime(dir).toMillis();
+            return age > UNMARKED_GRACE;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static long startTime(@NotNull ProcessHandle handle) {
+        return handle.info()
+                .startInstant()
+                .map(Instant::toEpochMilli)
+                .orElse(-1L);
+    }
+
+    private static @NotNull String hostName() {
+        // Cheaper than a lookup where available
+        try {
+            final String name = Files.readString(Path.of("/proc/sys/kernel/hostname"), StandardCharsets.UTF_8).strip();
+            if (!name.isEmpty()) return name;
+        } catch (IOException ignored) { }
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            final String name = System.getenv("COMPUTERNAME");
+            return name == null ? "localhost" : name;
+        }
+    }
+
+    private static @NotNull Path moveToTrash(@NotNull Path dir) throws IOException {
+        final Path trash = dir.resolveSibling(TRASH_DIR);
+        Files.createDirectories(trash);
+        final Path dest = trash.resolve(dir.getFileName() + "-" + Long.toHexString(System.nanoTime()));
+        return Files.move(dir, dest, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void deleteQuietly(@Nullable Path path) {
+        if (path == null) return;
+        try {
+            FileUtil.deleteTree(path);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to delete " + path, e);
+        }
+    }
+
+    //
+
+    private static final class HostName {
+
+        static final String VALUE = hostName();
+
+    }
+
+}
@@ -0,0 +1,190 @@
+package io.github.wasabithumb.jarstrap.instance;
+
+import io.github.wasabithumb.jarstrap.JARStrap;
+import io.github.wasabithumb.jarstrap.util.io.FileUtil;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * <p>
+ *     Determines where packager working directories are created. By default, this is the user data directory
+ *     ({@link #dataDir()}). The default for the process can be changed with
+ *     {@link JARStrap#setDefaultWorkingRoot(WorkingRoot)} or by setting the {@value #PROPERTY} system property to
+ *     {@code data}, {@code auto} or a path.
+ * </p>
+ * <p>
+ *     The {@link #auto() auto} mode places working directories on a RAM-backed filesystem ({@code /dev/shm} or
+ *     {@code $XDG_RUNTIME_DIR}) when one is available with enough free space, so that the native build and archive
+ *     I/O happens in memory. Since these locations are shared, a candidate is only used if it is a directory private
+ *     to the current user.
+ * </p>
+ * @since 0.3.0
+ */
+public sealed interface WorkingRoot {
+
+    /**
+     * The system property which sets the default working root
+     */
+    String PROPERTY = "jarstrap.workingRoot";
+
+    /**
+     * The space reserved for the build tree (tool sources, objects &amp; executable) in addition to the source JAR
+     */
+    long BUILD_TREE_RESERVE = 32L << 20;
+
+    /**
+     * The user data directory, which persists across reboots
+     */
+    @Contract(pure = true)
+    static @NotNull WorkingRoot dataDir() {
+        return Data.INSTANCE;
+    }
+
+    /**
+     * A RAM-backed directory if one has enough free space, otherwise the {@link #dataDir() data directory}
+     */
+    @Contract(pure = true)
+    static @NotNull WorkingRoot auto() {
+        return Auto.INSTANCE;
+    }
+
+    /**
+     * A fixed directory
+     */
+    @Contract("_ -> new")
+    static @NotNull WorkingRoot of(@NotNull File dir) {
+        return new Fixed(Objects.requireNonNull(dir));
+    }
+
+    /**
+     * Parses a working root; either {@code data}, {@code auto} or a path
+     */
+    static @NotNull WorkingRoot parse(@NotNull String value) {
+        final String trimmed = value.trim();
+        if (trimmed.equalsIgnoreCase("data")) return Data.INSTANCE;
+        if (trimmed.equalsIgnoreCase("auto")) return Auto.INSTANCE;
+        return new Fixed(new File(trimmed));
+    }
+
+    /**
+     * Reads the working root from the {@value #PROPERTY} system property, or returns the
+     * {@link #dataDir() data directory} if it is not set
+     */
+    static @NotNull WorkingRoot fromSystemProperty() {
+        final String value = System.getProperty(PROPERTY);
+        if (value == null || value.isBlank()) return Data.INSTANCE;
+        return parse(value);
+    }
+
+    //
+
+    /**
+     * Resolves the directory to create working directories in
+     * @param requiredSpace An estimate of the space a packager will need, in bytes
+     */
+    @NotNull File resolve(long requiredSpace);
+
+    //
+
+    final class Data implements WorkingRoot {
+
+        static final Data INSTANCE = new Data();
+
+        private Data() { }
+
+        @Override
+        public @NotNull File resolve(long requiredSpace) {
+            return JARStrap.dataDir();
+        }
+
+        @Override
+        public @NotNull String toString() {
+            return "data";
+        }
+
+    }
+
+    final class Auto implements WorkingRoot {
+
+        static final Auto INSTANCE = new Auto();
+
+        private Auto() { }
+
+        @Override
+        public @NotNull File resolve(long requiredSpace) {
+            for (File candidate : this.candidates()) {
+                // Measure the mount itself, since the candidate may not exist yet
+                if (candidate.getParentFile().getUsableSpace() < requiredSpace) continue;
+                try {
+                    return this.prepare(candidate);
+                } catch (IOException ignored) { }
+            }
+            return JARStrap.dataDir();
+        }
+
+        private @NotNull List<File> candidates() {
+            final List<File> ret = new ArrayList<>(2);
+            final File shm = new File("/dev/shm");
+            if (shm.isDirectory() && shm.canWrite())
+                ret.add(new File(shm, "jarstrap-" + System.getProperty("user.name")));
+
+            final String xdg = System.getenv("XDG_RUNTIME_DIR");
+            if (xdg != null && !xdg.isEmpty()) {
+                final File runtime = new File(xdg);
+                if (runtime.isDirectory() && runtime.canWrite())
+                    ret.add(new File(runtime, "jarstrap"));
+            }
+            return ret;
+        }
+
+        private @NotNull File prepare(@NotNull File dir) throws IOException {
+            // The name is predictable and the parent is shared, so the directory may have been planted by another user
+            FileUtil.createPrivateDirectory(dir.toPath());
+            return dir;
+        }
+
+        @Override
+        public @NotNull String toString() {
+            return "auto";
+        }
+
+    }
+
+    final class Fixed implements WorkingRoot {
+
+        private final File dir;
+
+        Fixed(@NotNull File dir) {
+            this.dir = dir;
+        }
+
+        @Override
+        public @NotNull File resolve(long requiredSpace) {
+            return this.dir;
+        }
+
+        @Override
+        public boolean equals(@Nullable Object obj) {
+            return obj instanceof Fixed other && this.dir.equals(other.dir);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.dir.hashCode();
+        }
+
+        @Override
+        public @NotNull String toString() {
+            return this.dir.getPath();
+        }
+
+    }
+
+}
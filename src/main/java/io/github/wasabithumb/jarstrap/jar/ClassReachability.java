@@ -0,0 +1,303 @@
+package io.github.wasabithumb.jarstrap.jar;
+
+import io.github.wasabithumb.jarstrap.manifest.ManifestFile;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Unmodifiable;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ *     Computes the set of classes in a JAR which may be loaded, starting from a set of roots and following every
+ *     class named in the constant pool of each reachable class. Roots are the classes named by the manifest
+ *     ({@code Main-Class} &amp; the agent attributes), the service interfaces &amp; providers listed under
+ *     {@code META-INF/services/}, and any class matching a {@link KeepRule keep rule}.
+ * </p>
+ * <p>
+ *     The analysis is conservative with regard to reflection to the extent that it can be: any string constant
+ *     which is the name of a class in the JAR (in binary or internal form) also makes that class reachable. Classes
+ *     which are only loaded by names computed at runtime must be kept with a rule.
+ * </p>
+ * <p>
+ *     The graph is explored breadth-first, with each level of newly discovered classes parsed in parallel.
+ * </p>
+ */
+@ApiStatus.Internal
+public final class ClassReachability {
+
+    private static final String SERVICES_PREFIX = "META-INF/services/";
+    private static final String VERSIONS_PREFIX = "META-INF/versions/";
+    private static final String CLASS_SUFFIX = ".class";
+    private static final String MODULE_INFO = "module-info";
+    private static final String PACKAGE_INFO = "package-info";
+    private static final String[] ROOT_ATTRIBUTES = new String[] {
+            "Main-Class", "Launcher-Agent-Class", "Premain-Class", "Agent-Class"
+    };
+
+    private final JarIndex index;
+    private final List<KeepRule> rules;
+    private final Set<String> classes;
+    private final Map<String, List<JarIndex.Entry>> versioned;
+
+    public ClassReachability(@NotNull JarIndex index, @NotNull List<KeepRule> rules) {
+        this.index = index;
+        this.rules = rules;
+        this.classes = new HashSet<>();
+        this.versioned = new HashMap<>();
+        for (JarIndex.Entry entry : index.entries()) {
+            final String name = entry.name();
+            if (!name.endsWith(CLASS_SUFFIX) || entry.isDirectory()) continue;
+            if (name.startsWith(VERSIONS_PREFIX)) {
+                if (!index.isMultiRelease()) continue;
+                final int slash = name.indexOf('/', VERSIONS_PREFIX.length());
+                if (slash == -1) continue;
+                final String base = name.substring(slash + 1, name.length() - CLASS_SUFFIX.length());
+                this.versioned.computeIfAbsent(base, (String k) -> new ArrayList<>(1)).add(entry);
+            } else {
+                this.classes.add(name.substring(0, name.length() - CLASS_SUFFIX.length()));
+            }
+        }
+    }
+
+    /**
+     * The internal names (e.g. {@code com/example/Main}) of every class in the JAR, excluding versioned classes
+     */
+    public @NotNull @Unmodifiable Set<String> classes() {
+        return Collections.unmodifiableSet(this.classes);
+    }
+
+    /**
+     * Computes the internal names of the reachable classes
+     */
+    public @NotNull Set<String> compute() throws IOException {
+        final Set<String> reachable = ConcurrentHashMap.newKeySet();
+        List<String> frontier = new ArrayList<>();
+        for (String root : this.roots()) {
+            if (reachable.add(root)) frontier.add(root);
+        }
+
+        try (JarIndex.Reader reader = this.index.open()) {
+            while (!frontier.isEmpty()) {
+                frontier = frontier.parallelStream()
+                        .flatMap((String name) -> {
+                            try {
+                                return this.references(reader, name).stream();
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        })
+                        .filter(reachable::add)
+                        .toList();
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return reachable;
+    }
+
+    private @NotNull Set<String> roots() throws IOException {
+        final Set<String> ret = new LinkedHashSet<>();
+        final ManifestFile mf = this.index.manifest();
+        if (mf != null) {
+            for (String attr : ROOT_ATTRIBUTES) {
+                final String value = mf.get(attr);
+                if (value != null) this.addIfClass(ret, value.trim().replace('.', '/'));
+            }
+        }
+
+        try (JarIndex.Reader reader = this.index.open()) {
+            for (JarIndex.Entry entry : this.index.entries()) {
+                final String name = entry.name();
+                if (!name.startsWith(SERVICES_PREFIX) || entry.isDirectory()) continue;
+                this.addIfClass(ret, name.substring(SERVICES_PREFIX.length()).replace('.', '/'));
+                final String content = new String(reader.readAllBytes(entry), StandardCharsets.UTF_8);
+                for (String line : content.split("\r?\n|\r")) {
+                    final int comment = line.indexOf('#');
+                    if (comment != -1) line = line.substring(0, comment);
+                    line = line.trim();
+                    if (!line.isEmpty()) this.addIfClass(ret, line.replace('.', '/'));
+                }
+            }
+        }
+
+        if (!this.rules.isEmpty()) {
+            for (String name : this.classes) {
+                for (KeepRule rule : this.rules) {
+                    if (rule.matches(name)) {
+                        ret.add(name);
+                        break;
+                    }
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Lists the entries to keep given the reachable classes, in their original order. Resources are always kept,
+     * versioned classes are kept with their base class, package &amp; module descriptors are kept with any class of
+     * their package, and directories are kept while they contain anything.
+     */
+    public @NotNull List<JarIndex.Entry> retained(@NotNull Set<String> reachable) {
+        final Set<String> packages = new HashSet<>();
+        for (String name : reachable) packages.add(packageOf(name));
+
+        final List<JarIndex.Entry> entries = this.index.entries();
+        final boolean[] keep = new boolean[entries.size()];
+        final Set<String> dirs = new HashSet<>();
+        for (int i=0; i < keep.length; i++) {
+            final JarIndex.Entry entry = entries.get(i);
+            final String name = entry.name();
+            if (entry.isDirectory()) continue;
+            keep[i] = this.isRetained(name, reachable, packages);
+            if (!keep[i]) continue;
+            int slash = name.lastIndexOf('/');
+            while (slash != -1 && dirs.add(name.substring(0, slash + 1)))
+                slash = name.lastIndexOf('/', slash - 1);
+        }
+
+        final List<JarIndex.Entry> ret = new ArrayList<>(entries.size());
+        for (int i=0; i < keep.length; i++) {
+            final JarIndex.Entry entry = entries.get(i);
+            if (keep[i] || (entry.isDirectory() && dirs.contains(entry.name()))) ret.add(entry);
+        }
+        return ret;
+    }
+
+    private boolean isRetained(@NotNull String name, @NotNull Set<String> reachable, @NotNull Set<String> packages) {
+        if (!name.endsWith(CLASS_SUFFIX)) return true;
+        String base = name.substring(0, name.length() - CLASS_SUFFIX.length());
+        if (base.startsWith(VERSIONS_PREFIX)) {
+            final int slash = base.indexOf('/', VERSIONS_PREFIX.length());
+            if (slash == -1) return true;
+            base = base.substring(slash + 1);
+        }
+        if (base.equals(MODULE_INFO)) return true;
+        if (base.equals(PACKAGE_INFO) || base.endsWith("/" + PACKAGE_INFO))
+            return packages.contains(packageOf(base));
+        return reachable.contains(base) || !this.classes.contains(base);
+    }
+
+    private static @NotNull String packageOf(@NotNull String internalName) {
+        final int slash = internalName.lastIndexOf('/');
+        return slash == -1 ? "" : internalName.substring(0, slash);
+    }
+
+    private void addIfClass(@NotNull Set<String> out, @NotNull String internalName) {
+        if (this.classes.contains(internalName)) out.add(internalName);
+    }
+
+    /**
+     * Lists the classes in the JAR which are named by the constant pool of the given class, including any
+     * versioned variants of it
+     */
+    private @NotNull Set<String> references(@NotNull JarIndex.Reader reader, @NotNull String name) throws IOException {
+        final Set<String> ret = new HashSet<>();
+        final JarIndex.Entry entry = this.index.get(name + CLASS_SUFFIX);
+        if (entry != null) this.parse(reader.readAllBytes(entry), ret);
+        final List<JarIndex.Entry> variants = this.versioned.get(name);
+        if (variants != null) {
+            for (JarIndex.Entry variant : variants) this.parse(reader.readAllBytes(variant), ret);
+        }
+        return ret;
+    }
+
+    private void parse(byte @NotNull [] bytes, @NotNull Set<String> out) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (in.readInt() != 0xCAFEBABE) return;
+        in.skipNBytes(4);
+        final int count = in.readUnsignedShort();
+        for (int i=1; i < count; i++) {
+            final int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1 -> this.scanString(in.readUTF(), out);
+                case 3, 4, 9, 10, 11, 12, 17, 18 -> in.skipNBytes(4);
+                case 5, 6 -> {
+                    in.skipNBytes(8);
+                    i++;
+                }
+                case 7, 8, 16, 19, 20 -> in.skipNBytes(2);
+                case 15 -> in.skipNBytes(3);
+                default -> throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+    }
+
+    /**
+     * Every UTF-8 constant is considered: class names, descriptors, signatures &amp; string literals alike
+     */
+    private void scanString(@NotNull String s, @NotNull Set<String> out) {
+        if (s.isEmpty()) return;
+
+        // A class name in internal or binary form
+        this.addIfClass(out, s.replace('.', '/'));
+
+        // Descriptors & signatures, e.g. (Lcom/example/A;I)[Lcom/example/B<Lcom/example/C;>;
+        int from = 0;
+        while (true) {
+            final int l = s.indexOf('L', from);
+            if (l == -1) break;
+            int end = l + 1;
+            char c;
+            while (end < s.length() && (c = s.charAt(end)) != ';' && c != '<' && c != '(' && c != ')') end++;
+            if (end > l + 1) this.addIfClass(out, s.substring(l + 1, end));
+            from = l + 1;
+        }
+    }
+
+    //
+
+    /**
+     * <p>
+     *     A pattern of classes to always keep, written with binary names: {@code com.example.Foo} matches a single
+     *     class, {@code com.example.*} matches the classes in a package and {@code com.example.**} additionally
+     *     matches classes in its subpackages. A single class rule also keeps its nested classes.
+     * </p>
+     */
+    public record KeepRule(@NotNull String pattern) {
+
+        /**
+         * @throws IllegalArgumentException The pattern is empty or malformed
+         */
+        public KeepRule {
+            pattern = pattern.trim();
+            if (pattern.isEmpty())
+                throw new IllegalArgumentException("Keep rule may not be empty");
+            final int star = pattern.indexOf('*');
+            final int wildcard = pattern.endsWith(".**") ? pattern.length() - 2 :
+                    pattern.endsWith(".*") ? pattern.length() - 1 : -1;
+            if (star != wildcard || wildcard == 1)
+                throw new IllegalArgumentException("Keep rule \"" + pattern + "\" may only use a wildcard as its last segment");
+        }
+
+        /**
+         * @param internalName The internal name of a class, e.g. {@code com/example/Main}
+         */
+        public boolean matches(@NotNull String internalName) {
+            final String name = internalName.replace('/', '.');
+            if (this.pattern.endsWith(".**")) {
+                final String pkg = this.pattern.substring(0, this.pattern.length() - 2);
+                return name.startsWith(pkg);
+            }
+            if (this.pattern.endsWith(".*")) {
+                final String pkg = this.pattern.substring(0, this.pattern.length() - 1);
+                return name.startsWith(pkg) && name.indexOf('.', pkg.length()) == -1;
+            }
+            return name.equals(this.pattern) || name.startsWith(this.pattern + "$");
+        }
+
+        @Override
+        public @NotNull String toString() {
+            return this.pattern;
+        }
+
+    }
+
+}
@@ -0,0 +1,119 @@
+package io.github.wasabithumb.jarstrap.jar;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Unmodifiable;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * <p>
+ *     The class file versions found in a JAR, as produced when
+ *     {@link io.github.wasabithumb.jarstrap.packager.PackagerConfig#scanClassVersions() scanning class versions}.
+ * </p>
+ * <p>
+ *     Only classes which are loaded on every Java version count towards {@link #maxMajor()}. Classes under
+ *     {@code META-INF/versions/} are only loaded by newer Java versions (and not at all unless the JAR is
+ *     Multi-Release), and {@code module-info.class} is ignored when the JAR is on the class path.
+ * </p>
+ * @since 0.3.0
+ */
+public final class ClassVersionReport {
+
+    private final int classCount;
+    private final int skippedCount;
+    private final int invalidCount;
+    private final int maxMajor;
+    private final String maxPackage;
+    private final SortedMap<String, SortedMap<Integer, Integer>> histogram;
+
+    ClassVersionReport(
+            int classCount,
+            int skippedCount,
+            int invalidCount,
+            int maxMajor,
+            @Nullable String maxPackage,
+            @NotNull SortedMap<String, SortedMap<Integer, Integer>> histogram
+    ) {
+        this.classCount = classCount;
+        this.skippedCount = skippedCount;
+        this.invalidCount = invalidCount;
+        this.maxMajor = maxMajor;
+        this.maxPackage = maxPackage;
+        this.histogram = histogram;
+    }
+
+    /**
+     * The number of classes which count towards {@link #maxMajor()}
+     */
+    public int classCount() {
+        return this.classCount;
+    }
+
+    /**
+     * The number of classes which were not counted; versioned classes &amp; module descriptors
+     */
+    public int skippedCount() {
+        return this.skippedCount;
+    }
+
+    /**
+     * The number of classes with a missing or corrupted header
+     */
+    public int invalidCount() {
+        return this.invalidCount;
+    }
+
+    /**
+     * The highest class file major version, or -1 if there are no valid classes
+     */
+    public int maxMajor() {
+        return this.maxMajor;
+    }
+
+    /**
+     * The lowest Java version able to load every class, or -1 if there are no valid classes
+     */
+    public int minJavaVersion() {
+        return this.maxMajor == -1 ? -1 : Math.max(1, this.maxMajor - 44);
+    }
+
+    /**
+     * A package containing a class with the {@link #maxMajor() highest version}, or null if there is none. The
+     * default package is represented by an empty string.
+     */
+    public @Nullable String maxPackage() {
+        return this.maxPackage;
+    }
+
+    /**
+     * For each package (in internal form, e.g. {@code com/example}), the number of classes of each major version
+     */
+    public @NotNull @Unmodifiable SortedMap<String, SortedMap<Integer, Integer>> histogram() {
+        return this.histogram;
+    }
+
+    /**
+     * The total number of classes of each major version
+     */
+    public @NotNull @Unmodifiable SortedMap<Integer, Integer> totals() {
+        final SortedMap<Integer, Integer> ret = new TreeMap<>();
+        for (SortedMap<Integer, Integer> counts : this.histogram.values()) {
+            for (Map.Entry<Integer, Integer> entry : counts.entrySet())
+                ret.merge(entry.getKey(), entry.getValue(), Integer::sum);
+        }
+        return Collections.unmodifiableSortedMap(ret);
+    }
+
+    @Override
+    public @NotNull String toString() {
+        return "ClassVersionReport[classes=" + this.classCount +
+                ", maxMajor=" + this.maxMajor +
+                ", maxPackage=" + this.maxPackage +
+                ", totals=" + this.totals() + "]";
+    }
+
+}
@@ -0,0 +1,209 @@
+package io.github.wasabithumb.jarstrap.jar;
+
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads the class file version of every class in a JAR, splitting the entries across a fork-join pool. Only the first
+ * 8 bytes of each class are read (and inflated).
+ * @see ClassVersionReport
+ */
+@ApiStatus.Internal
+public final class ClassVersionScan {
+
+    private static final String VERSIONS_PREFIX = "META-INF/versions/";
+    private static final String MODULE_INFO = "module-info.class";
+    private static final int MIN_MAJOR = 45;
+    private static final int MAJOR_SLOTS = 64;
+    private static final int THRESHOLD = 256;
+
+    private ClassVersionScan() { }
+
+    /**
+     * Scans on the {@link ForkJoinPool#commonPool() common pool}
+     * @param logger Receives warnings about versioned classes which are newer than their version directory allows
+     */
+    public static @NotNull ClassVersionReport scan(@NotNull JarIndex index, @Nullable Logger logger) throws IOException {
+        return scan(index, ForkJoinPool.commonPool(), logger);
+    }
+
+    public static @NotNull ClassVersionReport scan(
+            @NotNull JarIndex index,
+            @NotNull ForkJoinPool pool,
+            @Nullable Logger logger
+    ) throws IOException {
+        final List<JarIndex.Entry> entries = index.entries();
+        final Tally tally;
+        try (JarIndex.Reader reader = index.open()) {
+            tally = pool.invoke(new Task(reader, entries, 0, entries.size(), index.isMultiRelease()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        if (logger != null) {
+            for (String warning : tally.warnings) logger.log(Level.WARNING, warning);
+        }
+        return tally.toReport();
+    }
+
+    /**
+     * Returns the Java version which loads a class from {@code META-INF/versions/N/}, or 0 if the entry is not
+     * versioned and -1 if the version directory is malformed
+     */
+    static int releaseOf(@NotNull String name) {
+        if (!name.startsWith(VERSIONS_PREFIX)) return 0;
+        final int end = name.indexOf('/', VERSIONS_PREFIX.length());
+        if (end == -1) return -1;
+        try {
+            return Integer.parseInt(name, VERSIONS_PREFIX.length(), end, 10);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    //
+
+    private static final class Task extends RecursiveTask<Tally> {
+
+        private final JarIndex.Reader reader;
+        private final List<JarIndex.Entry> entries;
+        private final int start;
+        private final int end;
+        private final boolean multiRelease;
+
+        Task(@NotNull JarIndex.Reader reader, @NotNull List<JarIndex.Entry> entries, int start, int end, boolean multiRelease) {
+            this.reader = reader;
+            this.entries = entries;
+            this.start = start;
+            this.end = end;
+            this.multiRelease = multiRelease;
+        }
+
+        @Override
+        protected @NotNull Tally compute() {
+            if (this.end - this.start > THRESHOLD) {
+                final int mid = (this.start + this.end) >>> 1;
+                final Task left = new Task(this.reader, this.entries, this.start, mid, this.multiRelease);
+                final Task right = new Task(this.reader, this.entries, mid, this.end, this.multiRelease);
+                left.fork();
+                final Tally ret = right.compute();
+                ret.merge(left.join());
+                return ret;
+            }
+
+            final Tally tally = new Tally();
+            try {
+                for (int i = this.start; i < this.end; i++) this.visit(tally, this.entries.get(i));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return tally;
+        }
+
+        private void visit(@NotNull Tally tally, @NotNull JarIndex.Entry entry) throws IOException {
+            final String name = entry.name();
+            if (!name.endsWith(".class") || entry.isDirectory()) return;
+
+            final int release = releaseOf(name);
+            if (release != 0) {
+                // Only loaded by newer Java versions, and only from Multi-Release JARs
+                tally.skipped++;
+                if (release > 0 && this.multiRelease && !name.endsWith("/" + MODULE_INFO)) {
+                    final int major = JarIndex.classMajor(this.reader.readPrefix(entry, 8));
+                    if (major > release + 44) {
+                        tally.warnings.add("Class \"" + name + "\" has class file version " + major +
+                                ", which Java " + release + " cannot load");
+                    }
+                }
+                return;
+            }
+            if (name.equals(MODULE_INFO)) {
+                tally.skipped++;
+                return;
+            }
+
+            final int major = JarIndex.classMajor(this.reader.readPrefix(entry, 8));
+            if (major < MIN_MAJOR || major >= MIN_MAJOR + MAJOR_SLOTS) {
+                tally.invalid++;
+                return;
+            }
+            tally.add(packageOf(name), major);
+        }
+
+        private static @NotNull String packageOf(@NotNull String name) {
+            final int slash = name.lastIndexOf('/');
+            return slash == -1 ? "" : name.substring(0, slash);
+        }
+
+    }
+
+    private static final class Tally {
+
+        final Map<String, int[]> packages = new HashMap<>();
+        final List<String> warnings = new ArrayList<>(0);
+        int classes = 0;
+        int skipped = 0;
+        int invalid = 0;
+        int maxMajor = -1;
+        String maxPackage = null;
+
+        /**
+         * @param major A major version which fits within the slots
+         */
+        void add(@NotNull String pkg, int major) {
+            this.classes++;
+            this.packages.computeIfAbsent(pkg, (String k) -> new int[MAJOR_SLOTS])[major - MIN_MAJOR]++;
+            if (major > this.maxMajor) {
+                this.maxMajor = major;
+                this.maxPackage = pkg;
+            }
+        }
+
+        void merge(@NotNull Tally other) {
+            for (Map.Entry<String, int[]> entry : other.packages.entrySet()) {
+                final int[] mine = this.packages.computeIfAbsent(entry.getKey(), (String k) -> new int[MAJOR_SLOTS]);
+                final int[] theirs = entry.getValue();
+                for (int i=0; i < MAJOR_SLOTS; i++) mine[i] += theirs[i];
+            }
+            this.warnings.addAll(other.warnings);
+            this.classes += other.classes;
+            this.skipped += other.skipped;
+            this.invalid += other.invalid;
+            if (other.maxMajor > this.maxMajor) {
+                this.maxMajor = other.maxMajor;
+                this.maxPackage = other.maxPackage;
+            }
+        }
+
+        @NotNull ClassVersionReport toReport() {
+            final SortedMap<String, SortedMap<Integer, Integer>> histogram = new TreeMap<>();
+            for (Map.Entry<String, int[]> entry : this.packages.entrySet()) {
+                final SortedMap<Integer, Integer> counts = new TreeMap<>();
+                final int[] slots = entry.getValue();
+                for (int i=0; i < MAJOR_SLOTS; i++) {
+                    if (slots[i] != 0) counts.put(MIN_MAJOR + i, slots[i]);
+                }
+                histogram.put(entry.getKey(), Collections.unmodifiableSortedMap(counts));
+            }
+            return new ClassVersionReport(
+                    this.classes,
+                    this.skipped,
+                    this.invalid,
+                    this.maxMajor,
+                    this.maxPackage,
+                    Collections.unmodifiableSortedMap(histogram)
+            );
+        }
+
+    }
+
+}
@@ -0,0 +1,176 @@
+package io.github.wasabithumb.jarstrap.jar;
+
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ *     Redirects the calls to {@code System.exit(int)} in the classes of a JAR to a static method with the same
+ *     descriptor in another class. Each method reference to {@code java/lang/System.exit:(I)V} in the constant pool
+ *     is repointed to a class constant appended to the pool, so that both the {@code invokestatic} instructions and
+ *     the method handles ({@code System::exit}) which use it call the replacement. The code of the class is not
+ *     touched, so no stack map frames need to be recomputed.
+ * </p>
+ * <p>
+ *     Calls through reflection, {@code Runtime.exit} and {@code Runtime.halt} are not redirected.
+ * </p>
+ */
+@ApiStatus.Internal
+public final class ExitCallRewriter {
+
+    private static final String CLASS_SUFFIX = ".class";
+    private static final String SIGNATURE_SUFFIX = ".SF";
+    private static final byte[] SYSTEM = "java/lang/System".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] EXIT = "exit".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] EXIT_DESCRIPTOR = "(I)V".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * True if the JAR is signed, in which case rewriting its classes would invalidate the signature
+     */
+    public static boolean isSigned(@NotNull JarIndex index) {
+        for (JarIndex.Entry entry : index.entries()) {
+            final String name = entry.name();
+            if (name.startsWith("META-INF/") && name.indexOf('/', 9) == -1 && name.endsWith(SIGNATURE_SUFFIX))
+                return true;
+        }
+        return false;
+    }
+
+    //
+
+    private final byte[] target;
+
+    /**
+     * @param target The internal name of the class holding the replacement, e.g. {@code a/b/Runtime}
+     */
+    public ExitCallRewriter(@NotNull String target) {
+        this.target = target.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a copy of the JAR with every call to {@code System.exit} redirected. Entries which need no change are
+     * copied as they are stored.
+     * @return The number of classes changed. If zero, nothing is written.
+     */
+    public int rewrite(@NotNull JarIndex index, @NotNull Path dest) throws IOException {
+        final Map<JarIndex.Entry, byte[]> patched = new LinkedHashMap<>();
+        try (JarIndex.Reader reader = index.open()) {
+            for (JarIndex.Entry entry : index.entries()) {
+                if (entry.isDirectory() || !entry.name().endsWith(CLASS_SUFFIX)) continue;
+                final byte[] rewritten = this.rewrite(reader.readAllBytes(entry));
+                if (rewritten != null) patched.put(entry, rewritten);
+            }
+            if (patched.isEmpty()) return 0;
+
+            try (JarWriter writer = new JarWriter(dest)) {
+                for (JarIndex.Entry entry : index.entries()) {
+                    final byte[] data = patched.get(entry);
+                    if (data == null) {
+                        writer.copy(reader, entry);
+                    } else {
+                        writer.add0(entry.name(), data, entry.dosTime());
+                    }
+                }
+            } catch (IOException e) {
+                try {
+                    Files.deleteIfExists(dest);
+                } catch (IOException e1) {
+                    e.addSuppressed(e1);
+                }
+                throw e;
+            }
+        }
+        return patched.size();
+    }
+
+    /**
+     * Redirects the calls in a single class
+     * @return The new class file, or null if the class does not call {@code System.exit} (or is not a class file)
+     */
+    public byte @Nullable [] rewrite(byte @NotNull [] bytes) throws IOException {
+        final ByteBuffer buf = ByteBuffer.wrap(bytes);
+        if (bytes.length < 10 || buf.getInt(0) != 0xCAFEBABE) return null;
+        final int count = buf.getShort(8) & 0xFFFF;
+
+        // Offset of the body of each constant, after its tag
+        final int[] offsets = new int[count];
+        final byte[] tags = new byte[count];
+        int pos = 10;
+        try {
+            for (int i=1; i < count; i++) {
+                final int tag = bytes[pos] & 0xFF;
+                tags[i] = (byte) tag;
+                offsets[i] = ++pos;
+                switch (tag) {
+                    case 1 -> pos += 2 + (buf.getShort(pos) & 0xFFFF);
+                    case 3, 4, 9, 10, 11, 12, 17, 18 -> pos += 4;
+                    case 5, 6 -> {
+                        pos += 8;
+                        i++;
+                    }
+                    case 7, 8, 16, 19, 20 -> pos += 2;
+                    case 15 -> pos += 3;
+                    default -> throw new IOException("Unknown constant pool tag " + tag);
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Truncated constant pool", e);
+        }
+        final int poolEnd = pos;
+
+        int[] sites = new int[4];
+        int siteCount = 0;
+        for (int i=1; i < count; i++) {
+            if (tags[i] != 10) continue;
+            final int cls = buf.getShort(offsets[i]) & 0xFFFF;
+            final int nat = buf.getShort(offsets[i] + 2) & 0xFFFF;
+            if (cls >= count || nat >= count || tags[cls] != 7 || tags[nat] != 12) continue;
+            if (!this.utf8Equals(bytes, buf, tags, offsets, buf.getShort(offsets[cls]) & 0xFFFF, SYSTEM)) continue;
+            if (!this.utf8Equals(bytes, buf, tags, offsets, buf.getShort(offsets[nat]) & 0xFFFF, EXIT)) continue;
+            if (!this.utf8Equals(bytes, buf, tags, offsets, buf.getShort(offsets[nat] + 2) & 0xFFFF, EXIT_DESCRIPTOR)) continue;
+            if (siteCount == sites.length) sites = Arrays.copyOf(sites, siteCount << 1);
+            sites[siteCount++] = offsets[i];
+        }
+        if (siteCount == 0) return null;
+        if (count + 2 > 0xFFFF) throw new IOException("Constant pool is full");
+
+        // Utf8 at index count, Class at index count + 1
+        final int added = 3 + this.target.length + 3;
+        final ByteBuffer out = ByteBuffer.allocate(bytes.length + added);
+        out.put(bytes, 0, poolEnd);
+        out.putShort(8, (short) (count + 2));
+        for (int i=0; i < siteCount; i++) out.putShort(sites[i], (short) (count + 1));
+        out.put((byte) 1);
+        out.putShort((short) this.target.length);
+        out.put(this.target);
+        out.put((byte) 7);
+        out.putShort((short) count);
+        out.put(bytes, poolEnd, bytes.length - poolEnd);
+        return out.array();
+    }
+
+    private boolean utf8Equals(
+            byte @NotNull [] bytes,
+            @NotNull ByteBuffer buf,
+            byte @NotNull [] tags,
+            int @NotNull [] offsets,
+            int index,
+            byte @NotNull [] expected
+    ) {
+        if (index >= tags.length || tags[index] != 1) return false;
+        final int off = offsets[index];
+        final int len = buf.getShort(off) & 0xFFFF;
+        return Arrays.equals(bytes, off + 2, off + 2 + len, expected, 0, expected.length);
+    }
+
+}
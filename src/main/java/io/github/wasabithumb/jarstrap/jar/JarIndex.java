@@ -0,0 +1,494 @@
+package io.github.wasabithumb.jarstrap.jar;
+
+import io.github.wasabithumb.jarstrap.manifest.ManifestFile;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Unmodifiable;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+import static io.github.wasabithumb.jarstrap.jar.ZipFormat.*;
+
+/**
+ * <p>
+ *     An index of a JAR file, built from a single read of its central directory. Alongside the entries, the index
+ *     holds the manifest, whether the JAR is Multi-Release and the class file version of the main class, which are
+ *     read while the file is open.
+ * </p>
+ * <p>
+ *     The index is a snapshot: it is invalidated by any change to the file, after which a new index should be read.
+ *     Entry contents are read through a {@link Reader}, which may be shared between threads.
+ * </p>
+ */
+@ApiStatus.Internal
+public final class JarIndex {
+
+    public static final String MANIFEST_NAME = "META-INF/MANIFEST.MF";
+    private static final int MAX_END_SEARCH = END_SIZE + 0xFFFF;
+    private static final int CLASS_MAGIC = 0xCAFEBABE;
+
+    /**
+     * Reads the index of the given file
+     * @throws ZipException The file is not a valid ZIP archive
+     */
+    public static @NotNull JarIndex read(@NotNull Path file) throws IOException {
+        try (FileChannel fc = FileChannel.open(file, StandardOpenOption.READ)) {
+            return read0(file, fc);
+        }
+    }
+
+    private static @NotNull JarIndex read0(@NotNull Path file, @NotNull FileChannel fc) throws IOException {
+        final long fileSize = fc.size();
+        final int tailSize = (int) Math.min(fileSize, MAX_END_SEARCH);
+        final ByteBuffer tail = ByteBuffer.allocate(tailSize).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(fc, tail, fileSize - tailSize);
+
+        int endPos = -1;
+        for (int i = tailSize - END_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_SIG && i + END_SIZE + u16(tail, i + 20) <= tailSize) {
+                endPos = i;
+                break;
+            }
+        }
+        if (endPos == -1) throw new ZipException("End of central directory not found in \"" + file + "\"");
+        final long endOffset = fileSize - tailSize + endPos;
+
+        long count = u16(tail, endPos + 10);
+        long cdSize = u32(tail, endPos + 12);
+        long cdOffset = u32(tail, endPos + 16);
+        long cdEnd = endOffset;
+
+        if (endOffset >= ZIP64_LOCATOR_SIZE) {
+            final ByteBuffer locator = ByteBuffer.allocate(ZIP64_LOCATOR_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(fc, locator, endOffset - ZIP64_LOCATOR_SIZE);
+            if (locator.getInt(0) == ZIP64_LOCATOR_SIG) {
+                final ByteBuffer end64 = ByteBuffer.allocate(ZIP64_END_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                readFully(fc, end64, locator.getLong(8));
+                if (end64.getInt(0) != ZIP64_END_SIG)
+                    throw new ZipException("Invalid ZIP64 end of central directory in \"" + file + "\"");
+                count = end64.getLong(32);
+                cdSize = end64.getLong(40);
+                cdOffset = end64.getLong(48);
+                cdEnd = locator.getLong(8);
+            }
+        }
+
+        // Data may be prepended to the archive (e.g. a launcher script), in which case offsets are shifted
+        final long base = cdEnd - cdSize - cdOffset;
+        if (base < 0L || cdSize > Integer.MAX_VALUE)
+            throw new ZipException("Invalid central directory bounds in \"" + file + "\"");
+
+        final ByteBuffer cd = ByteBuffer.allocate((int) cdSize).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(fc, cd, base + cdOffset);
+
+        final List<Entry> entries = new ArrayList<>((int) Math.min(count, 1 << 16));
+        final Map<String, Entry> byName = new HashMap<>((int) Math.min(count, 1 << 16) * 4 / 3 + 1);
+        int pos = 0;
+        while (pos + CENTRAL_HEADER_SIZE <= cdSize) {
+            if (cd.getInt(pos) != CENTRAL_HEADER_SIG)
+                throw new ZipException("Invalid central directory header at offset " + (cdOffset + pos) + " in \"" + file + "\"");
+            final int nameLen = u16(cd, pos + 28);
+            final int extraLen = u16(cd, pos + 30);
+            final int commentLen = u16(cd, pos + 32);
+            if (pos + CENTRAL_HEADER_SIZE + nameLen + extraLen + commentLen > cdSize)
+                throw new ZipException("Truncated central directory in \"" + file + "\"");
+
+            final byte[] rawName = new byte[nameLen];
+            cd.get(pos + CENTRAL_HEADER_SIZE, rawName);
+            long compressedSize = u32(cd, pos + 20);
+            long size = u32(cd, pos + 24);
+            long offset = u32(cd, pos + 42);
+
+            // Strip the ZIP64 field, which is regenerated by the writer when needed
+            final int extraStart = pos + CENTRAL_HEADER_SIZE + nameLen;
+            final ByteBuffer extraOut = ByteBuffer.allocate(extraLen);
+            int e = extraStart;
+            while (e + 4 <= extraStart + extraLen) {
+                final int id = u16(cd, e);
+                final int len = u16(cd, e + 2);
+                if (e + 4 + len > extraStart + extraLen) break;
+                if (id == ZIP64_EXTRA_ID) {
+                    // Only the fields which overflowed are present, in this order
+                    final int zEnd = e + 4 + len;
+                    int z = e + 4;
+                    if (size == MAX_U32 && z + 8 <= zEnd) {
+                        size = cd.getLong(z);
+                        z += 8;
+                    }
+                    if (compressedSize == MAX_U32 && z + 8 <= zEnd) {
+                        compressedSize = cd.getLong(z);
+                        z += 8;
+                    }
+                    if (offset == MAX_U32 && z + 8 <= zEnd) offset = cd.getLong(z);
+                } else {
+                    extraOut.put(cd.slice(e, 4 + len));
+                }
+                e += 4 + len;
+            }
+            final byte[] extra = Arrays.copyOf(extraOut.array(), extraOut.position());
+
+            final byte[] comment = new byte[commentLen];
+            cd.get(extraStart + extraLen, comment);
+
+            final Entry entry = new Entry(
+                    new String(rawName, StandardCharsets.UTF_8),
+                    rawName,
+                    u16(cd, pos + 4),
+                    u16(cd, pos + 8),
+                    u16(cd, pos + 10),
+                    cd.getInt(pos + 12),
+                    u32(cd, pos + 16),
+                    compressedSize,
+                    size,
+                    base + offset,
+                    cd.getInt(pos + 38),
+                    extra,
+                    comment
+            );
+            entries.add(entry);
+            byName.putIfAbsent(entry.name(), entry);
+            pos += CENTRAL_HEADER_SIZE + nameLen + extraLen + commentLen;
+        }
+
+        final JarIndex ret = new JarIndex(file, Collections.unmodifiableList(entries), byName, fileSize);
+        ret.readMetadata(fc);
+        return ret;
+    }
+
+    //
+
+    private final Path file;
+    private final List<Entry> entries;
+    private final Map<String, Entry> byName;
+    private final long fileSize;
+    private byte[] manifestBytes = null;
+    private ManifestFile manifest = null;
+    private boolean multiRelease = false;
+    private int mainClassMajor = -1;
+
+    private JarIndex(@NotNull Path file, @NotNull List<Entry> entries, @NotNull Map<String, Entry> byName, long fileSize) {
+        this.file = file;
+        this.entries = entries;
+        this.byName = byName;
+        this.fileSize = fileSize;
+    }
+
+    private void readMetadata(@NotNull FileChannel fc) throws IOException {
+        final Entry mfEntry = this.byName.get(MANIFEST_NAME);
+        if (mfEntry == null) return;
+        this.manifestBytes = readAllBytes(fc, mfEntry);
+        this.manifest = new ManifestFile();
+        this.manifest.read(this.manifestBytes);
+        this.multiRelease = "true".equalsIgnoreCase(this.manifest.get("Multi-Release"));
+
+        final String mainClass = this.manifest.get("Main-Class");
+        if (mainClass == null) return;
+        final Entry mainEntry = this.byName.get(classEntryName(mainClass));
+        if (mainEntry == null) return;
+        this.mainClassMajor = classMajor(readPrefix(fc, mainEntry, 8));
+    }
+
+    /**
+     * The path of the indexed file
+     */
+    public @NotNull Path file() {
+        return this.file;
+    }
+
+    /**
+     * The size of the file when it was indexed
+     */
+    public long fileSize() {
+        return this.fileSize;
+    }
+
+    /**
+     * Every entry, in central directory order
+     */
+    public @NotNull @Unmodifiable List<Entry> entries() {
+        return this.entries;
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+
+    public @Nullable Entry get(@NotNull String name) {
+        return this.byName.get(name);
+    }
+
+    /**
+     * The raw bytes of {@code META-INF/MANIFEST.MF}, or null if the JAR has no manifest
+     */
+    public byte @Nullable [] manifestBytes() {
+        return this.manifestBytes == null ? null : this.manifestBytes.clone();
+    }
+
+    /**
+     * A fresh copy of the parsed manifest, or null if the JAR has no manifest
+     */
+    public @Nullable ManifestFile manifest() throws IOException {
+        if (this.manifestBytes == null) return null;
+        final ManifestFile ret = new ManifestFile();
+        ret.read(this.manifestBytes);
+        return ret;
+    }
+
+    /**
+     * The {@code Main-Class} named by the manifest, or null
+     */
+    public @Nullable String mainClass() {
+        return this.manifest == null ? null : this.manifest.get("Main-Class");
+    }
+
+    /**
+     * True if the manifest declares {@code Multi-Release: true}
+     */
+    public boolean isMultiRelease() {
+        return this.multiRelease;
+    }
+
+    /**
+     * The class file major version of the {@link #mainClass() main class}, or -1 if it is not present or has a
+     * corrupted header
+     */
+    public int mainClassMajor() {
+        return this.mainClassMajor;
+    }
+
+    /**
+     * Opens the file to read entry contents
+     */
+    public @NotNull Reader open() throws IOException {
+        return new Reader(FileChannel.open(this.file, StandardOpenOption.READ));
+    }
+
+    //
+
+    /**
+     * Converts a binary class name (e.g. {@code a.b.Main}) to the name of its entry
+     */
+    public static @NotNull String classEntryName(@NotNull String className) {
+        return className.replace('.', '/') + ".class";
+    }
+
+    /**
+     * Returns the major version from the first 8 bytes of a class file, or -1 if the header is not valid
+     */
+    public static int classMajor(byte @NotNull [] header) {
+        if (header.length < 8) return -1;
+        final ByteBuffer buf = ByteBuffer.wrap(header);
+        if (buf.getInt(0) != CLASS_MAGIC) return -1;
+        return buf.getShort(6) & 0xFFFF;
+    }
+
+    private static long dataOffset(@NotNull FileChannel fc, @NotNull Entry entry) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(fc, header, entry.localHeaderOffset());
+        if (header.getInt(0) != LOCAL_HEADER_SIG)
+            throw new ZipException("Invalid local header for entry \"" + entry.name() + "\"");
+        return entry.localHeaderOffset() + LOCAL_HEADER_SIZE + u16(header, 26) + u16(header, 28);
+    }
+
+    private static @NotNull InputStream open(@NotNull FileChannel fc, @NotNull Entry entry, int bufferSize) throws IOException {
+        final InputStream raw = new RegionInputStream(fc, dataOffset(fc, entry), entry.compressedSize());
+        return switch (entry.method()) {
+            case METHOD_STORED -> raw;
+            case METHOD_DEFLATED -> new EntryInflaterStream(raw, bufferSize);
+            default -> throw new ZipException("Unsupported compression method " + entry.method() +
+                    " for entry \"" + entry.name() + "\"");
+        };
+    }
+
+    private static byte @NotNull [] readAllBytes(@NotNull FileChannel fc, @NotNull Entry entry) throws IOException {
+        if (entry.size() > Integer.MAX_VALUE - 8)
+            throw new IOException("Entry \"" + entry.name() + "\" is too large to read into memory");
+        try (InputStream is = open(fc, entry, 8192)) {
+            return is.readNBytes((int) entry.size());
+        }
+    }
+
+    private static byte @NotNull [] readPrefix(@NotNull FileChannel fc, @NotNull Entry entry, int length) throws IOException {
+        final int bufferSize = (int) Math.max(1L, Math.min(entry.compressedSize(), 512L));
+        try (InputStream is = open(fc, entry, bufferSize)) {
+            return is.readNBytes(length);
+        }
+    }
+
+    //
+
+    /**
+     * An entry as recorded in the central directory
+     * @param rawName The name as stored in the archive
+     * @param dosTime The modification time in MS-DOS format
+     * @param localHeaderOffset The absolute offset of the local header within the file
+     * @param extra The extra field, excluding any ZIP64 field
+     */
+    public record Entry(
+            @NotNull String name,
+            byte @NotNull [] rawName,
+            int versionMadeBy,
+            int flags,
+            int method,
+            int dosTime,
+            long crc,
+            long compressedSize,
+            long size,
+            long localHeaderOffset,
+            int externalAttributes,
+            byte @NotNull [] extra,
+            byte @NotNull [] comment
+    ) {
+
+        public boolean isDirectory() {
+            return this.name.endsWith("/");
+        }
+
+        /**
+         * The modification time in milliseconds since the epoch
+         */
+        public long lastModified() {
+            return dosToJavaTime(this.dosTime);
+        }
+
+    }
+
+    /**
+     * Reads entry contents through positional reads on a single channel, so it may be used from several threads
+     * at once
+     */
+    public static final class Reader implements Closeable {
+
+        private final FileChannel channel;
+
+        private Reader(@NotNull FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Opens a stream of the uncompressed contents of an entry
+         */
+        public @NotNull InputStream open(@NotNull Entry entry) throws IOException {
+            return JarIndex.open(this.channel, entry, 8192);
+        }
+
+        public byte @NotNull [] readAllBytes(@NotNull Entry entry) throws IOException {
+            return JarIndex.readAllBytes(this.channel, entry);
+        }
+
+        /**
+         * Reads up to {@code length} bytes from the start of an entry, inflating as little as possible
+         */
+        public byte @NotNull [] readPrefix(@NotNull Entry entry, int length) throws IOException {
+            return JarIndex.readPrefix(this.channel, entry, length);
+        }
+
+        /**
+         * Transfers the compressed data of an entry, as stored in the archive, to the given channel
+         */
+        public void transferRaw(@NotNull Entry entry, @NotNull WritableByteChannel out) throws IOException {
+            long pos = dataOffset(this.channel, entry);
+            long remaining = entry.compressedSize();
+            while (remaining > 0L) {
+                final long n = this.channel.transferTo(pos, remaining, out);
+                if (n <= 0L) {
+                    if (pos >= this.channel.size())
+                        throw new ZipException("Truncated data for entry \"" + entry.name() + "\"");
+                    continue;
+                }
+                pos += n;
+                remaining -= n;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.channel.close();
+        }
+
+    }
+
+    /**
+     * Ends its inflater when closed, and supplies the trailing dummy byte that a raw inflater may need to finish
+     */
+    private static final class EntryInflaterStream extends InflaterInputStream {
+
+        private boolean eof = false;
+
+        EntryInflaterStream(@NotNull InputStream in, int bufferSize) {
+            super(in, new Inflater(true), bufferSize);
+        }
+
+        @Override
+        protected void fill() throws IOException {
+            if (this.eof) throw new EOFException("Unexpected end of deflated entry");
+            this.len = this.in.read(this.buf, 0, this.buf.length);
+            if (this.len == -1) {
+                this.buf[0] = 0;
+                this.len = 1;
+                this.eof = true;
+            }
+            this.inf.setInput(this.buf, 0, this.len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            this.inf.end();
+        }
+
+    }
+
+    private static final class RegionInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private long position;
+        private long remaining;
+
+        RegionInputStream(@NotNull FileChannel channel, long position, long length) {
+            this.channel = channel;
+            this.position = position;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            return this.read(b, 0, 1) == -1 ? -1 : (b[0] & 0xFF);
+        }
+
+        @Override
+        public int read(byte @NotNull [] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (this.remaining <= 0L) return -1;
+            final ByteBuffer buf = ByteBuffer.wrap(b, off, (int) Math.min(len, this.remaining));
+            final int n = this.channel.read(buf, this.position);
+            if (n < 0) return -1;
+            this.position += n;
+            this.remaining -= n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(this.remaining, Integer.MAX_VALUE);
+        }
+
+    }
+
+}
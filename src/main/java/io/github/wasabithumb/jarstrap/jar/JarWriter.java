@@ -0,0 +1,389 @@
+package io.github.wasabithumb.jarstrap.jar;
+
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+import static io.github.wasabithumb.jarstrap.jar.ZipFormat.*;
+
+/**
+ * <p>
+ *     Writes a JAR file, either by copying entries from an indexed JAR as they are stored (without inflating or
+ *     deflating them) or by adding new entries. Local headers are rewritten from the central directory of the
+ *     source, so copied entries never carry data descriptors.
+ * </p>
+ * <p>
+ *     ZIP64 structures are written when the archive has more than 65535 entries or exceeds 4 GiB. Individual entries
+ *     of 4 GiB or more are not supported.
+ * </p>
+ * <p>
+ *     For reproducible output, {@link #fixTime(long)} replaces the modification time of every entry, and
+ *     {@link #CANONICAL_ORDER} gives an order which does not depend on how the source was written.
+ * </p>
+ */
+@ApiStatus.Internal
+public final class JarWriter implements Closeable {
+
+    private static final int VERSION_DEFAULT = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final String META_INF = "META-INF/";
+
+    /**
+     * Orders {@code META-INF/} and the manifest first, as {@link java.util.jar.JarInputStream} expects, then every
+     * other entry by name
+     */
+    public static final Comparator<JarIndex.Entry> CANONICAL_ORDER = Comparator
+            .comparingInt((JarIndex.Entry e) -> e.name().equals(META_INF) ? 0 : e.name().equals(JarIndex.MANIFEST_NAME) ? 1 : 2)
+            .thenComparing(JarIndex.Entry::name);
+
+    /**
+     * Removes the extra fields which record times (extended timestamp, NTFS &amp; the old Info-ZIP Unix field)
+     */
+    private static byte @NotNull [] stripTimes(byte @NotNull [] extra) {
+        final ByteBuffer in = ByteBuffer.wrap(extra).order(ByteOrder.LITTLE_ENDIAN);
+        final ByteBuffer out = ByteBuffer.allocate(extra.length).order(ByteOrder.LITTLE_ENDIAN);
+        while (in.remaining() >= 4) {
+            final int start = in.position();
+            final int id = in.getShort() & 0xFFFF;
+            final int size = in.getShort() & 0xFFFF;
+            // Leave malformed fields as they are
+            if (size > in.remaining()) return extra;
+            in.position(in.position() + size);
+            if (id == EXTENDED_TIMESTAMP_EXTRA_ID || id == NTFS_EXTRA_ID || id == INFO_ZIP_UNIX_EXTRA_ID) continue;
+            out.put(extra, start, 4 + size);
+        }
+        if (out.position() == extra.length) return extra;
+        final byte[] ret = new byte[out.position()];
+        out.flip().get(ret);
+        return ret;
+    }
+
+    /**
+     * Writes a new version of an indexed JAR in place of the file it was read from. The new version is written to a
+     * temporary file next to it, which then replaces the file; if writing fails, the temporary file is deleted and
+     * the JAR is left as it was. A link is replaced by the new file rather than written through.
+     * @return The index of the new version
+     */
+    public static @NotNull JarIndex replace(@NotNull JarIndex index, @NotNull Content content) throws IOException {
+        final Path file = index.file();
+        final Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (JarIndex.Reader reader = index.open();
+             JarWriter writer = new JarWriter(temp)
+        ) {
+            content.write(reader, writer);
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException e1) {
+                e.addSuppressed(e1);
+            }
+            throw e;
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        return JarIndex.read(file);
+    }
+
+    //
+
+    private final FileChannel out;
+    private final List<Central> central = new ArrayList<>();
+    private final Set<String> names = new HashSet<>();
+    private boolean finished = false;
+    private boolean timeFixed = false;
+    private int fixedDosTime = 0;
+
+    public JarWriter(@NotNull Path file) throws IOException {
+        this.out = FileChannel.open(
+                file,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE
+        );
+    }
+
+    /**
+     * Writes every following entry with the given modification time in place of its own, and without the extra
+     * fields which record times. The time is converted in UTC, so that the output does not depend on the time zone.
+     * @param time The modification time in milliseconds since the epoch
+     */
+    public void fixTime(long time) {
+        this.timeFixed = true;
+        this.fixedDosTime = javaToDosTime(time, ZoneOffset.UTC);
+    }
+
+    /**
+     * True if an entry with the given name has been written
+     */
+    public boolean contains(@NotNull String name) {
+        return this.names.contains(name);
+    }
+
+    /**
+     * Copies an entry as it is stored in the source
+     * @return False if an entry with the same name was already written, in which case nothing is copied
+     */
+    public boolean copy(@NotNull JarIndex.Reader reader, @NotNull JarIndex.Entry entry) throws IOException {
+        return this.copy(reader, entry, entry.dosTime());
+    }
+
+    /**
+     * Copies an entry as it is stored in the source, replacing its modification time
+     * @param dosTime The modification time in MS-DOS format
+     * @see #copy(JarIndex.Reader, JarIndex.Entry)
+     */
+    boolean copy(@NotNull JarIndex.Reader reader, @NotNull JarIndex.Entry entry, int dosTime) throws IOException {
+        if (!this.names.add(entry.name())) return false;
+        final Central c = new Central(
+                entry.rawName(),
+                entry.versionMadeBy(),
+                entry.flags() & ~FLAG_DATA_DESCRIPTOR,
+                entry.method(),
+                this.timeFixed ? this.fixedDosTime : dosTime,
+                entry.crc(),
+                entry.compressedSize(),
+                entry.size(),
+                this.out.position(),
+                entry.externalAttributes(),
+                this.timeFixed ? stripTimes(entry.extra()) : entry.extra(),
+                entry.comment()
+        );
+        this.writeLocalHeader(c, entry.name());
+        reader.transferRaw(entry, this.out);
+        this.central.add(c);
+        return true;
+    }
+
+    /**
+     * Adds a file, compressing it unless it is empty
+     * @param time The modification time in milliseconds since the epoch
+     * @return False if an entry with the same name was already written, in which case nothing is added
+     */
+    public boolean add(@NotNull String name, byte @NotNull [] data, long time) throws IOException {
+        return this.add0(name, data, javaToDosTime(time));
+    }
+
+    /**
+     * Adds a directory, the name of which should end with {@code /}
+     * @see #add(String, byte[], long)
+     */
+    public boolean addDirectory(@NotNull String name, long time) throws IOException {
+        return this.add0(name.endsWith("/") ? name : name + "/", new byte[0], javaToDosTime(time));
+    }
+
+    boolean add0(@NotNull String name, byte @NotNull [] data, int dosTime) throws IOException {
+        if (!this.names.add(name)) return false;
+
+        final CRC32 crc = new CRC32();
+        crc.update(data);
+
+        byte[] stored = data;
+        int method = METHOD_STORED;
+        if (data.length != 0) {
+            final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            try {
+                deflater.setInput(data);
+                deflater.finish();
+                final byte[] buf = new byte[Math.max(64, data.length + (data.length >> 3) + 64)];
+                int len = 0;
+                while (!deflater.finished()) {
+                    if (len == buf.length) throw new AssertionError("Deflate output exceeded bound");
+                    len += deflater.deflate(buf, len, buf.length - len);
+                }
+                if (len < data.length) {
+                    stored = new byte[len];
+                    System.arraycopy(buf, 0, stored, 0, len);
+                    method = METHOD_DEFLATED;
+                }
+            } finally {
+                deflater.end();
+            }
+        }
+
+        final Central c = new Central(
+                name.getBytes(StandardCharsets.UTF_8),
+                VERSION_DEFAULT,
+                FLAG_UTF8,
+                method,
+                this.timeFixed ? this.fixedDosTime : dosTime,
+                crc.getValue(),
+                stored.length,
+                data.length,
+                this.out.position(),
+                0,
+                new byte[0],
+                new byte[0]
+        );
+        this.writeLocalHeader(c, name);
+        this.writeFully(ByteBuffer.wrap(stored));
+        this.central.add(c);
+        return true;
+    }
+
+    //
+
+    private void writeLocalHeader(@NotNull Central c, @NotNull String name) throws IOException {
+        if (c.compressedSize >= MAX_U32 || c.size >= MAX_U32)
+            throw new ZipException("Entry \"" + name + "\" is too large (4 GiB or more)");
+
+        final ByteBuffer buf = ByteBuffer.allocate(LOCAL_HEADER_SIZE + c.rawName.length + c.extra.length)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(LOCAL_HEADER_SIG);
+        buf.putShort((short) VERSION_DEFAULT);
+        buf.putShort((short) c.flags);
+        buf.putShort((short) c.method);
+        buf.putInt(c.dosTime);
+        buf.putInt((int) c.crc);
+        buf.putInt((int) c.compressedSize);
+        buf.putInt((int) c.size);
+        buf.putShort((short) c.rawName.length);
+        buf.putShort((short) c.extra.length);
+        buf.put(c.rawName);
+        buf.put(c.extra);
+        buf.flip();
+        this.writeFully(buf);
+    }
+
+    /**
+     * Writes the central directory. Called by {@link #close()} if not called explicitly.
+     */
+    public void finish() throws IOException {
+        if (this.finished) return;
+        this.finished = true;
+
+        final long cdStart = this.out.position();
+        for (Central c : this.central) this.writeCentralHeader(c);
+        final long cdEnd = this.out.position();
+        final long cdSize = cdEnd - cdStart;
+        final long count = this.central.size();
+
+        final boolean zip64 = count >= MAX_U16 || cdStart >= MAX_U32 || cdSize >= MAX_U32;
+        if (zip64) {
+            final ByteBuffer buf = ByteBuffer.allocate(ZIP64_END_SIZE + ZIP64_LOCATOR_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            buf.putInt(ZIP64_END_SIG);
+            buf.putLong(ZIP64_END_SIZE - 12);
+            buf.putShort((short) VERSION_ZIP64);
+            buf.putShort((short) VERSION_ZIP64);
+            buf.putInt(0);
+            buf.putInt(0);
+            buf.putLong(count);
+            buf.putLong(count);
+            buf.putLong(cdSize);
+            buf.putLong(cdStart);
+
+            buf.putInt(ZIP64_LOCATOR_SIG);
+            buf.putInt(0);
+            buf.putLong(cdEnd);
+            buf.putInt(1);
+            buf.flip();
+            this.writeFully(buf);
+        }
+
+        final ByteBuffer buf = ByteBuffer.allocate(END_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(END_SIG);
+        buf.putShort((short) 0);
+        buf.putShort((short) 0);
+        buf.putShort((short) Math.min(count, MAX_U16));
+        buf.putShort((short) Math.min(count, MAX_U16));
+        buf.putInt((int) Math.min(cdSize, MAX_U32));
+        buf.putInt((int) Math.min(cdStart, MAX_U32));
+        buf.putShort((short) 0);
+        buf.flip();
+        this.writeFully(buf);
+    }
+
+    private void writeCentralHeader(@NotNull Central c) throws IOException {
+        final boolean zip64 = c.offset >= MAX_U32;
+        final int extraLength = c.extra.length + (zip64 ? 12 : 0);
+        final ByteBuffer buf = ByteBuffer.allocate(CENTRAL_HEADER_SIZE + c.rawName.length + extraLength + c.comment.length)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(CENTRAL_HEADER_SIG);
+        buf.putShort((short) c.versionMadeBy);
+        buf.putShort((short) (zip64 ? VERSION_ZIP64 : VERSION_DEFAULT));
+        buf.putShort((short) c.flags);
+        buf.putShort((short) c.method);
+        buf.putInt(c.dosTime);
+        buf.putInt((int) c.crc);
+        buf.putInt((int) c.compressedSize);
+        buf.putInt((int) c.size);
+        buf.putShort((short) c.rawName.length);
+        buf.putShort((short) extraLength);
+        buf.putShort((short) c.comment.length);
+        buf.putShort((short) 0);
+        buf.putShort((short) 0);
+        buf.putInt(c.externalAttributes);
+        buf.putInt((int) (zip64 ? MAX_U32 : c.offset));
+        buf.put(c.rawName);
+        if (zip64) {
+            buf.putShort((short) ZIP64_EXTRA_ID);
+            buf.putShort((short) 8);
+            buf.putLong(c.offset);
+        }
+        buf.put(c.extra);
+        buf.put(c.comment);
+        buf.flip();
+        this.writeFully(buf);
+    }
+
+    private void writeFully(@NotNull ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) this.out.write(buf);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            this.finish();
+        } finally {
+            this.out.close();
+        }
+    }
+
+    //
+
+    /**
+     * Writes the entries of a new version of a JAR, see {@link #replace(JarIndex, Content)}
+     */
+    @FunctionalInterface
+    public interface Content {
+
+        /**
+         * @param reader Reads the entries of the current version
+         */
+        void write(@NotNull JarIndex.Reader reader, @NotNull JarWriter writer) throws IOException;
+
+    }
+
+    private record Central(
+            byte @NotNull [] rawName,
+            int versionMadeBy,
+            int flags,
+            int method,
+            int dosTime,
+            long crc,
+            long compressedSize,
+            long size,
+            long offset,
+            int externalAttributes,
+            byte @NotNull [] extra,
+            byte @NotNull [] comment
+    ) { }
+
+}
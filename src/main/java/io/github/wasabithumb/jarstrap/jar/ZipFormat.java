@@ -0,0 +1,103 @@
+package io.github.wasabithumb.jarstrap.jar;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+/**
+ * Constants &amp; helpers for the ZIP file format, see APPNOTE.TXT
+ */
+final class ZipFormat {
+
+    static final int LOCAL_HEADER_SIG = 0x04034b50;
+    static final int CENTRAL_HEADER_SIG = 0x02014b50;
+    static final int END_SIG = 0x06054b50;
+    static final int ZIP64_END_SIG = 0x06064b50;
+    static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+
+    static final int LOCAL_HEADER_SIZE = 30;
+    static final int CENTRAL_HEADER_SIZE = 46;
+    static final int END_SIZE = 22;
+    static final int ZIP64_END_SIZE = 56;
+    static final int ZIP64_LOCATOR_SIZE = 20;
+    static final int ZIP64_EXTRA_ID = 0x0001;
+    static final int NTFS_EXTRA_ID = 0x000A;
+    static final int EXTENDED_TIMESTAMP_EXTRA_ID = 0x5455;
+    static final int INFO_ZIP_UNIX_EXTRA_ID = 0x5855;
+
+    static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+    static final int FLAG_UTF8 = 0x0800;
+
+    static final int METHOD_STORED = 0;
+    static final int METHOD_DEFLATED = 8;
+
+    static final long MAX_U16 = 0xFFFFL;
+    static final long MAX_U32 = 0xFFFFFFFFL;
+
+    /**
+     * The earliest time a DOS timestamp can hold, 1980-01-01T00:00 local time
+     */
+    static final int DOS_EPOCH = (1 << 21) | (1 << 16);
+
+    private ZipFormat() { }
+
+    //
+
+    static long dosToJavaTime(int dos) {
+        final LocalDateTime ldt = LocalDateTime.of(
+                ((dos >>> 25) & 0x7F) + 1980,
+                Math.max(1, Math.min(12, (dos >>> 21) & 0x0F)),
+                Math.max(1, Math.min(31, (dos >>> 16) & 0x1F)),
+                Math.min(23, (dos >>> 11) & 0x1F),
+                Math.min(59, (dos >>> 5) & 0x3F),
+                Math.min(59, (dos << 1) & 0x3E)
+        );
+        try {
+            return ldt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (RuntimeException e) {
+            return -1L;
+        }
+    }
+
+    static int javaToDosTime(long time) {
+        return javaToDosTime(time, ZoneId.systemDefault());
+    }
+
+    static int javaToDosTime(long time, @NotNull ZoneId zone) {
+        final ZonedDateTime zdt = ZonedDateTime.ofInstant(Instant.ofEpochMilli(time), zone);
+        final int year = zdt.getYear();
+        if (year < 1980) return DOS_EPOCH;
+        if (year > 2107) return (127 << 25) | (12 << 21) | (31 << 16) | (23 << 11) | (59 << 5) | 29;
+        return ((year - 1980) << 25) |
+                (zdt.getMonthValue() << 21) |
+                (zdt.getDayOfMonth() << 16) |
+                (zdt.getHour() << 11) |
+                (zdt.getMinute() << 5) |
+                (zdt.getSecond() >> 1);
+    }
+
+    static void readFully(@NotNull FileChannel fc, @NotNull ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            final int n = fc.read(buf, position);
+            if (n < 0) throw new EOFException("Unexpected end of archive at offset " + position);
+            position += n;
+        }
+        buf.flip();
+    }
+
+    static int u16(@NotNull ByteBuffer buf, int index) {
+        return buf.getShort(index) & 0xFFFF;
+    }
+
+    static long u32(@NotNull ByteBuffer buf, int index) {
+        return buf.getInt(index) & MAX_U32;
+    }
+
+}
@@ -2,116 +2,238 @@ package io.github.wasabithumb.jarstrap.manifest;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.UnmodifiableView;
 
 import java.io.*;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.SortedMap;
-import java.util.TreeMap;
-
+import java.util.Set;
+
+/**
+ * <p>
+ *     A JAR manifest, consisting of the main section and any number of named sections. {@link #get(String)},
+ *     {@link #put(String, String)} &amp; {@link #remove(String)} operate on the {@link #main() main section}.
+ * </p>
+ * <p>
+ *     Manifests are read &amp; written as bytes per the
+ *     <a href="https://docs.oracle.com/en/java/javase/21/docs/specs/jar/jar.html#jar-manifest">JAR specification</a>:
+ *     continuation lines are joined when reading, and lines are wrapped at 72 bytes (never within a multibyte
+ *     character) when writing.
+ * </p>
+ */
 public class ManifestFile {
 
-    private final SortedMap<String, String> map = new TreeMap<>();
+    private static final String VERSION = "Manifest-Version";
+    private static final String SECTION_NAME = "Name";
+    private static final int MAX_LINE_BYTES = 72;
+    private static final byte[] NEWLINE = new byte[] { '\r', '\n' };
+    private static final byte[] SEPARATOR = new byte[] { ':', ' ' };
+
+    private final ManifestSection main = new ManifestSection();
+    private final Map<String, ManifestSection> sections = new LinkedHashMap<>();
 
     //
 
-    public @Nullable String get(@NotNull String key) {
-        String value = this.map.get(key);
-        if (value != null) return value;
+    /**
+     * The main section, which holds attributes such as {@code Main-Class}
+     * @since 0.3.0
+     */
+    public @NotNull ManifestSection main() {
+        return this.main;
+    }
 
-        for (Map.Entry<String, String> entry : map.entrySet()) {
-            if (key.equalsIgnoreCase(entry.getKey()))
-                return entry.getValue();
-        }
+    /**
+     * Returns the section with the given name (usually the path of an entry), or null if there is none
+     * @since 0.3.0
+     */
+    public @Nullable ManifestSection section(@NotNull String name) {
+        return this.sections.get(name);
+    }
 
-        return null;
+    /**
+     * Returns the section with the given name, adding an empty one if there is none
+     * @since 0.3.0
+     */
+    public @NotNull ManifestSection sectionOrCreate(@NotNull String name) {
+        return this.sections.computeIfAbsent(name, (String k) -> new ManifestSection());
     }
 
-    public void put(@NotNull String key, @NotNull String value) {
-        this.map.put(key, value);
+    /**
+     * @return True if the section was present
+     * @since 0.3.0
+     */
+    public boolean removeSection(@NotNull String name) {
+        return this.sections.remove(name) != null;
     }
 
-    public void remove(@NotNull String key) {
-        this.map.remove(key);
+    /**
+     * The names of the named sections, in order
+     * @since 0.3.0
+     */
+    public @NotNull @UnmodifiableView Set<String> sectionNames() {
+        return Collections.unmodifiableSet(this.sections.keySet());
     }
 
-    public void read(@NotNull InputStream in) throws IOException {
-        try (Reader r = new InputStreamReader(in, StandardCharsets.UTF_8);
-             BufferedReader br = new BufferedReader(r, 256)
-        ) {
-            String line;
-            int head = 0;
-            while ((line = br.readLine()) != null) {
-                this.useLine(line, ++head);
-            }
-        }
+    public @Nullable String get(@NotNull String key) {
+        return this.main.get(key);
     }
 
-    private void useLine(@NotNull String line, int index) throws IOException {
-        final int len = line.length();
-        if (len == 0) return;
+    /**
+     * @return True if the manifest changed as a result
+     * @see ManifestSection#put(String, String)
+     */
+    public boolean put(@NotNull String key, @NotNull String value) {
+        return this.main.put(key, value);
+    }
 
-        int whereSep = line.indexOf(':');
-        if (whereSep == -1)
-            throw new IOException("Invalid entry @ line #" + index + " of manifest");
+    /**
+     * @return True if the attribute was present
+     */
+    public boolean remove(@NotNull String key) {
+        return this.main.remove(key);
+    }
 
-        int whereValue = whereSep + 1;
-        while (whereValue < len && Character.isWhitespace(line.charAt(whereValue))) {
-            whereValue++;
-        }
+    //
+
+    /**
+     * Reads a manifest, adding its attributes &amp; sections to this one. The stream is not closed.
+     */
+    public void read(@NotNull InputStream in) throws IOException {
+        this.read(in.readAllBytes());
+    }
 
-        this.map.put(
-                line.substring(0, whereSep),
-                line.substring(whereValue, len)
-        );
+    /**
+     * @since 0.3.0
+     * @see #read(InputStream)
+     */
+    public void read(byte @NotNull [] data) throws IOException {
+        final Parser parser = new Parser();
+        int lineNumber = 0;
+        int pos = 0;
+        while (pos < data.length) {
+            // CR, LF & CRLF are all accepted as line endings
+            int end = pos;
+            while (end < data.length && data[end] != '\r' && data[end] != '\n') end++;
+            parser.line(data, pos, end, ++lineNumber);
+
+            pos = end + 1;
+            if (end < data.length && data[end] == '\r' && pos < data.length && data[pos] == '\n') pos++;
+        }
+        parser.flush();
     }
 
+    /**
+     * Writes the manifest. {@code Manifest-Version} is always written first when present. The stream is not
+     * closed.
+     */
     public void write(@NotNull OutputStream os) throws IOException {
-        try (Writer w = new OutputStreamWriter(os, StandardCharsets.UTF_8);
-             BufferedWriter bw = new BufferedWriter(w)
-        ) {
-            for (Map.Entry<String, String> entry : this.map.entrySet()) {
-                bw.write(entry.getKey());
-                bw.write(": ");
-                bw.write(entry.getValue());
-                bw.write('\n');
-            }
-        }
+        os.write(this.toByteArray());
         os.flush();
     }
 
-    public byte[] md5() {
-        if (this.map.isEmpty()) return new byte[16];
-
-        MessageDigest md;
-        try {
-            md = MessageDigest.getInstance("MD5");
-        } catch (NoSuchAlgorithmException e) {
-            throw new AssertionError("MD5 algorithm not available", e);
+    /**
+     * @since 0.3.0
+     * @see #write(OutputStream)
+     */
+    public byte @NotNull [] toByteArray() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        final String version = this.main.get(VERSION);
+        if (version != null) writeAttribute(out, VERSION, version);
+        this.main.forEach((String name, String value) -> {
+            if (!name.equalsIgnoreCase(VERSION)) writeAttribute(out, name, value);
+        });
+        out.writeBytes(NEWLINE);
+
+        for (Map.Entry<String, ManifestSection> entry : this.sections.entrySet()) {
+            writeAttribute(out, SECTION_NAME, entry.getKey());
+            entry.getValue().forEach((String name, String value) -> writeAttribute(out, name, value));
+            out.writeBytes(NEWLINE);
         }
+        return out.toByteArray();
+    }
 
-        for (Map.Entry<String, String> entry : this.map.entrySet()) {
-            this.hashString(md, entry.getKey());
-            md.update((byte) ':');
-            this.hashString(md, entry.getValue());
-            md.update((byte) '\t');
+    private static void writeAttribute(@NotNull ByteArrayOutputStream out, @NotNull String name, @NotNull String value) {
+        final byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        final byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        final byte[] line = new byte[nameBytes.length + SEPARATOR.length + valueBytes.length];
+        System.arraycopy(nameBytes, 0, line, 0, nameBytes.length);
+        System.arraycopy(SEPARATOR, 0, line, nameBytes.length, SEPARATOR.length);
+        System.arraycopy(valueBytes, 0, line, nameBytes.length + SEPARATOR.length, valueBytes.length);
+
+        int pos = 0;
+        int limit = MAX_LINE_BYTES;
+        while (line.length - pos > limit) {
+            int end = pos + limit;
+            // Back off to the start of a UTF-8 sequence
+            while (end > pos + 1 && (line[end] & 0xC0) == 0x80) end--;
+            out.write(line, pos, end - pos);
+            out.writeBytes(NEWLINE);
+            out.write(' ');
+            pos = end;
+            limit = MAX_LINE_BYTES - 1;
         }
-
-        return md.digest();
+        out.write(line, pos, line.length - pos);
+        out.writeBytes(NEWLINE);
     }
 
-    private void hashString(@NotNull MessageDigest md, @NotNull String s) {
-        ByteBuffer buf = ByteBuffer.allocate(Character.BYTES);
-        buf.order(ByteOrder.LITTLE_ENDIAN);
+    //
 
-        for (int i=0; i < s.length(); i++) {
-            buf.putChar(0, s.charAt(i));
-            md.update(buf);
+    private final class Parser {
+
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream(128);
+        private int pendingLine = 0;
+        private ManifestSection section = ManifestFile.this.main;
+        private boolean afterBlank = false;
+
+        void line(byte @NotNull [] data, int start, int end, int lineNumber) throws IOException {
+            if (start == end) {
+                this.flush();
+                this.afterBlank = true;
+            } else if (data[start] == ' ') {
+                if (this.pending.size() == 0)
+                    throw new IOException("Continuation without attribute @ line #" + lineNumber + " of manifest");
+                this.pending.write(data, start + 1, end - start - 1);
+            } else {
+                this.flush();
+                this.pending.write(data, start, end - start);
+                this.pendingLine = lineNumber;
+            }
         }
+
+        void flush() throws IOException {
+            if (this.pending.size() == 0) return;
+            final byte[] line = this.pending.toByteArray();
+            this.pending.reset();
+
+            int sep = -1;
+            for (int i=0; i < line.length; i++) {
+                if (line[i] == ':') {
+                    sep = i;
+                    break;
+                }
+            }
+            if (sep < 1) throw new IOException("Invalid entry @ line #" + this.pendingLine + " of manifest");
+            // The value follows exactly one space; any further spaces belong to it
+            int valueStart = sep + 1;
+            if (valueStart < line.length && line[valueStart] == ' ') valueStart++;
+
+            final String name = new String(line, 0, sep, StandardCharsets.UTF_8);
+            final String value = new String(line, valueStart, line.length - valueStart, StandardCharsets.UTF_8);
+            try {
+                if (this.afterBlank && name.equalsIgnoreCase(SECTION_NAME)) {
+                    this.section = ManifestFile.this.sectionOrCreate(value);
+                } else {
+                    // A stray blank line without a section header does not end the section
+                    this.section.put(name, value);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid entry @ line #" + this.pendingLine + " of manifest", e);
+            }
+            this.afterBlank = false;
+        }
+
     }
 
 }
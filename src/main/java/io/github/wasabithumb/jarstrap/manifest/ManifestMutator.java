@@ -45,11 +45,18 @@ public class ManifestMutator extends AbstractCollection<ManifestOperation> {
         return this;
     }
 
+    /**
+     * Applies each operation in order
+     * @return True if the manifest changed as a result. This may report a change when a later operation undoes an
+     *         earlier one, which at worst causes the manifest to be re-written unchanged.
+     */
     @ApiStatus.Internal
-    public void apply(@NotNull ManifestFile file) {
+    public boolean apply(@NotNull ManifestFile file) {
+        boolean modified = false;
         for (ManifestOperation op : this.backing) {
-            op.apply(file);
+            modified |= op.apply(file);
         }
+        return modified;
     }
 
 }
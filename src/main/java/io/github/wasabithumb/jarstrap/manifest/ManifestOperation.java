@@ -19,7 +19,10 @@ public sealed interface ManifestOperation {
 
     //
 
-    void apply(@NotNull ManifestFile file);
+    /**
+     * @return True if the manifest changed as a result
+     */
+    boolean apply(@NotNull ManifestFile file);
 
     //
 
@@ -33,8 +36,8 @@ public sealed interface ManifestOperation {
         }
 
         @Override
-        public void apply(@NotNull ManifestFile file) {
-            file.put(this.key, this.value);
+        public boolean apply(@NotNull ManifestFile file) {
+            return file.put(this.key, this.value);
         }
 
     }
@@ -47,8 +50,8 @@ public sealed interface ManifestOperation {
         }
 
         @Override
-        public void apply(@NotNull ManifestFile file) {
-            file.remove(key);
+        public boolean apply(@NotNull ManifestFile file) {
+            return file.remove(this.key);
         }
 
     }
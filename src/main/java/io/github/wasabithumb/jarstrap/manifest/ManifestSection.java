@@ -0,0 +1,187 @@
+package io.github.wasabithumb.jarstrap.manifest;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.UnmodifiableView;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * <p>
+ *     The attributes of a single section of a {@link ManifestFile manifest}. Attribute names are case-insensitive,
+ *     and looking one up is a single hash lookup. Attributes keep the order in which they were first added, along
+ *     with the case of their name at that time.
+ * </p>
+ * @since 0.3.0
+ */
+public final class ManifestSection {
+
+    private final Map<Name, Attribute> attributes = new LinkedHashMap<>();
+
+    ManifestSection() { }
+
+    //
+
+    public @Nullable String get(@NotNull String name) {
+        final Attribute attr = this.attributes.get(new Name(name));
+        return attr == null ? null : attr.value;
+    }
+
+    public boolean contains(@NotNull String name) {
+        return this.attributes.containsKey(new Name(name));
+    }
+
+    /**
+     * Sets the value of an attribute
+     * @return True if the section changed as a result
+     * @throws IllegalArgumentException The name or value cannot be represented in a manifest
+     */
+    public boolean put(@NotNull String name, @NotNull String value) throws IllegalArgumentException {
+        checkName(name);
+        checkValue(name, value);
+        final Name key = new Name(name);
+        final Attribute existing = this.attributes.get(key);
+        if (existing == null) {
+            this.attributes.put(key, new Attribute(name, value));
+            return true;
+        }
+        if (existing.value.equals(value)) return false;
+        existing.value = value;
+        return true;
+    }
+
+    /**
+     * Removes an attribute
+     * @return True if the attribute was present
+     */
+    public boolean remove(@NotNull String name) {
+        return this.attributes.remove(new Name(name)) != null;
+    }
+
+    public int size() {
+        return this.attributes.size();
+    }
+
+    public boolean isEmpty() {
+        return this.attributes.isEmpty();
+    }
+
+    /**
+     * The names of the attributes in this section, in order
+     */
+    public @NotNull @UnmodifiableView Collection<String> names() {
+        return new AbstractCollection<>() {
+            @Override
+            public @NotNull Iterator<String> iterator() {
+                final Iterator<Attribute> iter = ManifestSection.this.attributes.values().iterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iter.hasNext();
+                    }
+
+                    @Override
+                    public @NotNull String next() {
+                        return iter.next().name;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return ManifestSection.this.attributes.size();
+            }
+        };
+    }
+
+    /**
+     * Calls the given function with the name &amp; value of each attribute, in order
+     */
+    public void forEach(@NotNull BiConsumer<String, String> action) {
+        for (Attribute attr : this.attributes.values()) action.accept(attr.name, attr.value);
+    }
+
+    //
+
+    /**
+     * Names may not be empty or contain characters which would break the manifest syntax. The specification
+     * further limits names to ASCII letters, digits, {@code -} &amp; {@code _}, but this is not enforced since
+     * existing manifests in the wild do not always comply.
+     */
+    private static void checkName(@NotNull String name) throws IllegalArgumentException {
+        if (name.isEmpty()) throw new IllegalArgumentException("Attribute name may not be empty");
+        char c;
+        for (int i=0; i < name.length(); i++) {
+            c = name.charAt(i);
+            if (c == ':' || c == ' ' || c == '\r' || c == '\n' || c == '\0')
+                throw new IllegalArgumentException("Attribute name \"" + name + "\" contains illegal character (0x" +
+                        Integer.toHexString(c) + ")");
+        }
+    }
+
+    private static void checkValue(@NotNull String name, @NotNull String value) throws IllegalArgumentException {
+        char c;
+        for (int i=0; i < value.length(); i++) {
+            c = value.charAt(i);
+            if (c == '\r' || c == '\n' || c == '\0')
+                throw new IllegalArgumentException("Value of attribute \"" + name + "\" contains illegal character (0x" +
+                        Integer.toHexString(c) + ")");
+        }
+    }
+
+    //
+
+    private static final class Attribute {
+
+        final String name;
+        String value;
+
+        Attribute(@NotNull String name, @NotNull String value) {
+            this.name = name;
+            this.value = value;
+        }
+
+    }
+
+    /**
+     * A case-insensitive map key. Attribute names are almost always ASCII, so the hash folds ASCII case without
+     * allocating; other characters are folded individually.
+     */
+    private static final class Name {
+
+        private final String value;
+        private final int hash;
+
+        Name(@NotNull String value) {
+            this.value = value;
+            int h = 0;
+            char c;
+            for (int i=0; i < value.length(); i++) {
+                c = value.charAt(i);
+                if (c >= 'A' && c <= 'Z') {
+                    c += ('a' - 'A');
+                } else if (c >= 0x80) {
+                    c = Character.toLowerCase(Character.toUpperCase(c));
+                }
+                h = 31 * h + c;
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(@Nullable Object obj) {
+            if (!(obj instanceof Name other)) return false;
+            return this.hash == other.hash &&
+                    this.value.length() == other.value.length() &&
+                    this.value.regionMatches(true, 0, other.value, 0, this.value.length());
+        }
+
+    }
+
+}
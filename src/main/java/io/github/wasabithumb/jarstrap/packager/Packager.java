@@ -1,25 +1,26 @@
 package io.github.wasabithumb.jarstrap.packager;
 
+import io.github.wasabithumb.jarstrap.delta.Delta;
+import io.github.wasabithumb.jarstrap.instance.InstanceReaper;
+import io.github.wasabithumb.jarstrap.jar.ClassVersionReport;
 import io.github.wasabithumb.jarstrap.manifest.ManifestMutator;
 import io.github.wasabithumb.jarstrap.packager.error.PackagerException;
 import io.github.wasabithumb.jarstrap.packager.error.PackagerIOException;
+import io.github.wasabithumb.jarstrap.packager.error.PackagerInterruptedException;
 import io.github.wasabithumb.jarstrap.packager.stage.PackagerStage;
 import io.github.wasabithumb.jarstrap.packager.stage.impl.*;
-import io.github.wasabithumb.josdirs.JOSDirs;
+import io.github.wasabithumb.jarstrap.util.concurrent.ParallelJobs;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.Range;
+import org.jetbrains.annotations.Unmodifiable;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.FileVisitResult;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.attribute.BasicFileAttributes;
-import java.util.LinkedList;
-import java.util.Objects;
-import java.util.Queue;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.StampedLock;
@@ -30,7 +31,8 @@ import java.util.logging.Logger;
 /**
  * <p>
  *     A {@link io.github.wasabithumb.jarstrap.JARStrap JARStrap} packager. Each packager owns its own working directory
- *     that is cleared when {@link #close()} is called. The packager will execute the required stages in turn.
+ *     that is cleared in the background when {@link #close()} is called. The packager will execute the required
+ *     stages in turn.
  * </p>
  * <p>
  *     Each packager is comprised of {@link PackagerStage stages}. Every stage must execute in turn in order to produce
@@ -40,12 +42,21 @@ import java.util.logging.Logger;
  *     The final executable will be copied to the {@link #setOutputDir(File) output directory} with the given
  *     {@link #setOutputName(String) output name}.
  *     This file can be accessed at {@link #getOutputFile()} and will have the appropriate
- *     {@link #getExtension() extension} for the current platform.
+ *     {@link #getExtension() extension} for the {@link #getOS() target OS}.
+ * </p>
+ * <p>
+ *     A packager can build several {@link PackagerConfig#targets() targets} in one execution. The stages which do not
+ *     depend on the target run once, then the remaining stages run concurrently for each target, producing one
+ *     output file per target (see {@link #getOutputFiles()}).
+ * </p>
+ * <p>
+ *     Options are held in an immutable {@link PackagerConfig} which is frozen once execution starts. After this
+ *     point, the setters on this class will throw {@link IllegalStateException}.
  * </p>
  */
 public class Packager implements AutoCloseable {
 
-    public static final String DEFAULT_INSTALL_PROMPT = "This application requires Java %d or greater, which could not be found. Install now? The download may take a few moments.";
+    public static final String DEFAULT_INSTALL_PROMPT = PackagerConfig.DEFAULT_INSTALL_PROMPT;
 
     private final File workingDir;
     private final Queue<PackagerStage> stages;
@@ -55,21 +66,10 @@ public class Packager implements AutoCloseable {
     private final Logger logger;
     private final PackagerState state;
     private final ManifestMutator manifest;
+    private volatile PackagerConfig config;
+    private List<PackagerState> targetStates;
 
-    private PackagerArch arch = PackagerArch.X86_64;
-    private boolean release = false;
-    private String appName = null;
-    private int minJavaVersion = 8;
-    private int preferredJavaVersion = 21;
-    private String launchFlags = "";
-    private String installPrompt = DEFAULT_INSTALL_PROMPT;
-    private File source = null;
-    private File outputDir = null;
-    private String outputName = null;
-    private boolean autoInstall = false;
-    private boolean attributionEnabled = true;
-
-    public Packager(@NotNull File workingDir, @NotNull Logger logger) {
+    public Packager(@NotNull File workingDir, @NotNull Logger logger, @NotNull PackagerConfig config) {
         this.workingDir = workingDir;
         this.stages = new LinkedList<>();
         this.setupStages(this.stages);
@@ -79,14 +79,24 @@ public class Packager implements AutoCloseable {
         this.logger = logger;
         this.state = new PackagerState();
         this.manifest = new ManifestMutator();
+        this.config = Objects.requireNonNull(config);
+    }
+
+    public Packager(@NotNull File workingDir, @NotNull Logger logger) {
+        this(workingDir, logger, PackagerConfig.defaults());
     }
 
     protected void setupStages(@NotNull Queue<PackagerStage> stages) {
         stages.add(new PackagerInitStage());
         stages.add(new PackagerInjectStage());
         stages.add(new PackagerManifestStage());
+        stages.add(new PackagerShrinkStage());
+        stages.add(new PackagerVersionStage());
+        stages.add(new PackagerRuntimeStage());
+        stages.add(new PackagerPayloadStage());
         stages.add(new PackagerVarsStage());
-        if (JOSDirs.platform().equals("windows")) stages.add(new PackagerMinGWStage());
+        stages.add(new PackagerMinGWStage());
+        stages.add(new PackagerCompileStage());
         stages.add(new PackagerCmakeStage());
         stages.add(new PackagerMakeStage());
         stages.add(new PackagerExportStage());
@@ -100,21 +110,45 @@ public class Packager implements AutoCloseable {
     }
 
     /**
-     * The file that will receive the executable during the last stage
+     * The file that will receive the executable during the last stage. When building several
+     * {@link PackagerConfig#targets() targets}, this is the file for the first target.
+     * @see #getOutputFiles()
      */
     public @NotNull File getOutputFile() {
-        return new File(this.getOutputDir(), this.getOutputName() + this.getExtension());
+        final PackagerConfig config = this.config;
+        return this.getOutputFile(config, config.targets().get(0));
     }
 
     /**
-     * The file extension for executables, determined by the current platform.
+     * The file that will receive the executable for the given target
+     * @since 0.3.0
+     */
+    public @NotNull File getOutputFile(@NotNull PackagerTarget target) {
+        return this.getOutputFile(this.config, target);
+    }
+
+    /**
+     * The files that will receive the executables during the last stage, one per
+     * {@link PackagerConfig#targets() target}
+     * @since 0.3.0
+     */
+    public @NotNull @Unmodifiable Map<PackagerTarget, File> getOutputFiles() {
+        final PackagerConfig config = this.config;
+        final Map<PackagerTarget, File> ret = new LinkedHashMap<>();
+        for (PackagerTarget target : config.targets()) ret.put(target, this.getOutputFile(config, target));
+        return Collections.unmodifiableMap(ret);
+    }
+
+    private @NotNull File getOutputFile(@NotNull PackagerConfig config, @NotNull PackagerTarget target) {
+        return new File(config.outputDir(), config.outputName(target) + this.getExtension());
+    }
+
+    /**
+     * The file extension for executables, determined by the {@link #getOS() target OS}.
      * {@code .exe} for Windows, {@code (empty string)} for UNIX.
      */
     public @NotNull String getExtension() {
-        if (JOSDirs.platform().equals("windows")) {
-            return ".exe";
-        }
-        return "";
+        return this.config.os().extension();
     }
 
     /**
@@ -127,51 +161,103 @@ public class Packager implements AutoCloseable {
     //
 
     /**
-     * The architecture to build for, {@link PackagerArch#X86_64 X86_64} by default.
+     * <p>
+     *     The current configuration of this packager. Once execution has started this is a frozen snapshot shared by
+     *     every stage, and attempts to change it will fail.
+     * </p>
+     * <p>
+     *     The individual getters &amp; setters on the packager are shorthands for reading and updating this value.
+     * </p>
+     * @since 0.3.0
      */
-    public @NotNull PackagerArch getArch() {
-        final long stamp = this.attrLock.readLock();
+    public @NotNull PackagerConfig getConfig() {
+        return this.config;
+    }
+
+    /**
+     * Replaces the entire configuration of this packager. The same configuration may be shared by any number of
+     * packagers.
+     * @since 0.3.0
+     * @see #getConfig()
+     * @throws IllegalStateException Execution has already started
+     */
+    public void setConfig(@NotNull PackagerConfig config) throws IllegalStateException {
+        Objects.requireNonNull(config);
+        final long stamp = this.attrLock.writeLock();
         try {
-            return this.arch;
+            this.checkMutable();
+            this.config = config;
         } finally {
             this.attrLock.unlock(stamp);
         }
     }
 
     /**
-     * @see #getArch()
+     * Updates the configuration of this packager with the given builder function.
+     * @since 0.3.0
+     * @see #getConfig()
+     * @throws IllegalStateException Execution has already started
      */
-    public void setArch(@NotNull PackagerArch arch) {
+    public void configure(@NotNull Consumer<PackagerConfig.Builder> configure) throws IllegalStateException {
         final long stamp = this.attrLock.writeLock();
         try {
-            this.arch = arch;
+            this.checkMutable();
+            PackagerConfig.Builder builder = this.config.toBuilder();
+            configure.accept(builder);
+            this.config = builder.build();
         } finally {
             this.attrLock.unlock(stamp);
         }
     }
 
+    private void checkMutable() throws IllegalStateException {
+        if (this.state.config != null)
+            throw new IllegalStateException("Packager configuration cannot be changed after execution has started");
+    }
+
+    /**
+     * The architecture to build for, {@link PackagerArch#X86_64 X86_64} by default.
+     */
+    public @NotNull PackagerArch getArch() {
+        return this.config.arch();
+    }
+
+    /**
+     * @see #getArch()
+     */
+    public void setArch(@NotNull PackagerArch arch) {
+        this.configure((PackagerConfig.Builder b) -> b.arch(arch));
+    }
+
     /**
      * True if building a release binary (smaller size, less output, hard to debug the bootstrap)
      */
     public boolean isRelease() {
-        final long stamp = this.attrLock.readLock();
-        try {
-            return this.release;
-        } finally {
-            this.attrLock.unlock(stamp);
-        }
+        return this.config.release();
     }
 
     /**
      * @see #isRelease()
      */
     public void setRelease(boolean release) {
-        final long stamp = this.attrLock.writeLock();
-        try {
-            this.release = release;
-        } finally {
-            this.attrLock.unlock(stamp);
-        }
+        this.configure((PackagerConfig.Builder b) -> b.release(release));
+    }
+
+    /**
+     * The operating system to build for, the {@link PackagerOS#host() host OS} by default
+     * @since 0.3.0
+     * @see PackagerConfig#os()
+     */
+    public @NotNull PackagerOS getOS() {
+        return this.config.os();
+    }
+
+    /**
+     * @since 0.3.0
+     * @see #getOS()
+     */
+    public void setOS(@NotNull PackagerOS os) {
+        this.configure((PackagerConfig.Builder b) -> b.os(os));
     }
 
     /**
@@ -179,25 +265,14 @@ public class Packager implements AutoCloseable {
      * (via hash comparison), no app name is reported on startup.
      */
     public @NotNull String getAppName() {
-        final long stamp = this.attrLock.readLock();
-        try {
-            if (this.appName == null) return "JARStrap";
-            return this.appName;
-        } finally {
-            this.attrLock.unlock(stamp);
-        }
+        return this.config.appName();
     }
 
     /**
      * @see #getAppName()
      */
     public void setAppName(@Nullable String appName) {
-        final long stamp = this.attrLock.writeLock();
-        try {
-            this.appName = appName;
-        } finally {
-            this.attrLock.unlock(stamp);
-        }
+        this.configure((PackagerConfig.Builder b) -> b.appName(appName));
     }
 
     /**
@@ -205,28 +280,14 @@ public class Packager implements AutoCloseable {
      * installed if no Java on the system is at least this version
      */
     public int getMinJavaVersion() {
-        final long stamp = this.attrLock.readLock();
-        try {
-            return this.minJavaVersion;
-        } finally {
-            this.attrLock.unlock(stamp);
-        }
+        return this.config.minJavaVersion();
     }
 
     /**
      * @see #getMinJavaVersion()
      */
     public void setMinJavaVersion(@Range(from = 5L, to = 21L) int minJavaVersion) {
-        //noinspection ConstantValue
-        if (minJavaVersion < 5 || minJavaVersion > 21)
-            throw new IllegalArgumentException("Java version " + minJavaVersion + " out of bounds (expected 5 - 21)");
-
-        final long stamp = this.attrLock.writeLock();
-        try {
-            this.minJavaVersion = minJavaVersion;
-        } finally {
-            this.attrLock.unlock(stamp);
-        }
+        this.configure((PackagerConfig.Builder b) -> b.minJavaVersion(minJavaVersion));
     }
 
     /**
@@ -234,52 +295,28 @@ public class Packager implements AutoCloseable {
      * on the system.
      */
     public int getPreferredJavaVersion() {
-        final long stamp = this.attrLock.readLock();
-        try {
-            return this.preferredJavaVersion;
-        } finally {
-            this.attrLock.unlock(stamp);
-        }
+        return this.config.preferredJavaVersion();
     }
 
     /**
      * @see #getPreferredJavaVersion()
      */
     public void setPreferredJavaVersion(@Range(from = 5L, to = 21L) int preferredJavaVersion) {
-        //noinspection ConstantValue
-        if (preferredJavaVersion < 5 || preferredJavaVersion > 21)
-            throw new IllegalArgumentException("Java version " + preferredJavaVersion + " out of bounds (expected 5 - 21)");
-
-        final long stamp = this.attrLock.writeLock();
-        try {
-            this.preferredJavaVersion = preferredJavaVersion;
-        } finally {
-            this.attrLock.unlock(stamp);
-        }
+        this.configure((PackagerConfig.Builder b) -> b.preferredJavaVersion(preferredJavaVersion));
     }
 
     /**
      * Additional flags to set when launching the JAR, placed after the {@code -jar} switch.
      */
     public @NotNull String getLaunchFlags() {
-        final long stamp = this.attrLock.readLock();
-        try {
-            return this.launchFlags;
-        } finally {
-            this.attrLock.unlock(stamp);
-        }
+        return this.config.launchFlags();
     }
 
     /**
      * @see #getLaunchFlags()
      */
     public void setLaunchFlags(@NotNull String flags) {
-        final long stamp = this.attrLock.writeLock();
-        try {
-            this.launchFlags = Objects.requireNonNull(flags);
-        } finally {
-            this.attrLock.unlock(stamp);
-        }
+        this.configure((PackagerConfig.Builder b) -> b.launchFlags(flags));
     }
 
     /**
@@ -293,12 +330,7 @@ public class Packager implements AutoCloseable {
      * </p>
      */
     public @NotNull String getInstallPrompt() {
-        final long stamp = this.attrLock.readLock();
-        try {
-            return this.installPrompt;
-        } finally {
-            this.attrLock.unlock(stamp);
-        }
+        return this.config.installPrompt();
     }
 
     /**
@@ -307,32 +339,7 @@ public class Packager implements AutoCloseable {
      * followed by the end of the string or a char that is not {@code %} or {@code d}.
      */
     public void setInstallPrompt(@Nullable String prompt) throws IllegalArgumentException {
-        if (prompt == null) {
-            prompt = "";
-        } else {
-            int len = prompt.length();
-            int counter = 0;
-            char c;
-            for (int i=0; i < len; i++) {
-                c = prompt.charAt(i);
-                if (c != '%') continue;
-                if (i == (len - 1))
-                    throw new IllegalArgumentException("Starting escape '%' may not be last char in string");
-                c = prompt.charAt(++i);
-                if (c == '%') continue;
-                if (c != 'd')
-                    throw new IllegalArgumentException("Escape char '%' must be followed by '%' or 'd'");
-                if (counter++ != 0)
-                    throw new IllegalArgumentException("String may only have up to 1 \"%d\" template symbol");
-            }
-        }
-
-        final long stamp = this.attrLock.writeLock();
-        try {
-            this.installPrompt = prompt;
-        } finally {
-            this.attrLock.unlock(stamp);
-        }
+        this.configure((PackagerConfig.Builder b) -> b.installPrompt(prompt));
     }
 
     /**
@@ -340,51 +347,47 @@ public class Packager implements AutoCloseable {
      * sample program is a Java 5 stub which reports the JRE version in use; e.g. {@code Hello from Java 21.0.3+9}.
      */
     public @NotNull File getSource() {
-        final long stamp = this.attrLock.readLock();
-        try {
-            if (this.source == null) return new File(new File(this.workingDir, "archive"), "sample.jar");
-            return this.source;
-        } finally {
-            this.attrLock.unlock(stamp);
-        }
+        final File source = this.config.source();
+        if (source == null) return new File(new File(this.workingDir, "archive"), "sample.jar");
+        return source;
     }
 
     /**
      * @see #getSource()
      */
     public void setSource(@Nullable File source) {
-        final long stamp = this.attrLock.writeLock();
-        try {
-            this.source = source;
-        } finally {
-            this.attrLock.unlock(stamp);
-        }
+        this.configure((PackagerConfig.Builder b) -> b.source(source));
+    }
+
+    /**
+     * Library JARs to run alongside the source JAR, in class path order
+     * @since 0.3.0
+     * @see PackagerConfig#libraries()
+     */
+    public @NotNull @Unmodifiable List<File> getLibraries() {
+        return this.config.libraries();
+    }
+
+    /**
+     * @since 0.3.0
+     * @see #getLibraries()
+     */
+    public void setLibraries(@NotNull Collection<File> libraries) {
+        this.configure((PackagerConfig.Builder b) -> b.libraries(libraries));
     }
 
     /**
      * The directory to copy the final executable into. If not set, returns the current working directory.
      */
     public @NotNull File getOutputDir() {
-        final long stamp = this.attrLock.readLock();
-        try {
-            if (this.outputDir == null)
-                return new File(System.getProperty("user.dir"));
-            return this.outputDir;
-        } finally {
-            this.attrLock.unlock(stamp);
-        }
+        return this.config.outputDir();
     }
 
     /**
      * @see #getOutputDir()
      */
     public void setOutputDir(@Nullable File outputDir) {
-        final long stamp = this.attrLock.writeLock();
-        try {
-            this.outputDir = outputDir;
-        } finally {
-            this.attrLock.unlock(stamp);
-        }
+        this.configure((PackagerConfig.Builder b) -> b.outputDir(outputDir));
     }
 
     /**
@@ -393,63 +396,28 @@ public class Packager implements AutoCloseable {
      * replaced with {@code _}.
      */
     public @NotNull String getOutputName() {
-        final long stamp = this.attrLock.readLock();
-        try {
-            if (this.outputName == null) {
-                if (this.appName == null) return "jarstrap";
-                final int len = this.appName.length();
-                final char[] chars = new char[len];
-                char c;
-                for (int i=0; i < len; i++) {
-                    c = this.appName.charAt(i);
-                    if (Character.isWhitespace(c)) {
-                        chars[i] = '_';
-                    } else {
-                        chars[i] = Character.toLowerCase(c);
-                    }
-                }
-                return new String(chars);
-            }
-            return this.outputName;
-        } finally {
-            this.attrLock.unlock(stamp);
-        }
+        return this.config.outputName();
     }
 
     /**
      * @see #getOutputName()
      */
     public void setOutputName(@Nullable String outputName) {
-        final long stamp = this.attrLock.writeLock();
-        try {
-            this.outputName = outputName;
-        } finally {
-            this.attrLock.unlock(stamp);
-        }
+        this.configure((PackagerConfig.Builder b) -> b.outputName(outputName));
     }
 
     /**
      * If true, certain build components may be auto-installed. Currently only used for MinGW on Windows hosts.
      */
     public boolean isAutoInstall() {
-        final long stamp = this.attrLock.readLock();
-        try {
-            return this.autoInstall;
-        } finally {
-            this.attrLock.unlock(stamp);
-        }
+        return this.config.autoInstall();
     }
 
     /**
      * @see #isAutoInstall()
      */
     public void setAutoInstall(boolean autoInstall) {
-        final long stamp = this.attrLock.writeLock();
-        try {
-            this.autoInstall = autoInstall;
-        } finally {
-            this.attrLock.unlock(stamp);
-        }
+        this.configure((PackagerConfig.Builder b) -> b.autoInstall(autoInstall));
     }
 
     /**
@@ -457,24 +425,261 @@ public class Packager implements AutoCloseable {
      * the application distributor should propagate the license information in another way.
      */
     public boolean isAttributionEnabled() {
-        final long stamp = this.attrLock.readLock();
-        try {
-            return this.attributionEnabled;
-        } finally {
-            this.attrLock.unlock(stamp);
-        }
+        return this.config.attributionEnabled();
     }
 
     /**
      * @see #isAttributionEnabled()
      */
     public void setAttributionEnabled(boolean attributionEnabled) {
-        final long stamp = this.attrLock.writeLock();
-        try {
-            this.attributionEnabled = attributionEnabled;
-        } finally {
-            this.attrLock.unlock(stamp);
-        }
+        this.configure((PackagerConfig.Builder b) -> b.attributionEnabled(attributionEnabled));
+    }
+
+    /**
+     * The executor used for file I/O which may be spread across threads, or null to use a shared pool.
+     * @since 0.3.0
+     * @see PackagerConfig#ioExecutor()
+     */
+    public @Nullable Executor getIOExecutor() {
+        return this.config.ioExecutor();
+    }
+
+    /**
+     * @since 0.3.0
+     * @see #getIOExecutor()
+     */
+    public void setIOExecutor(@Nullable Executor executor) {
+        this.configure((PackagerConfig.Builder b) -> b.ioExecutor(executor));
+    }
+
+    /**
+     * If true, the class file version of every class in the JAR is checked rather than only the main class
+     * @since 0.3.0
+     * @see PackagerConfig#scanClassVersions()
+     */
+    public boolean isScanClassVersions() {
+        return this.config.scanClassVersions();
+    }
+
+    /**
+     * @since 0.3.0
+     * @see #isScanClassVersions()
+     */
+    public void setScanClassVersions(boolean scanClassVersions) {
+        this.configure((PackagerConfig.Builder b) -> b.scanClassVersions(scanClassVersions));
+    }
+
+    /**
+     * The result of the class version scan, or null if the {@code version} stage has not run or
+     * {@link #isScanClassVersions() scanning} is disabled
+     * @since 0.3.0
+     */
+    public @Nullable ClassVersionReport getClassVersionReport() {
+        return this.state.classVersions;
+    }
+
+    /**
+     * If true, classes which cannot be reached from the main class are removed from the JAR
+     * @since 0.3.0
+     * @see PackagerConfig#shrink()
+     */
+    public boolean isShrink() {
+        return this.config.shrink();
+    }
+
+    /**
+     * @since 0.3.0
+     * @see #isShrink()
+     */
+    public void setShrink(boolean shrink) {
+        this.configure((PackagerConfig.Builder b) -> b.shrink(shrink));
+    }
+
+    /**
+     * Patterns of classes to keep when {@link #isShrink() shrinking}
+     * @since 0.3.0
+     * @see PackagerConfig#keepRules()
+     */
+    public @NotNull @Unmodifiable List<String> getKeepRules() {
+        return this.config.keepRules();
+    }
+
+    /**
+     * @throws IllegalArgumentException A rule is malformed
+     * @since 0.3.0
+     * @see #getKeepRules()
+     */
+    public void setKeepRules(@NotNull Collection<String> keepRules) {
+        this.configure((PackagerConfig.Builder b) -> b.keepRules(keepRules));
+    }
+
+    /**
+     * If true, a minimal Java runtime is built for the application and embedded into the executable
+     * @since 0.3.0
+     * @see PackagerConfig#bundleRuntime()
+     */
+    public boolean isBundleRuntime() {
+        return this.config.bundleRuntime();
+    }
+
+    /**
+     * @since 0.3.0
+     * @see #isBundleRuntime()
+     */
+    public void setBundleRuntime(boolean bundleRuntime) {
+        this.configure((PackagerConfig.Builder b) -> b.bundleRuntime(bundleRuntime));
+    }
+
+    /**
+     * The JDK used to build the bundled runtime, or null to use the JDK running the packager
+     * @since 0.3.0
+     * @see PackagerConfig#runtimeJdk()
+     */
+    public @Nullable File getRuntimeJdk() {
+        return this.config.runtimeJdk();
+    }
+
+    /**
+     * @since 0.3.0
+     * @see #getRuntimeJdk()
+     */
+    public void setRuntimeJdk(@Nullable File runtimeJdk) {
+        this.configure((PackagerConfig.Builder b) -> b.runtimeJdk(runtimeJdk));
+    }
+
+    /**
+     * Modules to add to the bundled runtime in addition to those found by {@code jdeps}
+     * @since 0.3.0
+     * @see PackagerConfig#runtimeModules()
+     */
+    public @NotNull @Unmodifiable List<String> getRuntimeModules() {
+        return this.config.runtimeModules();
+    }
+
+    /**
+     * @since 0.3.0
+     * @see #getRuntimeModules()
+     */
+    public void setRuntimeModules(@NotNull Collection<String> runtimeModules) {
+        this.configure((PackagerConfig.Builder b) -> b.runtimeModules(runtimeModules));
+    }
+
+    /**
+     * If true, launches run the application in a resident JVM shared between calls. False by default.
+     * @since 0.3.0
+     * @see PackagerConfig#resident()
+     */
+    public boolean isResident() {
+        return this.config.resident();
+    }
+
+    /**
+     * @since 0.3.0
+     * @see #isResident()
+     */
+    public void setResident(boolean resident) {
+        this.configure((PackagerConfig.Builder b) -> b.resident(resident));
+    }
+
+    /**
+     * How long a resident JVM may go without calls before exiting
+     * @since 0.3.0
+     * @see PackagerConfig#residentIdleTimeout()
+     */
+    public @NotNull Duration getResidentIdleTimeout() {
+        return this.config.residentIdleTimeout();
+    }
+
+    /**
+     * @since 0.3.0
+     * @see #getResidentIdleTimeout()
+     */
+    public void setResidentIdleTimeout(@NotNull Duration residentIdleTimeout) {
+        this.configure((PackagerConfig.Builder b) -> b.residentIdleTimeout(residentIdleTimeout));
+    }
+
+    /**
+     * If true, the same inputs produce a byte-identical executable. False by default.
+     * @since 0.3.0
+     * @see PackagerConfig#reproducible()
+     */
+    public boolean isReproducible() {
+        return this.config.reproducible();
+    }
+
+    /**
+     * @since 0.3.0
+     * @see #isReproducible()
+     */
+    public void setReproducible(boolean reproducible) {
+        this.configure((PackagerConfig.Builder b) -> b.reproducible(reproducible));
+    }
+
+    /**
+     * The time (in seconds since the epoch) recorded by reproducible packaging
+     * @since 0.3.0
+     * @see PackagerConfig#sourceDateEpoch()
+     */
+    public long getSourceDateEpoch() {
+        return this.config.sourceDateEpoch();
+    }
+
+    /**
+     * @since 0.3.0
+     * @see #getSourceDateEpoch()
+     */
+    public void setSourceDateEpoch(long sourceDateEpoch) {
+        this.configure((PackagerConfig.Builder b) -> b.sourceDateEpoch(sourceDateEpoch));
+    }
+
+    /**
+     * The method used to build the native executable, {@link PackagerBackend#AUTO AUTO} by default.
+     * @since 0.3.0
+     */
+    public @NotNull PackagerBackend getBackend() {
+        return this.config.backend();
+    }
+
+    /**
+     * @since 0.3.0
+     * @see #getBackend()
+     */
+    public void setBackend(@NotNull PackagerBackend backend) {
+        this.configure((PackagerConfig.Builder b) -> b.backend(backend));
+    }
+
+    /**
+     * How the native stub is compiled &amp; linked, {@link PackagerProfile#STANDARD STANDARD} by default
+     * @since 0.3.0
+     * @see PackagerConfig#profile()
+     */
+    public @NotNull PackagerProfile getProfile() {
+        return this.config.profile();
+    }
+
+    /**
+     * @since 0.3.0
+     * @see #getProfile()
+     */
+    public void setProfile(@NotNull PackagerProfile profile) {
+        this.configure((PackagerConfig.Builder b) -> b.profile(profile));
+    }
+
+    /**
+     * The targets to build
+     * @since 0.3.0
+     * @see PackagerConfig#targets()
+     */
+    public @NotNull @Unmodifiable List<PackagerTarget> getTargets() {
+        return this.config.targets();
+    }
+
+    /**
+     * @since 0.3.0
+     * @see #getTargets()
+     */
+    public void setTargets(@NotNull Collection<PackagerTarget> targets) {
+        this.configure((PackagerConfig.Builder b) -> b.targets(targets));
     }
 
     /**
@@ -529,8 +734,18 @@ public class Packager implements AutoCloseable {
                 PackagerStage stage = this.stages.peek();
                 if (stage == null) return false;
 
+                if (this.state.config == null) this.freeze();
                 this.logger.log(Level.FINE, "executing stage: " + stage.id());
-                stage.execute(this, this.state);
+                try {
+                    if (stage.perTarget() && this.state.target == null) {
+                        this.executeTargeted(stage);
+                    } else {
+                        stage.execute(this, this.state);
+                    }
+                } finally {
+                    // Publish any adjustments made by the stage (e.g. raising the minimum Java version)
+                    this.config = this.state.config;
+                }
 
                 stamp = this.stageLock.tryConvertToWriteLock(stamp);
                 this.stages.poll();
@@ -543,25 +758,93 @@ public class Packager implements AutoCloseable {
         }
     }
 
+    /**
+     * Writes a patch which turns a previous build into the current {@link #getOutputFile() output file}, so that
+     * users of the previous build can download the patch in place of the whole executable. Must be called after
+     * the last stage has executed. See {@link Delta} for the format and for applying patches.
+     * @param previous The executable produced by a previous build for the same target
+     * @param dest The file to write the patch to
+     * @since 0.3.0
+     */
+    public @NotNull Delta.Result createDelta(@NotNull File previous, @NotNull File dest) throws PackagerException {
+        return this.createDelta(this.config.targets().get(0), previous, dest);
+    }
+
+    /**
+     * Writes a patch which turns a previous build into the {@link #getOutputFile(PackagerTarget) output file} of the
+     * given target. Must be called after the last stage has executed.
+     * @param previous The executable produced by a previous build for the same target
+     * @param dest The file to write the patch to
+     * @since 0.3.0
+     * @see #createDelta(File, File)
+     */
+    public @NotNull Delta.Result createDelta(
+            @NotNull PackagerTarget target,
+            @NotNull File previous,
+            @NotNull File dest
+    ) throws PackagerException {
+        if (this.nextStage() != null)
+            throw new PackagerException("Cannot create delta before all stages have executed");
+
+        final File current = this.getOutputFile(target);
+        final Delta.Result result;
+        try {
+            result = Delta.create(previous.toPath(), current.toPath(), dest.toPath());
+        } catch (IOException e) {
+            throw new PackagerIOException("Failed to create delta from " + previous.getAbsolutePath(), e);
+        }
+        this.logger.log(Level.INFO, "[delta] " + result.patchSize() + " byte patch for " + current.getName() +
+                " (" + result.copied() + " bytes copied, " + result.literal() + " bytes new)");
+        return result;
+    }
+
+    private void executeTargeted(@NotNull PackagerStage stage) throws PackagerException {
+        if (this.targetStates == null) {
+            final List<PackagerTarget> targets = this.state.config.targets();
+            this.targetStates = new ArrayList<>(targets.size());
+            for (PackagerTarget target : targets) this.targetStates.add(this.state.forTarget(target));
+        }
+
+        final List<Callable<Void>> jobs = new ArrayList<>(this.targetStates.size());
+        for (PackagerState targetState : this.targetStates) {
+            jobs.add(() -> {
+                stage.execute(this, targetState);
+                return null;
+            });
+        }
+
+        try {
+            ParallelJobs.runAll("Target", jobs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PackagerInterruptedException(e);
+        }
+    }
+
+    private void freeze() {
+        final long stamp = this.attrLock.writeLock();
+        try {
+            final PackagerConfig config = this.config;
+            final List<PackagerTarget> targets = config.targets();
+            if (targets.size() == 1) {
+                // Single target; every stage shares the one state
+                final PackagerTarget target = targets.get(0);
+                this.state.config = config.forTarget(target);
+                this.state.target = target;
+            } else {
+                this.state.config = config;
+            }
+        } finally {
+            this.attrLock.unlock(stamp);
+        }
+    }
+
     //
 
     @Override
     public void close() throws PackagerException {
         try {
-            if (!this.workingDir.exists()) return;
-            Files.walkFileTree(this.workingDir.toPath(), new SimpleFileVisitor<>() {
-                @Override
-                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                    Files.delete(file);
-                    return FileVisitResult.CONTINUE;
-                }
-
-                @Override
-                public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
-                    Files.delete(dir);
-                    return FileVisitResult.CONTINUE;
-                }
-            });
+            InstanceReaper.dispose(this.workingDir);
         } catch (IOException e) {
             throw new PackagerIOException("Failed to delete working directory", e);
         }
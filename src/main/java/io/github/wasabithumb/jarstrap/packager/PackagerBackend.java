@@ -0,0 +1,24 @@
+package io.github.wasabithumb.jarstrap.packager;
+
+/**
+ * The method used to build the native executable
+ * @since 0.3.0
+ */
+public enum PackagerBackend {
+    /**
+     * Use the {@link #DIRECT direct} backend when a suitable toolchain is available, otherwise fall back to
+     * {@link #CMAKE CMake}
+     */
+    AUTO,
+
+    /**
+     * Invoke the C compiler &amp; linker directly, compiling each translation unit in parallel. Skips the
+     * configure step of CMake entirely, but is currently only available on Linux hosts.
+     */
+    DIRECT,
+
+    /**
+     * Generate a Makefile with CMake and build it with Make
+     */
+    CMAKE
+}
@@ -0,0 +1,929 @@
+package io.github.wasabithumb.jarstrap.packager;
+
+import io.github.wasabithumb.jarstrap.jar.ClassReachability;
+import io.github.wasabithumb.jarstrap.packager.stage.PackagerStage;
+import io.github.wasabithumb.jarstrap.util.concurrent.IOExecutors;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Range;
+import org.jetbrains.annotations.Unmodifiable;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Executor;
+
+/**
+ * <p>
+ *     An immutable snapshot of the options for a {@link Packager}. Instances are created with {@link #builder()} and
+ *     can be freely shared between packagers, for instance to package many artifacts with the same settings.
+ * </p>
+ * <p>
+ *     A packager freezes its configuration when execution starts; every stage then reads the same snapshot without
+ *     locking, so changes made on another thread can never produce a partially configured artifact.
+ * </p>
+ * @since 0.3.0
+ */
+public final class PackagerConfig {
+
+    public static final String DEFAULT_INSTALL_PROMPT = "This application requires Java %d or greater, which could not be found. Install now? The download may take a few moments.";
+    private static final long DOS_EPOCH_SECONDS = 315532800L; // 1980-01-01T00:00:00Z
+    private static final PackagerConfig DEFAULT = new Builder().build();
+
+    /**
+     * The default configuration, equivalent to {@code builder().build()}
+     */
+    public static @NotNull PackagerConfig defaults() {
+        return DEFAULT;
+    }
+
+    @Contract(" -> new")
+    public static @NotNull Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Reads {@code SOURCE_DATE_EPOCH} from the environment, falling back to the earliest time a ZIP entry can hold
+     */
+    private static long defaultSourceDateEpoch() {
+        final String env = System.getenv("SOURCE_DATE_EPOCH");
+        if (env != null) {
+            try {
+                final long value = Long.parseLong(env.trim());
+                if (value >= 0L) return value;
+            } catch (NumberFormatException ignored) { }
+        }
+        return DOS_EPOCH_SECONDS;
+    }
+
+    //
+
+    private final PackagerArch arch;
+    private final boolean release;
+    private final PackagerOS os;
+    private final String appName;
+    private final int minJavaVersion;
+    private final int preferredJavaVersion;
+    private final String launchFlags;
+    private final String installPrompt;
+    private final File source;
+    private final List<File> libraries;
+    private final File outputDir;
+    private final String outputName;
+    private final boolean outputNameSet;
+    private final boolean autoInstall;
+    private final boolean attributionEnabled;
+    private final PackagerBackend backend;
+    private final PackagerProfile profile;
+    private final Map<String, Duration> stageTimeouts;
+    private final Executor ioExecutor;
+    private final boolean scanClassVersions;
+    private final boolean shrink;
+    private final List<String> keepRules;
+    private final boolean bundleRuntime;
+    private final File runtimeJdk;
+    private final List<String> runtimeModules;
+    private final boolean resident;
+    private final Duration residentIdleTimeout;
+    private final boolean reproducible;
+    private final long sourceDateEpoch;
+    private final List<PackagerTarget> targets;
+    private final boolean targetsSet;
+
+    private PackagerConfig(@NotNull Builder builder) {
+        this.arch = builder.arch;
+        this.release = builder.release;
+        this.os = builder.os;
+        this.appName = builder.appName;
+        this.minJavaVersion = builder.minJavaVersion;
+        this.preferredJavaVersion = builder.preferredJavaVersion;
+        this.launchFlags = builder.launchFlags;
+        this.installPrompt = builder.installPrompt;
+        this.source = builder.source;
+        this.libraries = List.copyOf(builder.libraries);
+        this.outputDir = builder.outputDir;
+        this.outputNameSet = builder.outputName != null;
+        this.outputName = this.outputNameSet ? builder.outputName : deriveOutputName(builder.appName);
+        this.autoInstall = builder.autoInstall;
+        this.attributionEnabled = builder.attributionEnabled;
+        this.backend = builder.backend;
+        this.profile = builder.profile;
+        this.stageTimeouts = Map.copyOf(builder.stageTimeouts);
+        this.ioExecutor = builder.ioExecutor;
+        this.scanClassVersions = builder.scanClassVersions;
+        this.shrink = builder.shrink;
+        this.keepRules = List.copyOf(builder.keepRules);
+        this.bundleRuntime = builder.bundleRuntime;
+        this.runtimeJdk = builder.runtimeJdk;
+        this.runtimeModules = List.copyOf(builder.runtimeModules);
+        this.resident = builder.resident;
+        this.residentIdleTimeout = builder.residentIdleTimeout;
+        this.reproducible = builder.reproducible;
+        this.sourceDateEpoch = builder.sourceDateEpoch;
+        this.targetsSet = !builder.targets.isEmpty();
+        this.targets = this.targetsSet
+                ? List.copyOf(builder.targets)
+                : List.of(new PackagerTarget(builder.arch, builder.release));
+    }
+
+    /**
+     * The architecture to build for, {@link PackagerArch#X86_64 X86_64} by default.
+     */
+    public @NotNull PackagerArch arch() {
+        return this.arch;
+    }
+
+    /**
+     * True if building a release binary (smaller size, less output, hard to debug the bootstrap)
+     */
+    public boolean release() {
+        return this.release;
+    }
+
+    /**
+     * The operating system to build for, the {@link PackagerOS#host() host OS} by default. Building for Windows from
+     * another host requires a MinGW-w64 cross compiler.
+     * @since 0.3.0
+     */
+    public @NotNull PackagerOS os() {
+        return this.os;
+    }
+
+    /**
+     * The app name, or {@code JARStrap} if none set. When the app name is equal to {@code JARStrap}
+     * (via hash comparison), no app name is reported on startup.
+     */
+    public @NotNull String appName() {
+        if (this.appName == null) return "JARStrap";
+        return this.appName;
+    }
+
+    /**
+     * The minimum Java version; the {@link #preferredJavaVersion() preferred Java version} will be
+     * installed if no Java on the system is at least this version
+     */
+    public int minJavaVersion() {
+        return this.minJavaVersion;
+    }
+
+    /**
+     * The preferred Java version; installed when the {@link #minJavaVersion() minimum Java version} is not present
+     * on the system.
+     */
+    public int preferredJavaVersion() {
+        return this.preferredJavaVersion;
+    }
+
+    /**
+     * Additional flags to set when launching the JAR, placed after the {@code -jar} switch.
+     */
+    public @NotNull String launchFlags() {
+        return this.launchFlags;
+    }
+
+    /**
+     * The prompt to show when the user must install Java to proceed.
+     * @see Builder#installPrompt(String)
+     */
+    public @NotNull String installPrompt() {
+        return this.installPrompt;
+    }
+
+    /**
+     * The JAR file to wrap into an executable, or null to use the sample JAR included with JARStrap.
+     * @see Packager#getSource()
+     */
+    public @Nullable File source() {
+        return this.source;
+    }
+
+    /**
+     * <p>
+     *     Library JARs to run alongside the {@link #source() source JAR}, in class path order. Empty by default.
+     * </p>
+     * <p>
+     *     When there are libraries, the executable embeds every JAR without repacking them into one. They are
+     *     extracted next to each other into the app directory and the application is launched with {@code -cp} and
+     *     the main class of the source JAR. Libraries are named by content hash, so a library which is identical
+     *     across versions or applications is only extracted once.
+     * </p>
+     * @since 0.3.0
+     */
+    public @NotNull @Unmodifiable List<File> libraries() {
+        return this.libraries;
+    }
+
+    /**
+     * The directory to copy the final executable into. If not set, returns the current working directory.
+     */
+    public @NotNull File outputDir() {
+        if (this.outputDir == null)
+            return new File(System.getProperty("user.dir"));
+        return this.outputDir;
+    }
+
+    /**
+     * The name to use for the final executable. If not set, this returns a variation of the
+     * {@link #appName() app name}. Specifically, it will be a lowercase version with all whitespace
+     * replaced with {@code _}.
+     */
+    public @NotNull String outputName() {
+        return this.outputName;
+    }
+
+    /**
+     * If true, certain build components may be auto-installed. Currently only used for MinGW on Windows hosts.
+     */
+    public boolean autoInstall() {
+        return this.autoInstall;
+    }
+
+    /**
+     * If true, the command-line output of the application will include info about JARStrap. If attribution is disabled,
+     * the application distributor should propagate the license information in another way.
+     */
+    public boolean attributionEnabled() {
+        return this.attributionEnabled;
+    }
+
+    /**
+     * The method used to build the native executable, {@link PackagerBackend#AUTO AUTO} by default.
+     */
+    public @NotNull PackagerBackend backend() {
+        return this.backend;
+    }
+
+    /**
+     * How the native stub is compiled &amp; linked, {@link PackagerProfile#STANDARD STANDARD} by default
+     * @since 0.3.0
+     */
+    public @NotNull PackagerProfile profile() {
+        return this.profile;
+    }
+
+    /**
+     * Timeouts for subprocesses run by individual stages, keyed by {@link PackagerStage#id() stage ID}.
+     * Stages which are not present use their own default.
+     */
+    public @NotNull @Unmodifiable Map<String, Duration> stageTimeouts() {
+        return this.stageTimeouts;
+    }
+
+    /**
+     * The executor used for file I/O which may be spread across threads, such as extracting the tool sources into
+     * the working directory. If null (the default), a shared pool of at most {@value IOExecutors#MAX_THREADS}
+     * daemon threads is used, see {@link #ioExecutorOrDefault()}.
+     * @since 0.3.0
+     */
+    public @Nullable Executor ioExecutor() {
+        return this.ioExecutor;
+    }
+
+    /**
+     * The {@link #ioExecutor() I/O executor}, or the shared pool if none is set
+     * @since 0.3.0
+     */
+    public @NotNull Executor ioExecutorOrDefault() {
+        return this.ioExecutor == null ? IOExecutors.shared() : this.ioExecutor;
+    }
+
+    /**
+     * If true, the {@code version} stage reads the class file version of every class in the JAR &amp; its
+     * {@link #libraries() libraries} rather than only the main class, and raises the {@link #minJavaVersion() minimum Java version} to match. Runs after the
+     * {@link #shrink() shrink} stage, so classes it removes are not counted. False by default.
+     * @since 0.3.0
+     * @see io.github.wasabithumb.jarstrap.jar.ClassVersionReport
+     */
+    public boolean scanClassVersions() {
+        return this.scanClassVersions;
+    }
+
+    /**
+     * <p>
+     *     If true, the {@code shrink} stage removes every class from the JAR which cannot be reached from the main
+     *     class, the services declared in {@code META-INF/services/} or the {@link #keepRules() keep rules}. False by
+     *     default.
+     * </p>
+     * <p>
+     *     Classes are found by following the names in constant pools, so classes which are only loaded reflectively
+     *     by computed names must be kept explicitly.
+     * </p>
+     * @since 0.3.0
+     */
+    public boolean shrink() {
+        return this.shrink;
+    }
+
+    /**
+     * Patterns of classes which the {@code shrink} stage must keep, such as {@code com.example.Plugin},
+     * {@code com.example.*} (one package) or {@code com.example.**} (a package &amp; its subpackages)
+     * @since 0.3.0
+     * @see #shrink()
+     */
+    public @NotNull @Unmodifiable List<String> keepRules() {
+        return this.keepRules;
+    }
+
+    /**
+     * <p>
+     *     If true, the {@code runtime} stage builds a minimal Java runtime for the application with {@code jdeps}
+     *     &amp; {@code jlink}, and embeds it into the executable. The launcher extracts it once (per runtime) and
+     *     uses it directly instead of searching for an installed Java. False by default.
+     * </p>
+     * <p>
+     *     The runtime is built for the platform of the {@link #runtimeJdk() JDK}, so only 64-bit
+     *     {@link #targets() targets} are supported.
+     * </p>
+     * @since 0.3.0
+     */
+    public boolean bundleRuntime() {
+        return this.bundleRuntime;
+    }
+
+    /**
+     * The JDK providing {@code jdeps}, {@code jlink} &amp; the {@code jmods} of the
+     * {@link #bundleRuntime() bundled runtime}, or null (the default) to use the JDK running the packager
+     * @since 0.3.0
+     */
+    public @Nullable File runtimeJdk() {
+        return this.runtimeJdk;
+    }
+
+    /**
+     * Modules to add to the {@link #bundleRuntime() bundled runtime} in addition to those found by {@code jdeps},
+     * such as those which are only loaded reflectively or as services (e.g. {@code jdk.crypto.ec} or
+     * {@code jdk.localedata})
+     * @since 0.3.0
+     */
+    public @NotNull @Unmodifiable List<String> runtimeModules() {
+        return this.runtimeModules;
+    }
+
+    /**
+     * <p>
+     *     If true, the launcher runs the application in a resident JVM shared by every launch of the same
+     *     executable by the same user, instead of starting a JVM each time. The first launch spawns the JVM, which
+     *     listens on a Unix domain socket keyed by the payload hash. Later launches connect to it and forward their
+     *     arguments, environment, working directory &amp; standard streams, so each call only pays for running
+     *     {@code main}. The JVM exits once it has been idle for the {@link #residentIdleTimeout() idle timeout}.
+     *     If it cannot be reached or started, the launcher starts the application normally. False by default.
+     * </p>
+     * <p>
+     *     Calls to {@code System.exit} in the application and its libraries are rewritten to end only the current
+     *     call. Static state, {@code System.getenv()} and the {@code user.dir} property are shared by all calls;
+     *     see {@link io.github.wasabithumb.jarstrap.resident.ResidentCall} for the environment &amp; working
+     *     directory of each call. The resident JVM needs Java 17, so the {@link #minJavaVersion() minimum Java
+     *     version} is raised to 17 if lower.
+     *     Executables built for Windows ignore this and always start the application normally.
+     * </p>
+     * @since 0.3.0
+     */
+    public boolean resident() {
+        return this.resident;
+    }
+
+    /**
+     * How long a {@link #resident() resident} JVM may go without calls before exiting, 10 minutes by default
+     * @since 0.3.0
+     */
+    public @NotNull Duration residentIdleTimeout() {
+        return this.residentIdleTimeout;
+    }
+
+    /**
+     * <p>
+     *     If true, packaging the same inputs with the same toolchain produces a byte-identical executable. The JAR is
+     *     always rewritten with its entries in a canonical order, each stamped with the
+     *     {@link #sourceDateEpoch() source date} &amp; stripped of extra timestamp fields. The C compiler is given
+     *     {@code -ffile-prefix-map} so that the path of the working directory is not embedded, and
+     *     {@code SOURCE_DATE_EPOCH} is set for the native build. False by default.
+     * </p>
+     * <p>
+     *     A {@link #bundleRuntime() bundled runtime} is reproducible only as far as {@code jlink} output is.
+     * </p>
+     * @since 0.3.0
+     */
+    public boolean reproducible() {
+        return this.reproducible;
+    }
+
+    /**
+     * The time (in seconds since the epoch) recorded by {@link #reproducible() reproducible} packaging. Defaults to
+     * the {@code SOURCE_DATE_EPOCH} environment variable, or 1980-01-01T00:00:00Z (the earliest time a ZIP entry can
+     * hold) if it is not set.
+     * @since 0.3.0
+     */
+    public long sourceDateEpoch() {
+        return this.sourceDateEpoch;
+    }
+
+    /**
+     * The timeout for subprocesses run by the given stage, or the given fallback if none is set
+     */
+    @Contract("_, !null -> !null")
+    public @Nullable Duration stageTimeout(@NotNull String stageId, @Nullable Duration fallback) {
+        return this.stageTimeouts.getOrDefault(stageId, fallback);
+    }
+
+    /**
+     * <p>
+     *     The targets to build, in order. Unless set explicitly with {@link Builder#targets(Collection)}, this is the
+     *     single target described by {@link #arch()} &amp; {@link #release()}.
+     * </p>
+     * <p>
+     *     Stages which do not depend on the target (extracting tools, reading the manifest, etc.) run once, while
+     *     the build stages run concurrently for each target.
+     * </p>
+     */
+    public @NotNull @Unmodifiable List<PackagerTarget> targets() {
+        return this.targets;
+    }
+
+    /**
+     * The name to use for the executable of the given target. When there is more than one
+     * {@link #targets() target}, this is the {@link #outputName() output name} followed by a hyphen and the
+     * {@link PackagerTarget#suffix() target suffix}; otherwise it is the output name unchanged.
+     */
+    public @NotNull String outputName(@NotNull PackagerTarget target) {
+        if (this.targets.size() < 2) return this.outputName;
+        return this.outputName + "-" + target.suffix();
+    }
+
+    /**
+     * Returns the configuration for building only the given target
+     */
+    public @NotNull PackagerConfig forTarget(@NotNull PackagerTarget target) {
+        if (!this.targetsSet && this.arch == target.arch() && this.release == target.release()) return this;
+        return this.toBuilder()
+                .targets(List.of())
+                .arch(target.arch())
+                .release(target.release())
+                .build();
+    }
+
+    /**
+     * Creates a builder which is initially populated with the values of this configuration
+     */
+    @Contract(" -> new")
+    public @NotNull Builder toBuilder() {
+        Builder ret = new Builder();
+        ret.arch = this.arch;
+        ret.release = this.release;
+        ret.os = this.os;
+        ret.appName = this.appName;
+        ret.minJavaVersion = this.minJavaVersion;
+        ret.preferredJavaVersion = this.preferredJavaVersion;
+        ret.launchFlags = this.launchFlags;
+        ret.installPrompt = this.installPrompt;
+        ret.source = this.source;
+        ret.libraries.addAll(this.libraries);
+        ret.outputDir = this.outputDir;
+        ret.outputName = this.outputNameSet ? this.outputName : null;
+        ret.autoInstall = this.autoInstall;
+        ret.attributionEnabled = this.attributionEnabled;
+        ret.backend = this.backend;
+        ret.profile = this.profile;
+        ret.stageTimeouts.putAll(this.stageTimeouts);
+        ret.ioExecutor = this.ioExecutor;
+        ret.scanClassVersions = this.scanClassVersions;
+        ret.shrink = this.shrink;
+        ret.keepRules.addAll(this.keepRules);
+        ret.bundleRuntime = this.bundleRuntime;
+        ret.runtimeJdk = this.runtimeJdk;
+        ret.runtimeModules.addAll(this.runtimeModules);
+        ret.resident = this.resident;
+        ret.residentIdleTimeout = this.residentIdleTimeout;
+        ret.reproducible = this.reproducible;
+        ret.sourceDateEpoch = this.sourceDateEpoch;
+        if (this.targetsSet) ret.targets.addAll(this.targets);
+        return ret;
+    }
+
+    //
+
+    private static @NotNull String deriveOutputName(@Nullable String appName) {
+        if (appName == null) return "jarstrap";
+        final int len = appName.length();
+        final char[] chars = new char[len];
+        char c;
+        for (int i=0; i < len; i++) {
+            c = appName.charAt(i);
+            if (Character.isWhitespace(c)) {
+                chars[i] = '_';
+            } else {
+                chars[i] = Character.toLowerCase(c);
+            }
+        }
+        return new String(chars);
+    }
+
+    private static int checkJavaVersion(int version) throws IllegalArgumentException {
+        if (version < 5 || version > 21)
+            throw new IllegalArgumentException("Java version " + version + " out of bounds (expected 5 - 21)");
+        return version;
+    }
+
+    private static @NotNull String checkInstallPrompt(@Nullable String prompt) throws IllegalArgumentException {
+        if (prompt == null) return "";
+        int len = prompt.length();
+        int counter = 0;
+        char c;
+        for (int i=0; i < len; i++) {
+            c = prompt.charAt(i);
+            if (c != '%') continue;
+            if (i == (len - 1))
+                throw new IllegalArgumentException("Starting escape '%' may not be last char in string");
+            c = prompt.charAt(++i);
+            if (c == '%') continue;
+            if (c != 'd')
+                throw new IllegalArgumentException("Escape char '%' must be followed by '%' or 'd'");
+            if (counter++ != 0)
+                throw new IllegalArgumentException("String may only have up to 1 \"%d\" template symbol");
+        }
+        return prompt;
+    }
+
+    //
+
+    public static final class Builder {
+
+        private PackagerArch arch = PackagerArch.X86_64;
+        private boolean release = false;
+        private PackagerOS os = PackagerOS.host();
+        private String appName = null;
+        private int minJavaVersion = 8;
+        private int preferredJavaVersion = 21;
+        private String launchFlags = "";
+        private String installPrompt = DEFAULT_INSTALL_PROMPT;
+        private File source = null;
+        private final List<File> libraries = new ArrayList<>();
+        private File outputDir = null;
+        private String outputName = null;
+        private boolean autoInstall = false;
+        private boolean attributionEnabled = true;
+        private PackagerBackend backend = PackagerBackend.AUTO;
+        private PackagerProfile profile = PackagerProfile.STANDARD;
+        private final Map<String, Duration> stageTimeouts = new HashMap<>();
+        private Executor ioExecutor = null;
+        private boolean scanClassVersions = false;
+        private boolean shrink = false;
+        private final Set<String> keepRules = new LinkedHashSet<>();
+        private boolean bundleRuntime = false;
+        private File runtimeJdk = null;
+        private final Set<String> runtimeModules = new LinkedHashSet<>();
+        private boolean resident = false;
+        private Duration residentIdleTimeout = Duration.ofMinutes(10L);
+        private boolean reproducible = false;
+        private long sourceDateEpoch = defaultSourceDateEpoch();
+        private final Set<PackagerTarget> targets = new LinkedHashSet<>();
+
+        private Builder() { }
+
+        /**
+         * @see PackagerConfig#arch()
+         */
+        @Contract("_ -> this")
+        public @NotNull Builder arch(@NotNull PackagerArch arch) {
+            this.arch = Objects.requireNonNull(arch);
+            return this;
+        }
+
+        /**
+         * @see PackagerConfig#release()
+         */
+        @Contract("_ -> this")
+        public @NotNull Builder release(boolean release) {
+            this.release = release;
+            return this;
+        }
+
+        /**
+         * @see PackagerConfig#os()
+         * @since 0.3.0
+         */
+        @Contract("_ -> this")
+        public @NotNull Builder os(@NotNull PackagerOS os) {
+            this.os = Objects.requireNonNull(os);
+            return this;
+        }
+
+        /**
+         * @see PackagerConfig#appName()
+         */
+        @Contract("_ -> this")
+        public @NotNull Builder appName(@Nullable String appName) {
+            this.appName = appName;
+            return this;
+        }
+
+        /**
+         * @see PackagerConfig#minJavaVersion()
+         */
+        @Contract("_ -> this")
+        public @NotNull Builder minJavaVersion(@Range(from = 5L, to = 21L) int minJavaVersion) {
+            this.minJavaVersion = checkJavaVersion(minJavaVersion);
+            return this;
+        }
+
+        /**
+         * @see PackagerConfig#preferredJavaVersion()
+         */
+        @Contract("_ -> this")
+        public @NotNull Builder preferredJavaVersion(@Range(from = 5L, to = 21L) int preferredJavaVersion) {
+            this.preferredJavaVersion = checkJavaVersion(preferredJavaVersion);
+            return this;
+        }
+
+        /**
+         * @see PackagerConfig#launchFlags()
+         */
+        @Contract("_ -> this")
+        public @NotNull Builder launchFlags(@NotNull String flags) {
+            this.launchFlags = Objects.requireNonNull(flags);
+            return this;
+        }
+
+        /**
+         * <p>
+         *     Sets the prompt to show when the user must install Java to proceed. The {@code %d} template can be used
+         *     up to 1 time and will be replaced with the target Java version. To write a literal percent char,
+         *     instead write {@code %%}.
+         * </p>
+         * <p>
+         *     The default prompt can be found at {@link #DEFAULT_INSTALL_PROMPT}.
+         * </p>
+         * @throws IllegalArgumentException The given prompt has more than one occurrence of {@code %d}, or has a
+         * {@code %} followed by the end of the string or a char that is not {@code %} or {@code d}.
+         */
+        @Contract("_ -> this")
+        public @NotNull Builder installPrompt(@Nullable String prompt) throws IllegalArgumentException {
+            this.installPrompt = checkInstallPrompt(prompt);
+            return this;
+        }
+
+        /**
+         * @see PackagerConfig#source()
+         */
+        @Contract("_ -> this")
+        public @NotNull Builder source(@Nullable File source) {
+            this.source = source;
+            return this;
+        }
+
+        /**
+         * Sets the library JARs, replacing any previously set
+         * @see PackagerConfig#libraries()
+         */
+        @Contract("_ -> this")
+        public @NotNull Builder libraries(@NotNull Collection<File> libraries) {
+            this.libraries.clear();
+            for (File library : libraries) this.library(library);
+            return this;
+        }
+
+        /**
+         * Adds a library JAR to the end of the class path
+         * @see PackagerConfig#libraries()
+         */
+        @Contract("_ -> this")
+        public @NotNull Builder library(@NotNull File library) {
+            this.libraries.add(Objects.requireNonNull(library));
+            return this;
+        }
+
+        /**
+         * @see PackagerConfig#outputDir()
+         */
+        @Contract("_ -> this")
+        public @NotNull Builder outputDir(@Nullable File outputDir) {
+            this.outputDir = outputDir;
+            return this;
+        }
+
+        /**
+         * @see PackagerConfig#outputName()
+         */
+        @Contract("_ -> this")
+        public @NotNull Builder outputName(@Nullable String outputName) {
+            this.outputName = outputName;
+            return this;
+        }
+
+        /**
+         * @see PackagerConfig#autoInstall()
+         */
+        @Contract("_ -> this")
+        public @NotNull Builder autoInstall(boolean autoInstall) {
+            this.autoInstall = autoInstall;
+            return this;
+        }
+
+        /**
+         * @see PackagerConfig#attributionEnabled()
+         */
+        @Contract("_ -> this")
+        public @NotNull Builder attributionEnabled(boolean attributionEnabled) {
+            this.attributionEnabled = attributionEnabled;
+            return this;
+        }
+
+        /**
+         * @see PackagerConfig#backend()
+         */
+        @Contract("_ -> this")
+        public @NotNull Builder backend(@NotNull PackagerBackend backend) {
+            this.backend = Objects.requireNonNull(backend);
+            return this;
+        }
+
+        /**
+         * @see PackagerConfig#profile()
+         * @since 0.3.0
+         */
+        @Contract("_ -> this")
+        public @NotNull Builder profile(@NotNull PackagerProfile profile) {
+            this.profile = Objects.requireNonNull(profile);
+            return this;
+        }
+
+        /**
+         * @see PackagerConfig#ioExecutor()
+         */
+        @Contract("_ -> this")
+        public @NotNull Builder ioExecutor(@Nullable Executor ioExecutor) {
+            this.ioExecutor = ioExecutor;
+            return this;
+        }
+
+        /**
+         * @see PackagerConfig#scanClassVersions()
+         */
+        @Contract("_ -> this")
+        public @NotNull Builder scanClassVersions(boolean scanClassVersions) {
+            this.scanClassVersions = scanClassVersions;
+            return this;
+        }
+
+        /**
+         * @see PackagerConfig#shrink()
+         */
+        @Contract("_ -> this")
+        public @NotNull Builder shrink(boolean shrink) {
+            this.shrink = shrink;
+            return this;
+        }
+
+        /**
+         * Sets the keep rules, replacing any previously set
+         * @throws IllegalArgumentException A rule is malformed
+         * @see PackagerConfig#keepRules()
+         */
+        @Contract("_ -> this")
+        public @NotNull Builder keepRules(@NotNull Collection<String> keepRules) {
+            this.keepRules.clear();
+            for (String rule : keepRules) this.keep(rule);
+            return this;
+        }
+
+        /**
+         * Adds a keep rule
+         * @throws IllegalArgumentException The rule is malformed
+         * @see PackagerConfig#keepRules()
+         */
+        @Contract("_ -> this")
+        public @NotNull Builder keep(@NotNull String keepRule) {
+            this.keepRules.add(new ClassReachability.KeepRule(keepRule).pattern());
+            return this;
+        }
+
+        /**
+         * @see PackagerConfig#bundleRuntime()
+         */
+        @Contract("_ -> this")
+        public @NotNull Builder bundleRuntime(boolean bundleRuntime) {
+            this.bundleRuntime = bundleRuntime;
+            return this;
+        }
+
+        /**
+         * @see PackagerConfig#runtimeJdk()
+         */
+        @Contract("_ -> this")
+        public @NotNull Builder runtimeJdk(@Nullable File runtimeJdk) {
+            this.runtimeJdk = runtimeJdk;
+            return this;
+        }
+
+        /**
+         * Sets the additional runtime modules, replacing any previously set
+         * @see PackagerConfig#runtimeModules()
+         */
+        @Contract("_ -> this")
+        public @NotNull Builder runtimeModules(@NotNull Collection<String> runtimeModules) {
+            this.runtimeModules.clear();
+            for (String module : runtimeModules) this.runtimeModule(module);
+            return this;
+        }
+
+        /**
+         * Adds a module to the runtime
+         * @throws IllegalArgumentException The name is blank
+         * @see PackagerConfig#runtimeModules()
+         */
+        @Contract("_ -> this")
+        public @NotNull Builder runtimeModule(@NotNull String module) {
+            if (module.isBlank())
+                throw new IllegalArgumentException("Module name may not be blank");
+            this.runtimeModules.add(module.trim());
+            return this;
+        }
+
+        /**
+         * @see PackagerConfig#resident()
+         */
+        @Contract("_ -> this")
+        public @NotNull Builder resident(boolean resident) {
+            this.resident = resident;
+            return this;
+        }
+
+        /**
+         * @throws IllegalArgumentException The timeout is shorter than a second
+         * @see PackagerConfig#residentIdleTimeout()
+         */
+        @Contract("_ -> this")
+        public @NotNull Builder residentIdleTimeout(@NotNull Duration residentIdleTimeout) {
+            if (residentIdleTimeout.getSeconds() < 1L)
+                throw new IllegalArgumentException("Resident idle timeout must be at least 1 second");
+            this.residentIdleTimeout = residentIdleTimeout;
+            return this;
+        }
+
+        /**
+         * @see PackagerConfig#reproducible()
+         */
+        @Contract("_ -> this")
+        public @NotNull Builder reproducible(boolean reproducible) {
+            this.reproducible = reproducible;
+            return this;
+        }
+
+        /**
+         * @throws IllegalArgumentException The time is negative
+         * @see PackagerConfig#sourceDateEpoch()
+         */
+        @Contract("_ -> this")
+        public @NotNull Builder sourceDateEpoch(long sourceDateEpoch) {
+            if (sourceDateEpoch < 0L)
+                throw new IllegalArgumentException("Source date epoch may not be negative");
+            this.sourceDateEpoch = sourceDateEpoch;
+            return this;
+        }
+
+        /**
+         * Sets the timeout for subprocesses run by the given stage, or restores the default if null.
+         * @see PackagerConfig#stageTimeouts()
+         */
+        @Contract("_, _ -> this")
+        public @NotNull Builder stageTimeout(@NotNull String stageId, @Nullable Duration timeout) {
+            if (timeout == null) {
+                this.stageTimeouts.remove(stageId);
+            } else {
+                if (timeout.isNegative() || timeout.isZero())
+                    throw new IllegalArgumentException("Timeout for stage \"" + stageId + "\" must be positive");
+                this.stageTimeouts.put(stageId, timeout);
+            }
+            return this;
+        }
+
+        /**
+         * Sets the targets to build, replacing any previously set. An empty collection restores the default of
+         * building only {@link #arch(PackagerArch) arch} &amp; {@link #release(boolean) release}.
+         * @see PackagerConfig#targets()
+         */
+        @Contract("_ -> this")
+        public @NotNull Builder targets(@NotNull Collection<PackagerTarget> targets) {
+            this.targets.clear();
+            for (PackagerTarget target : targets) this.targets.add(Objects.requireNonNull(target));
+            return this;
+        }
+
+        /**
+         * Adds a target to build
+         * @see PackagerConfig#targets()
+         */
+        @Contract("_, _ -> this")
+        public @NotNull Builder target(@NotNull PackagerArch arch, boolean release) {
+            this.targets.add(new PackagerTarget(arch, release));
+            return this;
+        }
+
+        @Contract(" -> new")
+        public @NotNull PackagerConfig build() {
+            return new PackagerConfig(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,52 @@
+package io.github.wasabithumb.jarstrap.packager;
+
+import io.github.wasabithumb.josdirs.JOSDirs;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The operating system to build executables for
+ * @since 0.3.0
+ */
+public enum PackagerOS {
+    /**
+     * The POSIX build of the stub, linked against the C library of the host. Hosts other than Windows build
+     * for this OS natively.
+     */
+    LINUX(""),
+
+    /**
+     * The Windows build of the stub. Built natively on Windows hosts, or with a MinGW-w64 cross compiler
+     * ({@code x86_64-w64-mingw32-gcc} or {@code i686-w64-mingw32-gcc} on {@code PATH}) on other hosts.
+     */
+    WINDOWS(".exe");
+
+    /**
+     * The OS of the current host
+     */
+    public static @NotNull PackagerOS host() {
+        return JOSDirs.platform().equals("windows") ? WINDOWS : LINUX;
+    }
+
+    //
+
+    private final String extension;
+
+    PackagerOS(@NotNull String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * The file extension of executables, including the leading dot if not empty
+     */
+    public @NotNull String extension() {
+        return this.extension;
+    }
+
+    /**
+     * True if executables for this OS are built with a cross compiler on the current host
+     */
+    public boolean isCross() {
+        return this != host();
+    }
+
+}
@@ -0,0 +1,21 @@
+package io.github.wasabithumb.jarstrap.packager;
+
+/**
+ * How the native stub is compiled &amp; linked
+ * @since 0.3.0
+ */
+public enum PackagerProfile {
+    /**
+     * Optimized for speed ({@code -O3}) and dynamically linked against the C library of the host
+     */
+    STANDARD,
+
+    /**
+     * Optimized for size ({@code -Os}) with link-time optimization, unused code &amp; data removed
+     * ({@code --gc-sections}) and, for release builds, stripped of symbols. When {@code musl-gcc} is found on a
+     * 64-bit Linux host the stub is also linked statically against musl, so it starts without the dynamic loader.
+     * Otherwise it stays dynamically linked against the C library of the host, since a static glibc is many times
+     * larger than the stub.
+     */
+    COMPACT
+}
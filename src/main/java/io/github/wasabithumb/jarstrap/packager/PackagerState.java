@@ -1,6 +1,11 @@
 package io.github.wasabithumb.jarstrap.packager;
 
+import io.github.wasabithumb.jarstrap.jar.ClassVersionReport;
+import io.github.wasabithumb.jarstrap.jar.JarIndex;
+import io.github.wasabithumb.jarstrap.packager.error.PackagerException;
 import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.UnknownNullability;
 
 import java.io.File;
@@ -8,8 +13,103 @@ import java.io.File;
 @ApiStatus.Internal
 public class PackagerState {
 
+    /**
+     * The configuration snapshot taken when execution started. Stages may replace this with an adjusted copy.
+     */
+    public @UnknownNullability PackagerConfig config = null;
+
+    /**
+     * The target being built. When building several targets, each target-specific stage receives a state for its own
+     * target; this field is then null in the shared state.
+     */
+    public @UnknownNullability PackagerTarget target = null;
+
+    /**
+     * The index of {@code archive/archive.jar}, set by the {@code inject} stage. A stage which rewrites the archive
+     * must replace this with a new index.
+     */
+    public @UnknownNullability JarIndex jarIndex = null;
+
+    /**
+     * The versions of the classes in the archive, set by the {@code version} stage when
+     * {@link PackagerConfig#scanClassVersions() enabled}
+     */
+    public @Nullable ClassVersionReport classVersions = null;
+
+    /**
+     * The runtime to embed, set by the {@code runtime} stage when
+     * {@link PackagerConfig#bundleRuntime() enabled}. The name of the directory identifies the runtime.
+     */
+    public @Nullable File runtimeDir = null;
+
     public @UnknownNullability File cmakeDir = null;
 
     public @UnknownNullability File mingwMake = null;
 
+    /**
+     * The common prefix of the MinGW-w64 cross tools, e.g. {@code /usr/bin/x86_64-w64-mingw32}, set by the
+     * {@code mingw} stage when building for Windows on another host
+     */
+    public @Nullable String mingwPrefix = null;
+
+    /**
+     * The built executable, set by whichever build stage produced it
+     */
+    public @UnknownNullability File executable = null;
+
+    private boolean concurrent = false;
+
+    /**
+     * Raises the {@link PackagerConfig#minJavaVersion() minimum Java version} of the configuration to the given
+     * version, if it is lower
+     * @param reason What requires the version, e.g. {@code Main class of JAR file was compiled against Java 17}
+     * @return True if the minimum Java version was raised
+     * @throws PackagerException The version is above the {@link PackagerConfig#preferredJavaVersion() preferred Java
+     * version}
+     */
+    public boolean raiseMinJavaVersion(int version, @NotNull String reason) throws PackagerException {
+        if (version <= this.config.minJavaVersion()) return false;
+        final int preferredJavaVersion = this.config.preferredJavaVersion();
+        if (version > preferredJavaVersion)
+            throw new PackagerException(reason + ", but preferred Java version is " + preferredJavaVersion);
+        this.config = this.config.toBuilder()
+                .minJavaVersion(version)
+                .build();
+        return true;
+    }
+
+    /**
+     * Creates the state for one of several targets, deriving from this shared state
+     */
+    public @NotNull PackagerState forTarget(@NotNull PackagerTarget target) {
+        PackagerState ret = new PackagerState();
+        ret.config = this.config.forTarget(target);
+        ret.target = target;
+        ret.jarIndex = this.jarIndex;
+        ret.classVersions = this.classVersions;
+        ret.runtimeDir = this.runtimeDir;
+        ret.mingwMake = this.mingwMake;
+        ret.mingwPrefix = this.mingwPrefix;
+        ret.concurrent = true;
+        return ret;
+    }
+
+    /**
+     * The name of a build directory within the working directory. Suffixed with the target when other targets are
+     * building alongside this one.
+     */
+    public @NotNull String targetDirName(@NotNull String name) {
+        if (!this.concurrent) return name;
+        return name + "-" + this.target.suffix();
+    }
+
+    /**
+     * The tag for subprocess output of the given stage, including the target when other targets are building
+     * alongside this one
+     */
+    public @NotNull String tag(@NotNull String stageId) {
+        if (!this.concurrent) return stageId;
+        return stageId + " " + this.target.suffix();
+    }
+
 }
@@ -0,0 +1,62 @@
+package io.github.wasabithumb.jarstrap.packager;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * A combination of architecture &amp; build type to produce an executable for. A single packager may build several
+ * targets at once, see {@link PackagerConfig#targets()}.
+ * @param arch The architecture to build for
+ * @param release True if building a release binary
+ * @since 0.3.0
+ */
+public record PackagerTarget(@NotNull PackagerArch arch, boolean release) {
+
+    /**
+     * Parses a target from its {@link #suffix() suffix}, e.g. {@code x86_64-release}. The build type may be omitted,
+     * in which case a debug target is returned.
+     * @throws IllegalArgumentException The string does not describe a target
+     */
+    public static @NotNull PackagerTarget parse(@NotNull String value) throws IllegalArgumentException {
+        final String trimmed = value.trim();
+        final int whereHyphen = trimmed.lastIndexOf('-');
+        String arch = trimmed;
+        boolean release = false;
+        if (whereHyphen != -1) {
+            final String type = trimmed.substring(whereHyphen + 1);
+            if (type.equalsIgnoreCase("release")) {
+                release = true;
+            } else if (!type.equalsIgnoreCase("debug")) {
+                throw new IllegalArgumentException("Unknown build type \"" + type + "\" in target \"" + value + "\"");
+            }
+            arch = trimmed.substring(0, whereHyphen);
+        }
+        try {
+            return new PackagerTarget(PackagerArch.valueOf(arch.toUpperCase(Locale.ROOT)), release);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown architecture \"" + arch + "\" in target \"" + value + "\"", e);
+        }
+    }
+
+    //
+
+    public PackagerTarget {
+        Objects.requireNonNull(arch);
+    }
+
+    /**
+     * A short name for this target, e.g. {@code x86_64-release}. Appended to output names and build directories
+     * when a packager builds more than one target.
+     */
+    public @NotNull String suffix() {
+        return this.arch.name().toLowerCase(Locale.ROOT) + (this.release ? "-release" : "-debug");
+    }
+
+    @Override
+    public @NotNull String toString() {
+        return this.suffix();
+    }
+
+}
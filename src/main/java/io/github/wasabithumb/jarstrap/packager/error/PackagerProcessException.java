@@ -0,0 +1,61 @@
+package io.github.wasabithumb.jarstrap.packager.error;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Unmodifiable;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thrown when a subprocess launched by a packager stage fails or times out. The tail of the output of the process is
+ * available through {@link #getOutput()}.
+ * @since 0.3.0
+ */
+public class PackagerProcessException extends PackagerException {
+
+    private static final int MESSAGE_LINES = 20;
+
+    private final String command;
+    private final int exitCode;
+    private final List<String> output;
+
+    public PackagerProcessException(@NotNull String message, @NotNull String command, int exitCode, @NotNull List<String> output) {
+        super(formatMessage(message, output));
+        this.command = command;
+        this.exitCode = exitCode;
+        this.output = Collections.unmodifiableList(output);
+    }
+
+    /**
+     * The name of the command which failed
+     */
+    public @NotNull String getCommand() {
+        return this.command;
+    }
+
+    /**
+     * The exit code of the process, or {@code -1} if it was killed
+     */
+    public int getExitCode() {
+        return this.exitCode;
+    }
+
+    /**
+     * The last lines of output (stdout &amp; stderr) produced by the process
+     */
+    public @NotNull @Unmodifiable List<String> getOutput() {
+        return this.output;
+    }
+
+    private static @NotNull String formatMessage(@NotNull String message, @NotNull List<String> output) {
+        if (output.isEmpty()) return message;
+        final int start = Math.max(0, output.size() - MESSAGE_LINES);
+        StringBuilder sb = new StringBuilder(message);
+        sb.append(" (last ").append(output.size() - start).append(" lines of output follow)");
+        for (int i=start; i < output.size(); i++) {
+            sb.append("\n\t").append(output.get(i));
+        }
+        return sb.toString();
+    }
+
+}
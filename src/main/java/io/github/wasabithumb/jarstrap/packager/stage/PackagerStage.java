@@ -11,4 +11,14 @@ public interface PackagerStage {
 
     void execute(@NotNull Packager packager, @NotNull PackagerState state) throws PackagerException;
 
+    /**
+     * If true, this stage depends on the {@link io.github.wasabithumb.jarstrap.packager.PackagerTarget target} being
+     * built. When a packager has several targets, such stages execute concurrently, once per target, each with its
+     * own copy of the state.
+     * @since 0.3.0
+     */
+    default boolean perTarget() {
+        return false;
+    }
+
 }
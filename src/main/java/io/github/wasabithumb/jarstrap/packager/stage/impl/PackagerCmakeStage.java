@@ -1,40 +1,53 @@
 package io.github.wasabithumb.jarstrap.packager.stage.impl;
 
 import io.github.wasabithumb.jarstrap.packager.Packager;
+import io.github.wasabithumb.jarstrap.packager.PackagerConfig;
+import io.github.wasabithumb.jarstrap.packager.PackagerProfile;
 import io.github.wasabithumb.jarstrap.packager.PackagerState;
 import io.github.wasabithumb.jarstrap.packager.error.PackagerException;
 import io.github.wasabithumb.jarstrap.packager.error.PackagerIOException;
-import io.github.wasabithumb.jarstrap.packager.error.PackagerInterruptedException;
 import io.github.wasabithumb.jarstrap.packager.stage.PackagerStage;
+import io.github.wasabithumb.jarstrap.packager.toolchain.NativeToolchain;
+import io.github.wasabithumb.jarstrap.util.process.ProcessRunner;
 import io.github.wasabithumb.josdirs.JOSDirs;
 import org.jetbrains.annotations.NotNull;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.util.logging.Level;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class PackagerCmakeStage implements PackagerStage {
 
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofMinutes(5L);
+    private static final String MINGW_TOOLCHAIN_FILE = "toolchain/mingw-w64.cmake";
+
     @Override
     public @NotNull String id() {
         return "cmake";
     }
 
+    @Override
+    public boolean perTarget() {
+        return true;
+    }
+
     @Override
     public void execute(@NotNull Packager packager, @NotNull PackagerState state) throws PackagerException {
+        // Already built by the direct backend
+        if (state.executable != null) return;
         try {
-            state.cmakeDir = this.execute0(packager);
+            state.cmakeDir = this.execute0(packager, state);
         } catch (IOException e) {
             throw new PackagerIOException(e);
-        } catch (InterruptedException e) {
-            throw new PackagerInterruptedException(e);
         }
     }
 
-    private @NotNull File execute0(@NotNull Packager packager) throws IOException, InterruptedException {
-        final File cmakeDir = new File(packager.getWorkingDir(), "cmake");
+    private @NotNull File execute0(@NotNull Packager packager, @NotNull PackagerState state) throws IOException, PackagerException {
+        final PackagerConfig config = state.config;
+        final File cmakeDir = new File(packager.getWorkingDir(), state.targetDirName("cmake"));
         if (!cmakeDir.isDirectory() && !cmakeDir.mkdirs())
             throw new IOException("Path \"" + cmakeDir + "\" is not a directory and could not be created");
 
@@ -46,34 +59,45 @@ public class PackagerCmakeStage implements PackagerStage {
         }
 
         String buildType;
-        if (packager.isRelease()) {
+        if (config.release()) {
             buildType = "Release";
         } else {
             buildType = "Debug";
         }
 
-        ProcessBuilder pb = new ProcessBuilder();
-        pb.directory(cmakeDir);
-        pb.redirectErrorStream(true);
-        if (packager.getArch().is64Bit()) {
-            pb.command("cmake", "-G", generator, "..", "-DCMAKE_BUILD_TYPE=" + buildType);
-        } else {
-            pb.command("cmake", "-G", generator, "..", "-DCMAKE_BUILD_TYPE=" + buildType, "-DCMAKE_C_FLAGS=\"-m32\"");
-        }
-
-        Process p = pb.start();
+        ProcessRunner runner = new ProcessRunner(state.tag(this.id()), packager.logger())
+                .directory(cmakeDir)
+                .timeout(config.stageTimeout(this.id(), DEFAULT_TIMEOUT));
 
-        try (BufferedReader br = p.inputReader(StandardCharsets.UTF_8)) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                packager.logger().log(Level.INFO, "[cmake] " + line);
-            }
+        // Cross compilers are dedicated to one architecture
+        final String mingwPrefix = state.mingwPrefix;
+        final List<String> cFlags = new ArrayList<>(2);
+        if (!config.arch().is64Bit() && mingwPrefix == null) cFlags.add("-m32");
+        if (config.reproducible()) {
+            cFlags.add(PackagerCompileStage.prefixMapFlag(packager.getWorkingDir()));
+            runner.environment("SOURCE_DATE_EPOCH", Long.toString(config.sourceDateEpoch()));
         }
 
-        int exit = p.waitFor();
-        if (exit != 0) {
-            throw new PackagerException("cmake exited with non-zero exit code: " + exit);
+        final List<String> cmd = new ArrayList<>(8);
+        Collections.addAll(cmd, "cmake", "-G", generator, "..", "-DCMAKE_BUILD_TYPE=" + buildType);
+        if (mingwPrefix != null) {
+            final File toolchainFile = new File(packager.getWorkingDir(), MINGW_TOOLCHAIN_FILE);
+            cmd.add("-DCMAKE_TOOLCHAIN_FILE=" + toolchainFile.getAbsolutePath());
+            cmd.add("-DJARSTRAP_MINGW_PREFIX=" + mingwPrefix);
+        }
+        if (config.profile() == PackagerProfile.COMPACT) {
+            cmd.add("-DJARSTRAP_PROFILE=COMPACT");
+            // musl-gcc only targets the architecture of the host
+            if (mingwPrefix == null && config.arch().is64Bit()) {
+                final NativeToolchain musl = NativeToolchain.musl(packager.logger());
+                if (musl != null) {
+                    cmd.add("-DCMAKE_C_COMPILER=" + musl.compiler().getAbsolutePath());
+                    cmd.add("-DJARSTRAP_STATIC=ON");
+                }
+            }
         }
+        if (!cFlags.isEmpty()) cmd.add("-DCMAKE_C_FLAGS=" + String.join(" ", cFlags));
+        runner.run(cmd).requireSuccess();
 
         return cmakeDir;
     }
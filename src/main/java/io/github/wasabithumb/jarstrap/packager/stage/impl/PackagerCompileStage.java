@@ -0,0 +1,240 @@
+package io.github.wasabithumb.jarstrap.packager.stage.impl;
+
+import io.github.wasabithumb.jarstrap.packager.Packager;
+import io.github.wasabithumb.jarstrap.packager.PackagerBackend;
+import io.github.wasabithumb.jarstrap.packager.PackagerConfig;
+import io.github.wasabithumb.jarstrap.packager.PackagerProfile;
+import io.github.wasabithumb.jarstrap.packager.PackagerState;
+import io.github.wasabithumb.jarstrap.packager.error.PackagerException;
+import io.github.wasabithumb.jarstrap.packager.error.PackagerIOException;
+import io.github.wasabithumb.jarstrap.packager.error.PackagerInterruptedException;
+import io.github.wasabithumb.jarstrap.packager.stage.PackagerStage;
+import io.github.wasabithumb.jarstrap.packager.toolchain.NativeToolchain;
+import io.github.wasabithumb.jarstrap.packager.toolchain.ObjectCache;
+import io.github.wasabithumb.jarstrap.util.concurrent.ParallelJobs;
+import io.github.wasabithumb.jarstrap.util.process.ProcessRunner;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Builds the stub by invoking the C compiler directly, bypassing CMake. Each translation unit is compiled in
+ * parallel, then the archive is wrapped into an object and everything is linked. Objects other than the generated
+ * {@code config.c} are kept in an {@link ObjectCache}, so after the first package only {@code config.c} and the
+ * archive are built. When this stage produces an executable, the {@code cmake} and {@code make} stages are skipped.
+ * Sources are compiled &amp; linked in name order, so that the executable does not depend on directory listing order.
+ * @see PackagerBackend#DIRECT
+ */
+public class PackagerCompileStage implements PackagerStage {
+
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofMinutes(5L);
+    private static final String ARCHIVE_INPUT = "../archive/payload.bin";
+    private static final String ARCHIVE_OBJECT = "archive_payload_bin.o";
+    private static final String CONFIG_SOURCE = "config.c";
+
+    @Override
+    public @NotNull String id() {
+        return "compile";
+    }
+
+    @Override
+    public boolean perTarget() {
+        return true;
+    }
+
+    @Override
+    public void execute(@NotNull Packager packager, @NotNull PackagerState state) throws PackagerException {
+        final PackagerBackend backend = state.config.backend();
+        if (backend == PackagerBackend.CMAKE) return;
+        if (state.config.os().isCross()) {
+            if (backend == PackagerBackend.DIRECT)
+                throw new PackagerException("The direct backend cannot build " + state.config.os() + " executables on this host");
+            packager.logger().log(Level.FINE, "[compile] cross compiling, falling back to CMake");
+            return;
+        }
+
+        // musl-gcc only targets the architecture of the host
+        NativeToolchain toolchain = null;
+        if (state.config.profile() == PackagerProfile.COMPACT && state.config.arch().is64Bit())
+            toolchain = NativeToolchain.musl(packager.logger());
+        if (toolchain == null) toolchain = NativeToolchain.host(packager.logger());
+        if (toolchain == null) {
+            if (backend == PackagerBackend.DIRECT)
+                throw new PackagerException("No suitable C toolchain found for the direct backend");
+            packager.logger().log(Level.INFO, "[compile] no suitable C toolchain, falling back to CMake");
+            return;
+        }
+        packager.logger().log(Level.FINE, "[compile] using " + toolchain.compiler() + " (" + toolchain.machine() + ")");
+
+        try {
+            state.executable = this.execute0(packager, state, toolchain);
+        } catch (IOException e) {
+            throw new PackagerIOException("Failed to compile executable", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PackagerInterruptedException(e);
+        }
+    }
+
+    private @NotNull File execute0(
+            @NotNull Packager packager,
+            @NotNull PackagerState state,
+            @NotNull NativeToolchain toolchain
+    ) throws IOException, InterruptedException, PackagerException {
+        final PackagerConfig config = state.config;
+        final String tag = state.tag(this.id());
+        final File workingDir = packager.getWorkingDir();
+        final File buildDir = new File(workingDir, state.targetDirName("build"));
+        if (!buildDir.isDirectory() && !buildDir.mkdirs())
+            throw new IOException("Path \"" + buildDir + "\" is not a directory and could not be created");
+
+        final List<String> sources = new ArrayList<>();
+        sources.add("main.c");
+        final File[] srcFiles = new File(workingDir, "src").listFiles();
+        if (srcFiles == null)
+            throw new IOException("Path \"" + new File(workingDir, "src") + "\" is not a directory");
+        Arrays.sort(srcFiles);
+        for (File f : srcFiles) {
+            if (f.isFile() && f.getName().endsWith(".c")) sources.add("src/" + f.getName());
+        }
+
+        final Duration timeout = config.stageTimeout(this.id(), DEFAULT_TIMEOUT);
+        final List<String> compileFlags = toolchain.compileFlags(config.arch(), config.release(), config.profile());
+
+        // The mapped path differs per working directory, but the objects do not, so only the mapping is part of the key
+        final List<String> extraFlags = new ArrayList<>(1);
+        final List<String> keyFlags = new ArrayList<>(compileFlags);
+        if (config.reproducible()) {
+            extraFlags.add(prefixMapFlag(workingDir));
+            keyFlags.add("-ffile-prefix-map");
+        }
+
+        // Everything but config.c & the archive is identical between packages
+        final ObjectCache cache = ObjectCache.shared();
+        final String cacheKey = cache.key(
+                toolchain,
+                keyFlags,
+                config.arch(),
+                config.release(),
+                ObjectCache.hashSources(workingDir, sources)
+        );
+        final File cached = cache.lookup(cacheKey);
+
+        final List<String> cachedObjects = new ArrayList<>(sources.size());
+        for (String source : sources) cachedObjects.add(objectName(source));
+
+        final List<String> compiled = new ArrayList<>(sources.size() + 1);
+        if (cached == null) compiled.addAll(sources);
+        compiled.add(CONFIG_SOURCE);
+
+        final List<Callable<Void>> jobs = new ArrayList<>(compiled.size() + 1);
+        final List<String> objects = new ArrayList<>(sources.size() + 2);
+        for (String source : compiled) {
+            final String object = objectName(source);
+            if (source.equals(CONFIG_SOURCE)) objects.add(object);
+
+            final List<String> cmd = new ArrayList<>(compileFlags.size() + extraFlags.size() + 5);
+            cmd.add(toolchain.compiler().getAbsolutePath());
+            cmd.addAll(compileFlags);
+            cmd.addAll(extraFlags);
+            cmd.add("-c");
+            cmd.add("../" + source);
+            cmd.add("-o");
+            cmd.add(object);
+            jobs.add(this.job(tag, packager.logger(), buildDir, timeout, config, cmd));
+        }
+
+        // The path of the input determines the symbol names referenced by archive.c
+        objects.add(ARCHIVE_OBJECT);
+        jobs.add(this.job(
+                tag,
+                packager.logger(),
+                buildDir,
+                timeout,
+                config,
+                toolchain.binaryObjectCommand(config.arch(), ARCHIVE_INPUT, ARCHIVE_OBJECT)
+        ));
+
+        ParallelJobs.runAll("Compile", jobs);
+
+        if (cached == null) {
+            objects.addAll(cachedObjects);
+            try {
+                cache.store(cacheKey, buildDir, cachedObjects);
+            } catch (IOException e) {
+                packager.logger().log(Level.WARNING, "[compile] failed to populate object cache", e);
+            }
+        } else {
+            packager.logger().log(Level.FINE, "[compile] using cached objects from " + cached);
+            for (String object : cachedObjects) objects.add(new File(cached, object).getAbsolutePath());
+        }
+
+        final List<String> linkFlags = toolchain.linkFlags(config.arch(), config.release(), config.profile());
+        final List<String> link = new ArrayList<>(linkFlags.size() + objects.size() + 3);
+        link.add(toolchain.compiler().getAbsolutePath());
+        link.addAll(linkFlags);
+        link.add("-o");
+        link.add("jarstrap");
+        link.addAll(objects);
+
+        runner(tag, packager.logger(), buildDir, timeout, config)
+                .run(link)
+                .requireSuccess();
+
+        final File executable = new File(buildDir, "jarstrap");
+        if (!executable.isFile())
+            throw new PackagerException("Linker did not produce \"" + executable.getAbsolutePath() + "\"");
+        return executable;
+    }
+
+    private @NotNull Callable<Void> job(
+            @NotNull String tag,
+            @NotNull Logger logger,
+            @NotNull File dir,
+            @NotNull Duration timeout,
+            @NotNull PackagerConfig config,
+            @NotNull List<String> cmd
+    ) {
+        return () -> {
+            runner(tag, logger, dir, timeout, config)
+                    .run(cmd)
+                    .requireSuccess();
+            return null;
+        };
+    }
+
+    private static @NotNull ProcessRunner runner(
+            @NotNull String tag,
+            @NotNull Logger logger,
+            @NotNull File dir,
+            @NotNull Duration timeout,
+            @NotNull PackagerConfig config
+    ) {
+        final ProcessRunner ret = new ProcessRunner(tag, logger)
+                .directory(dir)
+                .timeout(timeout);
+        if (config.reproducible()) ret.environment("SOURCE_DATE_EPOCH", Long.toString(config.sourceDateEpoch()));
+        return ret;
+    }
+
+    /**
+     * Maps paths under the working directory to {@code .}, for both debug information &amp; {@code __FILE__}
+     */
+    static @NotNull String prefixMapFlag(@NotNull File workingDir) {
+        return "-ffile-prefix-map=" + workingDir.getAbsolutePath() + "=.";
+    }
+
+    private static @NotNull String objectName(@NotNull String source) {
+        return source.substring(0, source.length() - 2)
+                .replace('/', '_') + ".o";
+    }
+
+}
@@ -5,13 +5,13 @@ import io.github.wasabithumb.jarstrap.packager.PackagerState;
 import io.github.wasabithumb.jarstrap.packager.error.PackagerException;
 import io.github.wasabithumb.jarstrap.packager.error.PackagerIOException;
 import io.github.wasabithumb.jarstrap.packager.stage.PackagerStage;
-import io.github.wasabithumb.jarstrap.util.io.StreamUtil;
+import io.github.wasabithumb.jarstrap.util.io.FileUtil;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 
 public class PackagerExportStage implements PackagerStage {
 
@@ -20,19 +20,25 @@ public class PackagerExportStage implements PackagerStage {
         return "export";
     }
 
+    @Override
+    public boolean perTarget() {
+        return true;
+    }
+
     @Override
     public void execute(@NotNull Packager packager, @NotNull PackagerState state) throws PackagerException {
-        final File src = new File(state.cmakeDir, "jarstrap" + packager.getExtension());
-        final File dest = packager.getOutputFile();
+        final File src = state.executable;
+        if (src == null) {
+            throw new PackagerException("No executable was built");
+        }
+        final File dest = packager.getOutputFile(state.target);
 
         if (!src.isFile()) {
             throw new PackagerException("Output file \"" + src.getAbsolutePath() + "\" not found");
         }
 
-        try (FileInputStream fis = new FileInputStream(src);
-             FileOutputStream fos = new FileOutputStream(dest, false)
-        ) {
-            StreamUtil.pipe(fis, fos);
+        try (FileChannel fc = FileChannel.open(src.toPath(), StandardOpenOption.READ)) {
+            FileUtil.transfer(fc, dest.toPath());
         } catch (IOException e) {
             throw new PackagerIOException("Failed to export output file", e);
         }
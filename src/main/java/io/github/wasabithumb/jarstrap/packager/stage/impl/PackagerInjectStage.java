@@ -1,19 +1,21 @@
 package io.github.wasabithumb.jarstrap.packager.stage.impl;
 
+import io.github.wasabithumb.jarstrap.jar.JarIndex;
 import io.github.wasabithumb.jarstrap.packager.Packager;
 import io.github.wasabithumb.jarstrap.packager.PackagerState;
 import io.github.wasabithumb.jarstrap.packager.error.PackagerException;
 import io.github.wasabithumb.jarstrap.packager.error.PackagerIOException;
 import io.github.wasabithumb.jarstrap.packager.stage.PackagerStage;
-import io.github.wasabithumb.jarstrap.util.io.StreamUtil;
+import io.github.wasabithumb.jarstrap.util.io.FileUtil;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.logging.Level;
+import java.util.zip.ZipException;
 
 public class PackagerInjectStage implements PackagerStage {
 
@@ -46,16 +48,21 @@ public class PackagerInjectStage implements PackagerStage {
             );
         } catch (IOException e) {
             packager.logger().log(Level.INFO, "[inject] failed to create symlink, making full copy");
-            try (
-                    FileInputStream fis = new FileInputStream(src);
-                    FileOutputStream fos = new FileOutputStream(dest, false)
-            ) {
-                StreamUtil.pipe(fis, fos);
+            try (FileChannel fc = FileChannel.open(src.toPath(), StandardOpenOption.READ)) {
+                FileUtil.transfer(fc, dest.toPath());
             } catch (IOException e2) {
                 e2.addSuppressed(e);
                 throw new PackagerIOException("Failed to move file @ \"" + src.getAbsolutePath() + "\"", e2);
             }
         }
+
+        try {
+            state.jarIndex = JarIndex.read(dest.toPath());
+        } catch (ZipException e) {
+            throw new PackagerException("Source \"" + src.getAbsolutePath() + "\" is not a valid JAR file", e);
+        } catch (IOException e) {
+            throw new PackagerIOException("Failed to read source", e);
+        }
     }
 
 }
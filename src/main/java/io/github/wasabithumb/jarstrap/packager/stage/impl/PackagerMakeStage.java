@@ -3,36 +3,32 @@ package io.github.wasabithumb.jarstrap.packager.stage.impl;
 import io.github.wasabithumb.jarstrap.packager.Packager;
 import io.github.wasabithumb.jarstrap.packager.PackagerState;
 import io.github.wasabithumb.jarstrap.packager.error.PackagerException;
-import io.github.wasabithumb.jarstrap.packager.error.PackagerIOException;
-import io.github.wasabithumb.jarstrap.packager.error.PackagerInterruptedException;
 import io.github.wasabithumb.jarstrap.packager.stage.PackagerStage;
+import io.github.wasabithumb.jarstrap.util.process.ProcessRunner;
 import org.jetbrains.annotations.NotNull;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.io.File;
+import java.time.Duration;
 
 public class PackagerMakeStage implements PackagerStage {
 
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofMinutes(10L);
+
     @Override
     public @NotNull String id() {
         return "make";
     }
 
     @Override
-    public void execute(@NotNull Packager packager, @NotNull PackagerState state) throws PackagerException {
-        try {
-            this.execute0(state, packager.logger());
-        } catch (IOException e) {
-            throw new PackagerIOException("Failed to run make", e);
-        } catch (InterruptedException e) {
-            throw new PackagerInterruptedException(e);
-        }
+    public boolean perTarget() {
+        return true;
     }
 
-    private void execute0(@NotNull PackagerState state, @NotNull Logger logger) throws IOException, InterruptedException {
+    @Override
+    public void execute(@NotNull Packager packager, @NotNull PackagerState state) throws PackagerException {
+        // Already built by the direct backend
+        if (state.executable != null) return;
+
         String makeCmd;
         if (state.mingwMake != null) {
             makeCmd = state.mingwMake.getAbsolutePath();
@@ -40,24 +36,14 @@ public class PackagerMakeStage implements PackagerStage {
             makeCmd = "make";
         }
 
-        ProcessBuilder pb = new ProcessBuilder();
-        pb.directory(state.cmakeDir);
-        pb.command(makeCmd);
-        pb.redirectErrorStream(true);
-
-        Process p = pb.start();
+        final ProcessRunner runner = new ProcessRunner(state.tag(this.id()), packager.logger())
+                .directory(state.cmakeDir)
+                .timeout(state.config.stageTimeout(this.id(), DEFAULT_TIMEOUT));
+        if (state.config.reproducible())
+            runner.environment("SOURCE_DATE_EPOCH", Long.toString(state.config.sourceDateEpoch()));
+        runner.run(makeCmd).requireSuccess();
 
-        try (BufferedReader br = p.inputReader(StandardCharsets.UTF_8)) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                logger.log(Level.INFO, "[make] " + line);
-            }
-        }
-
-        int exit = p.waitFor();
-        if (exit != 0) {
-            throw new PackagerException("make exited with non-zero exit code: " + exit);
-        }
+        state.executable = new File(state.cmakeDir, "jarstrap" + state.config.os().extension());
     }
 
 }
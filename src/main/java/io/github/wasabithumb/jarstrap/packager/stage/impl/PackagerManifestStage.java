@@ -1,30 +1,32 @@
 package io.github.wasabithumb.jarstrap.packager.stage.impl;
 
+import io.github.wasabithumb.jarstrap.jar.JarIndex;
+import io.github.wasabithumb.jarstrap.jar.JarWriter;
 import io.github.wasabithumb.jarstrap.manifest.ManifestFile;
 import io.github.wasabithumb.jarstrap.packager.Packager;
+import io.github.wasabithumb.jarstrap.packager.PackagerConfig;
 import io.github.wasabithumb.jarstrap.packager.PackagerState;
 import io.github.wasabithumb.jarstrap.packager.error.PackagerException;
 import io.github.wasabithumb.jarstrap.packager.error.PackagerIOException;
 import io.github.wasabithumb.jarstrap.packager.stage.PackagerStage;
-import io.github.wasabithumb.jarstrap.util.io.StreamUtil;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
-
-import java.io.*;
-import java.net.URI;
-import java.nio.file.*;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
-import java.util.zip.ZipInputStream;
-import java.util.zip.ZipOutputStream;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Applies the {@link Packager#getManifest() manifest operations} to the source JAR and raises the minimum Java
+ * version to that of the main class (the other classes are checked by the {@link PackagerVersionStage version}
+ * stage). Everything is read from the {@link JarIndex} built by the {@code inject} stage; the JAR is only rewritten
+ * when the manifest changes (or always, when
+ * {@link io.github.wasabithumb.jarstrap.packager.PackagerConfig#reproducible() reproducible}), in which case the
+ * other entries are copied without being recompressed.
+ */
 public class PackagerManifestStage implements PackagerStage {
 
-    private static final byte[] CLASS_MAGIC = new byte[] {
-            (byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE
-    };
+    private static final String META_INF = "META-INF/";
 
     @Override
     public @NotNull String id() {
@@ -34,23 +36,26 @@ public class PackagerManifestStage implements PackagerStage {
     @Override
     public void execute(@NotNull Packager packager, @NotNull PackagerState state) throws PackagerException {
         final File file = new File(new File(packager.getWorkingDir(), "archive"), "archive.jar");
-        ManifestFile mf;
+        JarIndex index = state.jarIndex;
         try {
-            mf = this.readManifest(file);
+            if (index == null) index = state.jarIndex = JarIndex.read(file.toPath());
         } catch (IOException e) {
             throw new PackagerIOException(e);
         }
 
-        boolean hadManifest = true;
+        ManifestFile mf;
+        try {
+            mf = index.manifest();
+        } catch (IOException e) {
+            throw new PackagerIOException("Failed to read manifest of \"" + file.getAbsolutePath() + "\"", e);
+        }
+
         if (mf == null) {
-            hadManifest = false;
             mf = new ManifestFile();
+            mf.put("Manifest-Version", "1.0");
         }
 
-        byte[] preHash = mf.md5();
-        packager.getManifest().apply(mf);
-        byte[] postHash = mf.md5();
-        boolean modified = !Arrays.equals(preHash, postHash);
+        boolean modified = packager.getManifest().apply(mf);
 
         final String mainClass = mf.get("Main-Class");
         if (mainClass == null) {
@@ -59,7 +64,7 @@ public class PackagerManifestStage implements PackagerStage {
 
         int major;
         try {
-            major = this.readMajor(file, mainClass);
+            major = this.readMajor(index, mainClass);
         } catch (IOException e) {
             throw new PackagerIOException(e);
         }
@@ -67,139 +72,73 @@ public class PackagerManifestStage implements PackagerStage {
         if (major < 49)
             throw new PackagerException("Main class of JAR has unsupported class file major version " + major);
 
-        int minJavaVersion = major - 44;
-        int curMinJavaVersion = packager.getMinJavaVersion();
-        if (minJavaVersion > curMinJavaVersion) {
-            int preferredJavaVersion = packager.getPreferredJavaVersion();
-            if (minJavaVersion > preferredJavaVersion)
-                throw new PackagerException("Main class of JAR file was compiled against Java " + minJavaVersion + ", but preferred Java version is " + preferredJavaVersion);
-            packager.setMinJavaVersion(minJavaVersion);
-        }
+        final int minJavaVersion = major - 44;
+        state.raiseMinJavaVersion(minJavaVersion, "Main class of JAR file was compiled against Java " + minJavaVersion);
 
-        if (!modified) return;
+        // Reproducible output needs normalized timestamps & order, whatever the source carries
+        if (!modified && !state.config.reproducible()) return;
         try {
-            if (hadManifest) {
-                this.updateExistingManifest(file, mf);
-            } else {
-                this.addNewManifest(file, mf);
-            }
+            state.jarIndex = this.rewrite(index, mf, state.config);
         } catch (IOException e) {
             throw new PackagerIOException("Failed to update JAR manifest", e);
         }
     }
 
-    private void addNewManifest(@NotNull File file, @NotNull ManifestFile mf) throws IOException {
-        final URI uri = URI.create("jar:" + file.toPath().toUri());
-        try (FileSystem fs = FileSystems.newFileSystem(uri, Collections.emptyMap())) {
-            Path p = fs.getPath("META-INF" + fs.getSeparator() + "MANIFEST.MF");
-            try (OutputStream os = Files.newOutputStream(p, StandardOpenOption.CREATE)) {
-                mf.write(os);
-            }
-        } catch (IOException e) {
-            throw new PackagerIOException("Failed to write new manifest to JAR", e);
-        }
-    }
-
-    private void updateExistingManifest(@NotNull File file, @NotNull ManifestFile mf) throws IOException {
-        final File temp = new File(file.getParentFile(), file.getName() + ".tmp");
-        try (InputStream is = new FileInputStream(file);
-             ZipInputStream src = new ZipInputStream(is);
-             OutputStream os = new FileOutputStream(temp);
-             ZipOutputStream dest = new ZipOutputStream(os)
-        ) {
-            this.updateExistingManifest0(src, dest, mf);
-        } catch (IOException e) {
-            try {
-                Files.deleteIfExists(temp.toPath());
-            } catch (IOException e1) {
-                e.addSuppressed(e1);
-            }
-            throw e;
-        }
-        Files.move(
-                temp.toPath(),
-                file.toPath(),
-                StandardCopyOption.REPLACE_EXISTING
-        );
-    }
-
-    private void updateExistingManifest0(
-            @NotNull ZipInputStream src,
-            @NotNull ZipOutputStream dest,
-            @NotNull ManifestFile mf
+    /**
+     * Writes a copy of the JAR with the given manifest, placing it first (as {@link java.util.jar.JarInputStream}
+     * expects) and copying every other entry as stored
+     */
+    private @NotNull JarIndex rewrite(
+            @NotNull JarIndex index,
+            @NotNull ManifestFile mf,
+            @NotNull PackagerConfig config
     ) throws IOException {
-        ZipEntry ze;
-        String name;
-        boolean hasMetaDir = false;
-
-        while ((ze = src.getNextEntry()) != null) {
-            name = ze.getName();
-            if (name.equals("META-INF/MANIFEST.MF")) {
-                continue;
-            } else if (name.equals("META-INF/")) {
-                hasMetaDir = true;
-            }
-            dest.putNextEntry(ze);
-            if (ze.isDirectory()) {
-                dest.closeEntry();
-                continue;
-            }
-            StreamUtil.pipe(src, dest);
+        final JarIndex.Entry oldManifest = index.get(JarIndex.MANIFEST_NAME);
+        final long time = oldManifest == null ? System.currentTimeMillis() : oldManifest.lastModified();
+        final List<JarIndex.Entry> entries;
+        if (config.reproducible()) {
+            entries = new ArrayList<>(index.entries());
+            entries.sort(JarWriter.CANONICAL_ORDER);
+        } else {
+            entries = index.entries();
         }
 
-        if (!hasMetaDir) {
-            ze = new ZipEntry("META-INF/");
-            ze.setMethod(ZipEntry.STORED);
-            ze.setSize(0L);
-            ze.setCrc(0L);
-            dest.putNextEntry(ze);
-            dest.closeEntry();
-        }
+        return JarWriter.replace(index, (JarIndex.Reader reader, JarWriter writer) -> {
+            if (config.reproducible()) writer.fixTime(config.sourceDateEpoch() * 1000L);
 
-        ze = new ZipEntry("META-INF/MANIFEST.MF");
-        dest.putNextEntry(ze);
-        mf.write(dest);
-    }
+            final JarIndex.Entry metaDir = index.get(META_INF);
+            if (metaDir != null) {
+                writer.copy(reader, metaDir);
+            } else {
+                writer.addDirectory(META_INF, time);
+            }
+            writer.add(JarIndex.MANIFEST_NAME, mf.toByteArray(), time);
 
-    private int readMajor(@NotNull File file, @NotNull String mainClass) throws IOException, PackagerException {
-        final StringBuilder entryName = new StringBuilder(mainClass.length() + 6);
-        char c;
-        for (int i=0; i < mainClass.length(); i++) {
-            c = mainClass.charAt(i);
-            if (c == '.') c = '/';
-            entryName.append(c);
-        }
-        entryName.append(".class");
-
-        try (ZipFile zf = new ZipFile(file)) {
-            ZipEntry ze = zf.getEntry(entryName.toString());
-            if (ze == null)
-                throw new PackagerException("Main class of JAR (" + mainClass + ") is not contained in the file");
-
-            try (InputStream is = zf.getInputStream(ze); DataInputStream dis = new DataInputStream(is)) {
-                byte[] header = dis.readNBytes(CLASS_MAGIC.length);
-                if (!Arrays.equals(header, CLASS_MAGIC))
-                    throw new PackagerException("Main class of JAR (" + mainClass + ") has corrupted header");
-
-                dis.skipNBytes(Short.BYTES);
-                return dis.readShort();
-            } catch (EOFException e) {
-                throw new PackagerIOException("Main class of JAR (" + mainClass + ") has been truncated", e);
+            for (JarIndex.Entry entry : entries) {
+                writer.copy(reader, entry);
             }
-        }
+        });
     }
 
-    private @Nullable ManifestFile readManifest(@NotNull File file) throws IOException {
-        try (ZipFile zf = new ZipFile(file)) {
-            ZipEntry ze = zf.getEntry("META-INF/MANIFEST.MF");
-            if (ze == null) return null;
+    private int readMajor(@NotNull JarIndex index, @NotNull String mainClass) throws IOException, PackagerException {
+        if (mainClass.equals(index.mainClass()) && index.mainClassMajor() != -1)
+            return index.mainClassMajor();
 
-            try (InputStream is = zf.getInputStream(ze)) {
-                ManifestFile mf = new ManifestFile();
-                mf.read(is);
-                return mf;
-            }
+        final JarIndex.Entry entry = index.get(JarIndex.classEntryName(mainClass));
+        if (entry == null)
+            throw new PackagerException("Main class of JAR (" + mainClass + ") is not contained in the file");
+
+        final byte[] header;
+        try (JarIndex.Reader reader = index.open()) {
+            header = reader.readPrefix(entry, 8);
         }
+        if (header.length < 8)
+            throw new PackagerException("Main class of JAR (" + mainClass + ") has been truncated");
+
+        final int major = JarIndex.classMajor(header);
+        if (major == -1)
+            throw new PackagerException("Main class of JAR (" + mainClass + ") has corrupted header");
+        return major;
     }
 
 }
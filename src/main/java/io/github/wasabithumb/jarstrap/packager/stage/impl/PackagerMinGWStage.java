@@ -1,11 +1,15 @@
 package io.github.wasabithumb.jarstrap.packager.stage.impl;
 
+import io.github.wasabithumb.jarstrap.JARStrap;
 import io.github.wasabithumb.jarstrap.packager.Packager;
+import io.github.wasabithumb.jarstrap.packager.PackagerOS;
 import io.github.wasabithumb.jarstrap.packager.PackagerState;
 import io.github.wasabithumb.jarstrap.packager.error.PackagerException;
 import io.github.wasabithumb.jarstrap.packager.error.PackagerIOException;
 import io.github.wasabithumb.jarstrap.packager.stage.PackagerStage;
+import io.github.wasabithumb.jarstrap.packager.toolchain.NativeToolchain;
 import io.github.wasabithumb.jarstrap.util.io.StreamUtil;
+import io.github.wasabithumb.jarstrap.util.process.ProcessRunner;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -13,34 +17,64 @@ import java.io.*;
 import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URL;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.logging.Level;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
+/**
+ * Locates the MinGW toolchain when {@link io.github.wasabithumb.jarstrap.packager.PackagerConfig#os() building for}
+ * Windows. On Windows hosts this is the native MinGW (installed on demand when
+ * {@link io.github.wasabithumb.jarstrap.packager.PackagerConfig#autoInstall() allowed}); on other hosts it is a
+ * MinGW-w64 cross compiler on {@code PATH}, which the {@code cmake} stage passes to CMake through
+ * {@code toolchain/mingw-w64.cmake}.
+ */
 public class PackagerMinGWStage implements PackagerStage {
 
     private static final String DOWNLOAD_URL = "https://github.com/mstorsjo/llvm-mingw/releases/download/20241217/llvm-mingw-20241217-ucrt-x86_64.zip";
     private static final String GCC_64 = "x86_64-w64-mingw32-gcc.exe";
     private static final String GCC_32 = "i686-w64-mingw32-gcc.exe";
+    private static final String CROSS_PREFIX_64 = "x86_64-w64-mingw32";
+    private static final String CROSS_PREFIX_32 = "i686-w64-mingw32";
+    private static final Duration WHERE_TIMEOUT = Duration.ofSeconds(30L);
+    private static final Object INSTALL_LOCK = new Object();
 
     @Override
     public @NotNull String id() {
         return "mingw";
     }
 
+    @Override
+    public boolean perTarget() {
+        return true;
+    }
+
     @Override
     public void execute(@NotNull Packager packager, @NotNull PackagerState state) throws PackagerException {
-        final boolean amd64 = packager.getArch().is64Bit();
-        File gcc = this.where(amd64 ? GCC_64 : GCC_32);
+        final PackagerOS os = state.config.os();
+        if (os != PackagerOS.WINDOWS) {
+            if (os.isCross())
+                throw new PackagerException("Cannot build " + os + " executables on a " + PackagerOS.host() + " host");
+            return;
+        }
+        if (os.isCross()) {
+            this.executeCross(packager, state);
+            return;
+        }
+
+        final boolean amd64 = state.config.arch().is64Bit();
+        File gcc = this.where(packager, state, amd64 ? GCC_64 : GCC_32);
         if (gcc == null) {
             PackagerException base = new PackagerException("MinGW GCC not found on PATH");
-            if (!packager.isAutoInstall()) throw base;
+            if (!state.config.autoInstall()) throw base;
             packager.logger().log(Level.INFO, "[mingw] installing...");
             try {
-                gcc = this.autoInstall(packager.getWorkingDir(), amd64);
+                // Both compilers come from the same package, which may be requested by several targets at once
+                synchronized (INSTALL_LOCK) {
+                    gcc = this.autoInstall(JARStrap.dataDir(), amd64);
+                }
             } catch (IOException e) {
                 PackagerException io = new PackagerIOException("Failed to automatically install MinGW", e);
                 io.addSuppressed(base);
@@ -56,25 +90,40 @@ public class PackagerMinGWStage implements PackagerStage {
         state.mingwMake = make;
     }
 
-    private @Nullable File where(@NotNull String executable) throws PackagerException {
-        try {
-            Process process = Runtime.getRuntime().exec(new String[]{ "where", executable });
-            try (BufferedReader in = process.inputReader(StandardCharsets.UTF_8)) {
-                String line = in.readLine();
-                if (line == null || line.isBlank()) return null;
+    private void executeCross(@NotNull Packager packager, @NotNull PackagerState state) throws PackagerException {
+        final String triple = state.config.arch().is64Bit() ? CROSS_PREFIX_64 : CROSS_PREFIX_32;
+        final File gcc = NativeToolchain.which(triple + "-gcc");
+        if (gcc == null)
+            throw new PackagerException("MinGW-w64 cross compiler " + triple + "-gcc not found on PATH (install mingw-w64)");
 
-                File file = new File(line);
-                if (!file.isFile()) return null;
+        final String prefix = new File(gcc.getParentFile(), triple).getAbsolutePath();
+        if (NativeToolchain.which(prefix + "-objcopy") == null)
+            throw new PackagerException("MinGW-w64 objcopy not found next to " + gcc.getAbsolutePath());
 
-                return file;
-            }
-        } catch (IOException e) {
-            throw new PackagerIOException("Failed to identify location of \"" + executable + "\"", e);
-        }
+        packager.logger().log(Level.FINE, "[mingw] cross compiling with " + gcc.getAbsolutePath());
+        state.mingwPrefix = prefix;
+    }
+
+    private @Nullable File where(@NotNull Packager packager, @NotNull PackagerState state, @NotNull String executable) throws PackagerException {
+        ProcessRunner.Result result = new ProcessRunner("where", packager.logger())
+                .log(false)
+                .timeout(state.config.stageTimeout(this.id(), WHERE_TIMEOUT))
+                .run("where", executable);
+
+        // where exits with 1 if the executable could not be found
+        if (!result.isSuccess() || result.output().isEmpty()) return null;
+        String line = result.output().get(0);
+        if (line.isBlank()) return null;
+
+        File file = new File(line);
+        if (!file.isFile()) return null;
+
+        return file;
     }
 
-    private @NotNull File autoInstall(@NotNull File workingDir, boolean amd64) throws IOException {
-        final File dest = new File(workingDir.getParentFile(), "mingw");
+    private @NotNull File autoInstall(@NotNull File dataDir, boolean amd64) throws IOException {
+        // Installed into the data directory, so that it is kept regardless of where working directories are placed
+        final File dest = new File(dataDir, "mingw");
         final File compiler = new File(
                 new File(dest, "bin"),
                 amd64 ? GCC_64 : GCC_32
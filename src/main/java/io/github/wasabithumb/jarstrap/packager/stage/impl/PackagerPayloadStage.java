@@ -0,0 +1,218 @@
+package io.github.wasabithumb.jarstrap.packager.stage.impl;
+
+import io.github.wasabithumb.jarstrap.jar.ExitCallRewriter;
+import io.github.wasabithumb.jarstrap.jar.JarIndex;
+import io.github.wasabithumb.jarstrap.packager.Packager;
+import io.github.wasabithumb.jarstrap.packager.PackagerState;
+import io.github.wasabithumb.jarstrap.packager.error.PackagerException;
+import io.github.wasabithumb.jarstrap.packager.error.PackagerIOException;
+import io.github.wasabithumb.jarstrap.packager.stage.PackagerStage;
+import io.github.wasabithumb.jarstrap.payload.PayloadContainer;
+import io.github.wasabithumb.jarstrap.payload.ResidentJar;
+import io.github.wasabithumb.jarstrap.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.stream.Stream;
+
+/**
+ * <p>
+ *     Prepares {@code archive/payload.bin}, the file embedded into the executable. Without
+ *     {@link io.github.wasabithumb.jarstrap.packager.PackagerConfig#libraries() libraries} or a
+ *     {@link io.github.wasabithumb.jarstrap.packager.PackagerConfig#bundleRuntime() bundled runtime} this is a link
+ *     to (or copy of) the archive. Otherwise it is a {@link PayloadContainer} holding the archive and each library,
+ *     named by content hash, followed by the files of the runtime.
+ * </p>
+ * <p>
+ *     In {@link io.github.wasabithumb.jarstrap.packager.PackagerConfig#resident() resident mode} the payload is always
+ *     a container. The archive &amp; libraries which call {@code System.exit} are replaced by copies in which the calls
+ *     end only the current call (see {@link ExitCallRewriter}), and the {@link ResidentJar resident classes} are added
+ *     as a library.
+ * </p>
+ */
+public class PackagerPayloadStage implements PackagerStage {
+
+    @Override
+    public @NotNull String id() {
+        return "payload";
+    }
+
+    @Override
+    public void execute(@NotNull Packager packager, @NotNull PackagerState state) throws PackagerException {
+        final File archiveDir = new File(packager.getWorkingDir(), "archive");
+        final File archive = new File(archiveDir, "archive.jar");
+        final File dest = new File(archiveDir, "payload.bin");
+
+        try {
+            Files.deleteIfExists(dest.toPath());
+        } catch (IOException e) {
+            throw new PackagerIOException("Failed to delete existing payload in working directory", e);
+        }
+
+        final List<File> libraries = state.config.libraries();
+        final File runtimeDir = state.runtimeDir;
+        final boolean resident = state.config.resident();
+        if (libraries.isEmpty() && runtimeDir == null && !resident) {
+            this.link(packager, archive, dest);
+            return;
+        }
+
+        for (File library : libraries) {
+            if (!library.isFile())
+                throw new PackagerException("Bad configuration (library \"" + library.getAbsolutePath() + "\" is not a file)");
+        }
+
+        final JarIndex index = state.jarIndex;
+        final String mainClass = index == null ? null : index.mainClass();
+        if (mainClass == null)
+            throw new PackagerException("Main class of JAR is unknown (the manifest stage must run first)");
+
+        final long start = System.nanoTime();
+        final PayloadContainer container = new PayloadContainer(mainClass);
+        final long size;
+        try {
+            final List<Path> files = new ArrayList<>(libraries.size() + 2);
+            final List<String> fileNames = new ArrayList<>(libraries.size() + 2);
+            files.add(archive.toPath());
+            fileNames.add(archive.getName());
+            for (File library : libraries) {
+                files.add(library.toPath());
+                fileNames.add(library.getName());
+            }
+            if (resident) {
+                this.rewriteExitCalls(packager, index, files, new File(archiveDir, "resident"));
+                final Path residentJar = new File(archiveDir, ResidentJar.NAME).toPath();
+                ResidentJar.write(residentJar);
+                files.add(residentJar);
+                fileNames.add(ResidentJar.NAME);
+            }
+            final List<String> hashes = this.hashAll(files, state.config.ioExecutorOrDefault());
+
+            container.add(new PayloadContainer.Entry(PayloadContainer.Kind.MAIN, hashes.get(0), 0, files.get(0)));
+            final Set<String> names = new HashSet<>();
+            for (int i=1; i < files.size(); i++) {
+                final String name = hashes.get(i) + "-" + sanitize(fileNames.get(i));
+                if (!names.add(name)) continue;
+                container.add(new PayloadContainer.Entry(PayloadContainer.Kind.LIBRARY, name, 0, files.get(i)));
+            }
+            if (runtimeDir != null) this.addRuntime(container, runtimeDir.toPath());
+            size = container.write(dest.toPath());
+        } catch (IOException e) {
+            throw new PackagerIOException("Failed to write payload", e);
+        }
+
+        packager.logger().log(Level.INFO, "[payload] packed " + container.entries().size() + " files (" + size +
+                " bytes) in " + ((System.nanoTime() - start) / 1000000L) + "ms");
+    }
+
+    /**
+     * Replaces each JAR in the list which calls {@code System.exit} with a rewritten copy in the given directory
+     * @param index The index of the archive, the first JAR in the list
+     */
+    private void rewriteExitCalls(
+            @NotNull Packager packager,
+            @NotNull JarIndex index,
+            @NotNull List<Path> jars,
+            @NotNull File dir
+    ) throws IOException {
+        final ExitCallRewriter rewriter = new ExitCallRewriter(ResidentJar.RUNTIME_CLASS);
+        Files.createDirectories(dir.toPath());
+        for (int i=0; i < jars.size(); i++) {
+            final Path jar = jars.get(i);
+            final JarIndex jarIndex = i == 0 ? index : JarIndex.read(jar);
+            if (ExitCallRewriter.isSigned(jarIndex)) {
+                packager.logger().log(Level.WARNING, "[payload] \"" + jar.getFileName() + "\" is signed; calls to " +
+                        "System.exit in it will end the resident JVM");
+                continue;
+            }
+            final Path dest = new File(dir, i + ".jar").toPath();
+            final int count = rewriter.rewrite(jarIndex, dest);
+            if (count == 0) continue;
+            packager.logger().log(Level.FINE, "[payload] redirected System.exit in " + count + " classes of \"" +
+                    jar.getFileName() + "\"");
+            jars.set(i, dest);
+        }
+    }
+
+    private void addRuntime(@NotNull PayloadContainer container, @NotNull Path root) throws IOException {
+        final String id = root.getFileName().toString();
+        final List<Path> files;
+        try (Stream<Path> stream = Files.walk(root)) {
+            files = stream.filter(Files::isRegularFile)
+                    .sorted()
+                    .toList();
+        }
+        for (Path file : files) {
+            final String relative = root.relativize(file).toString().replace(File.separatorChar, '/');
+            if (relative.startsWith(".")) continue;
+            final int flags = Files.isExecutable(file) ? PayloadContainer.Entry.FLAG_EXECUTABLE : 0;
+            container.add(new PayloadContainer.Entry(PayloadContainer.Kind.RUNTIME, id + "/" + relative, flags, file));
+        }
+    }
+
+    private void link(@NotNull Packager packager, @NotNull File archive, @NotNull File dest) throws PackagerException {
+        try {
+            Files.createSymbolicLink(dest.toPath(), dest.toPath().getParent().relativize(archive.toPath()));
+        } catch (IOException | UnsupportedOperationException e) {
+            packager.logger().log(Level.FINE, "[payload] failed to create symlink, making full copy");
+            try (FileChannel fc = FileChannel.open(archive.toPath(), StandardOpenOption.READ)) {
+                FileUtil.transfer(fc, dest.toPath());
+            } catch (IOException e2) {
+                e2.addSuppressed(e);
+                throw new PackagerIOException("Failed to copy archive to payload", e2);
+            }
+        }
+    }
+
+    private @NotNull List<String> hashAll(@NotNull List<Path> files, @NotNull Executor executor) throws IOException {
+        final List<CompletableFuture<String>> futures = new ArrayList<>(files.size());
+        for (Path file : files) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return PayloadContainer.hash(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executor));
+        }
+
+        final List<String> ret = new ArrayList<>(files.size());
+        try {
+            for (CompletableFuture<String> future : futures) ret.add(future.join());
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) throw io.getCause();
+            throw e;
+        }
+        return ret;
+    }
+
+    /**
+     * Restricts a file name to characters which need no quoting on the command line of any platform
+     */
+    private static @NotNull String sanitize(@NotNull String name) {
+        final StringBuilder sb = new StringBuilder(name.length() + 4);
+        char c;
+        for (int i=0; i < name.length(); i++) {
+            c = name.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '.' || c == '-' || c == '_') {
+                sb.append(c);
+            } else {
+                sb.append('_');
+            }
+        }
+        if (!name.toLowerCase(Locale.ROOT).endsWith(".jar")) sb.append(".jar");
+        return sb.toString();
+    }
+
+}
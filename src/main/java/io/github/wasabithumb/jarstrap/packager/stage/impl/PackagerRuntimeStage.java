@@ -0,0 +1,85 @@
+package io.github.wasabithumb.jarstrap.packager.stage.impl;
+
+import io.github.wasabithumb.jarstrap.packager.Packager;
+import io.github.wasabithumb.jarstrap.packager.PackagerConfig;
+import io.github.wasabithumb.jarstrap.packager.PackagerOS;
+import io.github.wasabithumb.jarstrap.packager.PackagerState;
+import io.github.wasabithumb.jarstrap.packager.PackagerTarget;
+import io.github.wasabithumb.jarstrap.packager.error.PackagerException;
+import io.github.wasabithumb.jarstrap.packager.error.PackagerIOException;
+import io.github.wasabithumb.jarstrap.packager.stage.PackagerStage;
+import io.github.wasabithumb.jarstrap.packager.toolchain.JavaRuntimeBuilder;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.logging.Level;
+
+/**
+ * Builds the runtime to embed when {@link PackagerConfig#bundleRuntime() enabled}, with the modules reported by
+ * {@code jdeps} for the archive &amp; libraries. Does nothing otherwise.
+ * @see JavaRuntimeBuilder
+ */
+public class PackagerRuntimeStage implements PackagerStage {
+
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofMinutes(5L);
+
+    @Override
+    public @NotNull String id() {
+        return "runtime";
+    }
+
+    @Override
+    public void execute(@NotNull Packager packager, @NotNull PackagerState state) throws PackagerException {
+        final PackagerConfig config = state.config;
+        state.runtimeDir = null;
+        if (!config.bundleRuntime()) return;
+
+        // jlink runs on the host and produces a runtime for the host
+        if (config.os().isCross())
+            throw new PackagerException("Cannot bundle a runtime when building " + config.os() + " executables on a " +
+                    PackagerOS.host() + " host");
+
+        for (PackagerTarget target : config.targets()) {
+            if (!target.arch().is64Bit())
+                throw new PackagerException("Cannot bundle a runtime for target " + target + " (only 64-bit targets are supported)");
+        }
+
+        final File home = config.runtimeJdk() == null ? new File(System.getProperty("java.home")) : config.runtimeJdk();
+        final JavaRuntimeBuilder builder;
+        try {
+            builder = JavaRuntimeBuilder.of(home);
+        } catch (IOException e) {
+            throw new PackagerIOException("Failed to read JDK at \"" + home.getAbsolutePath() + "\"", e);
+        }
+        if (builder == null)
+            throw new PackagerException("Path \"" + home.getAbsolutePath() + "\" is not a JDK with jdeps, jlink & jmods");
+        if (builder.feature() < config.minJavaVersion())
+            throw new PackagerException("JDK at \"" + home.getAbsolutePath() + "\" is Java " + builder.feature() +
+                    ", but minimum Java version is " + config.minJavaVersion());
+
+        final long start = System.nanoTime();
+        final Duration timeout = config.stageTimeout(this.id(), DEFAULT_TIMEOUT);
+        final List<File> jars = new ArrayList<>(config.libraries().size() + 1);
+        jars.add(new File(new File(packager.getWorkingDir(), "archive"), "archive.jar"));
+        jars.addAll(config.libraries());
+
+        final SortedSet<String> modules = builder.modules(this.id(), packager.logger(), timeout, jars);
+        modules.addAll(config.runtimeModules());
+        if (modules.isEmpty()) modules.add("java.base");
+
+        try {
+            state.runtimeDir = builder.link(this.id(), packager.logger(), timeout, modules);
+        } catch (IOException e) {
+            throw new PackagerIOException("Failed to link runtime", e);
+        }
+
+        packager.logger().log(Level.INFO, "[runtime] using Java " + builder.version() + " runtime with " +
+                modules + " in " + ((System.nanoTime() - start) / 1000000L) + "ms");
+    }
+
+}
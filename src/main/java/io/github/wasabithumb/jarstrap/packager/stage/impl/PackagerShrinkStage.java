@@ -0,0 +1,73 @@
+package io.github.wasabithumb.jarstrap.packager.stage.impl;
+
+import io.github.wasabithumb.jarstrap.jar.ClassReachability;
+import io.github.wasabithumb.jarstrap.jar.JarIndex;
+import io.github.wasabithumb.jarstrap.jar.JarWriter;
+import io.github.wasabithumb.jarstrap.packager.Packager;
+import io.github.wasabithumb.jarstrap.packager.PackagerState;
+import io.github.wasabithumb.jarstrap.packager.error.PackagerException;
+import io.github.wasabithumb.jarstrap.packager.error.PackagerIOException;
+import io.github.wasabithumb.jarstrap.packager.stage.PackagerStage;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Removes unreachable classes from the JAR when
+ * {@link io.github.wasabithumb.jarstrap.packager.PackagerConfig#shrink() enabled}. Does nothing otherwise.
+ * @see ClassReachability
+ */
+public class PackagerShrinkStage implements PackagerStage {
+
+    @Override
+    public @NotNull String id() {
+        return "shrink";
+    }
+
+    @Override
+    public void execute(@NotNull Packager packager, @NotNull PackagerState state) throws PackagerException {
+        if (!state.config.shrink()) return;
+
+        final File file = new File(new File(packager.getWorkingDir(), "archive"), "archive.jar");
+        final long start = System.nanoTime();
+        try {
+            JarIndex index = state.jarIndex;
+            if (index == null) index = state.jarIndex = JarIndex.read(file.toPath());
+
+            final List<ClassReachability.KeepRule> rules = new ArrayList<>(state.config.keepRules().size());
+            for (String rule : state.config.keepRules()) rules.add(new ClassReachability.KeepRule(rule));
+
+            final ClassReachability reachability = new ClassReachability(index, rules);
+            final Set<String> reachable = reachability.compute();
+            final int total = reachability.classes().size();
+            if (reachable.size() == total) {
+                packager.logger().log(Level.INFO, "[shrink] all " + total + " classes are reachable");
+                return;
+            }
+
+            final List<JarIndex.Entry> retained = reachability.retained(reachable);
+            final long before = index.fileSize();
+            state.jarIndex = JarWriter.replace(index, (JarIndex.Reader reader, JarWriter writer) -> {
+                for (JarIndex.Entry entry : retained) writer.copy(reader, entry);
+            });
+            final long after = state.jarIndex.fileSize();
+
+            final Logger logger = packager.logger();
+            if (logger.isLoggable(Level.INFO)) {
+                logger.log(Level.INFO, "[shrink] kept " + reachable.size() + " of " + total + " classes (" +
+                        (index.size() - retained.size()) + " entries removed) in " +
+                        ((System.nanoTime() - start) / 1000000L) + "ms; saved " + (before - after) + " bytes (" +
+                        (before == 0L ? 0L : (100L * (before - after) / before)) + "%)");
+            }
+        } catch (IOException e) {
+            throw new PackagerIOException("Failed to shrink JAR", e);
+        }
+    }
+
+}
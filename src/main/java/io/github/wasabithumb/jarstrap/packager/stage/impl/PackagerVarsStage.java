@@ -1,6 +1,8 @@
 package io.github.wasabithumb.jarstrap.packager.stage.impl;
 
 import io.github.wasabithumb.jarstrap.packager.Packager;
+import io.github.wasabithumb.jarstrap.packager.PackagerConfig;
+import io.github.wasabithumb.jarstrap.packager.PackagerOS;
 import io.github.wasabithumb.jarstrap.packager.PackagerState;
 import io.github.wasabithumb.jarstrap.packager.error.PackagerException;
 import io.github.wasabithumb.jarstrap.packager.error.PackagerIOException;
@@ -16,7 +18,7 @@ import java.util.regex.Pattern;
 
 public class PackagerVarsStage implements PackagerStage {
 
-    private static final Pattern DECL_PATTERN = Pattern.compile("^static const (char|unsigned int|bool) ([A-Z_]+(?:\\[])?)\\s*=\\s*[^;]+;$");
+    private static final Pattern DECL_PATTERN = Pattern.compile("^const (char|unsigned int|bool) ([A-Z_]+(?:\\[])?)\\s*=\\s*[^;]+;$");
     private static final String SYMBOL_START = "// CONFIG START";
     private static final String SYMBOL_END = "// CONFIG END";
 
@@ -27,26 +29,27 @@ public class PackagerVarsStage implements PackagerStage {
 
     @Override
     public void execute(@NotNull Packager packager, @NotNull PackagerState state) throws PackagerException {
-        File main = new File(packager.getWorkingDir(), "main.c");
-        File tmp = new File(packager.getWorkingDir(), "main.c.bak");
+        // The configuration lives in its own translation unit, so that the rest of the stub never changes
+        File config = new File(packager.getWorkingDir(), "config.c");
+        File tmp = new File(packager.getWorkingDir(), "config.c.bak");
         try {
-            Files.move(main.toPath(), tmp.toPath());
+            Files.move(config.toPath(), tmp.toPath());
         } catch (IOException e) {
-            throw new PackagerIOException("Failed to move main.c", e);
+            throw new PackagerIOException("Failed to move config.c", e);
         }
         try {
-            this.inject(packager, tmp, main);
+            this.inject(state.config, tmp, config);
         } catch (IOException e) {
-            throw new PackagerIOException("Failed to inject variables into main.c", e);
+            throw new PackagerIOException("Failed to inject variables into config.c", e);
         }
         try {
             Files.delete(tmp.toPath());
         } catch (IOException e) {
-            throw new PackagerIOException("Failed to clean main.c.bak", e);
+            throw new PackagerIOException("Failed to clean config.c.bak", e);
         }
     }
 
-    private void inject(@NotNull Packager p, @NotNull File src, @NotNull File dest) throws IOException {
+    private void inject(@NotNull PackagerConfig p, @NotNull File src, @NotNull File dest) throws IOException {
         try (Reader r = new InputStreamReader(new FileInputStream(src), StandardCharsets.UTF_8);
              Writer w = new OutputStreamWriter(new FileOutputStream(dest, false), StandardCharsets.UTF_8)
         ) {
@@ -54,7 +57,7 @@ public class PackagerVarsStage implements PackagerStage {
         }
     }
 
-    private void inject0(@NotNull Packager p, @NotNull Reader r, @NotNull Writer w) throws IOException {
+    private void inject0(@NotNull PackagerConfig p, @NotNull Reader r, @NotNull Writer w) throws IOException {
         char[] buf = new char[512];
         int len = 0;
         int read;
@@ -103,23 +106,25 @@ public class PackagerVarsStage implements PackagerStage {
         }
     }
 
-    private @NotNull String transformDeclaration(@NotNull Packager p, @NotNull CharSequence decl) {
+    private @NotNull String transformDeclaration(@NotNull PackagerConfig p, @NotNull CharSequence decl) {
         Matcher m = DECL_PATTERN.matcher(decl);
         if (!m.matches()) return decl.toString();
 
         String type = m.group(1);
         String key = m.group(2);
         String value = switch (key) {
-            case "APP_NAME[]" -> this.cQuote(p.getAppName());
-            case "MIN_JAVA_VERSION" -> Integer.toString(p.getMinJavaVersion());
-            case "PREFERRED_JAVA_VERSION" -> Integer.toString(p.getPreferredJavaVersion());
-            case "INSTALL_PROMPT[]" -> this.cQuote(p.getInstallPrompt());
-            case "LAUNCH_FLAGS[]" -> this.cQuote(p.getLaunchFlags());
-            case "ATTRIBUTION" -> Boolean.toString(p.isAttributionEnabled());
+            case "APP_NAME[]" -> this.cQuote(p.appName());
+            case "MIN_JAVA_VERSION" -> Integer.toString(p.minJavaVersion());
+            case "PREFERRED_JAVA_VERSION" -> Integer.toString(p.preferredJavaVersion());
+            case "INSTALL_PROMPT[]" -> this.cQuote(p.installPrompt());
+            case "LAUNCH_FLAGS[]" -> this.cQuote(p.launchFlags());
+            case "ATTRIBUTION" -> Boolean.toString(p.attributionEnabled());
+            case "RESIDENT" -> Boolean.toString(p.resident() && p.os() == PackagerOS.LINUX);
+            case "RESIDENT_IDLE_TIMEOUT" -> Long.toString(p.residentIdleTimeout().toSeconds());
             default -> throw new AssertionError("No rule to populate key \"" + key + "\"");
         };
 
-        return "static const " + type + " " + key + " = " + value + ";";
+        return "const " + type + " " + key + " = " + value + ";";
     }
 
     private @NotNull String cQuote(@NotNull CharSequence input) {
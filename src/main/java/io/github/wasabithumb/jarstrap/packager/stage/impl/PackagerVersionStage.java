@@ -0,0 +1,104 @@
+package io.github.wasabithumb.jarstrap.packager.stage.impl;
+
+import io.github.wasabithumb.jarstrap.jar.ClassVersionReport;
+import io.github.wasabithumb.jarstrap.jar.ClassVersionScan;
+import io.github.wasabithumb.jarstrap.jar.JarIndex;
+import io.github.wasabithumb.jarstrap.packager.Packager;
+import io.github.wasabithumb.jarstrap.packager.PackagerState;
+import io.github.wasabithumb.jarstrap.packager.error.PackagerException;
+import io.github.wasabithumb.jarstrap.packager.error.PackagerIOException;
+import io.github.wasabithumb.jarstrap.packager.stage.PackagerStage;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Raises the minimum Java version to that of every class in the JAR &amp; its
+ * {@link io.github.wasabithumb.jarstrap.packager.PackagerConfig#libraries() libraries} when
+ * {@link io.github.wasabithumb.jarstrap.packager.PackagerConfig#scanClassVersions() enabled}, and to that of the
+ * resident server in {@link io.github.wasabithumb.jarstrap.packager.PackagerConfig#resident() resident mode}. Runs
+ * after the {@code shrink} stage, so that only the classes which are shipped count, and before the {@code runtime}
+ * stage, which checks the JDK against the minimum.
+ * @see ClassVersionScan
+ */
+public class PackagerVersionStage implements PackagerStage {
+
+    private static final int RESIDENT_MIN_JAVA_VERSION = 17;
+
+    @Override
+    public @NotNull String id() {
+        return "version";
+    }
+
+    @Override
+    public void execute(@NotNull Packager packager, @NotNull PackagerState state) throws PackagerException {
+        state.classVersions = null;
+        if (state.config.resident() && state.raiseMinJavaVersion(RESIDENT_MIN_JAVA_VERSION,
+                "Resident mode requires Java " + RESIDENT_MIN_JAVA_VERSION)) {
+            packager.logger().log(Level.INFO, "[version] raised minimum Java version to " +
+                    RESIDENT_MIN_JAVA_VERSION + " for resident mode");
+        }
+        if (!state.config.scanClassVersions()) return;
+
+        final JarIndex index = state.jarIndex;
+        if (index == null)
+            throw new PackagerException("JAR has not been indexed (the inject stage must run first)");
+
+        final ClassVersionReport report = this.scan(packager, index, "JAR file");
+        state.classVersions = report;
+        if (report.minJavaVersion() != -1) {
+            state.raiseMinJavaVersion(report.minJavaVersion(), "Package \"" + report.maxPackage() +
+                    "\" of JAR file was compiled against Java " + report.minJavaVersion());
+        }
+
+        // Libraries are loaded from the same class path, so they must run on the same Java
+        for (File library : state.config.libraries()) {
+            if (!library.isFile())
+                throw new PackagerException("Bad configuration (library \"" + library.getAbsolutePath() + "\" is not a file)");
+
+            final String label = "library \"" + library.getName() + "\"";
+            final ClassVersionReport libraryReport;
+            try {
+                libraryReport = this.scan(packager, JarIndex.read(library.toPath()), label);
+            } catch (IOException e) {
+                throw new PackagerIOException("Failed to read " + label, e);
+            }
+            if (libraryReport.minJavaVersion() != -1) {
+                state.raiseMinJavaVersion(libraryReport.minJavaVersion(), "Package \"" + libraryReport.maxPackage() +
+                        "\" of " + label + " was compiled against Java " + libraryReport.minJavaVersion());
+            }
+        }
+    }
+
+    private @NotNull ClassVersionReport scan(
+            @NotNull Packager packager,
+            @NotNull JarIndex index,
+            @NotNull String label
+    ) throws PackagerException {
+        final long start = System.nanoTime();
+        final ClassVersionReport report;
+        try {
+            report = ClassVersionScan.scan(index, packager.logger());
+        } catch (IOException e) {
+            throw new PackagerIOException("Failed to scan class versions of " + label, e);
+        }
+
+        final Logger logger = packager.logger();
+        if (logger.isLoggable(Level.INFO)) {
+            logger.log(Level.INFO, "[version] scanned " + report.classCount() + " classes of " + label + " in " +
+                    ((System.nanoTime() - start) / 1000000L) + "ms; highest class file version is " +
+                    report.maxMajor() + " (Java " + report.minJavaVersion() + ") in \"" + report.maxPackage() + "\"");
+        }
+        if (logger.isLoggable(Level.FINE)) {
+            for (Map.Entry<String, SortedMap<Integer, Integer>> entry : report.histogram().entrySet())
+                logger.log(Level.FINE, "[version] " + label + " " + entry.getKey() + ": " + entry.getValue());
+        }
+        return report;
+    }
+
+}
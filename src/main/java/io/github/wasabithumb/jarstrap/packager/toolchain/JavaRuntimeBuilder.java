@@ -0,0 +1,236 @@
+package io.github.wasabithumb.jarstrap.packager.toolchain;
+
+import io.github.wasabithumb.jarstrap.JARStrap;
+import io.github.wasabithumb.jarstrap.packager.error.PackagerException;
+import io.github.wasabithumb.jarstrap.util.io.FileUtil;
+import io.github.wasabithumb.jarstrap.util.process.ProcessRunner;
+import io.github.wasabithumb.josdirs.JOSDirs;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * <p>
+ *     Builds a minimal Java runtime for an application with the {@code jdeps} &amp; {@code jlink} tools of a local JDK.
+ *     The JDK must include its {@code jmods} directory.
+ * </p>
+ * <p>
+ *     Runtimes are cached within the JARStrap data directory, keyed by the JDK release &amp; the modules, and are
+ *     populated by linking into a private directory which is then atomically renamed into place (as with the
+ *     {@link ObjectCache}).
+ * </p>
+ */
+@ApiStatus.Internal
+public final class JavaRuntimeBuilder {
+
+    private static final String MARKER = ".complete";
+
+    /**
+     * Returns a builder for the JDK at the given home, or null if it lacks {@code jdeps}, {@code jlink} or
+     * {@code jmods}
+     */
+    public static @Nullable JavaRuntimeBuilder of(@NotNull File home) throws IOException {
+        final String exe = JOSDirs.platform().equals("windows") ? ".exe" : "";
+        final File bin = new File(home, "bin");
+        final File jdeps = new File(bin, "jdeps" + exe);
+        final File jlink = new File(bin, "jlink" + exe);
+        final File release = new File(home, "release");
+        if (!jdeps.isFile() || !jlink.isFile() || !release.isFile() || !new File(home, "jmods").isDirectory())
+            return null;
+
+        final byte[] releaseBytes = Files.readAllBytes(release.toPath());
+        final Properties props = new Properties();
+        props.load(new StringReader(new String(releaseBytes, StandardCharsets.UTF_8)));
+        final String version = unquote(props.getProperty("JAVA_VERSION"));
+        if (version == null) return null;
+        return new JavaRuntimeBuilder(home, jdeps, jlink, version, parseFeature(version), releaseBytes);
+    }
+
+    private static @Nullable String unquote(@Nullable String value) {
+        if (value == null) return null;
+        value = value.trim();
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\""))
+            value = value.substring(1, value.length() - 1);
+        return value;
+    }
+
+    private static int parseFeature(@NotNull String version) {
+        if (version.startsWith("1.")) version = version.substring(2);
+        int end = 0;
+        while (end < version.length() && Character.isDigit(version.charAt(end))) end++;
+        return end == 0 ? -1 : Integer.parseInt(version.substring(0, end));
+    }
+
+    //
+
+    private final File home;
+    private final File jdeps;
+    private final File jlink;
+    private final String version;
+    private final int feature;
+    private final byte[] release;
+
+    private JavaRuntimeBuilder(
+            @NotNull File home,
+            @NotNull File jdeps,
+            @NotNull File jlink,
+            @NotNull String version,
+            int feature,
+            byte @NotNull [] release
+    ) {
+        this.home = home;
+        this.jdeps = jdeps;
+        this.jlink = jlink;
+        this.version = version;
+        this.feature = feature;
+        this.release = release;
+    }
+
+    public @NotNull File home() {
+        return this.home;
+    }
+
+    /**
+     * The full version of the JDK, e.g. {@code 21.0.1}
+     */
+    public @NotNull String version() {
+        return this.version;
+    }
+
+    /**
+     * The feature release of the JDK, e.g. {@code 21}
+     */
+    public int feature() {
+        return this.feature;
+    }
+
+    /**
+     * Lists the modules required by the given JARs, the first of which is the application
+     */
+    public @NotNull SortedSet<String> modules(
+            @NotNull String tag,
+            @NotNull Logger logger,
+            @NotNull Duration timeout,
+            @NotNull List<File> jars
+    ) throws PackagerException {
+        final List<String> cmd = new ArrayList<>(jars.size() + 6);
+        cmd.add(this.jdeps.getAbsolutePath());
+        cmd.add("--ignore-missing-deps");
+        cmd.add("--print-module-deps");
+        cmd.add("--multi-release");
+        cmd.add(Integer.toString(this.feature));
+        for (File jar : jars) cmd.add(jar.getAbsolutePath());
+
+        final ProcessRunner.Result result = new ProcessRunner(tag, logger)
+                .timeout(timeout)
+                .log(false)
+                .run(cmd)
+                .requireSuccess();
+
+        // Warnings may precede the list, which is printed last
+        final SortedSet<String> ret = new TreeSet<>();
+        final List<String> output = result.output();
+        for (int i = output.size() - 1; i >= 0; i--) {
+            final String line = output.get(i).trim();
+            if (line.isEmpty()) continue;
+            for (String module : line.split(",")) {
+                if (!module.isBlank()) ret.add(module.trim());
+            }
+            break;
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the cached runtime containing the given modules, linking it first if necessary
+     */
+    public @NotNull File link(
+            @NotNull String tag,
+            @NotNull Logger logger,
+            @NotNull Duration timeout,
+            @NotNull SortedSet<String> modules
+    ) throws PackagerException, IOException {
+        final List<String> flags = this.flags();
+        final String key = this.key(modules, flags);
+        final File root = new File(JARStrap.dataDir(), "runtimes");
+        final File dest = new File(root, key);
+        if (new File(dest, MARKER).isFile()) return dest;
+
+        final Path temp = root.toPath().resolve(key + ".tmp-" + ProcessHandle.current().pid() + "-" + System.nanoTime());
+        Files.createDirectories(root.toPath());
+        try {
+            final List<String> cmd = new ArrayList<>(flags.size() + 4);
+            cmd.add(this.jlink.getAbsolutePath());
+            cmd.addAll(flags);
+            cmd.add("--add-modules");
+            cmd.add(String.join(",", modules));
+            cmd.add("--output");
+            cmd.add(temp.toString());
+            new ProcessRunner(tag, logger)
+                    .timeout(timeout)
+                    .run(cmd)
+                    .requireSuccess();
+
+            Files.createFile(temp.resolve(MARKER));
+            try {
+                Files.move(temp, dest.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException | DirectoryNotEmptyException e) {
+                // Another packager populated the entry first
+                FileUtil.deleteTree(temp);
+            }
+        } catch (IOException | PackagerException e) {
+            try {
+                FileUtil.deleteTree(temp);
+            } catch (IOException e1) {
+                e.addSuppressed(e1);
+            }
+            throw e;
+        }
+        return dest;
+    }
+
+    /**
+     * Identifies a runtime by the release of the JDK, the modules &amp; the flags, so that identical runtimes built
+     * on different machines share a key
+     */
+    private @NotNull String key(@NotNull SortedSet<String> modules, @NotNull List<String> flags) {
+        final MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-256 algorithm not available", e);
+        }
+        md.update(this.release);
+        for (String module : modules) {
+            md.update(module.getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+        }
+        for (String flag : flags) {
+            md.update(flag.getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+        }
+        return HexFormat.of().formatHex(md.digest(), 0, 8);
+    }
+
+    private @NotNull List<String> flags() {
+        return List.of(
+                "--strip-debug",
+                "--no-header-files",
+                "--no-man-pages",
+                // The numeric levels are deprecated as of 21
+                this.feature >= 21 ? "--compress=zip-6" : "--compress=2"
+        );
+    }
+
+}
@@ -0,0 +1,243 @@
+package io.github.wasabithumb.jarstrap.packager.toolchain;
+
+import io.github.wasabithumb.jarstrap.packager.PackagerArch;
+import io.github.wasabithumb.jarstrap.packager.PackagerProfile;
+import io.github.wasabithumb.jarstrap.packager.error.PackagerException;
+import io.github.wasabithumb.jarstrap.util.process.ProcessRunner;
+import io.github.wasabithumb.josdirs.JOSDirs;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Unmodifiable;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>
+ *     A C compiler &amp; linker which can build the stub without CMake. The flags mirror those produced by
+ *     {@code tool/CMakeLists.txt}: {@code -O3 -fPIC} in C99 mode, with {@code -g} for debug builds and
+ *     {@code -DNDEBUG} for release builds. The {@link PackagerProfile#COMPACT COMPACT} profile replaces
+ *     {@code -O3 -fPIC} with a size-optimized build, linked statically when the toolchain is musl.
+ * </p>
+ * <p>
+ *     The host toolchain is probed once per process, see {@link #host(Logger)}, as is the musl wrapper used by the
+ *     {@code COMPACT} profile, see {@link #musl(Logger)}.
+ * </p>
+ */
+@ApiStatus.Internal
+public final class NativeToolchain {
+
+    private static final Duration PROBE_TIMEOUT = Duration.ofSeconds(30L);
+    private static final Object HOST_LOCK = new Object();
+    private static NativeToolchain HOST = null;
+    private static boolean HOST_PROBED = false;
+    private static NativeToolchain MUSL = null;
+    private static boolean MUSL_PROBED = false;
+
+    /**
+     * Returns the toolchain of the host, or null if no suitable toolchain could be found. The result is cached for
+     * the lifetime of the process.
+     */
+    public static @Nullable NativeToolchain host(@NotNull Logger logger) {
+        synchronized (HOST_LOCK) {
+            if (!HOST_PROBED) {
+                HOST = probeHost(logger);
+                HOST_PROBED = true;
+            }
+            return HOST;
+        }
+    }
+
+    /**
+     * Returns the {@code musl-gcc} wrapper of the host, which links against musl in place of the system C library,
+     * or null if it could not be found. The result is cached for the lifetime of the process.
+     */
+    public static @Nullable NativeToolchain musl(@NotNull Logger logger) {
+        synchronized (HOST_LOCK) {
+            if (!MUSL_PROBED) {
+                MUSL = JOSDirs.platform().equals("windows") ? null : probeCompiler(logger, which("musl-gcc"), true);
+                MUSL_PROBED = true;
+            }
+            return MUSL;
+        }
+    }
+
+    private static @Nullable NativeToolchain probeHost(@NotNull Logger logger) {
+        if (JOSDirs.platform().equals("windows")) return null;
+
+        File cc = null;
+        final String ccEnv = System.getenv("CC");
+        if (ccEnv != null && !ccEnv.isBlank()) cc = which(ccEnv.trim());
+        if (cc == null) cc = which("cc");
+        if (cc == null) cc = which("gcc");
+        if (cc == null) cc = which("clang");
+        return probeCompiler(logger, cc, false);
+    }
+
+    private static @Nullable NativeToolchain probeCompiler(@NotNull Logger logger, @Nullable File cc, boolean musl) {
+        if (cc == null) return null;
+
+        final File ld = which("ld");
+        if (ld == null) return null;
+
+        String machine;
+        String version;
+        try {
+            machine = probe(logger, cc, "-dumpmachine");
+            version = probe(logger, cc, "--version");
+        } catch (PackagerException e) {
+            logger.log(Level.FINE, "Failed to probe C compiler " + cc, e);
+            return null;
+        }
+        if (machine == null || version == null) return null;
+
+        // The stub depends on ELF binary objects & Linux APIs
+        if (!machine.contains("linux")) return null;
+
+        return new NativeToolchain(cc, ld, machine, version, musl);
+    }
+
+    private static @Nullable String probe(@NotNull Logger logger, @NotNull File cc, @NotNull String flag) throws PackagerException {
+        ProcessRunner.Result result = new ProcessRunner("cc", logger)
+                .log(false)
+                .timeout(PROBE_TIMEOUT)
+                .run(cc.getAbsolutePath(), flag);
+        if (!result.isSuccess() || result.output().isEmpty()) return null;
+        return result.output().get(0).trim();
+    }
+
+    /**
+     * Locates an executable by name or path, searching {@code PATH} if necessary
+     */
+    public static @Nullable File which(@NotNull String name) {
+        if (name.indexOf(File.separatorChar) != -1) {
+            File file = new File(name);
+            return file.isFile() && file.canExecute() ? file : null;
+        }
+        final String path = System.getenv("PATH");
+        if (path == null) return null;
+        for (String dir : path.split(File.pathSeparator)) {
+            if (dir.isEmpty()) continue;
+            File file = new File(dir, name);
+            if (file.isFile() && file.canExecute()) return file;
+        }
+        return null;
+    }
+
+    //
+
+    private final File compiler;
+    private final File linker;
+    private final String machine;
+    private final String version;
+    private final boolean musl;
+
+    private NativeToolchain(
+            @NotNull File compiler,
+            @NotNull File linker,
+            @NotNull String machine,
+            @NotNull String version,
+            boolean musl
+    ) {
+        this.compiler = compiler;
+        this.linker = linker;
+        this.machine = machine;
+        this.version = version;
+        this.musl = musl;
+    }
+
+    public @NotNull File compiler() {
+        return this.compiler;
+    }
+
+    public @NotNull File linker() {
+        return this.linker;
+    }
+
+    /**
+     * The target triple reported by the compiler, e.g. {@code x86_64-linux-gnu}
+     */
+    public @NotNull String machine() {
+        return this.machine;
+    }
+
+    /**
+     * The first line of the compiler's version output
+     */
+    public @NotNull String version() {
+        return this.version;
+    }
+
+    /**
+     * True if this is the {@code musl-gcc} wrapper, see {@link #musl(Logger)}. The {@code COMPACT} profile links
+     * statically only with musl.
+     */
+    public boolean isMusl() {
+        return this.musl;
+    }
+
+    /**
+     * Flags to pass to the compiler when compiling a single translation unit
+     */
+    public @NotNull @Unmodifiable List<String> compileFlags(
+            @NotNull PackagerArch arch,
+            boolean release,
+            @NotNull PackagerProfile profile
+    ) {
+        List<String> ret = new ArrayList<>(10);
+        if (profile == PackagerProfile.COMPACT) {
+            // Separate sections per function & variable let the linker drop those which are unused
+            Collections.addAll(ret, "-Os", "-flto", "-ffunction-sections", "-fdata-sections");
+        } else {
+            Collections.addAll(ret, "-O3", "-fPIC");
+        }
+        if (release) {
+            ret.add("-DNDEBUG");
+        } else {
+            ret.add("-g");
+        }
+        ret.add("-std=gnu99");
+        if (!arch.is64Bit()) ret.add("-m32");
+        return Collections.unmodifiableList(ret);
+    }
+
+    /**
+     * Flags to pass to the compiler driver when linking the executable
+     */
+    public @NotNull @Unmodifiable List<String> linkFlags(
+            @NotNull PackagerArch arch,
+            boolean release,
+            @NotNull PackagerProfile profile
+    ) {
+        List<String> ret = new ArrayList<>(8);
+        // Binary objects carry no .note.GNU-stack section
+        ret.add("-Wl,-z,noexecstack");
+        if (profile == PackagerProfile.COMPACT) {
+            // Code generation happens at link time with LTO, so the optimization level must be repeated
+            Collections.addAll(ret, "-Os", "-flto", "-Wl,--gc-sections");
+            // A static glibc is many times larger than the stub, and still loads the NSS libraries of the host
+            if (this.musl) ret.add("-static");
+            if (release) ret.add("-s");
+        }
+        if (!arch.is64Bit()) ret.add("-m32");
+        return Collections.unmodifiableList(ret);
+    }
+
+    /**
+     * Builds the command which wraps a binary file into a relocatable object, as {@code add_resource()} does
+     */
+    public @NotNull List<String> binaryObjectCommand(@NotNull PackagerArch arch, @NotNull String input, @NotNull String output) {
+        List<String> ret = new ArrayList<>(8);
+        ret.add(this.linker.getAbsolutePath());
+        if (!arch.is64Bit()) ret.add("-melf_i386");
+        Collections.addAll(ret, "--relocatable", "--format", "binary", "--output", output, input);
+        return ret;
+    }
+
+}
@@ -0,0 +1,152 @@
+package io.github.wasabithumb.jarstrap.packager.toolchain;
+
+import io.github.wasabithumb.jarstrap.JARStrap;
+import io.github.wasabithumb.jarstrap.packager.PackagerArch;
+import io.github.wasabithumb.jarstrap.util.io.FileUtil;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * <p>
+ *     Caches the object files of the parts of the stub which do not change between packages (everything except the
+ *     generated {@code config.c} and the archive). Entries are keyed by the compiler, its flags, the target
+ *     architecture, the build type and a hash of the tool sources.
+ * </p>
+ * <p>
+ *     Entries are populated by building into a private directory which is then atomically renamed into place, so
+ *     concurrent packagers (including those in other processes) never observe a partial entry.
+ * </p>
+ */
+@ApiStatus.Internal
+public final class ObjectCache {
+
+    private static final String MARKER = ".complete";
+
+    /**
+     * The cache within the JARStrap data directory
+     */
+    public static @NotNull ObjectCache shared() {
+        return new ObjectCache(new File(JARStrap.dataDir(), "objcache"));
+    }
+
+    //
+
+    private final File root;
+
+    public ObjectCache(@NotNull File root) {
+        this.root = root;
+    }
+
+    /**
+     * Computes the cache key for a build
+     * @param toolHash A hash of the cached sources, see {@link #hashSources(File, List)}
+     */
+    public @NotNull String key(
+            @NotNull NativeToolchain toolchain,
+            @NotNull List<String> flags,
+            @NotNull PackagerArch arch,
+            boolean release,
+            byte @NotNull [] toolHash
+    ) {
+        final MessageDigest md = sha256();
+        update(md, toolchain.compiler().getAbsolutePath());
+        update(md, toolchain.version());
+        update(md, toolchain.machine());
+        for (String flag : flags) update(md, flag);
+        update(md, arch.name());
+        update(md, release ? "release" : "debug");
+        md.update(toolHash);
+        return HexFormat.of().formatHex(md.digest(), 0, 16);
+    }
+
+    /**
+     * Returns the directory holding the objects for the given key, or null if there is no complete entry
+     */
+    public @Nullable File lookup(@NotNull String key) {
+        final File dir = new File(this.root, key);
+        if (!new File(dir, MARKER).isFile()) return null;
+        return dir;
+    }
+
+    /**
+     * Copies the given objects out of a build directory into the cache
+     * @return The directory holding the cached objects
+     */
+    public @NotNull File store(@NotNull String key, @NotNull File buildDir, @NotNull List<String> objects) throws IOException {
+        final Path dest = new File(this.root, key).toPath();
+        final Path temp = this.root.toPath().resolve(key + ".tmp-" + ProcessHandle.current().pid() + "-" + System.nanoTime());
+        Files.createDirectories(temp);
+        try {
+            for (String object : objects) {
+                Files.copy(new File(buildDir, object).toPath(), temp.resolve(object));
+            }
+            Files.createFile(temp.resolve(MARKER));
+            try {
+                Files.move(temp, dest, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException | DirectoryNotEmptyException e) {
+                // Another packager populated the entry first
+                FileUtil.deleteTree(temp);
+            }
+        } catch (IOException e) {
+            try {
+                FileUtil.deleteTree(temp);
+            } catch (IOException e1) {
+                e.addSuppressed(e1);
+            }
+            throw e;
+        }
+        return dest.toFile();
+    }
+
+    //
+
+    /**
+     * Hashes the cached sources of the stub: the given files within the working directory, along with every file
+     * in {@code src} (which includes the headers they depend on)
+     */
+    public static byte @NotNull [] hashSources(@NotNull File workingDir, @NotNull List<String> sources) throws IOException {
+        final MessageDigest md = sha256();
+        for (String source : sources) hashFile(md, workingDir, source);
+
+        final String[] src = new File(workingDir, "src").list();
+        if (src != null) {
+            Arrays.sort(src);
+            for (String name : src) hashFile(md, workingDir, "src/" + name);
+        }
+        return md.digest();
+    }
+
+    private static void hashFile(@NotNull MessageDigest md, @NotNull File workingDir, @NotNull String name) throws IOException {
+        final File file = new File(workingDir, name);
+        if (!file.isFile()) return;
+        update(md, name);
+        final byte[] content = Files.readAllBytes(file.toPath());
+        update(md, Integer.toString(content.length));
+        md.update(content);
+    }
+
+    private static void update(@NotNull MessageDigest md, @NotNull String s) {
+        md.update(s.getBytes(StandardCharsets.UTF_8));
+        md.update((byte) 0);
+    }
+
+    private static @NotNull MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-256 algorithm not available", e);
+        }
+    }
+
+}
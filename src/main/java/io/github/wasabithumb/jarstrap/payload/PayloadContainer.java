@@ -0,0 +1,170 @@
+package io.github.wasabithumb.jarstrap.payload;
+
+import io.github.wasabithumb.jarstrap.util.io.FileUtil;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * <p>
+ *     An uncompressed container of files embedded into the executable in place of a single JAR, read by
+ *     {@code src/payload.c}. All integers are little-endian:
+ * </p>
+ * <pre>
+ * magic        8 bytes  "JSPAYLD1"
+ * count        u32
+ * main class   u16 length, UTF-8
+ * entries      count times: u8 kind, u16 flags, u16 name length, name (UTF-8), u64 offset, u64 size
+ * data         the contents of each entry, at its offset from the start of the container
+ * </pre>
+ * <p>
+ *     The name of an entry is the file name it is extracted to, which is derived from its content hash so that the
+ *     launcher can skip files which are already present. Runtime files are instead named by path within a runtime
+ *     whose name is derived from its contents.
+ * </p>
+ */
+@ApiStatus.Internal
+public final class PayloadContainer {
+
+    private static final byte[] MAGIC = "JSPAYLD1".getBytes(StandardCharsets.US_ASCII);
+    private static final int HASH_CHARS = 16;
+
+    /**
+     * The leading hex digits of the SHA-256 of a file, used to name extracted files
+     */
+    public static @NotNull String hash(@NotNull Path file) throws IOException {
+        return HexFormat.of().formatHex(FileUtil.sha256(file), 0, HASH_CHARS >> 1);
+    }
+
+    //
+
+    private final String mainClass;
+    private final List<Entry> entries;
+
+    public PayloadContainer(@NotNull String mainClass) {
+        this.mainClass = mainClass;
+        this.entries = new ArrayList<>();
+    }
+
+    public @NotNull String mainClass() {
+        return this.mainClass;
+    }
+
+    public @NotNull List<Entry> entries() {
+        return Collections.unmodifiableList(this.entries);
+    }
+
+    public void add(@NotNull Entry entry) {
+        this.entries.add(entry);
+    }
+
+    /**
+     * Writes the container, copying the contents of each entry from its source file
+     * @return The size of the container in bytes
+     */
+    public long write(@NotNull Path dest) throws IOException {
+        final byte[] mainClass = this.mainClass.getBytes(StandardCharsets.UTF_8);
+        final byte[][] names = new byte[this.entries.size()][];
+        final long[] sizes = new long[names.length];
+        int headerSize = MAGIC.length + 4 + 2 + mainClass.length;
+        for (int i=0; i < names.length; i++) {
+            final Entry entry = this.entries.get(i);
+            names[i] = entry.name().getBytes(StandardCharsets.UTF_8);
+            if (names[i].length > 0xFFFF)
+                throw new IOException("Payload entry name is too long: " + entry.name());
+            sizes[i] = Files.size(entry.source());
+            headerSize += 1 + 2 + 2 + names[i].length + 8 + 8;
+        }
+        if (mainClass.length > 0xFFFF)
+            throw new IOException("Main class name is too long: " + this.mainClass);
+
+        final ByteBuffer header = ByteBuffer.allocate(headerSize).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC);
+        header.putInt(names.length);
+        header.putShort((short) mainClass.length);
+        header.put(mainClass);
+        long offset = headerSize;
+        for (int i=0; i < names.length; i++) {
+            final Entry entry = this.entries.get(i);
+            header.put((byte) entry.kind().ordinal());
+            header.putShort((short) entry.flags());
+            header.putShort((short) names[i].length);
+            header.put(names[i]);
+            header.putLong(offset);
+            header.putLong(sizes[i]);
+            offset += sizes[i];
+        }
+        header.flip();
+
+        try (FileChannel out = FileChannel.open(
+                dest,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING
+        )) {
+            while (header.hasRemaining()) out.write(header);
+            for (int i=0; i < names.length; i++) {
+                try (FileChannel in = FileChannel.open(this.entries.get(i).source(), StandardOpenOption.READ)) {
+                    long done = 0L;
+                    while (done < sizes[i]) {
+                        final long n = in.transferTo(done, sizes[i] - done, out);
+                        if (n <= 0L) break;
+                        done += n;
+                    }
+                    if (done < sizes[i])
+                        throw new IOException("Payload entry \"" + this.entries.get(i).name() + "\" changed while being written");
+                }
+            }
+            return out.position();
+        }
+    }
+
+    //
+
+    /**
+     * @param name The name to extract the entry to, relative to a directory determined by the {@link Kind kind}
+     * @param flags A combination of the {@code FLAG_} constants
+     */
+    public record Entry(@NotNull Kind kind, @NotNull String name, int flags, @NotNull Path source) {
+
+        /**
+         * The extracted file should be executable
+         */
+        public static final int FLAG_EXECUTABLE = 1;
+
+    }
+
+    /**
+     * The ordinal of each kind is written to the container, so new kinds must be added last
+     */
+    public enum Kind {
+        /**
+         * The main JAR, extracted into the app directory with the name {@code <app name>_<entry name>.jar}
+         */
+        MAIN,
+        /**
+         * A library JAR, extracted into {@code lib/} within the app directory. Libraries are shared between
+         * applications and versions, as their names contain their content hash.
+         */
+        LIBRARY,
+        /**
+         * A file of a Java runtime, extracted into {@code runtime/} within the app directory. The name is a path
+         * separated by {@code /}, the first segment of which identifies the runtime. The launcher uses a runtime
+         * in place of an installed Java.
+         */
+        RUNTIME
+    }
+
+}
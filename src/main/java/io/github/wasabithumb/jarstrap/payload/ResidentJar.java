@@ -0,0 +1,72 @@
+package io.github.wasabithumb.jarstrap.payload;
+
+import io.github.wasabithumb.jarstrap.jar.JarIndex;
+import io.github.wasabithumb.jarstrap.jar.JarWriter;
+import io.github.wasabithumb.jarstrap.resident.ResidentServer;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Writes the JAR added to the payload of executables packaged in
+ * {@link io.github.wasabithumb.jarstrap.packager.PackagerConfig#resident() resident mode}, holding the classes of
+ * {@link io.github.wasabithumb.jarstrap.resident} as found alongside this class. The JAR does not depend on the
+ * packager build or the time it was written, so that its content hash only changes with the classes.
+ */
+@ApiStatus.Internal
+public final class ResidentJar {
+
+    /** The file name of the JAR within the payload, after its content hash */
+    public static final String NAME = "jarstrap-resident.jar";
+    /** The internal name of the class which replaces {@code System.exit} */
+    public static final String RUNTIME_CLASS = "io/github/wasabithumb/jarstrap/resident/ResidentRuntime";
+
+    private static final String PREFIX = "io/github/wasabithumb/jarstrap/resident/";
+    private static final String CLASS_SUFFIX = ".class";
+    private static final long ENTRY_TIME = 315532800000L; // 1980-01-01T00:00:00Z, the earliest ZIP time
+
+    private ResidentJar() { }
+
+    public static void write(@NotNull Path dest) throws IOException {
+        final Path codeSource;
+        try {
+            codeSource = Path.of(ResidentServer.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (URISyntaxException e) {
+            throw new AssertionError("Code source is not a valid URI", e);
+        }
+
+        try (JarWriter writer = new JarWriter(dest)) {
+            writer.fixTime(ENTRY_TIME);
+            if (Files.isDirectory(codeSource)) {
+                final List<Path> files;
+                try (Stream<Path> stream = Files.list(codeSource.resolve(PREFIX))) {
+                    files = stream.filter((Path p) -> p.getFileName().toString().endsWith(CLASS_SUFFIX))
+                            .sorted()
+                            .toList();
+                }
+                for (Path file : files)
+                    writer.add(PREFIX + file.getFileName(), Files.readAllBytes(file), ENTRY_TIME);
+            } else {
+                final JarIndex index = JarIndex.read(codeSource);
+                final List<JarIndex.Entry> entries = new ArrayList<>();
+                for (JarIndex.Entry entry : index.entries()) {
+                    final String name = entry.name();
+                    if (name.startsWith(PREFIX) && name.endsWith(CLASS_SUFFIX) && name.indexOf('/', PREFIX.length()) == -1)
+                        entries.add(entry);
+                }
+                entries.sort(JarWriter.CANONICAL_ORDER);
+                try (JarIndex.Reader reader = index.open()) {
+                    for (JarIndex.Entry entry : entries) writer.copy(reader, entry);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,296 @@
+package io.github.wasabithumb.jarstrap.resident;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Unmodifiable;
+
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>
+ *     A launch of the application served by a {@link ResidentServer resident JVM}. The JVM is shared by every call,
+ *     so {@link System#getenv()} and the {@code user.dir} property describe the process which spawned it rather than
+ *     the current launch; applications which depend on either should prefer {@link #environment()} and
+ *     {@link #workingDirectory()} when {@link #current()} is not null.
+ * </p>
+ * <p>
+ *     {@link System#out}, {@link System#err} and {@link System#in} are routed to the launcher of the call made by
+ *     the current thread, or by the thread which started it. Threads which outlive their call keep running, but
+ *     their output is discarded.
+ * </p>
+ * @since 0.3.0
+ */
+public final class ResidentCall {
+
+    private static final InheritableThreadLocal<ResidentCall> CURRENT = new InheritableThreadLocal<>();
+
+    /**
+     * The call made by the current thread, or null if the application was not launched in a resident JVM
+     */
+    public static @Nullable ResidentCall current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Reads the request of a launcher
+     * @param launchArgs Arguments placed before those of the launcher
+     */
+    static @NotNull ResidentCall read(@NotNull SocketChannel channel, @NotNull List<String> launchArgs) throws IOException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        final Charset charset = ResidentProtocol.nativeCharset();
+        final List<String> arguments = new ArrayList<>(launchArgs);
+        final Map<String, String> environment = new LinkedHashMap<>();
+        String directory = null;
+
+        ResidentProtocol.Frame frame;
+        while ((frame = ResidentProtocol.Frame.read(in)).type() != ResidentProtocol.RUN) {
+            final String value = new String(frame.payload(), charset);
+            switch (frame.type()) {
+                case ResidentProtocol.ARGUMENT -> arguments.add(value);
+                case ResidentProtocol.ENVIRONMENT -> {
+                    final int eq = value.indexOf('=');
+                    if (eq > 0) environment.put(value.substring(0, eq), value.substring(eq + 1));
+                }
+                case ResidentProtocol.DIRECTORY -> directory = value;
+                default -> throw new IOException("Unexpected frame in request: " + frame.type());
+            }
+        }
+        if (directory == null) throw new IOException("Request has no working directory");
+        return new ResidentCall(channel, in, arguments, environment, Path.of(directory));
+    }
+
+    //
+
+    private final SocketChannel channel;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final List<String> arguments;
+    private final Map<String, String> environment;
+    private final Path workingDirectory;
+    private final OutputStream stdout;
+    private final OutputStream stderr;
+    private final InputStream stdin;
+    private final AtomicBoolean finished;
+
+    private ResidentCall(
+            @NotNull SocketChannel channel,
+            @NotNull DataInputStream in,
+            @NotNull List<String> arguments,
+            @NotNull Map<String, String> environment,
+            @NotNull Path workingDirectory
+    ) {
+        this.channel = channel;
+        this.in = in;
+        this.out = new DataOutputStream(Channels.newOutputStream(channel));
+        this.arguments = Collections.unmodifiableList(arguments);
+        this.environment = Collections.unmodifiableMap(environment);
+        this.workingDirectory = workingDirectory;
+        this.stdout = new BufferedOutputStream(new FrameOutputStream(ResidentProtocol.STDOUT), 8192);
+        this.stderr = new BufferedOutputStream(new FrameOutputStream(ResidentProtocol.STDERR), 8192);
+        this.stdin = new FrameInputStream();
+        this.finished = new AtomicBoolean(false);
+    }
+
+    /**
+     * The arguments passed to {@code main}: the launch flags of the executable followed by the arguments of the
+     * launcher
+     */
+    public @NotNull @Unmodifiable List<String> arguments() {
+        return this.arguments;
+    }
+
+    /**
+     * The environment of the launcher
+     */
+    public @NotNull @Unmodifiable Map<String, String> environment() {
+        return this.environment;
+    }
+
+    /**
+     * The working directory of the launcher
+     */
+    public @NotNull Path workingDirectory() {
+        return this.workingDirectory;
+    }
+
+    @NotNull OutputStream stdout() {
+        return this.stdout;
+    }
+
+    @NotNull OutputStream stderr() {
+        return this.stderr;
+    }
+
+    @NotNull InputStream stdin() {
+        return this.stdin;
+    }
+
+    /**
+     * Runs the main method on the current thread, then reports the exit status to the launcher
+     */
+    void run(@NotNull Method main) throws IOException {
+        this.send(ResidentProtocol.READY, new byte[0], 0, 0);
+        int status = 0;
+        CURRENT.set(this);
+        try {
+            main.invoke(null, (Object) this.arguments.toArray(new String[0]));
+        } catch (InvocationTargetException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof ResidentExit exit) {
+                status = exit.status();
+            } else {
+                // As reported by the default uncaught exception handler
+                final PrintStream err = System.err;
+                err.print("Exception in thread \"main\" ");
+                trimStackTrace(cause);
+                cause.printStackTrace(err);
+                status = 1;
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Main method is not accessible", e);
+        } finally {
+            CURRENT.remove();
+        }
+        this.finish(status);
+    }
+
+    /**
+     * Ends the call with the given status on behalf of {@code System.exit}. Threads of the call which keep running
+     * afterwards can no longer reach the launcher.
+     */
+    void exit(int status) {
+        this.finish(status);
+        throw new ResidentExit(status);
+    }
+
+    private void finish(int status) {
+        if (!this.finished.compareAndSet(false, true)) return;
+        try {
+            this.stdout.flush();
+            this.stderr.flush();
+        } catch (IOException ignored) { }
+        try {
+            final byte[] payload = new byte[] {
+                    (byte) (status >>> 24), (byte) (status >>> 16), (byte) (status >>> 8), (byte) status
+            };
+            this.send(ResidentProtocol.EXIT, payload, 0, payload.length);
+        } catch (IOException ignored) {
+            // The launcher is gone
+        } finally {
+            try {
+                this.channel.close();
+            } catch (IOException ignored) { }
+        }
+    }
+
+    /**
+     * Removes the frames below the main method, which belong to the server rather than the application
+     */
+    private static void trimStackTrace(@NotNull Throwable t) {
+        final StackTraceElement[] trace = t.getStackTrace();
+        int end = trace.length;
+        for (int i=0; i < trace.length; i++) {
+            if (trace[i].getClassName().equals(ResidentCall.class.getName())) {
+                end = i;
+                break;
+            }
+        }
+        while (end > 0 && isReflective(trace[end - 1])) end--;
+        if (end != trace.length) t.setStackTrace(Arrays.copyOf(trace, end));
+    }
+
+    private static boolean isReflective(@NotNull StackTraceElement element) {
+        final String cls = element.getClassName();
+        return cls.startsWith("jdk.internal.reflect.") || cls.equals("java.lang.reflect.Method");
+    }
+
+    private void send(int type, byte @NotNull [] payload, int off, int len) throws IOException {
+        synchronized (this.out) {
+            this.out.writeInt(len);
+            this.out.writeByte(type);
+            this.out.write(payload, off, len);
+            this.out.flush();
+        }
+    }
+
+    //
+
+    private final class FrameOutputStream extends OutputStream {
+
+        private final int type;
+
+        FrameOutputStream(int type) {
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte @NotNull [] b, int off, int len) throws IOException {
+            if (len == 0) return;
+            // Output of threads which outlive the call is dropped rather than failing them
+            if (ResidentCall.this.finished.get()) return;
+            ResidentCall.this.send(this.type, b, off, len);
+        }
+
+    }
+
+    private final class FrameInputStream extends InputStream {
+
+        private byte[] buf = new byte[0];
+        private int pos = 0;
+        private boolean eof = false;
+
+        @Override
+        public synchronized int read() throws IOException {
+            if (!this.fill()) return -1;
+            return this.buf[this.pos++] & 0xFF;
+        }
+
+        @Override
+        public synchronized int read(byte @NotNull [] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            if (len == 0) return 0;
+            if (!this.fill()) return -1;
+            final int n = Math.min(len, this.buf.length - this.pos);
+            System.arraycopy(this.buf, this.pos, b, off, n);
+            this.pos += n;
+            return n;
+        }
+
+        @Override
+        public synchronized int available() {
+            return this.buf.length - this.pos;
+        }
+
+        private boolean fill() throws IOException {
+            while (this.pos >= this.buf.length) {
+                if (this.eof || ResidentCall.this.finished.get()) return false;
+                ResidentCall.this.send(ResidentProtocol.STDIN_REQUEST, new byte[0], 0, 0);
+                final ResidentProtocol.Frame frame = ResidentProtocol.Frame.read(ResidentCall.this.in);
+                switch (frame.type()) {
+                    case ResidentProtocol.STDIN -> {
+                        this.buf = frame.payload();
+                        this.pos = 0;
+                    }
+                    case ResidentProtocol.STDIN_EOF -> this.eof = true;
+                    default -> throw new IOException("Unexpected frame while reading input: " + frame.type());
+                }
+            }
+            return true;
+        }
+
+    }
+
+}
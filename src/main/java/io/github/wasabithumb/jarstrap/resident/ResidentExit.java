@@ -0,0 +1,19 @@
+package io.github.wasabithumb.jarstrap.resident;
+
+/**
+ * Thrown in place of {@code System.exit} to unwind the thread of a {@link ResidentCall} which has already ended
+ */
+final class ResidentExit extends Error {
+
+    private final int status;
+
+    ResidentExit(int status) {
+        super("exit(" + status + ")", null, false, false);
+        this.status = status;
+    }
+
+    int status() {
+        return this.status;
+    }
+
+}
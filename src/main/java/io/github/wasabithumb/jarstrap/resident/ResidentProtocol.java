@@ -0,0 +1,88 @@
+package io.github.wasabithumb.jarstrap.resident;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>
+ *     The wire format spoken between the launcher ({@code src/resident.c}) and {@link ResidentServer}. Every message
+ *     is a frame: a u32 big-endian payload length, a u8 type and the payload.
+ * </p>
+ * <p>
+ *     The launcher sends its arguments, environment entries ({@code NAME=value}) and working directory, followed by
+ *     {@link #RUN}. The server answers {@link #READY} once the call is accepted, after which the launcher may no
+ *     longer fall back to starting the application itself. The server then streams the output of the call and ends
+ *     it with {@link #EXIT}. Standard input is pulled: when the application reads from it, the server sends
+ *     {@link #STDIN_REQUEST} and the launcher answers with {@link #STDIN} or {@link #STDIN_EOF}.
+ * </p>
+ */
+final class ResidentProtocol {
+
+    /** Launcher: an argument, after those in the launch flags */
+    static final int ARGUMENT = 'A';
+    /** Launcher: an environment entry, {@code NAME=value} */
+    static final int ENVIRONMENT = 'E';
+    /** Launcher: the working directory */
+    static final int DIRECTORY = 'D';
+    /** Launcher: ends the request */
+    static final int RUN = 'C';
+    /** Launcher: data read from standard input, in answer to {@link #STDIN_REQUEST} */
+    static final int STDIN = '0';
+    /** Launcher: standard input is at its end, in answer to {@link #STDIN_REQUEST} */
+    static final int STDIN_EOF = '.';
+
+    /** Server: the call was accepted and {@code main} is about to run */
+    static final int READY = 'R';
+    /** Server: data written to standard output */
+    static final int STDOUT = '1';
+    /** Server: data written to standard error */
+    static final int STDERR = '2';
+    /** Server: the application is waiting for standard input */
+    static final int STDIN_REQUEST = 'I';
+    /** Server: the call has ended. Payload: the exit status as a u32 */
+    static final int EXIT = 'X';
+
+    /** The largest payload accepted from the launcher */
+    static final int MAX_PAYLOAD = 1 << 20;
+
+    private ResidentProtocol() { }
+
+    /**
+     * The charset of arguments, environment entries &amp; paths, as used by the JVM for its own
+     */
+    static @NotNull Charset nativeCharset() {
+        final String name = System.getProperty("sun.jnu.encoding");
+        if (name != null) {
+            try {
+                return Charset.forName(name);
+            } catch (IllegalArgumentException ignored) { }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    //
+
+    /**
+     * A frame read from the launcher
+     */
+    record Frame(int type, byte @NotNull [] payload) {
+
+        static @NotNull Frame read(@NotNull DataInputStream in) throws IOException {
+            final int length = in.readInt();
+            final int type = in.read();
+            if (type == -1) throw new EOFException();
+            if (length < 0 || length > MAX_PAYLOAD)
+                throw new IOException("Frame of " + (length & 0xFFFFFFFFL) + " bytes exceeds the limit");
+            final byte[] payload = new byte[length];
+            in.readFully(payload);
+            return new Frame(type, payload);
+        }
+
+    }
+
+}
@@ -0,0 +1,29 @@
+package io.github.wasabithumb.jarstrap.resident;
+
+import org.jetbrains.annotations.ApiStatus;
+
+/**
+ * <p>
+ *     Target of the {@code System.exit} calls in applications packaged in resident mode, which are rewritten to
+ *     {@link #exit(int)} when packaging. Not meant to be called directly.
+ * </p>
+ * @since 0.3.0
+ */
+@ApiStatus.Internal
+public final class ResidentRuntime {
+
+    private ResidentRuntime() { }
+
+    /**
+     * Ends the current {@link ResidentCall} with the given status, or the JVM if there is none
+     */
+    public static void exit(int status) {
+        final ResidentCall call = ResidentCall.current();
+        if (call == null) {
+            System.exit(status);
+            return;
+        }
+        call.exit(status);
+    }
+
+}
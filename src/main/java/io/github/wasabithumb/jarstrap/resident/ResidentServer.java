@@ -0,0 +1,245 @@
+package io.github.wasabithumb.jarstrap.resident;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <p>
+ *     The resident JVM of an executable packaged in resident mode. Spawned by the launcher on its first call, it
+ *     listens on a Unix domain socket for further calls and runs the main method of the application once for each,
+ *     on its own thread, with the standard streams of the JVM routed to the launcher (see {@link ResidentCall}).
+ *     Since the JVM outlives each call, classes stay loaded &amp; compiled and calls skip the startup of the JVM.
+ * </p>
+ * <p>
+ *     The server exits once it has gone without calls for its idle timeout. Only one server may serve a socket; a
+ *     server which finds the lock of its socket held by another exits immediately with status 0, which the launcher
+ *     takes as a lost race rather than a failure.
+ * </p>
+ * <p>
+ *     Usage: {@code ResidentServer <socket> <idle timeout in seconds> <main class> [launch flags...]}
+ * </p>
+ * @since 0.3.0
+ */
+public final class ResidentServer {
+
+    private static final long WATCHDOG_INTERVAL_MILLIS = 1000L;
+    private static final Set<PosixFilePermission> PRIVATE_PERMISSIONS = EnumSet.of(
+            PosixFilePermission.GROUP_READ, PosixFilePermission.GROUP_WRITE, PosixFilePermission.GROUP_EXECUTE,
+            PosixFilePermission.OTHERS_READ, PosixFilePermission.OTHERS_WRITE, PosixFilePermission.OTHERS_EXECUTE
+    );
+
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.err.println("Usage: ResidentServer <socket> <idle timeout in seconds> <main class> [launch flags...]");
+            System.exit(2);
+            return;
+        }
+        final Path socket = Path.of(args[0]).toAbsolutePath();
+        final long idleMillis;
+        try {
+            idleMillis = Math.max(1L, Long.parseLong(args[1])) * 1000L;
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid idle timeout: " + args[1]);
+            System.exit(2);
+            return;
+        }
+        final List<String> launchArgs = List.of(Arrays.copyOfRange(args, 3, args.length));
+
+        final FileLock lock;
+        final Method main;
+        final ServerSocketChannel channel;
+        try {
+            checkDirectory(socket.getParent());
+            lock = lock(socket);
+            if (lock == null) {
+                // Another server is starting or already serving this socket
+                System.exit(0);
+                return;
+            }
+            main = resolveMain(args[2]);
+            Files.deleteIfExists(socket);
+            channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            channel.bind(UnixDomainSocketAddress.of(socket));
+        } catch (IOException | ReflectiveOperationException e) {
+            System.err.println("Failed to start resident server");
+            e.printStackTrace(System.err);
+            System.exit(1);
+            return;
+        }
+
+        final ResidentServer server = new ResidentServer(socket, idleMillis, launchArgs, main, channel, lock);
+        server.serve();
+    }
+
+    private static void checkDirectory(@NotNull Path dir) throws IOException {
+        final PosixFileAttributes attrs = Files.readAttributes(dir, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if (!attrs.isDirectory())
+            throw new IOException("Socket directory " + dir + " is not a directory");
+        final String user = System.getProperty("user.name");
+        if (!attrs.owner().getName().equals(user))
+            throw new IOException("Socket directory " + dir + " is not owned by " + user);
+        for (PosixFilePermission perm : attrs.permissions()) {
+            if (PRIVATE_PERMISSIONS.contains(perm))
+                throw new IOException("Socket directory " + dir + " is accessible to other users");
+        }
+    }
+
+    private static FileLock lock(@NotNull Path socket) throws IOException {
+        final Path path = socket.resolveSibling(socket.getFileName() + ".lock");
+        final FileChannel fc = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        final FileLock lock = fc.tryLock();
+        if (lock == null) fc.close();
+        // Otherwise held until the JVM exits
+        return lock;
+    }
+
+    private static @NotNull Method resolveMain(@NotNull String name) throws ReflectiveOperationException {
+        final Class<?> cls = Class.forName(name, false, ClassLoader.getSystemClassLoader());
+        final Method main = cls.getMethod("main", String[].class);
+        if (!Modifier.isStatic(main.getModifiers()))
+            throw new NoSuchMethodException("Main method of " + name + " is not static");
+        return main;
+    }
+
+    //
+
+    private final Path socket;
+    private final long idleMillis;
+    private final List<String> launchArgs;
+    private final Method main;
+    private final ServerSocketChannel channel;
+    @SuppressWarnings({"FieldCanBeLocal", "unused"})
+    private final FileLock lock;
+    private final Object stateLock;
+    private int active;
+    private long lastActivity;
+    private boolean closing;
+
+    private ResidentServer(
+            @NotNull Path socket,
+            long idleMillis,
+            @NotNull List<String> launchArgs,
+            @NotNull Method main,
+            @NotNull ServerSocketChannel channel,
+            @NotNull FileLock lock
+    ) {
+        this.socket = socket;
+        this.idleMillis = idleMillis;
+        this.launchArgs = launchArgs;
+        this.main = main;
+        this.channel = channel;
+        this.lock = lock;
+        this.stateLock = new Object();
+        this.active = 0;
+        this.lastActivity = System.currentTimeMillis();
+        this.closing = false;
+    }
+
+    private void serve() {
+        ResidentStreams.install();
+        Thread.setDefaultUncaughtExceptionHandler(ResidentServer::uncaughtException);
+        // The lock is held until the JVM exits, so no other server can have bound the socket by then
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                Files.deleteIfExists(this.socket);
+            } catch (IOException ignored) { }
+        }, "JARStrap Resident Cleanup"));
+
+        final Thread watchdog = new Thread(this::watchdogLoop, "JARStrap Resident Watchdog");
+        watchdog.setDaemon(true);
+        watchdog.start();
+
+        while (true) {
+            final SocketChannel channel;
+            try {
+                channel = this.channel.accept();
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                e.printStackTrace(System.err);
+                continue;
+            }
+            synchronized (this.stateLock) {
+                if (this.closing) {
+                    // The launcher sees no READY and falls back
+                    try {
+                        channel.close();
+                    } catch (IOException ignored) { }
+                    break;
+                }
+                this.active++;
+                this.lastActivity = System.currentTimeMillis();
+            }
+            final Thread t = new Thread(() -> {
+                try {
+                    this.handle(channel);
+                } finally {
+                    synchronized (this.stateLock) {
+                        this.active--;
+                        this.lastActivity = System.currentTimeMillis();
+                    }
+                }
+            }, "JARStrap Resident Call");
+            t.start();
+        }
+    }
+
+    private void handle(@NotNull SocketChannel channel) {
+        try {
+            final ResidentCall call = ResidentCall.read(channel, this.launchArgs);
+            call.run(this.main);
+        } catch (IOException e) {
+            // The launcher went away before or during the call
+            try {
+                channel.close();
+            } catch (IOException ignored) { }
+        }
+    }
+
+    private void watchdogLoop() {
+        try {
+            while (true) {
+                //noinspection BusyWait
+                Thread.sleep(WATCHDOG_INTERVAL_MILLIS);
+                synchronized (this.stateLock) {
+                    if (this.active != 0) continue;
+                    if (System.currentTimeMillis() - this.lastActivity < this.idleMillis) continue;
+                    this.closing = true;
+                    try {
+                        this.channel.close();
+                    } catch (IOException ignored) { }
+                }
+                System.exit(0);
+                return;
+            }
+        } catch (InterruptedException ignored) { }
+    }
+
+    private static void uncaughtException(@NotNull Thread t, @NotNull Throwable e) {
+        // Threads which call System.exit after their call has ended
+        if (e instanceof ResidentExit) return;
+        System.err.print("Exception in thread \"" + t.getName() + "\" ");
+        e.printStackTrace(System.err);
+    }
+
+}
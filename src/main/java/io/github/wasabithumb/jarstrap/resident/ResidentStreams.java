@@ -0,0 +1,106 @@
+package io.github.wasabithumb.jarstrap.resident;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.function.Function;
+
+/**
+ * Replaces the standard streams of the JVM with ones which dispatch to the {@link ResidentCall} of the current
+ * thread, or to the original streams (the log of the server) outside of calls
+ */
+final class ResidentStreams {
+
+    private ResidentStreams() { }
+
+    static void install() {
+        final Charset charset = charset();
+        System.setOut(new PrintStream(
+                new Dispatch(System.out, ResidentCall::stdout),
+                true,
+                charset
+        ));
+        System.setErr(new PrintStream(
+                new Dispatch(System.err, ResidentCall::stderr),
+                true,
+                charset
+        ));
+        System.setIn(new DispatchInput(System.in));
+    }
+
+    private static @NotNull Charset charset() {
+        final String name = System.getProperty("stdout.encoding");
+        if (name != null) {
+            try {
+                return Charset.forName(name);
+            } catch (IllegalArgumentException ignored) { }
+        }
+        return ResidentProtocol.nativeCharset();
+    }
+
+    //
+
+    private static final class Dispatch extends OutputStream {
+
+        private final OutputStream fallback;
+        private final Function<ResidentCall, OutputStream> target;
+
+        Dispatch(@NotNull OutputStream fallback, @NotNull Function<ResidentCall, OutputStream> target) {
+            this.fallback = fallback;
+            this.target = target;
+        }
+
+        private @NotNull OutputStream current() {
+            final ResidentCall call = ResidentCall.current();
+            return call == null ? this.fallback : this.target.apply(call);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.current().write(b);
+        }
+
+        @Override
+        public void write(byte @NotNull [] b, int off, int len) throws IOException {
+            this.current().write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            this.current().flush();
+        }
+
+    }
+
+    private static final class DispatchInput extends InputStream {
+
+        private final InputStream fallback;
+
+        DispatchInput(@NotNull InputStream fallback) {
+            this.fallback = fallback;
+        }
+
+        private @NotNull InputStream current() {
+            final ResidentCall call = ResidentCall.current();
+            return call == null ? this.fallback : call.stdin();
+        }
+
+        @Override
+        public int read() throws IOException {
+            return this.current().read();
+        }
+
+        @Override
+        public int read(byte @NotNull [] b, int off, int len) throws IOException {
+            return this.current().read(b, off, len);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return this.current().available();
+        }
+
+    }
+
+}
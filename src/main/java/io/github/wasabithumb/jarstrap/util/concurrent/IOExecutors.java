@@ -0,0 +1,57 @@
+package io.github.wasabithumb.jarstrap.util.concurrent;
+
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@ApiStatus.Internal
+public final class IOExecutors {
+
+    /**
+     * The maximum number of threads in the {@link #shared() shared} pool
+     */
+    public static final int MAX_THREADS = 8;
+
+    private static final long KEEP_ALIVE_SECONDS = 30L;
+
+    private IOExecutors() { }
+
+    /**
+     * A pool of daemon threads for file I/O, sized to the available processors up to {@value #MAX_THREADS}. Idle
+     * threads are released after a short time, so the pool costs nothing between packages.
+     */
+    public static @NotNull Executor shared() {
+        return Holder.INSTANCE;
+    }
+
+    //
+
+    private static final class Holder {
+
+        static final ThreadPoolExecutor INSTANCE;
+        static {
+            final int threads = Math.max(1, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+            final AtomicInteger counter = new AtomicInteger();
+            INSTANCE = new ThreadPoolExecutor(
+                    threads,
+                    threads,
+                    KEEP_ALIVE_SECONDS,
+                    TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(),
+                    (Runnable r) -> {
+                        Thread t = new Thread(r, "JARStrap I/O #" + counter.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+            );
+            INSTANCE.allowCoreThreadTimeOut(true);
+        }
+
+    }
+
+}
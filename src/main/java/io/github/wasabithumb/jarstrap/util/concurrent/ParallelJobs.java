@@ -0,0 +1,56 @@
+package io.github.wasabithumb.jarstrap.util.concurrent;
+
+import io.github.wasabithumb.jarstrap.packager.error.PackagerException;
+import io.github.wasabithumb.jarstrap.packager.error.PackagerInterruptedException;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+@ApiStatus.Internal
+public final class ParallelJobs {
+
+    private ParallelJobs() { }
+
+    /**
+     * Runs the given jobs on a pool of daemon threads, at most one per available processor. When a job fails, the
+     * remaining jobs are cancelled and the first failure is thrown with any later ones attached as suppressed.
+     * @param name The name of the pool threads, also used to describe unexpected errors
+     */
+    public static void runAll(@NotNull String name, @NotNull List<? extends Callable<?>> jobs) throws InterruptedException, PackagerException {
+        final int threads = Math.max(1, Math.min(jobs.size(), Runtime.getRuntime().availableProcessors()));
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, (Runnable r) -> {
+            Thread t = new Thread(r, "JARStrap " + name);
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            final List<Future<?>> futures = new ArrayList<>(jobs.size());
+            for (Callable<?> job : jobs) futures.add(executor.submit(job));
+
+            PackagerException failure = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    PackagerException pe = (cause instanceof PackagerException)
+                            ? (PackagerException) cause
+                            : new PackagerException("Unexpected error in " + name.toLowerCase() + " job", cause);
+                    if (failure == null) {
+                        failure = pe;
+                        for (Future<?> other : futures) other.cancel(true);
+                    } else if (!(cause instanceof PackagerInterruptedException)) {
+                        failure.addSuppressed(pe);
+                    }
+                } catch (CancellationException ignored) { }
+            }
+            if (failure != null) throw failure;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
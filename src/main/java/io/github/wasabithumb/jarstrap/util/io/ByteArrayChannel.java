@@ -0,0 +1,80 @@
+package io.github.wasabithumb.jarstrap.util.io;
+
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * A read-only {@link SeekableByteChannel} over a byte array
+ */
+@ApiStatus.Internal
+public final class ByteArrayChannel implements SeekableByteChannel {
+
+    private final byte[] data;
+    private long position = 0L;
+    private boolean open = true;
+
+    public ByteArrayChannel(byte @NotNull [] data) {
+        this.data = data;
+    }
+
+    @Override
+    public synchronized int read(@NotNull ByteBuffer dst) throws ClosedChannelException {
+        this.ensureOpen();
+        if (this.position >= this.data.length) return -1;
+        final int pos = (int) this.position;
+        final int n = Math.min(dst.remaining(), this.data.length - pos);
+        dst.put(this.data, pos, n);
+        this.position += n;
+        return n;
+    }
+
+    @Override
+    public int write(@NotNull ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized long position() throws ClosedChannelException {
+        this.ensureOpen();
+        return this.position;
+    }
+
+    @Override
+    public synchronized @NotNull SeekableByteChannel position(long newPosition) throws ClosedChannelException {
+        this.ensureOpen();
+        if (newPosition < 0L) throw new IllegalArgumentException("Negative position");
+        this.position = newPosition;
+        return this;
+    }
+
+    @Override
+    public synchronized long size() throws ClosedChannelException {
+        this.ensureOpen();
+        return this.data.length;
+    }
+
+    @Override
+    public @NotNull SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return this.open;
+    }
+
+    @Override
+    public synchronized void close() {
+        this.open = false;
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!this.open) throw new ClosedChannelException();
+    }
+
+}
@@ -0,0 +1,163 @@
+package io.github.wasabithumb.jarstrap.util.io;
+
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+@ApiStatus.Internal
+public final class FileUtil {
+
+    private static final long MAP_CHUNK = 1L << 30;
+    private static final Set<PosixFilePermission> SHARED_PERMISSIONS = EnumSet.of(
+            PosixFilePermission.GROUP_READ, PosixFilePermission.GROUP_WRITE, PosixFilePermission.GROUP_EXECUTE,
+            PosixFilePermission.OTHERS_READ, PosixFilePermission.OTHERS_WRITE, PosixFilePermission.OTHERS_EXECUTE
+    );
+
+    /**
+     * Creates a directory only the current user may access, or checks that the existing one is such a directory.
+     * Meant for well-known paths in locations other users can write to, where the directory may have been created
+     * (or replaced by a link) in advance. Where POSIX permissions are not supported, the directory is only created.
+     * @throws IOException The path is a link, not a directory, owned by another user or accessible to other users
+     */
+    public static void createPrivateDirectory(@NotNull Path dir) throws IOException {
+        if (!dir.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Files.createDirectories(dir);
+            return;
+        }
+        try {
+            Files.createDirectory(dir, PosixFilePermissions.asFileAttribute(
+                    PosixFilePermissions.fromString("rwx------")
+            ));
+        } catch (FileAlreadyExistsException ignored) { }
+
+        final PosixFileAttributes attrs =
+                Files.readAttributes(dir, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if (!attrs.isDirectory())
+            throw new IOException("Path \"" + dir + "\" is not a directory");
+        final String user = System.getProperty("user.name");
+        if (!attrs.owner().getName().equals(user))
+            throw new IOException("Directory \"" + dir + "\" is not owned by " + user);
+        for (PosixFilePermission perm : attrs.permissions()) {
+            if (SHARED_PERMISSIONS.contains(perm))
+                throw new IOException("Directory \"" + dir + "\" is accessible to other users");
+        }
+    }
+
+    /**
+     * Recursively deletes a file or directory. Entries which disappear while walking (e.g. because another process
+     * is deleting the same tree) are ignored.
+     */
+    public static void deleteTree(@NotNull Path root) throws IOException {
+        if (!Files.exists(root, LinkOption.NOFOLLOW_LINKS)) return;
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.deleteIfExists(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+                if (exc instanceof NoSuchFileException) return FileVisitResult.CONTINUE;
+                throw exc;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                if (exc != null && !(exc instanceof NoSuchFileException)) throw exc;
+                Files.deleteIfExists(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Computes the CRC-32 of a file, reading it through a memory mapping
+     */
+    public static long crc32(@NotNull Path file) throws IOException {
+        final CRC32 crc = new CRC32();
+        try (FileChannel fc = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = fc.size();
+            long pos = 0L;
+            while (pos < size) {
+                final long len = Math.min(size - pos, MAP_CHUNK);
+                final MappedByteBuffer buf = fc.map(FileChannel.MapMode.READ_ONLY, pos, len);
+                crc.update(buf);
+                pos += len;
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Computes the SHA-256 digest of a file, reading it through a memory mapping
+     */
+    public static byte @NotNull [] sha256(@NotNull Path file) throws IOException {
+        final MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-256 algorithm not available", e);
+        }
+        try (FileChannel fc = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = fc.size();
+            long pos = 0L;
+            while (pos < size) {
+                final long len = Math.min(size - pos, MAP_CHUNK);
+                final MappedByteBuffer buf = fc.map(FileChannel.MapMode.READ_ONLY, pos, len);
+                md.update(buf);
+                pos += len;
+            }
+        }
+        return md.digest();
+    }
+
+    /**
+     * Writes the remaining contents of a channel to a file, replacing it. When the source is a {@link FileChannel},
+     * the copy is performed by the kernel where supported.
+     * @return The number of bytes written
+     */
+    public static long transfer(@NotNull SeekableByteChannel src, @NotNull Path dest) throws IOException {
+        try (FileChannel out = FileChannel.open(
+                dest,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING
+        )) {
+            final long start = src.position();
+            final long count = src.size() - start;
+            long done = 0L;
+            if (src instanceof FileChannel fc) {
+                while (done < count) {
+                    long n = fc.transferTo(start + done, count - done, out);
+                    if (n <= 0L) break;
+                    done += n;
+                }
+            } else {
+                while (done < count) {
+                    long n = out.transferFrom(src, done, count - done);
+                    if (n <= 0L) break;
+                    done += n;
+                }
+            }
+            if (done < count)
+                throw new IOException("Source ended after " + done + " of " + count + " bytes");
+            return done;
+        }
+    }
+
+}
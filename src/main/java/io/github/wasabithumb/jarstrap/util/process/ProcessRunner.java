@@ -0,0 +1,268 @@
+package io.github.wasabithumb.jarstrap.util.process;
+
+import io.github.wasabithumb.jarstrap.packager.error.PackagerException;
+import io.github.wasabithumb.jarstrap.packager.error.PackagerIOException;
+import io.github.wasabithumb.jarstrap.packager.error.PackagerInterruptedException;
+import io.github.wasabithumb.jarstrap.packager.error.PackagerProcessException;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Unmodifiable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>
+ *     Runs a subprocess for a packager stage. The combined output of the process is drained on a daemon thread into a
+ *     bounded ring buffer and logged at {@link Level#INFO} (only formatted when that level is enabled).
+ * </p>
+ * <p>
+ *     The process, along with any processes it spawned, is killed if it outlives the configured timeout or if the
+ *     calling thread is interrupted.
+ * </p>
+ */
+@ApiStatus.Internal
+public final class ProcessRunner {
+
+    public static final int DEFAULT_OUTPUT_LINES = 256;
+    private static final int MAX_LINE_LENGTH = 4096;
+    private static final long DRAIN_GRACE_MILLIS = 2000L;
+
+    private final String tag;
+    private final Logger logger;
+    private File directory = null;
+    private Duration timeout = null;
+    private int outputLines = DEFAULT_OUTPUT_LINES;
+    private boolean log = true;
+    private Map<String, String> environment = null;
+
+    /**
+     * @param tag The tag to prefix log lines with, also used to identify the process in errors
+     * @param logger The logger to send output to
+     */
+    public ProcessRunner(@NotNull String tag, @NotNull Logger logger) {
+        this.tag = tag;
+        this.logger = logger;
+    }
+
+    @Contract("_ -> this")
+    public @NotNull ProcessRunner directory(@Nullable File directory) {
+        this.directory = directory;
+        return this;
+    }
+
+    /**
+     * Sets the maximum amount of time the process may run for, or null for no limit
+     */
+    @Contract("_ -> this")
+    public @NotNull ProcessRunner timeout(@Nullable Duration timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of lines of output to retain
+     */
+    @Contract("_ -> this")
+    public @NotNull ProcessRunner outputLines(int outputLines) {
+        if (outputLines < 1) throw new IllegalArgumentException("Output lines must be positive");
+        this.outputLines = outputLines;
+        return this;
+    }
+
+    /**
+     * If false, output is only retained and not logged
+     */
+    @Contract("_ -> this")
+    public @NotNull ProcessRunner log(boolean log) {
+        this.log = log;
+        return this;
+    }
+
+    /**
+     * Adds an environment variable to the process
+     */
+    @Contract("_, _ -> this")
+    public @NotNull ProcessRunner environment(@NotNull String key, @NotNull String value) {
+        if (this.environment == null) this.environment = new LinkedHashMap<>();
+        this.environment.put(key, value);
+        return this;
+    }
+
+    //
+
+    public @NotNull Result run(@NotNull String @NotNull ... command) throws PackagerException {
+        return this.run(Arrays.asList(command));
+    }
+
+    public @NotNull Result run(@NotNull List<String> command) throws PackagerException {
+        try {
+            return this.run0(command);
+        } catch (IOException e) {
+            throw new PackagerIOException("Failed to run " + this.tag, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PackagerInterruptedException(e);
+        }
+    }
+
+    private @NotNull Result run0(@NotNull List<String> command) throws IOException, InterruptedException, PackagerException {
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.redirectErrorStream(true);
+        if (this.directory != null) pb.directory(this.directory);
+        if (this.environment != null) pb.environment().putAll(this.environment);
+
+        final Process p = pb.start();
+        final Drain drain = new Drain(p, this.tag, this.log ? this.logger : null, this.outputLines);
+        final Thread drainThread = new Thread(drain, "JARStrap Drain (" + this.tag + ")");
+        drainThread.setDaemon(true);
+        drainThread.start();
+
+        boolean exited;
+        try {
+            if (this.timeout == null) {
+                p.waitFor();
+                exited = true;
+            } else {
+                exited = p.waitFor(this.timeout.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            kill(p);
+            throw e;
+        }
+
+        if (!exited) {
+            kill(p);
+            drainThread.join(DRAIN_GRACE_MILLIS);
+            throw new PackagerProcessException(
+                    this.tag + " timed out after " + formatDuration(this.timeout),
+                    this.tag,
+                    -1,
+                    drain.snapshot()
+            );
+        }
+
+        // The output may still be held by a grandchild; don't wait on it forever
+        drainThread.join(DRAIN_GRACE_MILLIS);
+        return new Result(this.tag, p.exitValue(), drain.snapshot());
+    }
+
+    private static @NotNull String formatDuration(@NotNull Duration duration) {
+        final long millis = duration.toMillis();
+        if (millis % 1000L == 0L) return (millis / 1000L) + "s";
+        return millis + "ms";
+    }
+
+    private static void kill(@NotNull Process p) {
+        final List<ProcessHandle> descendants = new ArrayList<>();
+        p.descendants().forEach(descendants::add);
+        p.destroyForcibly();
+        for (ProcessHandle handle : descendants) handle.destroyForcibly();
+    }
+
+    //
+
+    public record Result(@NotNull String tag, int exitCode, @NotNull @Unmodifiable List<String> output) {
+
+        public boolean isSuccess() {
+            return this.exitCode == 0;
+        }
+
+        /**
+         * @throws PackagerProcessException The process exited with a non-zero exit code
+         */
+        @Contract("-> this")
+        public @NotNull Result requireSuccess() throws PackagerProcessException {
+            if (this.exitCode != 0) {
+                throw new PackagerProcessException(
+                        this.tag + " exited with non-zero exit code: " + this.exitCode,
+                        this.tag,
+                        this.exitCode,
+                        this.output
+                );
+            }
+            return this;
+        }
+
+    }
+
+    private static final class Drain implements Runnable {
+
+        private final Process process;
+        private final String prefix;
+        private final Logger logger;
+        private final int capacity;
+        private final ArrayDeque<String> lines;
+        private final StringBuilder buffer = new StringBuilder();
+        private boolean skipLF = false;
+
+        Drain(@NotNull Process process, @NotNull String tag, @Nullable Logger logger, int capacity) {
+            this.process = process;
+            this.prefix = "[" + tag + "] ";
+            this.logger = logger;
+            this.capacity = capacity;
+            this.lines = new ArrayDeque<>(Math.min(capacity, 64));
+        }
+
+        @Override
+        public void run() {
+            try (BufferedReader br = this.process.inputReader(StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = this.readLine(br)) != null) {
+                    this.push(line);
+                    if (this.logger != null && this.logger.isLoggable(Level.INFO))
+                        this.logger.log(Level.INFO, this.prefix + line);
+                }
+            } catch (IOException ignored) {
+                // Stream closed by kill
+            }
+        }
+
+        /**
+         * Reads a line like {@link BufferedReader#readLine()}, but retains at most
+         * {@value ProcessRunner#MAX_LINE_LENGTH} characters of it; the rest of the line is read and discarded, so
+         * output without line breaks can't grow the buffer without bound.
+         * @return The line, or null if the end of the stream was reached
+         */
+        private @Nullable String readLine(@NotNull BufferedReader br) throws IOException {
+            this.buffer.setLength(0);
+            boolean read = false;
+            int c;
+            while ((c = br.read()) != -1) {
+                // Treat CRLF as a single line break, without waiting on the character after a CR
+                if (this.skipLF) {
+                    this.skipLF = false;
+                    if (c == '\n') continue;
+                }
+                read = true;
+                if (c == '\n') break;
+                if (c == '\r') {
+                    this.skipLF = true;
+                    break;
+                }
+                if (this.buffer.length() < MAX_LINE_LENGTH) this.buffer.append((char) c);
+            }
+            return read ? this.buffer.toString() : null;
+        }
+
+        private synchronized void push(@NotNull String line) {
+            if (this.lines.size() == this.capacity) this.lines.removeFirst();
+            this.lines.addLast(line);
+        }
+
+        synchronized @NotNull List<String> snapshot() {
+            return List.copyOf(this.lines);
+        }
+
+    }
+
+}
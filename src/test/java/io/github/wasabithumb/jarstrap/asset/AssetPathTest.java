@@ -0,0 +1,46 @@
+package io.github.wasabithumb.jarstrap.asset;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AssetPathTest {
+
+    @Test
+    void equality() {
+        final AssetPath literal = AssetPath.parse("tool/src/main.c");
+        final AssetPath parts = AssetPath.of("tool", "src", "main.c");
+        assertEquals(literal, parts);
+        assertEquals(parts, literal);
+        assertEquals(literal.hashCode(), parts.hashCode());
+        assertEquals(AssetPath.of("a", "b"), AssetPath.parse("/a\\b/"));
+
+        // Same string, different parts
+        assertNotEquals(AssetPath.of("a/b"), AssetPath.of("a", "b"));
+
+        final Map<AssetPath, Integer> map = new HashMap<>();
+        map.put(literal, 1);
+        assertEquals(1, map.get(parts));
+    }
+
+    @Test
+    void parts() {
+        final AssetPath path = AssetPath.parse("/a/bb/ccc/");
+        assertEquals(3, path.partCount());
+        assertEquals("bb", path.part(1));
+        assertEquals(List.of("a", "bb", "ccc"), path.parts());
+        assertEquals("a/bb/ccc", path.toString());
+        assertEquals('b', path.charAt(2));
+        assertEquals("bb/c", path.subSequence(2, 6).toString());
+    }
+
+    @Test
+    void intern() {
+        assertSame(AssetPath.parse("a/b").intern(), AssetPath.of("a", "b").intern());
+    }
+
+}
@@ -0,0 +1,39 @@
+package io.github.wasabithumb.jarstrap.daemon;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DaemonProtocolTest {
+
+    @Test
+    void escape() {
+        assertEquals("plain text", DaemonProtocol.escape("plain text"));
+        assertEquals("a\\nb\\rc\\\\d", DaemonProtocol.escape("a\nb\rc\\d"));
+        assertFalse(DaemonProtocol.escape("line\r\nline\n").contains("\n"));
+    }
+
+    @Test
+    void roundTrip() {
+        final String[] values = {
+                "",
+                "plain text",
+                "line\nline\r\nline\n",
+                "C:\\path\\to\\n",
+                "\\",
+                "\\\\n",
+                "trailing\\\n"
+        };
+        for (String value : values) {
+            assertEquals(value, DaemonProtocol.unescape(DaemonProtocol.escape(value)), value);
+        }
+    }
+
+    @Test
+    void unescapeLenient() {
+        // A trailing backslash & unknown escapes are taken literally
+        assertEquals("a\\", DaemonProtocol.unescape("a\\"));
+        assertEquals("at", DaemonProtocol.unescape("a\\t"));
+    }
+
+}
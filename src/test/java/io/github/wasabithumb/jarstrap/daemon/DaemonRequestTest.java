@@ -0,0 +1,119 @@
+package io.github.wasabithumb.jarstrap.daemon;
+
+import io.github.wasabithumb.jarstrap.instance.WorkingRoot;
+import io.github.wasabithumb.jarstrap.manifest.ManifestFile;
+import io.github.wasabithumb.jarstrap.manifest.ManifestMutator;
+import io.github.wasabithumb.jarstrap.packager.PackagerArch;
+import io.github.wasabithumb.jarstrap.packager.PackagerBackend;
+import io.github.wasabithumb.jarstrap.packager.PackagerConfig;
+import io.github.wasabithumb.jarstrap.packager.PackagerOS;
+import io.github.wasabithumb.jarstrap.packager.PackagerTarget;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Level;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DaemonRequestTest {
+
+    private static DaemonRequest request(String... pairs) {
+        final Properties props = new Properties();
+        for (int i = 0; i < pairs.length; i += 2) props.setProperty(pairs[i], pairs[i + 1]);
+        return new DaemonRequest(props);
+    }
+
+    @Test
+    void defaults() {
+        final DaemonRequest request = request();
+        assertEquals(DaemonProtocol.COMMAND_PACKAGE, request.command());
+        assertEquals(Level.WARNING, request.logLevel());
+
+        final PackagerConfig config = request.config();
+        final PackagerConfig defaults = PackagerConfig.defaults();
+        assertEquals(defaults.appName(), config.appName());
+        assertEquals(defaults.targets(), config.targets());
+        assertEquals(defaults.libraries(), config.libraries());
+    }
+
+    @Test
+    void config() {
+        final String libraries = "a.jar" + File.pathSeparator + File.pathSeparator + "b.jar";
+        final PackagerConfig config = request(
+                "source", "app.jar",
+                "libraries", libraries,
+                "os", "windows",
+                "targets", "x86_64-release, x86,",
+                "appName", "Daemon Test",
+                "minJavaVersion", " 11 ",
+                "autoInstall", "true",
+                "backend", "direct",
+                "keepRules", "a.Main,,b.**",
+                "runtimeModules", "java.base, java.sql",
+                "residentIdleTimeout", "PT2M",
+                "sourceDateEpoch", "315532800",
+                "timeout.compile", "30",
+                "unknown", "ignored"
+        ).config();
+
+        assertEquals(new File("app.jar"), config.source());
+        assertEquals(List.of(new File("a.jar"), new File("b.jar")), config.libraries());
+        assertEquals(PackagerOS.WINDOWS, config.os());
+        assertEquals(
+                List.of(new PackagerTarget(PackagerArch.X86_64, true), new PackagerTarget(PackagerArch.X86, false)),
+                config.targets()
+        );
+        assertEquals("Daemon Test", config.appName());
+        assertEquals(11, config.minJavaVersion());
+        assertTrue(config.autoInstall());
+        assertEquals(PackagerBackend.DIRECT, config.backend());
+        assertEquals(List.of("a.Main", "b.**"), config.keepRules());
+        assertEquals(List.of("java.base", "java.sql"), config.runtimeModules());
+        assertEquals(Duration.ofMinutes(2), config.residentIdleTimeout());
+        assertEquals(315532800L, config.sourceDateEpoch());
+        assertEquals(Duration.ofSeconds(30), config.stageTimeout("compile", null));
+    }
+
+    @Test
+    void invalid() {
+        assertThrows(IllegalArgumentException.class, () -> request("minJavaVersion", "eleven").config());
+        assertThrows(IllegalArgumentException.class, () -> request("timeout.compile", "soon").config());
+        assertThrows(IllegalArgumentException.class, () -> request("arch", "sparc").config());
+        assertThrows(IllegalArgumentException.class, () -> request("logLevel", "loud").logLevel());
+    }
+
+    @Test
+    void options() {
+        final DaemonRequest request = request(
+                DaemonProtocol.KEY_COMMAND, DaemonProtocol.COMMAND_PING,
+                "logLevel", "fine",
+                "workingRoot", "/tmp/jarstrap"
+        );
+        assertEquals(DaemonProtocol.COMMAND_PING, request.command());
+        assertEquals(Level.FINE, request.logLevel());
+        assertEquals(WorkingRoot.of(new File("/tmp/jarstrap")), request.workingRoot());
+    }
+
+    @Test
+    void manifest() {
+        final ManifestFile mf = new ManifestFile();
+        mf.put("Main-Class", "a.Main");
+        mf.put("X-Old", "old");
+
+        final ManifestMutator mutator = new ManifestMutator();
+        request(
+                "manifestRemove", "X-Old, X-Missing",
+                "manifest.X-New", "new",
+                "manifest.Main-Class", "b.Main"
+        ).applyManifest(mutator);
+        assertTrue(mutator.apply(mf));
+
+        assertNull(mf.get("X-Old"));
+        assertEquals("new", mf.get("X-New"));
+        assertEquals("b.Main", mf.get("Main-Class"));
+    }
+
+}
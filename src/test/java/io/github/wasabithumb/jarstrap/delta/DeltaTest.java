@@ -0,0 +1,130 @@
+package io.github.wasabithumb.jarstrap.delta;
+
+import io.github.wasabithumb.jarstrap.jar.JarIndex;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeltaTest {
+
+    private static final byte[] MOVED = random(2L, 60000);
+    private static final byte[] KEPT = "kept ".repeat(4000).getBytes(StandardCharsets.UTF_8);
+
+    private static byte[] random(long seed, int length) {
+        final byte[] ret = new byte[length];
+        new Random(seed).nextBytes(ret);
+        return ret;
+    }
+
+    /**
+     * Writes a stub followed by a JAR whose entries are deflated by {@link ZipOutputStream}, which writes their sizes
+     * in a data descriptor after their data
+     */
+    private static void writeExecutable(Path file, byte[] stub, Object... entries) throws IOException {
+        try (OutputStream os = Files.newOutputStream(file)) {
+            os.write(stub);
+            try (ZipOutputStream zos = new ZipOutputStream(os)) {
+                for (int i=0; i < entries.length; i += 2) {
+                    final ZipEntry entry = new ZipEntry((String) entries[i]);
+                    entry.setTime(1700000000000L);
+                    zos.putNextEntry(entry);
+                    zos.write((byte[]) entries[i + 1]);
+                    zos.closeEntry();
+                }
+            }
+        }
+    }
+
+    //
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void segmentsFollowCentralDirectory() throws IOException {
+        final Path file = this.dir.resolve("app");
+        writeExecutable(file, random(1L, 5000), "a/Moved.bin", MOVED, "a/kept.txt", KEPT, "a/empty.txt", new byte[0]);
+        final JarIndex index = JarIndex.read(file);
+
+        final List<int[]> locals = new ArrayList<>();
+        DeltaSegments.scan(ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN), (kind, start, length) -> {
+            if (kind == DeltaSegments.KIND_LOCAL) locals.add(new int[] { start, length });
+        });
+
+        assertEquals(index.size(), locals.size());
+        for (int i=0; i < index.size(); i++) {
+            final JarIndex.Entry entry = index.entries().get(i);
+            assertTrue((entry.flags() & 0x0008) != 0, entry.name());
+            assertEquals(entry.localHeaderOffset(), locals.get(i)[0], entry.name());
+            // The header, name, data & data descriptor
+            assertTrue(locals.get(i)[1] > 30 + entry.rawName().length + entry.compressedSize(), entry.name());
+        }
+    }
+
+    @Test
+    void roundTrip() throws IOException {
+        final Path oldFile = this.dir.resolve("old");
+        final Path newFile = this.dir.resolve("new");
+        final byte[] changedOld = random(3L, 20000);
+        final byte[] changedNew = Arrays.copyOf(changedOld, 21000);
+        changedNew[100] ^= 1;
+        writeExecutable(oldFile, random(1L, 5000), "a/Moved.bin", MOVED, "a/changed.bin", changedOld, "a/kept.txt", KEPT);
+        // A longer stub shifts every entry, and the moved entry now comes last
+        writeExecutable(newFile, random(1L, 6000), "a/changed.bin", changedNew, "a/kept.txt", KEPT, "a/Moved.bin", MOVED);
+
+        final Path patch = this.dir.resolve("patch");
+        final Delta.Result result = Delta.create(oldFile, newFile, patch);
+        assertEquals(Files.size(oldFile), result.oldSize());
+        assertEquals(Files.size(newFile), result.newSize());
+        assertEquals(result.newSize(), result.copied() + result.literal());
+        // The moved entry is copied whole, only the changed entry & the parts of the stub which changed are stored
+        assertTrue(result.literal() < changedNew.length + 4096, "literal: " + result.literal());
+        assertTrue(result.patchSize() < MOVED.length, "patch: " + result.patchSize());
+
+        final Path dest = this.dir.resolve("patched");
+        Delta.apply(oldFile, patch, dest);
+        assertArrayEquals(Files.readAllBytes(newFile), Files.readAllBytes(dest));
+
+        // The destination may be the old file itself
+        Delta.apply(oldFile, patch, oldFile);
+        assertArrayEquals(Files.readAllBytes(newFile), Files.readAllBytes(oldFile));
+    }
+
+    @Test
+    void wrongOldFile() throws IOException {
+        final Path oldFile = this.dir.resolve("old");
+        final Path newFile = this.dir.resolve("new");
+        writeExecutable(oldFile, random(1L, 5000), "a/Moved.bin", MOVED);
+        writeExecutable(newFile, random(1L, 5000), "a/Moved.bin", MOVED, "a/kept.txt", KEPT);
+        final Path patch = this.dir.resolve("patch");
+        Delta.create(oldFile, newFile, patch);
+
+        // Same size, different contents
+        final byte[] other = Files.readAllBytes(oldFile);
+        other[0] ^= 1;
+        final Path otherFile = this.dir.resolve("other");
+        Files.write(otherFile, other);
+
+        final Path dest = this.dir.resolve("patched");
+        assertThrows(IOException.class, () -> Delta.apply(otherFile, patch, dest));
+        assertFalse(Files.exists(dest));
+        assertThrows(IOException.class, () -> Delta.apply(patch, patch, dest));
+        assertFalse(Files.exists(dest));
+    }
+
+}
@@ -0,0 +1,185 @@
+package io.github.wasabithumb.jarstrap.jar;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClassReachabilityTest {
+
+    private static final Map<String, String> SOURCES = Map.of(
+            "t/Main", """
+                    package t;
+
+                    public final class Main {
+                        public static void main(String[] args) throws Exception {
+                            Helper.run();
+                            Class.forName("t.Reflected");
+                        }
+                    }
+                    """,
+            "t/Helper", """
+                    package t;
+
+                    final class Helper {
+                        static void run() { }
+                    }
+                    """,
+            "t/Reflected", "package t;\n\npublic final class Reflected { }\n",
+            "t/Newer", "package t;\n\npublic final class Newer { }\n",
+            "t/Unused", "package t;\n\npublic final class Unused { }\n",
+            "t/Service", "package t;\n\npublic interface Service { }\n",
+            "t/ServiceImpl", "package t;\n\npublic final class ServiceImpl implements Service { }\n",
+            "t/Plugin", """
+                    package t;
+
+                    public final class Plugin {
+                        static final class Inner { }
+                    }
+                    """,
+            "t/package-info", "package t;\n",
+            "u/Other", "package u;\n\npublic final class Other { }\n"
+    );
+    private static final Map<String, String> VERSIONED_SOURCES = Map.of(
+            "t/Helper", """
+                    package t;
+
+                    final class Helper {
+                        static void run() {
+                            System.out.println(new Newer());
+                        }
+                    }
+                    """,
+            "t/Unused", "package t;\n\npublic final class Unused { }\n",
+            "t/Newer", "package t;\n\npublic final class Newer { }\n"
+    );
+    private static final String VERSIONS_11 = "META-INF/versions/11/";
+
+    /**
+     * Writes a Multi-Release JAR with every class of {@link #SOURCES}, a service declaration, a resource and the
+     * versioned classes of {@link #VERSIONED_SOURCES} (except {@code t/Newer}) for Java 11
+     */
+    private static JarIndex writeJar(Path dir) throws IOException {
+        final Map<String, byte[]> classes = TestCompiler.compile(dir.resolve("base"), SOURCES, "-Xpkginfo:always");
+        final Map<String, byte[]> versioned = TestCompiler.compile(dir.resolve("versioned"), VERSIONED_SOURCES);
+        final byte[] manifest = "Manifest-Version: 1.0\r\nMain-Class: t.Main\r\nMulti-Release: true\r\n\r\n"
+                .getBytes(StandardCharsets.UTF_8);
+
+        final Path file = dir.resolve("test.jar");
+        try (OutputStream os = Files.newOutputStream(file);
+             ZipOutputStream zos = new ZipOutputStream(os)
+        ) {
+            JarIndexTest.put(zos, "META-INF/MANIFEST.MF", manifest, ZipEntry.DEFLATED);
+            JarIndexTest.put(zos, "META-INF/services/t.Service", "# comment\nt.ServiceImpl\n"
+                    .getBytes(StandardCharsets.UTF_8), ZipEntry.DEFLATED);
+            JarIndexTest.put(zos, "t/", new byte[0], ZipEntry.DEFLATED);
+            JarIndexTest.put(zos, "u/", new byte[0], ZipEntry.DEFLATED);
+            for (Map.Entry<String, byte[]> entry : classes.entrySet())
+                JarIndexTest.put(zos, entry.getKey(), entry.getValue(), ZipEntry.DEFLATED);
+            JarIndexTest.put(zos, "u/config.properties", "a=b\n".getBytes(StandardCharsets.UTF_8), ZipEntry.DEFLATED);
+            JarIndexTest.put(zos, VERSIONS_11 + "t/Helper.class", versioned.get("t/Helper.class"), ZipEntry.DEFLATED);
+            JarIndexTest.put(zos, VERSIONS_11 + "t/Unused.class", versioned.get("t/Unused.class"), ZipEntry.DEFLATED);
+        }
+        return JarIndex.read(file);
+    }
+
+    private static Set<String> retainedNames(ClassReachability reachability, Set<String> reachable) {
+        final Set<String> ret = new HashSet<>();
+        for (JarIndex.Entry entry : reachability.retained(reachable)) ret.add(entry.name());
+        return ret;
+    }
+
+    //
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roots() throws IOException {
+        final ClassReachability reachability = new ClassReachability(writeJar(this.dir), List.of());
+        assertTrue(reachability.classes().contains("t/Unused"));
+        assertFalse(reachability.classes().contains(VERSIONS_11 + "t/Helper"));
+
+        // Main-Class & what it references, the service & its provider, and the class named by a string constant
+        assertEquals(
+                Set.of("t/Main", "t/Helper", "t/Reflected", "t/Newer", "t/Service", "t/ServiceImpl"),
+                reachability.compute()
+        );
+    }
+
+    @Test
+    void keepRules() throws IOException {
+        final JarIndex index = writeJar(this.dir);
+
+        final Set<String> single = new ClassReachability(index, List.of(new ClassReachability.KeepRule("t.Plugin")))
+                .compute();
+        assertTrue(single.contains("t/Plugin"));
+        assertTrue(single.contains("t/Plugin$Inner"));
+        assertFalse(single.contains("t/Unused"));
+        assertFalse(single.contains("u/Other"));
+
+        final Set<String> pkg = new ClassReachability(index, List.of(new ClassReachability.KeepRule("u.*")))
+                .compute();
+        assertTrue(pkg.contains("u/Other"));
+        assertFalse(pkg.contains("t/Unused"));
+
+        final ClassReachability.KeepRule shallow = new ClassReachability.KeepRule("com.example.*");
+        assertTrue(shallow.matches("com/example/A"));
+        assertFalse(shallow.matches("com/example/sub/B"));
+        assertFalse(shallow.matches("com/examples/A"));
+        final ClassReachability.KeepRule deep = new ClassReachability.KeepRule(" com.example.** ");
+        assertTrue(deep.matches("com/example/A"));
+        assertTrue(deep.matches("com/example/sub/B"));
+        assertFalse(deep.matches("com/examples/A"));
+        final ClassReachability.KeepRule exact = new ClassReachability.KeepRule("com.example.A");
+        assertTrue(exact.matches("com/example/A$1"));
+        assertFalse(exact.matches("com/example/AB"));
+
+        assertThrows(IllegalArgumentException.class, () -> new ClassReachability.KeepRule(" "));
+        assertThrows(IllegalArgumentException.class, () -> new ClassReachability.KeepRule("com.*.A"));
+        assertThrows(IllegalArgumentException.class, () -> new ClassReachability.KeepRule("com.example*"));
+    }
+
+    @Test
+    void retained() throws IOException {
+        final ClassReachability reachability = new ClassReachability(writeJar(this.dir), List.of());
+        final Set<String> retained = retainedNames(reachability, reachability.compute());
+
+        // Versioned classes follow their base class
+        assertTrue(retained.contains(VERSIONS_11 + "t/Helper.class"));
+        assertFalse(retained.contains(VERSIONS_11 + "t/Unused.class"));
+        assertFalse(retained.contains("t/Unused.class"));
+
+        // Package descriptors follow the classes of their package; resources & their directories always stay
+        assertTrue(retained.contains("t/package-info.class"));
+        assertFalse(retained.contains("u/package-info.class"));
+        assertFalse(retained.contains("u/Other.class"));
+        assertTrue(retained.contains("u/config.properties"));
+        assertTrue(retained.contains("u/"));
+        assertTrue(retained.contains("META-INF/MANIFEST.MF"));
+        assertTrue(retained.contains("META-INF/services/t.Service"));
+    }
+
+    @Test
+    void retainedDirectories() throws IOException {
+        final ClassReachability reachability = new ClassReachability(writeJar(this.dir), List.of());
+        assertTrue(retainedNames(reachability, reachability.compute()).contains("t/"));
+
+        // With nothing reachable, only the resources & their directories remain
+        final Set<String> bare = retainedNames(reachability, Set.of());
+        assertFalse(bare.contains("t/"));
+        assertFalse(bare.contains("t/package-info.class"));
+        assertFalse(bare.contains(VERSIONS_11 + "t/Helper.class"));
+        assertTrue(bare.contains("u/"));
+    }
+
+}
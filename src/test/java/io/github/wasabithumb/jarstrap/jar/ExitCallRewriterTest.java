@@ -0,0 +1,87 @@
+package io.github.wasabithumb.jarstrap.jar;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExitCallRewriterTest {
+
+    private static final String EXITS = """
+            package t;
+
+            public final class Exits {
+                public static final java.util.List<Integer> CALLS = new java.util.ArrayList<>();
+
+                public static void exit(int status) {
+                    CALLS.add(status);
+                }
+            }
+            """;
+    private static final String APP = """
+            package t;
+
+            public final class App {
+                public static void direct() {
+                    System.exit(3);
+                }
+
+                public static void reference() {
+                    final java.util.function.IntConsumer exit = System::exit;
+                    exit.accept(4);
+                }
+            }
+            """;
+    private static final String PLAIN = """
+            package t;
+
+            public final class Plain {
+                public static void run() {
+                    System.out.println(System.currentTimeMillis());
+                }
+            }
+            """;
+
+    //
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void rewrite() throws Exception {
+        final Map<String, byte[]> classes = new HashMap<>(TestCompiler.compile(
+                this.dir,
+                Map.of("t/Exits", EXITS, "t/App", APP, "t/Plain", PLAIN)
+        ));
+        final ExitCallRewriter rewriter = new ExitCallRewriter("t/Exits");
+
+        assertNull(rewriter.rewrite(classes.get("t/Exits.class")));
+        assertNull(rewriter.rewrite(classes.get("t/Plain.class")));
+        assertNull(rewriter.rewrite("not a class".getBytes(StandardCharsets.US_ASCII)));
+
+        final byte[] app = rewriter.rewrite(classes.get("t/App.class"));
+        assertNotNull(app);
+        classes.put("t/App.class", app);
+
+        // Should the rewrite not take, these calls end the test JVM with a distinctive status
+        final ClassLoader loader = new ClassLoader(ExitCallRewriterTest.class.getClassLoader()) {
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                final byte[] bytes = classes.get(name.replace('.', '/') + ".class");
+                if (bytes == null) throw new ClassNotFoundException(name);
+                return this.defineClass(name, bytes, 0, bytes.length);
+            }
+        };
+        final Class<?> appClass = loader.loadClass("t.App");
+        appClass.getMethod("direct").invoke(null);
+        appClass.getMethod("reference").invoke(null);
+        assertEquals(List.of(3, 4), loader.loadClass("t.Exits").getField("CALLS").get(null));
+    }
+
+}
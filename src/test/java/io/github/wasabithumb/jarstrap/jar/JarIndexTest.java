@@ -0,0 +1,183 @@
+package io.github.wasabithumb.jarstrap.jar;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JarIndexTest {
+
+    private static final byte[] MANIFEST = "Manifest-Version: 1.0\r\nMain-Class: a.Main\r\n\r\n"
+            .getBytes(StandardCharsets.UTF_8);
+    private static final byte[] MAIN_CLASS = new byte[] {
+            (byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE, 0, 0, 0, 52, 0, 1
+    };
+
+    /**
+     * Writes a small JAR with a manifest, a directory, a class, a binary file, an empty file &amp; a non-ASCII name
+     */
+    static void writeSample(OutputStream os, int method) throws IOException {
+        final byte[] random = new byte[20000];
+        new Random(1L).nextBytes(random);
+        final byte[] text = "hello world ".repeat(500).getBytes(StandardCharsets.UTF_8);
+
+        try (ZipOutputStream zos = new ZipOutputStream(os)) {
+            zos.setMethod(method);
+            put(zos, "META-INF/MANIFEST.MF", MANIFEST, method);
+            put(zos, "a/", new byte[0], method);
+            put(zos, "a/Main.class", MAIN_CLASS, method);
+            put(zos, "a/random.bin", random, method);
+            put(zos, "a/text.txt", text, method);
+            put(zos, "a/empty.txt", new byte[0], method);
+            put(zos, "a/été.txt", text, method);
+        }
+    }
+
+    static void put(ZipOutputStream zos, String name, byte[] data, int method) throws IOException {
+        final ZipEntry entry = new ZipEntry(name);
+        entry.setTime(1700000000000L);
+        if (method == ZipEntry.STORED) {
+            final CRC32 crc = new CRC32();
+            crc.update(data);
+            entry.setSize(data.length);
+            entry.setCompressedSize(data.length);
+            entry.setCrc(crc.getValue());
+        }
+        zos.putNextEntry(entry);
+        zos.write(data);
+        zos.closeEntry();
+    }
+
+    /**
+     * Asserts that the index holds the same entries as {@link ZipFile} reads from the file, with the same contents
+     */
+    static void assertMatchesZipFile(Path file, JarIndex index) throws IOException {
+        try (ZipFile zf = new ZipFile(file.toFile());
+             JarIndex.Reader reader = index.open()
+        ) {
+            final List<? extends ZipEntry> expected = Collections.list(zf.entries());
+            assertEquals(expected.size(), index.size());
+            for (int i=0; i < expected.size(); i++) {
+                final ZipEntry ze = expected.get(i);
+                final JarIndex.Entry entry = index.entries().get(i);
+                assertEquals(ze.getName(), entry.name());
+                assertEquals(ze.getMethod(), entry.method(), ze.getName());
+                assertEquals(ze.getCrc(), entry.crc(), ze.getName());
+                assertEquals(ze.getSize(), entry.size(), ze.getName());
+                assertEquals(ze.getCompressedSize(), entry.compressedSize(), ze.getName());
+                assertEquals(ze.getTime(), entry.lastModified(), ze.getName());
+                assertEquals(ze.isDirectory(), entry.isDirectory());
+                assertSame(entry, index.get(entry.name()));
+
+                final byte[] data;
+                try (InputStream is = zf.getInputStream(ze)) {
+                    data = is.readAllBytes();
+                }
+                assertArrayEquals(data, reader.readAllBytes(entry), ze.getName());
+            }
+        }
+    }
+
+    /**
+     * True if the file ends with a ZIP64 end of central directory locator followed by an end record without comment
+     */
+    static boolean hasZip64End(Path file) throws IOException {
+        final byte[] bytes = Files.readAllBytes(file);
+        final int pos = bytes.length - ZipFormat.END_SIZE - ZipFormat.ZIP64_LOCATOR_SIZE;
+        return pos >= 0 && ByteBuffer.wrap(bytes, pos, 4).order(ByteOrder.LITTLE_ENDIAN).getInt() == ZipFormat.ZIP64_LOCATOR_SIG;
+    }
+
+    //
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void deflated() throws IOException {
+        final Path file = this.dir.resolve("deflated.jar");
+        try (OutputStream os = Files.newOutputStream(file)) {
+            writeSample(os, ZipEntry.DEFLATED);
+        }
+
+        final JarIndex index = JarIndex.read(file);
+        assertMatchesZipFile(file, index);
+        // ZipOutputStream writes the sizes of deflated entries after their data
+        assertTrue((index.get("a/text.txt").flags() & ZipFormat.FLAG_DATA_DESCRIPTOR) != 0);
+        assertEquals("a.Main", index.mainClass());
+        assertEquals(52, index.mainClassMajor());
+        assertArrayEquals(MANIFEST, index.manifestBytes());
+    }
+
+    @Test
+    void stored() throws IOException {
+        final Path file = this.dir.resolve("stored.jar");
+        try (OutputStream os = Files.newOutputStream(file)) {
+            writeSample(os, ZipEntry.STORED);
+        }
+
+        final JarIndex index = JarIndex.read(file);
+        assertMatchesZipFile(file, index);
+        assertEquals(ZipEntry.STORED, index.get("a/random.bin").method());
+        assertEquals(52, index.mainClassMajor());
+    }
+
+    @Test
+    void prependedData() throws IOException {
+        final byte[] prefix = "#!/bin/sh\nexec java -jar \"$0\" \"$@\"\n".repeat(100).getBytes(StandardCharsets.UTF_8);
+        final Path file = this.dir.resolve("prepended.jar");
+        try (OutputStream os = Files.newOutputStream(file)) {
+            os.write(prefix);
+            // Offsets written by ZipOutputStream are relative to the start of the archive, not the file
+            writeSample(os, ZipEntry.DEFLATED);
+        }
+
+        final JarIndex index = JarIndex.read(file);
+        assertMatchesZipFile(file, index);
+        assertEquals(prefix.length, index.entries().get(0).localHeaderOffset());
+        assertEquals(Files.size(file), index.fileSize());
+    }
+
+    @Test
+    void zip64() throws IOException {
+        final int count = 0x10000 + 10;
+        final Path file = this.dir.resolve("zip64.jar");
+        try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(file))) {
+            for (int i=0; i < count; i++) {
+                zos.putNextEntry(new ZipEntry("e/" + i));
+                zos.write(i);
+                zos.closeEntry();
+            }
+        }
+
+        assertTrue(hasZip64End(file));
+
+        final JarIndex index = JarIndex.read(file);
+        assertEquals(count, index.size());
+        assertMatchesZipFile(file, index);
+    }
+
+    @Test
+    void notAnArchive() throws IOException {
+        final Path file = this.dir.resolve("garbage.jar");
+        Files.write(file, new byte[1000]);
+        assertThrows(ZipException.class, () -> JarIndex.read(file));
+    }
+
+}
@@ -0,0 +1,182 @@
+package io.github.wasabithumb.jarstrap.jar;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JarWriterTest {
+
+    /**
+     * Reads every entry through its local header, as {@link ZipInputStream} does, checking the CRC of each. Also
+     * checks that {@link ZipFile} reads the same contents &amp; CRCs through the central directory.
+     */
+    static Map<String, byte[]> readBack(Path file) throws IOException {
+        final Map<String, byte[]> ret = new HashMap<>();
+        try (ZipInputStream zis = new ZipInputStream(Files.newInputStream(file))) {
+            ZipEntry ze;
+            while ((ze = zis.getNextEntry()) != null) {
+                // ZipInputStream throws on a CRC mismatch
+                assertNull(ret.put(ze.getName(), zis.readAllBytes()), ze.getName());
+            }
+        }
+        try (ZipFile zf = new ZipFile(file.toFile())) {
+            assertEquals(ret.size(), zf.size());
+            for (Map.Entry<String, byte[]> entry : ret.entrySet()) {
+                final ZipEntry ze = zf.getEntry(entry.getKey());
+                assertNotNull(ze, entry.getKey());
+                final byte[] data;
+                try (InputStream is = zf.getInputStream(ze)) {
+                    data = is.readAllBytes();
+                }
+                assertArrayEquals(entry.getValue(), data, entry.getKey());
+                final CRC32 crc = new CRC32();
+                crc.update(data);
+                assertEquals(crc.getValue(), ze.getCrc(), entry.getKey());
+            }
+        }
+        return ret;
+    }
+
+    //
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void copyAndAdd() throws IOException {
+        final byte[] prefix = "stub".repeat(1000).getBytes(StandardCharsets.US_ASCII);
+        final Path source = this.dir.resolve("source.jar");
+        try (OutputStream os = Files.newOutputStream(source)) {
+            os.write(prefix);
+            JarIndexTest.writeSample(os, ZipEntry.DEFLATED);
+        }
+        final JarIndex index = JarIndex.read(source);
+        final byte[] added = "added ".repeat(100).getBytes(StandardCharsets.UTF_8);
+
+        final Path copy = this.dir.resolve("copy.jar");
+        try (JarWriter writer = new JarWriter(copy);
+             JarIndex.Reader reader = index.open()
+        ) {
+            for (JarIndex.Entry entry : index.entries()) assertTrue(writer.copy(reader, entry));
+            assertFalse(writer.copy(reader, index.entries().get(0)));
+            assertTrue(writer.add("b/added.txt", added, 1700000000000L));
+            assertFalse(writer.add("b/added.txt", new byte[1], 1700000000000L));
+            assertTrue(writer.addDirectory("c", 1700000000000L));
+            assertTrue(writer.contains("c/"));
+        }
+
+        final Map<String, byte[]> written = readBack(copy);
+        assertEquals(index.size() + 2, written.size());
+        try (JarIndex.Reader reader = index.open()) {
+            for (JarIndex.Entry entry : index.entries())
+                assertArrayEquals(reader.readAllBytes(entry), written.get(entry.name()), entry.name());
+        }
+        assertArrayEquals(added, written.get("b/added.txt"));
+        assertArrayEquals(new byte[0], written.get("c/"));
+
+        // Copied entries keep their compressed form & metadata, without the data descriptor
+        final JarIndex copyIndex = JarIndex.read(copy);
+        JarIndexTest.assertMatchesZipFile(copy, copyIndex);
+        for (JarIndex.Entry entry : index.entries()) {
+            final JarIndex.Entry copied = copyIndex.get(entry.name());
+            assertNotNull(copied, entry.name());
+            assertEquals(entry.method(), copied.method(), entry.name());
+            assertEquals(entry.crc(), copied.crc(), entry.name());
+            assertEquals(entry.compressedSize(), copied.compressedSize(), entry.name());
+            assertEquals(entry.dosTime(), copied.dosTime(), entry.name());
+            assertEquals(0, copied.flags() & ZipFormat.FLAG_DATA_DESCRIPTOR, entry.name());
+        }
+    }
+
+    @Test
+    void fixTime() throws IOException {
+        final Path source = this.dir.resolve("source.jar");
+        try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(source))) {
+            for (int i=0; i < 3; i++) {
+                final ZipEntry entry = new ZipEntry("e" + i);
+                // Written as an extended timestamp field
+                entry.setLastModifiedTime(FileTime.fromMillis(1600000000000L + i * 86400000L));
+                zos.putNextEntry(entry);
+                zos.write(i);
+                zos.closeEntry();
+            }
+        }
+        final JarIndex index = JarIndex.read(source);
+        assertTrue(index.get("e0").extra().length != 0);
+
+        final Path copy = this.dir.resolve("copy.jar");
+        try (JarWriter writer = new JarWriter(copy);
+             JarIndex.Reader reader = index.open()
+        ) {
+            writer.fixTime(315532800000L);
+            for (JarIndex.Entry entry : index.entries()) writer.copy(reader, entry);
+            writer.add("added", new byte[] { 1, 2, 3 }, 1700000000000L);
+        }
+
+        readBack(copy);
+        final JarIndex copyIndex = JarIndex.read(copy);
+        for (JarIndex.Entry entry : copyIndex.entries()) {
+            assertEquals(ZipFormat.DOS_EPOCH, entry.dosTime(), entry.name());
+            assertEquals(0, entry.extra().length, entry.name());
+        }
+    }
+
+    @Test
+    void replace() throws IOException {
+        final Path file = this.dir.resolve("archive.jar");
+        try (OutputStream os = Files.newOutputStream(file)) {
+            JarIndexTest.writeSample(os, ZipEntry.DEFLATED);
+        }
+        final JarIndex index = JarIndex.read(file);
+        final byte[] original = Files.readAllBytes(file);
+
+        assertThrows(IOException.class, () -> JarWriter.replace(index, (JarIndex.Reader reader, JarWriter writer) -> {
+            writer.copy(reader, index.entries().get(0));
+            throw new IOException("Failed");
+        }));
+        assertArrayEquals(original, Files.readAllBytes(file));
+        assertFalse(Files.exists(this.dir.resolve("archive.jar.tmp")));
+
+        final JarIndex replaced = JarWriter.replace(index, (JarIndex.Reader reader, JarWriter writer) -> {
+            for (JarIndex.Entry entry : index.entries()) {
+                if (!entry.name().endsWith(".txt")) writer.copy(reader, entry);
+            }
+        });
+        assertEquals(file, replaced.file());
+        assertNull(replaced.get("a/text.txt"));
+        assertNotNull(replaced.get("a/Main.class"));
+        JarIndexTest.assertMatchesZipFile(file, replaced);
+    }
+
+    @Test
+    void zip64() throws IOException {
+        final int count = 0x10000 + 10;
+        final Path file = this.dir.resolve("zip64.jar");
+        try (JarWriter writer = new JarWriter(file)) {
+            for (int i=0; i < count; i++) writer.add("e/" + i, new byte[] { (byte) i }, 1700000000000L);
+        }
+        assertTrue(JarIndexTest.hasZip64End(file));
+
+        final Map<String, byte[]> written = readBack(file);
+        assertEquals(count, written.size());
+        assertArrayEquals(new byte[] { (byte) 12345 }, written.get("e/12345"));
+        assertEquals(count, JarIndex.read(file).size());
+    }
+
+}
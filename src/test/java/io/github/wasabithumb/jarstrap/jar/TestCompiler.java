@@ -0,0 +1,50 @@
+package io.github.wasabithumb.jarstrap.jar;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compiles Java sources with the system compiler, for tests which need real class files
+ */
+final class TestCompiler {
+
+    private TestCompiler() { }
+
+    /**
+     * Compiles the given sources, keyed by path without extension (e.g. {@code t/Main}), into a {@code src} &amp;
+     * {@code out} directory below the given one. Returns every class file produced keyed by entry name, e.g.
+     * {@code t/Main.class}.
+     */
+    static Map<String, byte[]> compile(Path dir, Map<String, String> sources, String... options) throws IOException {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertNotNull(compiler, "No system Java compiler");
+
+        final Path src = dir.resolve("src");
+        final Path out = Files.createDirectories(dir.resolve("out"));
+        final List<String> args = new ArrayList<>(List.of(options));
+        Collections.addAll(args, "-d", out.toString());
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+            final Path file = src.resolve(source.getKey() + ".java");
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, source.getValue(), StandardCharsets.UTF_8);
+            args.add(file.toString());
+        }
+        assertEquals(0, compiler.run(null, null, null, args.toArray(new String[0])));
+
+        final Map<String, byte[]> ret = new TreeMap<>();
+        try (Stream<Path> stream = Files.walk(out)) {
+            for (Path file : (Iterable<Path>) stream.filter(Files::isRegularFile)::iterator)
+                ret.put(out.relativize(file).toString().replace('\\', '/'), Files.readAllBytes(file));
+        }
+        return ret;
+    }
+
+}
@@ -0,0 +1,100 @@
+package io.github.wasabithumb.jarstrap.manifest;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ManifestFileTest {
+
+    @Test
+    void caseInsensitive() {
+        final ManifestFile mf = new ManifestFile();
+        assertTrue(mf.put("Main-Class", "a.Main"));
+        assertEquals("a.Main", mf.get("main-class"));
+        assertFalse(mf.put("MAIN-CLASS", "a.Main"));
+        assertTrue(mf.put("MAIN-CLASS", "b.Main"));
+        assertEquals("b.Main", mf.get("Main-Class"));
+        assertEquals(1, mf.main().size());
+        assertTrue(mf.remove("main-CLASS"));
+        assertFalse(mf.remove("Main-Class"));
+    }
+
+    @Test
+    void readContinuationsAndSections() throws IOException {
+        final String text = "Manifest-Version: 1.0\r\n" +
+                "Class-Path: lib/aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa.jar\r\n" +
+                "  lib/b.jar\r\n" +
+                "\r\n" +
+                "Name: com/example/\n" +
+                "Sealed: true\n" +
+                "\n";
+        final ManifestFile mf = new ManifestFile();
+        mf.read(text.getBytes(StandardCharsets.UTF_8));
+        assertEquals("lib/aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa.jar lib/b.jar", mf.get("Class-Path"));
+        final ManifestSection section = mf.section("com/example/");
+        assertNotNull(section);
+        assertEquals("true", section.get("sealed"));
+        assertNull(mf.get("Sealed"));
+    }
+
+    @Test
+    void roundTripThroughJdk() throws IOException {
+        final ManifestFile mf = new ManifestFile();
+        final String longValue = "é".repeat(100);
+        mf.put("Main-Class", "a.Main");
+        mf.put("Manifest-Version", "1.0");
+        mf.put("Implementation-Title", longValue);
+        mf.sectionOrCreate("a/").put("Sealed", "true");
+
+        final byte[] bytes = mf.toByteArray();
+        int lineStart = 0;
+        for (int i=0; i < bytes.length; i++) {
+            if (bytes[i] != '\n') continue;
+            assertTrue(i - 1 - lineStart <= 72, "line exceeds 72 bytes");
+            lineStart = i + 1;
+        }
+        assertTrue(new String(bytes, StandardCharsets.UTF_8).startsWith("Manifest-Version: 1.0\r\n"));
+
+        final Manifest jdk = new Manifest(new ByteArrayInputStream(bytes));
+        assertEquals("a.Main", jdk.getMainAttributes().getValue(Attributes.Name.MAIN_CLASS));
+        assertEquals(longValue, jdk.getMainAttributes().getValue("Implementation-Title"));
+        assertEquals("true", jdk.getAttributes("a/").getValue("Sealed"));
+
+        final ManifestFile reread = new ManifestFile();
+        reread.read(bytes);
+        assertEquals(longValue, reread.get("Implementation-Title"));
+        assertArrayEquals(bytes, reread.toByteArray());
+    }
+
+    @Test
+    void leadingSpaces() throws IOException {
+        final ManifestFile mf = new ManifestFile();
+        mf.put("Main-Class", "a.Main");
+        mf.put("X-Indented", "  two spaces");
+        final byte[] bytes = mf.toByteArray();
+
+        final Manifest jdk = new Manifest(new ByteArrayInputStream(bytes));
+        assertEquals("  two spaces", jdk.getMainAttributes().getValue("X-Indented"));
+
+        final ManifestFile reread = new ManifestFile();
+        reread.read(bytes);
+        assertEquals("  two spaces", reread.get("X-Indented"));
+        assertEquals("a.Main", reread.get("Main-Class"));
+        assertArrayEquals(bytes, reread.toByteArray());
+    }
+
+    @Test
+    void mutatorReportsChanges() {
+        final ManifestFile mf = new ManifestFile();
+        mf.put("Main-Class", "a.Main");
+        assertFalse(new ManifestMutator().put("Main-Class", "a.Main").remove("Absent").apply(mf));
+        assertTrue(new ManifestMutator().put("Main-Class", "b.Main").apply(mf));
+    }
+
+}
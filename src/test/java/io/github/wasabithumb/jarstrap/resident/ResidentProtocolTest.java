@@ -0,0 +1,83 @@
+package io.github.wasabithumb.jarstrap.resident;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResidentProtocolTest {
+
+    private static byte[] frame(int length, int type, byte[] payload) throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (DataOutputStream dos = new DataOutputStream(bos)) {
+            dos.writeInt(length);
+            dos.write(type);
+            dos.write(payload);
+        }
+        return bos.toByteArray();
+    }
+
+    private static DataInputStream stream(byte[]... frames) {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        for (byte[] frame : frames) bos.writeBytes(frame);
+        return new DataInputStream(new ByteArrayInputStream(bos.toByteArray()));
+    }
+
+    @Test
+    void read() throws IOException {
+        final byte[] argument = "--flag".getBytes(StandardCharsets.UTF_8);
+        final DataInputStream in = stream(
+                frame(argument.length, ResidentProtocol.ARGUMENT, argument),
+                frame(0, ResidentProtocol.RUN, new byte[0])
+        );
+
+        final ResidentProtocol.Frame first = ResidentProtocol.Frame.read(in);
+        assertEquals(ResidentProtocol.ARGUMENT, first.type());
+        assertArrayEquals(argument, first.payload());
+
+        final ResidentProtocol.Frame second = ResidentProtocol.Frame.read(in);
+        assertEquals(ResidentProtocol.RUN, second.type());
+        assertEquals(0, second.payload().length);
+
+        assertThrows(EOFException.class, () -> ResidentProtocol.Frame.read(in));
+    }
+
+    @Test
+    void maxPayload() throws IOException {
+        final byte[] payload = new byte[ResidentProtocol.MAX_PAYLOAD];
+        final ResidentProtocol.Frame frame = ResidentProtocol.Frame.read(
+                stream(frame(payload.length, ResidentProtocol.STDIN, payload))
+        );
+        assertEquals(ResidentProtocol.MAX_PAYLOAD, frame.payload().length);
+
+        // Rejected from the header alone, before any payload is allocated or read
+        final IOException over = assertThrows(IOException.class, () -> ResidentProtocol.Frame.read(
+                stream(frame(ResidentProtocol.MAX_PAYLOAD + 1, ResidentProtocol.STDIN, new byte[0]))
+        ));
+        assertFalse(over instanceof EOFException);
+        final IOException negative = assertThrows(IOException.class, () -> ResidentProtocol.Frame.read(
+                stream(frame(0xFFFFFFFF, ResidentProtocol.STDIN, new byte[0]))
+        ));
+        assertFalse(negative instanceof EOFException);
+    }
+
+    @Test
+    void truncated() throws IOException {
+        // Header without a type
+        assertThrows(EOFException.class, () -> ResidentProtocol.Frame.read(
+                stream(new byte[] { 0, 0, 0, 4 })
+        ));
+        // Payload shorter than declared
+        assertThrows(EOFException.class, () -> ResidentProtocol.Frame.read(
+                stream(frame(4, ResidentProtocol.ARGUMENT, new byte[2]))
+        ));
+    }
+
+}
@@ -0,0 +1,12 @@
+#include "src/config.h"
+
+// CONFIG START
+const char APP_NAME[] = "JARStrap";
+const unsigned int MIN_JAVA_VERSION = 8;
+const unsigned int PREFERRED_JAVA_VERSION = 17;
+const char INSTALL_PROMPT[] = "";
+const char LAUNCH_FLAGS[] = "";
+const bool ATTRIBUTION = true;
+const bool RESIDENT = false;
+const unsigned int RESIDENT_IDLE_TIMEOUT = 600;
+// CONFIG END
@@ -7,27 +7,33 @@
 #include "src/io.h"
 #include "src/version.h"
 #include "src/archive.h"
+#include "src/payload.h"
+#include "src/resident.h"
 #include "src/util.h"
 #include "src/path.h"
 #include "src/ansi.h"
 #include "src/debug.h"
-
-// CONFIG START
-static const char APP_NAME[] = "JARStrap";
-static const unsigned int MIN_JAVA_VERSION = 8;
-static const unsigned int PREFERRED_JAVA_VERSION = 17;
-static const char INSTALL_PROMPT[] = "";
-static const char LAUNCH_FLAGS[] = "";
-static const bool ATTRIBUTION = true;
-// CONFIG END
+#include "src/config.h"
 
 static const char RUN_DELIMITER[] = "@==============@";
 static const char JAR_EXT[] = ".jar";
+static const char LIB_DIR[] = "lib";
+static const char RUNTIME_DIR[] = "runtime";
+static const char RUNTIME_MARKER[] = ".complete";
+static const char RECORD_DIR[] = "extracted";
+static const char TEMP_EXT[] = ".tmp";
+static const int LOCK_ATTEMPTS = 8;
+static const char JAR_TARGET_FMT[] = "-jar \"%s\"";
+static const char CP_TARGET_FMT[] = "-cp \"%s\" %s";
 #ifdef WIN32
-static const char START_FMT[] = "%s -jar \"%s\" %s";
+static const char START_FMT[] = "%s %s %s";
+static const char CP_SEPARATOR = ';';
+static const char RUNTIME_JAVA[] = "bin\\java.exe";
 #endif
 #ifdef __linux
-static const char START_FMT[] = "\"%s\" -jar \"%s\" %s";
+static const char START_FMT[] = "\"%s\" %s %s";
+static const char CP_SEPARATOR = ':';
+static const char RUNTIME_JAVA[] = "bin/java";
 #endif
 
 #ifdef NDEBUG
@@ -41,7 +47,7 @@ static const char START_FMT[] = "\"%s\" -jar \"%s\" %s";
 void startup() {
     if (ATTRIBUTION) {
         // Check if app name is not JARStrap
-        bool nameGiven = util_fast_hash((const unsigned char*) APP_NAME, sizeof(APP_NAME)) != -1640289140;
+        bool nameGiven = util_fast_hash((const unsigned char*) APP_NAME, strlen(APP_NAME) + 1) != -1640289140;
 
         printf(BLK CYNB " JARStrap %s (%d-bit) " CRESET "\n", version_get(), (int) (sizeof(void*) << 3));
         printf(CYN "A Java Archive to executable tool\n" CRESET);
@@ -58,21 +64,430 @@ void startup() {
     printf_dbg("Preferred Java Version :: %d\n\n", PREFERRED_JAVA_VERSION);
 }
 
-void get_params(const char** outBinary, const char** outArchive, bool exitOnNotFound) {
+// Returns the name of the main JAR within the app directory, deleting the JARs of other versions
+char* main_jar_name(const char* appDir, const char* id) {
+    const size_t appNameSize = strlen(APP_NAME) + 1;
+    const size_t idSize = strlen(id);
+    char* fName = (char*) PTR_CHECK(malloc(appNameSize + idSize + sizeof(JAR_EXT)));
+    memcpy(fName, APP_NAME, appNameSize - 1);
+    fName[appNameSize - 1] = '_';
+    memcpy(&fName[appNameSize], id, idSize);
+    strcpy(&fName[appNameSize + idSize], JAR_EXT);
+
+    io_dir appDirEnt = io_dir_open(appDir);
+    if (appDirEnt != NULL) {
+        printf_dbg("Clearing any outdated binaries...\n");
+        io_dir_delete_children_starting_with_not_equal(appDirEnt, appDir, APP_NAME, fName);
+        io_dir_close(appDirEnt);
+    }
+    return fName;
+}
+
+void put_if_absent(const char* dest, const unsigned char* buf, size_t size) {
+    printf_dbg("Writing %s\n", dest);
+    if (io_file_exists(dest)) {
+        printf_dbg("Already exists, skipping\n");
+    } else {
+        io_file_put_buffer_atomic(dest, (void*) buf, size);
+    }
+}
+
+// Writes a library unless present, then holds a shared lock on it while this launcher & its JVM run, see
+// clear_outdated
+void put_locked(const char* dest, const unsigned char* buf, size_t size) {
+    for (int i=0; i < LOCK_ATTEMPTS; i++) {
+        put_if_absent(dest, buf, size);
+        // Otherwise deleted by another launcher before it was locked
+        if (io_lock_shared(dest)) return;
+    }
+    ERR_FATAL(ERR_IO);
+}
+
+// Creates a runtime directory unless present, then holds a shared lock on it while this launcher & its JVM run, see
+// clear_outdated
+void create_locked(const char* dir) {
+    for (int i=0; i < LOCK_ATTEMPTS; i++) {
+        // Otherwise deleted by another launcher before it was locked
+        if (io_dir_create(dir) && io_lock_shared(dir)) return;
+    }
+    ERR_FATAL(ERR_IO);
+}
+
+// Writes the archive as a single JAR, returning the arguments to launch it
+char* extract_jar(const char* appDir, const unsigned char* archive, size_t archiveSize) {
+    printf_dbg("Computing archive hash...\n");
+
+    uint32_t hash = util_fast_hash(archive, archiveSize);
+    printf_dbg("Hash: %d\n", hash);
+
+    char hex[9];
+    util_uint2hex(hash, hex);
+    char* fName = main_jar_name(appDir, hex);
+    char* dest = (char*) path_join(appDir, fName);
+    free(fName);
+    put_if_absent(dest, archive, archiveSize);
+
+    size_t targetSize = strlen(dest) + sizeof(JAR_TARGET_FMT);
+    char* target = (char*) PTR_CHECK(malloc(targetSize));
+    snprintf(target, targetSize, JAR_TARGET_FMT, dest);
+    free(dest);
+    return target;
+}
+
+// Writes the runtime of a container unless already complete, returning the path of its java binary or NULL if the
+// container holds no runtime
+char* extract_runtime(const char* appDir, const payload* p) {
+    const char* id = NULL;
+    size_t idSize = 0;
+    for (uint32_t i=0; i < p->count; i++) {
+        if (p->entries[i].kind != PAYLOAD_RUNTIME) continue;
+        id = p->entries[i].name;
+        idSize = strcspn(id, "/");
+        break;
+    }
+    if (id == NULL) return NULL;
+
+    char* runtimeRoot = (char*) path_join(appDir, RUNTIME_DIR);
+    char* idStr = (char*) PTR_CHECK(malloc(idSize + 1));
+    memcpy(idStr, id, idSize);
+    idStr[idSize] = (char) 0;
+    char* runtimeDir = (char*) path_join(runtimeRoot, idStr);
+    free(idStr);
+    char* marker = (char*) path_join(runtimeDir, RUNTIME_MARKER);
+    if (!io_dir_create(appDir) || !io_dir_create(runtimeRoot)) {
+        ERR_FATAL(ERR_IO);
+    }
+    create_locked(runtimeDir);
+
+    if (io_file_exists(marker)) {
+        printf_dbg("Runtime %s already extracted\n", runtimeDir);
+    } else {
+        printf_dbg("Extracting runtime to %s\n", runtimeDir);
+        for (uint32_t i=0; i < p->count; i++) {
+            payload_entry* entry = &p->entries[i];
+            if (entry->kind != PAYLOAD_RUNTIME) continue;
+
+            char* dest = (char*) path_join(runtimeRoot, entry->name);
+#ifdef WIN32
+            for (char* c = dest; *c != (char) 0; c++) {
+                if (*c == '/') *c = PATH_SEPARATOR;
+            }
+#endif
+            if (!io_dir_create_parents(dest)) {
+                ERR_FATAL(ERR_IO);
+            }
+            // Files of an interrupted extraction are complete, as each is written atomically
+            if (!io_file_exists(dest)) {
+                io_file_put_buffer_atomic(dest, (void*) entry->data, entry->size);
+            }
+            if ((entry->flags & PAYLOAD_FLAG_EXECUTABLE) != 0 && !io_file_set_executable(dest)) {
+                ERR_FATAL(ERR_IO);
+            }
+            free(dest);
+        }
+        // Written last, so that the runtime is only trusted once every file is present
+        io_file_put_buffer_atomic(marker, (void*) RUNTIME_MARKER, 0);
+    }
+    free(marker);
+    free(runtimeRoot);
+
+    char* binary = (char*) path_join(runtimeDir, RUNTIME_JAVA);
+    free(runtimeDir);
+    printf_dbg("Using bundled Java at %s\n\n", binary);
+    return binary;
+}
+
+// Writes each JAR of a container, returning the class path holding all of them with the main JAR first
+char* extract_classpath(const char* appDir, const payload* p, int* outCount) {
+    char* libDir = NULL;
+    char** paths = (char**) PTR_CHECK(calloc(p->count == 0 ? 1 : p->count, sizeof(char*)));
+    size_t cpSize = 1;
+
+    // The main JAR leads the class path
+    int order = 0;
+    for (int pass=0; pass < 2; pass++) {
+        for (uint32_t i=0; i < p->count; i++) {
+            payload_entry* entry = &p->entries[i];
+            if ((entry->kind == PAYLOAD_MAIN) != (pass == 0)) continue;
+
+            char* dest;
+            if (entry->kind == PAYLOAD_MAIN) {
+                char* fName = main_jar_name(appDir, entry->name);
+                dest = (char*) path_join(appDir, fName);
+                free(fName);
+            } else if (entry->kind == PAYLOAD_LIBRARY) {
+                if (libDir == NULL) {
+                    libDir = (char*) path_join(appDir, LIB_DIR);
+                    if (!io_dir_create(libDir)) {
+                        ERR_FATAL(ERR_IO);
+                    }
+                }
+                dest = (char*) path_join(libDir, entry->name);
+            } else {
+                continue;
+            }
+            if (entry->kind == PAYLOAD_LIBRARY) {
+                put_locked(dest, entry->data, entry->size);
+            } else {
+                put_if_absent(dest, entry->data, entry->size);
+            }
+            paths[order++] = dest;
+            cpSize += strlen(dest) + 1;
+        }
+    }
+    free(libDir);
+
+    char* cp = (char*) PTR_CHECK(malloc(cpSize));
+    size_t pos = 0;
+    for (int i=0; i < order; i++) {
+        if (i != 0) cp[pos++] = CP_SEPARATOR;
+        size_t len = strlen(paths[i]);
+        memcpy(&cp[pos], paths[i], len);
+        pos += len;
+        free(paths[i]);
+    }
+    cp[pos] = (char) 0;
+    free(paths);
+    *outCount = order;
+    return cp;
+}
+
+// Writes each JAR of a container, returning the arguments to launch the main class with all of them on the class path
+char* extract_container(const char* appDir, const payload* p) {
+    int count;
+    char* cp = extract_classpath(appDir, p, &count);
+
+    // Launching a lone JAR honours its manifest
+    if (count == 1) {
+        size_t targetSize = strlen(cp) + sizeof(JAR_TARGET_FMT);
+        char* target = (char*) PTR_CHECK(malloc(targetSize));
+        snprintf(target, targetSize, JAR_TARGET_FMT, cp);
+        free(cp);
+        return target;
+    }
+
+    size_t targetSize = strlen(cp) + strlen(p->main_class) + sizeof(CP_TARGET_FMT);
+    char* target = (char*) PTR_CHECK(malloc(targetSize));
+    snprintf(target, targetSize, CP_TARGET_FMT, cp, p->main_class);
+    free(cp);
+    return target;
+}
+
+// Returns the entries of a container which may be shared with other apps, being each library & the runtime, one per
+// line relative to the app directory
+char* record_build(const payload* p) {
+    size_t size = 1;
+    const char* runtime = NULL;
+    size_t runtimeSize = 0;
+    for (uint32_t i=0; p != NULL && i < p->count; i++) {
+        payload_entry* entry = &p->entries[i];
+        if (entry->kind == PAYLOAD_LIBRARY) {
+            size += sizeof(LIB_DIR) + strlen(entry->name) + 1;
+        } else if (entry->kind == PAYLOAD_RUNTIME && runtime == NULL) {
+            runtime = entry->name;
+            runtimeSize = strcspn(runtime, "/");
+            size += sizeof(RUNTIME_DIR) + runtimeSize + 1;
+        }
+    }
+
+    char* record = (char*) PTR_CHECK(malloc(size));
+    size_t pos = 0;
+    for (uint32_t i=0; p != NULL && i < p->count; i++) {
+        payload_entry* entry = &p->entries[i];
+        if (entry->kind != PAYLOAD_LIBRARY) continue;
+        pos += sprintf(&record[pos], "%s/%s\n", LIB_DIR, entry->name);
+    }
+    if (runtime != NULL) {
+        pos += sprintf(&record[pos], "%s/%.*s\n", RUNTIME_DIR, (int) runtimeSize, runtime);
+    }
+    record[pos] = (char) 0;
+    return record;
+}
+
+// Checks whether a record lists an entry on a line of its own
+bool record_contains(const char* record, const char* entry) {
+    size_t entrySize = strlen(entry);
+    const char* line = record;
+    while (*line != (char) 0) {
+        const char* end = strchr(line, '\n');
+        size_t lineSize = end == NULL ? strlen(line) : (size_t) (end - line);
+        if (lineSize == entrySize && memcmp(line, entry, entrySize) == 0) return true;
+        if (end == NULL) break;
+        line = end + 1;
+    }
+    return false;
+}
+
+// Writes the record of what this app extracts, returning its previous record if different and NULL otherwise. Called
+// before extraction, so that another app clearing its own outdated entries keeps those this one is about to use.
+char* record_extracted(const char* appDir, const payload* p) {
+    char* record = record_build(p);
+    char* recordDir = (char*) path_join(appDir, RECORD_DIR);
+    char* recordPath = (char*) path_join(recordDir, APP_NAME);
+
+    char* previous = io_file_read(recordPath);
+    if (previous != NULL && strcmp(previous, record) == 0) {
+        free(previous);
+        previous = NULL;
+    } else if (previous != NULL || record[0] != (char) 0) {
+        if (!io_dir_create(recordDir)) {
+            ERR_FATAL(ERR_IO);
+        }
+        io_file_put_buffer_atomic(recordPath, (void*) record, strlen(record));
+    }
+    free(recordPath);
+    free(recordDir);
+    free(record);
+    return previous;
+}
+
+// Adds entries to the record of this app, so that a later launch deletes them once they are no longer in use
+void record_keep(const char* appDir, const char* kept) {
+    char* recordDir = (char*) path_join(appDir, RECORD_DIR);
+    char* recordPath = (char*) path_join(recordDir, APP_NAME);
+    char* record = io_file_read(recordPath);
+    size_t recordSize = record == NULL ? 0 : strlen(record);
+    size_t keptSize = strlen(kept);
+
+    char* buf = (char*) PTR_CHECK(malloc(recordSize + keptSize));
+    if (record != NULL) memcpy(buf, record, recordSize);
+    memcpy(&buf[recordSize], kept, keptSize);
+    io_file_put_buffer_atomic(recordPath, (void*) buf, recordSize + keptSize);
+
+    free(buf);
+    free(record);
+    free(recordPath);
+    free(recordDir);
+}
+
+// Returns every record in the app directory joined by line breaks, or NULL if any cannot be read
+char* record_read_all(const char* appDir) {
+    char* recordDir = (char*) path_join(appDir, RECORD_DIR);
+    io_dir dir = io_dir_open(recordDir);
+    if (dir == NULL) {
+        free(recordDir);
+        return NULL;
+    }
+
+    char* records = (char*) PTR_CHECK(calloc(1, 1));
+    size_t recordsSize = 0;
+    const char* name;
+    while ((name = io_dir_read_file(dir)) != NULL) {
+        // Skips records which are still being written
+        size_t nameSize = strlen(name);
+        if (nameSize >= sizeof(TEMP_EXT) && strcmp(&name[nameSize - sizeof(TEMP_EXT) + 1], TEMP_EXT) == 0) continue;
+
+        char* recordPath = (char*) path_join(recordDir, name);
+        char* record = io_file_read(recordPath);
+        free(recordPath);
+        if (record == NULL) {
+            free(records);
+            records = NULL;
+            break;
+        }
+        size_t size = strlen(record);
+        records = (char*) PTR_CHECK(realloc(records, recordsSize + size + 2));
+        memcpy(&records[recordsSize], record, size);
+        recordsSize += size;
+        records[recordsSize++] = '\n';
+        records[recordsSize] = (char) 0;
+        free(record);
+    }
+    io_dir_close(dir);
+    free(recordDir);
+    return records;
+}
+
+// Checks whether an entry names a direct child of the library or runtime directory
+bool record_entry_valid(const char* entry, const char* dir) {
+    size_t dirSize = strlen(dir);
+    if (strncmp(entry, dir, dirSize) != 0 || entry[dirSize] != '/') return false;
+    const char* name = &entry[dirSize + 1];
+    if (*name == (char) 0 || strchr(name, '/') != NULL) return false;
+    return strcmp(name, ".") != 0 && strcmp(name, "..") != 0;
+}
+
+// Deletes each library & runtime of a previous record which no app records anymore, freeing the record. Every
+// launcher holds a shared lock on the libraries & runtime it uses, so those of another version of this app which is
+// still running are kept for a later launch.
+void clear_outdated(const char* appDir, char* previous) {
+    if (previous == NULL) return;
+    printf_dbg("Clearing any outdated libraries & runtimes...\n");
+
+    // Libraries & runtimes with the same contents are shared by apps, so nothing is deleted unless every record is
+    // known
+    char* records = record_read_all(appDir);
+    if (records == NULL) {
+        printf_dbg("Failed to read the records of other apps, skipping\n");
+        free(previous);
+        return;
+    }
+
+    char* kept = (char*) PTR_CHECK(calloc(1, 1));
+    size_t keptSize = 0;
+    char* line = previous;
+    while (*line != (char) 0) {
+        char* end = strchr(line, '\n');
+        if (end != NULL) *end = (char) 0;
+
+        bool runtime = record_entry_valid(line, RUNTIME_DIR);
+        if ((runtime || record_entry_valid(line, LIB_DIR)) && !record_contains(records, line)) {
+            char* path = (char*) path_join(appDir, line);
+#ifdef WIN32
+            for (char* c = path; *c != (char) 0; c++) {
+                if (*c == '/') *c = PATH_SEPARATOR;
+            }
+#endif
+            io_lock lock;
+            if (!io_file_exists(path)) {
+                printf_dbg("%s already deleted\n", path);
+            } else if (!io_lock_try_exclusive(path, &lock)) {
+                printf_dbg("%s is in use, keeping\n", path);
+                size_t size = strlen(line);
+                kept = (char*) PTR_CHECK(realloc(kept, keptSize + size + 2));
+                memcpy(&kept[keptSize], line, size);
+                keptSize += size;
+                kept[keptSize++] = '\n';
+                kept[keptSize] = (char) 0;
+            } else {
+                printf_dbg("Deleting %s\n", path);
+                if (runtime) {
+                    // Removed first, so that a runtime which is only partially deleted is extracted again
+                    char* marker = (char*) path_join(path, RUNTIME_MARKER);
+                    remove(marker);
+                    free(marker);
+                }
+                if (!io_delete_tree(path)) {
+                    fprintf(stderr, "Failed to delete %s\n", path);
+                }
+                io_lock_release(lock);
+            }
+            free(path);
+        }
+
+        if (end == NULL) break;
+        line = end + 1;
+    }
+    if (keptSize != 0) record_keep(appDir, kept);
+    free(kept);
+    free(records);
+    free(previous);
+}
+
+const char* locate_java(bool exitOnNotFound) {
     printf_dbg("Locating system installed Java...\n");
     const char* binary = jre_locate_at_least(MIN_JAVA_VERSION);
     if (binary == NULL) {
         if (exitOnNotFound) exit(0);
         printf_dbg("Java >=%d not found, showing install prompt\n", MIN_JAVA_VERSION);
-        size_t promptSize = sizeof(INSTALL_PROMPT) + (sizeof(char) * 8);
+        size_t promptSize = strlen(INSTALL_PROMPT) + 1 + (sizeof(char) * 8);
         char* prompt = PTR_CHECK((char*) malloc(promptSize));
         snprintf(prompt, promptSize - 1, INSTALL_PROMPT, MIN_JAVA_VERSION);
         bool dl = io_gui_question(APP_NAME, prompt);
         free(prompt);
         if (dl) {
             if (jre_attempt_automated_install(MIN_JAVA_VERSION)) {
-                get_params(outBinary, outArchive, true);
-                return;
+                return locate_java(true);
             }
             printf("Automated Java install not available, opening download page in browser\n");
             jre_open_download_page(PREFERRED_JAVA_VERSION);
@@ -89,46 +504,98 @@ void get_params(const char** outBinary, const char** outArchive, bool exitOnNotF
     } else {
         printf_dbg("Using Java at %s\n\n", binary);
     }
+    return binary;
+}
 
+void get_params(const char** outBinary, const char** outTarget) {
     unsigned char* archive;
     size_t archiveSize;
     archive_get(&archive, &archiveSize);
 
-    printf_dbg("Computing archive hash...\n");
-
-    uint32_t hash = util_fast_hash(archive, archiveSize);
-    printf_dbg("Hash: %d\n", hash);
-
-    char fName[8 + sizeof(JAR_EXT) + sizeof(APP_NAME)];
-    memcpy(fName, APP_NAME, sizeof(APP_NAME) - 1);
-    fName[sizeof(APP_NAME) - 1] = '_';
-    util_uint2hex(hash, &fName[sizeof(APP_NAME)]);
-    strcpy(&fName[sizeof(APP_NAME) + 8], JAR_EXT);
     char* appDir = (char*) io_get_app_dir();
     if (appDir == NULL) {
         ERR_FATAL(ERR_IO);
     }
-    io_dir appDirEnt = io_dir_open(appDir);
-    if (appDirEnt != NULL) {
-        printf_dbg("Clearing any outdated binaries...\n");
-        io_dir_delete_children_starting_with_not_equal(appDirEnt, appDir, APP_NAME, fName);
-        io_dir_close(appDirEnt);
-    }
-    char* dest = (char*) path_join(appDir, fName);
-    free(appDir);
-
-    printf_dbg("Writing archive to %s\n", dest);
-    if (io_file_exists(dest)) {
-        printf_dbg("Already exists, skipping\n");
+    const char* binary;
+    char* target;
+    payload* p = payload_is_container(archive, archiveSize) ? payload_read(archive, archiveSize) : NULL;
+    char* previous = record_extracted(appDir, p);
+    if (p != NULL) {
+        // A bundled runtime makes locating an installed Java unnecessary
+        binary = extract_runtime(appDir, p);
+        if (binary == NULL) binary = locate_java(false);
+        target = extract_container(appDir, p);
+        payload_free(p);
     } else {
-        io_file_put_buffer(dest, archive, archiveSize);
+        binary = locate_java(false);
+        target = extract_jar(appDir, archive, archiveSize);
     }
+    clear_outdated(appDir, previous);
+    free(appDir);
     printf_dbg("Ready to start application\n\n");
 
     *outBinary = binary;
-    *outArchive = dest;
+    *outTarget = target;
+}
+
+#ifdef __linux
+// Extracts what the resident JVM is started with, see resident_run
+void prepare_resident(const payload* p, char** outBinary, char** outClasspath) {
+    char* appDir = (char*) io_get_app_dir();
+    if (appDir == NULL) {
+        ERR_FATAL(ERR_IO);
+    }
+    char* previous = record_extracted(appDir, p);
+    char* binary = extract_runtime(appDir, p);
+    if (binary == NULL) binary = (char*) locate_java(false);
+    int count;
+    *outClasspath = extract_classpath(appDir, p, &count);
+    clear_outdated(appDir, previous);
+    *outBinary = binary;
+    free(appDir);
 }
 
+// Runs the application in its resident JVM, returning false if it should be started normally
+bool run_resident(int argc, char** argv, int* outStatus) {
+    unsigned char* archive;
+    size_t archiveSize;
+    archive_get(&archive, &archiveSize);
+    // Always a container, as the payload includes the classes of the resident JVM
+    if (!payload_is_container(archive, archiveSize)) return false;
+
+    payload* p = payload_read(archive, archiveSize);
+    bool ret = resident_run(p, argc, argv, prepare_resident, outStatus);
+    payload_free(p);
+    return ret;
+}
+
+// Appends the arguments of the launcher to a command, each quoted for the shell
+char* append_args(char* cmd, int argc, char** argv) {
+    size_t size = strlen(cmd) + 1;
+    for (int i=1; i < argc; i++) {
+        size += 3;
+        for (const char* c = argv[i]; *c != (char) 0; c++) size += *c == '\'' ? 4 : 1;
+    }
+    char* ret = (char*) PTR_CHECK(realloc(cmd, size));
+    size_t pos = strlen(ret);
+    for (int i=1; i < argc; i++) {
+        ret[pos++] = ' ';
+        ret[pos++] = '\'';
+        for (const char* c = argv[i]; *c != (char) 0; c++) {
+            if (*c == '\'') {
+                memcpy(&ret[pos], "'\\''", 4);
+                pos += 4;
+            } else {
+                ret[pos++] = *c;
+            }
+        }
+        ret[pos++] = '\'';
+    }
+    ret[pos] = (char) 0;
+    return ret;
+}
+#endif
+
 int do_cmd(char* cmd) {
     printf(GRN "%s\n" BGRN "%s\n\n" CRESET, cmd, RUN_DELIMITER);
     int stat = system(cmd);
@@ -146,25 +613,35 @@ int do_cmd(char* cmd) {
     return stat;
 }
 
-int main() {
+int main(int argc, char** argv) {
 #ifdef WIN32
     bool owns = io_owns_console_win32();
     HWND win = io_init_console_win32(APP_NAME, owns);
 #endif
     startup();
+#ifdef __linux
+    if (RESIDENT) {
+        int status;
+        if (run_resident(argc, argv, &status)) return status;
+    }
+#endif
 
     const char* binary;
-    const char* archive;
-    get_params(&binary, &archive, false);
+    const char* target;
+    get_params(&binary, &target);
 #ifdef WIN32
     io_path_to_short_name_win32((char**) &binary);
 #endif
 
-    size_t cmdLen = strlen(binary) + strlen(archive) + sizeof(LAUNCH_FLAGS) + sizeof(START_FMT);
+    size_t cmdLen = strlen(binary) + strlen(target) + strlen(LAUNCH_FLAGS) + 1 + sizeof(START_FMT);
     char* cmd = PTR_CHECK(malloc(cmdLen));
-    snprintf(cmd, cmdLen, START_FMT, binary, archive, LAUNCH_FLAGS);
+    snprintf(cmd, cmdLen, START_FMT, binary, target, LAUNCH_FLAGS);
     free((void*) binary);
-    free((void*) archive);
+    free((void*) target);
+#ifdef __linux
+    // The resident JVM receives the arguments of the launcher, so a normal start must as well
+    if (RESIDENT) cmd = append_args(cmd, argc, argv);
+#endif
 
 #ifdef WIN32
     if (owns && win != NULL) {
@@ -0,0 +1,17 @@
+#ifndef JARSTRAP_CONFIG_H
+#define JARSTRAP_CONFIG_H
+
+#include <stdbool.h>
+
+// Defined in config.c, which is generated per package
+extern const char APP_NAME[];
+extern const unsigned int MIN_JAVA_VERSION;
+extern const unsigned int PREFERRED_JAVA_VERSION;
+extern const char INSTALL_PROMPT[];
+extern const char LAUNCH_FLAGS[];
+extern const bool ATTRIBUTION;
+extern const bool RESIDENT;
+// Seconds
+extern const unsigned int RESIDENT_IDLE_TIMEOUT;
+
+#endif
@@ -5,6 +5,10 @@
 #include "path.h"
 #include "alloca.h"
 #include "debug.h"
+#ifdef __linux
+#include <fcntl.h>
+#include <sys/file.h>
+#endif
 
 io_shell io_shell_open(const char* cmd) {
     return (io_shell) popen(cmd, "r");
@@ -256,10 +260,217 @@ void io_file_put_buffer(const char* path, void* buf, size_t len) {
     fclose(fd);
 }
 
+static const char TEMP_FMT[] = "%s.%lu.tmp";
+void io_file_put_buffer_atomic(const char* path, void* buf, size_t len) {
+    size_t tempSize = strlen(path) + sizeof(TEMP_FMT) + 20;
+    char* temp = (char*) PTR_CHECK(malloc(tempSize));
+#ifdef __linux
+    snprintf(temp, tempSize, TEMP_FMT, path, (unsigned long) getpid());
+#endif
+#ifdef WIN32
+    snprintf(temp, tempSize, TEMP_FMT, path, (unsigned long) GetCurrentProcessId());
+#endif
+    io_file_put_buffer(temp, buf, len);
+
+#ifdef __linux
+    bool moved = rename(temp, path) == 0;
+#endif
+#ifdef WIN32
+    bool moved = MoveFileExA(temp, path, MOVEFILE_REPLACE_EXISTING) != 0;
+#endif
+    if (!moved) {
+        remove(temp);
+        // Another process may hold the file open after writing the same contents
+        if (!io_file_exists(path)) {
+            ERR_FATAL(ERR_IO);
+        }
+    }
+    free(temp);
+}
+
+bool io_dir_create(const char* path) {
+#ifdef __linux
+    return mkdir(path, 0700) == 0 || errno == EEXIST;
+#endif
+#ifdef WIN32
+    return CreateDirectoryA(path, NULL) != 0 || GetLastError() == ERROR_ALREADY_EXISTS;
+#endif
+}
+
+bool io_dir_create_parents(const char* path) {
+    size_t len = strlen(path);
+    char* buf = (char*) PTR_CHECK(malloc(len + 1));
+    memcpy(buf, path, len + 1);
+    // Ancestors such as a drive root may refuse creation, so only the nearest parent decides the result
+    bool ret = true;
+    for (size_t i=1; i < len; i++) {
+        if (buf[i] != PATH_SEPARATOR) continue;
+        buf[i] = PATH_NULL;
+        ret = io_dir_create(buf);
+        buf[i] = PATH_SEPARATOR;
+    }
+    free(buf);
+    return ret;
+}
+
+bool io_file_set_executable(const char* path) {
+#ifdef __linux
+    return chmod(path, 0755) == 0;
+#endif
+#ifdef WIN32
+    return true;
+#endif
+}
+
 bool io_file_exists(const char* path) {
     return access(path, F_OK) == 0;
 }
 
+char* io_file_read(const char* path) {
+    FILE* fd = fopen(path, "rb");
+    if (fd == NULL) return NULL;
+
+    size_t cap = 256;
+    size_t size = 0;
+    size_t read;
+    char* buf = (char*) PTR_CHECK(malloc(cap));
+    while ((read = fread(&buf[size], 1, cap - size - 1, fd)) > 0) {
+        size += read;
+        if (size + 1 == cap) {
+            cap <<= 1;
+            buf = (char*) PTR_CHECK(realloc(buf, cap));
+        }
+    }
+    bool failed = ferror(fd) != 0;
+    fclose(fd);
+    if (failed) {
+        free(buf);
+        return NULL;
+    }
+    buf[size] = (char) 0;
+    return buf;
+}
+
+#ifdef __linux
+bool io_delete_tree_unix(const char* path) {
+    struct stat st;
+    if (lstat(path, &st) != 0) return errno == ENOENT;
+    if (!S_ISDIR(st.st_mode)) return unlink(path) == 0;
+
+    DIR* dir = opendir(path);
+    if (dir == NULL) return false;
+    bool ret = true;
+    struct dirent* ent;
+    while ((ent = readdir(dir)) != NULL) {
+        if (strcmp(ent->d_name, ".") == 0 || strcmp(ent->d_name, "..") == 0) continue;
+        const char* child = path_join(path, ent->d_name);
+        if (!io_delete_tree_unix(child)) ret = false;
+        free((void*) child);
+    }
+    closedir(dir);
+    return ret && rmdir(path) == 0;
+}
+#endif
+
+#ifdef WIN32
+bool io_delete_tree_win32(const char* path) {
+    if (GetFileAttributesA(path) == INVALID_FILE_ATTRIBUTES) return true;
+
+    // The source list is terminated by an additional null character
+    size_t len = strlen(path);
+    char* from = (char*) PTR_CHECK(calloc(len + 2, 1));
+    memcpy(from, path, len);
+    SHFILEOPSTRUCTA op;
+    memset(&op, 0, sizeof(op));
+    op.wFunc = FO_DELETE;
+    op.pFrom = from;
+    op.fFlags = FOF_NO_UI;
+    bool ret = SHFileOperationA(&op) == 0 && !op.fAnyOperationsAborted;
+    free(from);
+    return ret;
+}
+#endif
+
+bool io_delete_tree(const char* path) {
+#ifdef __linux
+    return io_delete_tree_unix(path);
+#endif
+#ifdef WIN32
+    return io_delete_tree_win32(path);
+#endif
+}
+
+#ifdef __linux
+// Locks a path opened as the given descriptor, checking that the path still refers to the same file once locked
+bool io_lock_unix(int fd, const char* path, int operation) {
+    struct stat locked;
+    struct stat current;
+    if (flock(fd, operation) != 0) return false;
+    if (fstat(fd, &locked) != 0 || stat(path, &current) != 0) return false;
+    return locked.st_dev == current.st_dev && locked.st_ino == current.st_ino;
+}
+#endif
+
+#ifdef WIN32
+// Holders share reading only, while the exclusive holder shares deletion only; so each excludes the other
+static const DWORD LOCK_SHARED_ACCESS = GENERIC_READ;
+static const DWORD LOCK_SHARED_SHARE = FILE_SHARE_READ;
+static const DWORD LOCK_EXCLUSIVE_ACCESS = GENERIC_READ | DELETE;
+static const DWORD LOCK_EXCLUSIVE_SHARE = FILE_SHARE_DELETE;
+
+HANDLE io_lock_open_win32(const char* path, DWORD access, DWORD share) {
+    return CreateFileA(path, access, share, NULL, OPEN_EXISTING, FILE_FLAG_BACKUP_SEMANTICS, NULL);
+}
+#endif
+
+bool io_lock_shared(const char* path) {
+#ifdef __linux
+    // Not closed on exec, so that a JVM which outlives this process keeps holding the lock
+    int fd = open(path, O_RDONLY);
+    if (fd == -1) return false;
+    if (io_lock_unix(fd, path, LOCK_SH)) return true;
+    close(fd);
+    return false;
+#endif
+#ifdef WIN32
+    HANDLE handle;
+    while ((handle = io_lock_open_win32(path, LOCK_SHARED_ACCESS, LOCK_SHARED_SHARE)) == INVALID_HANDLE_VALUE) {
+        if (GetLastError() != ERROR_SHARING_VIOLATION) return false;
+        Sleep(50);
+    }
+    // Left open, so that the lock is held until this process exits
+    return true;
+#endif
+}
+
+bool io_lock_try_exclusive(const char* path, io_lock* outLock) {
+#ifdef __linux
+    int fd = open(path, O_RDONLY | O_CLOEXEC);
+    if (fd == -1) return false;
+    if (io_lock_unix(fd, path, LOCK_EX | LOCK_NB)) {
+        *outLock = fd;
+        return true;
+    }
+    close(fd);
+    return false;
+#endif
+#ifdef WIN32
+    HANDLE handle = io_lock_open_win32(path, LOCK_EXCLUSIVE_ACCESS, LOCK_EXCLUSIVE_SHARE);
+    if (handle == INVALID_HANDLE_VALUE) return false;
+    *outLock = handle;
+    return true;
+#endif
+}
+
+void io_lock_release(io_lock lock) {
+#ifdef __linux
+    close(lock);
+#endif
+#ifdef WIN32
+    CloseHandle(lock);
+#endif
+}
+
 #ifdef WIN32
 void io_path_to_short_name_win32(char** path) {
     if (path == NULL) return;
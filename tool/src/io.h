@@ -26,6 +26,7 @@ typedef struct io_dir_t {
     char useCurrentData;
 } io_dir_t;
 typedef io_dir_t* io_dir;
+typedef HANDLE io_lock;
 
 #endif
 #ifdef __linux
@@ -38,6 +39,7 @@ typedef io_dir_t* io_dir;
 
 typedef FILE* io_shell;
 typedef DIR* io_dir;
+typedef int io_lock;
 
 #endif
 
@@ -63,8 +65,34 @@ const char* io_get_app_dir();
 
 void io_file_put_buffer(const char* path, void* buf, size_t len);
 
+// Writes to a temporary file which is then renamed, so that other processes never see a partial file
+void io_file_put_buffer_atomic(const char* path, void* buf, size_t len);
+
+bool io_dir_create(const char* path);
+
+// Creates each missing directory above the given path
+bool io_dir_create_parents(const char* path);
+
+bool io_file_set_executable(const char* path);
+
 bool io_file_exists(const char* path);
 
+// Returns the contents of a file followed by a null terminator, or NULL if it cannot be read
+char* io_file_read(const char* path);
+
+// Deletes a file, or a directory along with everything within it
+bool io_delete_tree(const char* path);
+
+// Takes a shared lock on a file or directory, waiting while another process holds an exclusive lock. The lock is held
+// until this process and every process it starts have exited. Returns false if the path no longer exists once locked.
+bool io_lock_shared(const char* path);
+
+// Takes an exclusive lock on a file or directory without waiting, returning false if another process holds any lock
+// on it or the path no longer exists once locked
+bool io_lock_try_exclusive(const char* path, io_lock* outLock);
+
+void io_lock_release(io_lock lock);
+
 #ifdef WIN32
 void io_path_to_short_name_win32(char** path);
 
@@ -0,0 +1,97 @@
+#include <string.h>
+#include "payload.h"
+#include "debug.h"
+
+static const unsigned char PAYLOAD_MAGIC[] = "JSPAYLD1";
+#define PAYLOAD_MAGIC_SIZE (sizeof(PAYLOAD_MAGIC) - 1)
+
+typedef struct payload_cursor {
+    const unsigned char* buf;
+    size_t size;
+    size_t pos;
+} payload_cursor;
+
+static uint64_t payload_read_le(payload_cursor* c, int n) {
+    if (c->size - c->pos < (size_t) n) {
+        ERR_FATAL(ERR_ILLEGAL);
+    }
+    uint64_t ret = 0;
+    for (int i=0; i < n; i++) {
+        ret |= ((uint64_t) c->buf[c->pos + i]) << (i << 3);
+    }
+    c->pos += n;
+    return ret;
+}
+
+static char* payload_read_string(payload_cursor* c) {
+    size_t len = (size_t) payload_read_le(c, 2);
+    if (c->size - c->pos < len) {
+        ERR_FATAL(ERR_ILLEGAL);
+    }
+    char* ret = (char*) PTR_CHECK(malloc(len + 1));
+    memcpy(ret, &c->buf[c->pos], len);
+    ret[len] = (char) 0;
+    c->pos += len;
+    return ret;
+}
+
+// Names are joined onto directories, so they must not be able to escape them. Each segment of a path must be
+// non-empty and must not start with a dot.
+static bool payload_name_valid(const char* name, bool path) {
+    bool segmentStart = true;
+    char c;
+    for (int i=0; (c = name[i]) != (char) 0; i++) {
+        if (c == '/' && path && !segmentStart) {
+            segmentStart = true;
+            continue;
+        }
+        if (segmentStart && c == '.') return false;
+        segmentStart = false;
+        if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) continue;
+        if (c == '.' || c == '-' || c == '_') continue;
+        return false;
+    }
+    return !segmentStart;
+}
+
+bool payload_is_container(const unsigned char* buf, size_t size) {
+    return size >= PAYLOAD_MAGIC_SIZE && memcmp(buf, PAYLOAD_MAGIC, PAYLOAD_MAGIC_SIZE) == 0;
+}
+
+payload* payload_read(const unsigned char* buf, size_t size) {
+    if (!payload_is_container(buf, size)) {
+        ERR_FATAL(ERR_ILLEGAL);
+    }
+    payload_cursor c = { buf, size, PAYLOAD_MAGIC_SIZE };
+
+    payload* ret = (payload*) PTR_CHECK(malloc(sizeof(payload)));
+    ret->count = (uint32_t) payload_read_le(&c, 4);
+    ret->main_class = payload_read_string(&c);
+    if (ret->count > (size - c.pos) / 21) {
+        ERR_FATAL(ERR_ILLEGAL);
+    }
+    ret->entries = (payload_entry*) PTR_CHECK(calloc(ret->count == 0 ? 1 : ret->count, sizeof(payload_entry)));
+
+    payload_entry* entry;
+    for (uint32_t i=0; i < ret->count; i++) {
+        entry = &ret->entries[i];
+        entry->kind = (payload_kind) payload_read_le(&c, 1);
+        entry->flags = (uint16_t) payload_read_le(&c, 2);
+        entry->name = payload_read_string(&c);
+        uint64_t offset = payload_read_le(&c, 8);
+        uint64_t len = payload_read_le(&c, 8);
+        if (!payload_name_valid(entry->name, entry->kind == PAYLOAD_RUNTIME) || offset > size || len > size - offset) {
+            ERR_FATAL(ERR_ILLEGAL);
+        }
+        entry->data = &buf[offset];
+        entry->size = (size_t) len;
+    }
+    return ret;
+}
+
+void payload_free(payload* p) {
+    for (uint32_t i=0; i < p->count; i++) free(p->entries[i].name);
+    free(p->entries);
+    free(p->main_class);
+    free(p);
+}
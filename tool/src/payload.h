@@ -0,0 +1,43 @@
+#ifndef JARSTRAP_PAYLOAD_H
+#define JARSTRAP_PAYLOAD_H
+
+#include <stdbool.h>
+#include <stdint.h>
+#include <stdlib.h>
+
+// A container of several files, embedded in place of a single JAR. Written by PayloadContainer.java.
+
+typedef enum payload_kind {
+    // The main JAR, extracted as <app name>_<name>.jar
+    PAYLOAD_MAIN,
+    // A library JAR, extracted into lib/ and shared between applications
+    PAYLOAD_LIBRARY,
+    // A file of a Java runtime, extracted into runtime/. The name is a path separated by '/', the first segment of
+    // which identifies the runtime
+    PAYLOAD_RUNTIME
+} payload_kind;
+
+#define PAYLOAD_FLAG_EXECUTABLE 1
+
+typedef struct payload_entry {
+    payload_kind kind;
+    uint16_t flags;
+    char* name;
+    const unsigned char* data;
+    size_t size;
+} payload_entry;
+
+typedef struct payload {
+    char* main_class;
+    uint32_t count;
+    payload_entry* entries;
+} payload;
+
+bool payload_is_container(const unsigned char* buf, size_t size);
+
+// Exits if the container is malformed
+payload* payload_read(const unsigned char* buf, size_t size);
+
+void payload_free(payload* p);
+
+#endif
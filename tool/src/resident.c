@@ -0,0 +1,418 @@
+#include <string.h>
+#include <stdio.h>
+#include <stdint.h>
+#include "resident.h"
+#include "config.h"
+#include "debug.h"
+#include "io.h"
+#include "path.h"
+#include "util.h"
+
+#ifdef __linux
+#include <errno.h>
+#include <fcntl.h>
+#include <time.h>
+#include <sys/socket.h>
+#include <sys/un.h>
+#include <sys/wait.h>
+
+extern char** environ;
+
+static const char RESIDENT_DIR[] = "resident";
+static const char SOCKET_EXT[] = ".sock";
+static const char LOG_EXT[] = ".log";
+static const char FAILED_EXT[] = ".failed";
+static const char SPAWN_FMT[] = "exec \"%s\" -cp \"%s\" %s \"%s\" %u %s %s";
+static const char SERVER_CLASS[] = "io.github.wasabithumb.jarstrap.resident.ResidentServer";
+
+// Time for a started JVM to accept calls, in milliseconds
+#define RESIDENT_START_TIMEOUT 10000
+// Time for a running JVM to accept a call, in milliseconds
+#define RESIDENT_READY_TIMEOUT 10000
+// Time for the JVM holding the socket to accept calls, after a started JVM found it there, in milliseconds
+#define RESIDENT_RACE_TIMEOUT 500
+#define RESIDENT_MAX_SPAWNS 3
+// Time after a failed start during which no JVM is started, in seconds
+#define RESIDENT_BACKOFF 60
+#define RESIDENT_CHUNK 8192
+
+// Frame types, see ResidentProtocol.java
+#define FRAME_ARGUMENT 'A'
+#define FRAME_ENVIRONMENT 'E'
+#define FRAME_DIRECTORY 'D'
+#define FRAME_RUN 'C'
+#define FRAME_STDIN '0'
+#define FRAME_STDIN_EOF '.'
+#define FRAME_READY 'R'
+#define FRAME_STDOUT '1'
+#define FRAME_STDERR '2'
+#define FRAME_STDIN_REQUEST 'I'
+#define FRAME_EXIT 'X'
+
+typedef enum resident_result {
+    // The application ran
+    RESIDENT_DONE,
+    // No JVM accepted the call: none is running, or it is shutting down
+    RESIDENT_ABSENT,
+    // A JVM accepted the connection, but not the call
+    RESIDENT_UNHEALTHY
+} resident_result;
+
+static char* resident_path(const char* base, const char* ext) {
+    size_t size = strlen(base) + strlen(ext) + 1;
+    char* ret = (char*) PTR_CHECK(malloc(size));
+    snprintf(ret, size, "%s%s", base, ext);
+    return ret;
+}
+
+// Returns the path of the files of the resident JVM without extension, or NULL if their directory could not be
+// created or is accessible to other users. The name is a hash of everything which makes up a launch: the main class,
+// the payload entries (which are named by content hash) and the launch flags.
+static char* resident_base_path(const payload* p) {
+    size_t flagsSize = strlen(LAUNCH_FLAGS) + 1;
+    size_t keySize = strlen(p->main_class) + flagsSize + 1;
+    for (uint32_t i=0; i < p->count; i++) keySize += strlen(p->entries[i].name) + 1;
+    unsigned char* key = (unsigned char*) PTR_CHECK(malloc(keySize));
+    size_t pos = 0;
+    size_t len = strlen(p->main_class) + 1;
+    memcpy(&key[pos], p->main_class, len);
+    pos += len;
+    for (uint32_t i=0; i < p->count; i++) {
+        len = strlen(p->entries[i].name) + 1;
+        memcpy(&key[pos], p->entries[i].name, len);
+        pos += len;
+    }
+    memcpy(&key[pos], LAUNCH_FLAGS, flagsSize);
+    pos += flagsSize;
+
+    char hex[9];
+    util_uint2hex(util_fast_hash(key, pos), hex);
+    free(key);
+
+    const char* appDir = io_get_app_dir();
+    if (appDir == NULL) return NULL;
+    char* dir = (char*) path_join(appDir, RESIDENT_DIR);
+    free((void*) appDir);
+    if (mkdir(dir, 0700) != 0 && errno != EEXIST) {
+        free(dir);
+        return NULL;
+    }
+
+    // The socket accepts calls from anyone who can reach it
+    struct stat st;
+    if (lstat(dir, &st) != 0 || !S_ISDIR(st.st_mode) || st.st_uid != getuid() || (st.st_mode & 077) != 0) {
+        free(dir);
+        return NULL;
+    }
+
+    char* ret = (char*) path_join(dir, hex);
+    free(dir);
+    return ret;
+}
+
+static bool resident_backing_off(const char* failedPath) {
+    struct stat st;
+    if (stat(failedPath, &st) != 0) return false;
+    return time(NULL) - st.st_mtime < RESIDENT_BACKOFF;
+}
+
+static void resident_mark_failed(const char* failedPath) {
+    int fd = open(failedPath, O_WRONLY | O_CREAT | O_TRUNC | O_CLOEXEC, 0600);
+    if (fd == -1) return;
+    futimens(fd, NULL);
+    close(fd);
+}
+
+static void resident_sleep(long millis) {
+    struct timespec ts = { millis / 1000, (millis % 1000) * 1000000L };
+    while (nanosleep(&ts, &ts) != 0 && errno == EINTR);
+}
+
+// IO
+
+static bool resident_send_all(int fd, const void* buf, size_t len) {
+    const unsigned char* cur = (const unsigned char*) buf;
+    while (len != 0) {
+        ssize_t n = send(fd, cur, len, MSG_NOSIGNAL);
+        if (n == -1) {
+            if (errno == EINTR) continue;
+            return false;
+        }
+        cur += n;
+        len -= (size_t) n;
+    }
+    return true;
+}
+
+static bool resident_send(int fd, char type, const void* buf, size_t len) {
+    unsigned char header[5] = {
+            (unsigned char) (len >> 24), (unsigned char) (len >> 16), (unsigned char) (len >> 8), (unsigned char) len,
+            (unsigned char) type
+    };
+    return resident_send_all(fd, header, sizeof(header)) && resident_send_all(fd, buf, len);
+}
+
+static bool resident_send_string(int fd, char type, const char* str) {
+    return resident_send(fd, type, str, strlen(str));
+}
+
+// Returns 1 once the buffer is filled, 0 at the end of the stream and -1 on error (including a timeout)
+static int resident_recv_all(int fd, void* buf, size_t len) {
+    unsigned char* cur = (unsigned char*) buf;
+    while (len != 0) {
+        ssize_t n = recv(fd, cur, len, 0);
+        if (n == 0) return 0;
+        if (n == -1) {
+            if (errno == EINTR) continue;
+            return -1;
+        }
+        cur += n;
+        len -= (size_t) n;
+    }
+    return 1;
+}
+
+static uint32_t resident_u32(const unsigned char* buf) {
+    return ((uint32_t) buf[0] << 24) | ((uint32_t) buf[1] << 16) | ((uint32_t) buf[2] << 8) | (uint32_t) buf[3];
+}
+
+static void resident_write_all(int fd, const unsigned char* buf, size_t len) {
+    while (len != 0) {
+        ssize_t n = write(fd, buf, len);
+        if (n == -1) {
+            if (errno == EINTR) continue;
+            // Output which cannot be written is dropped, as it would be by the JVM
+            return;
+        }
+        buf += n;
+        len -= (size_t) n;
+    }
+}
+
+// Copies the payload of a frame to the given file descriptor, or discards it if the descriptor is -1
+static bool resident_forward(int fd, uint32_t len, int dest) {
+    unsigned char buf[RESIDENT_CHUNK];
+    while (len != 0) {
+        size_t n = len < sizeof(buf) ? len : sizeof(buf);
+        if (resident_recv_all(fd, buf, n) != 1) return false;
+        if (dest != -1) resident_write_all(dest, buf, n);
+        len -= n;
+    }
+    return true;
+}
+
+static bool resident_send_stdin(int fd) {
+    unsigned char buf[RESIDENT_CHUNK];
+    ssize_t n;
+    do {
+        n = read(STDIN_FILENO, buf, sizeof(buf));
+    } while (n == -1 && errno == EINTR);
+    if (n <= 0) return resident_send(fd, FRAME_STDIN_EOF, NULL, 0);
+    return resident_send(fd, FRAME_STDIN, buf, (size_t) n);
+}
+
+// CALL
+
+static resident_result resident_call(const char* socketPath, int argc, char** argv, int* outStatus) {
+    int fd = socket(AF_UNIX, SOCK_STREAM | SOCK_CLOEXEC, 0);
+    if (fd == -1) return RESIDENT_UNHEALTHY;
+    struct sockaddr_un addr;
+    memset(&addr, 0, sizeof(addr));
+    addr.sun_family = AF_UNIX;
+    strcpy(addr.sun_path, socketPath);
+    if (connect(fd, (struct sockaddr*) &addr, sizeof(addr)) != 0) {
+        close(fd);
+        return RESIDENT_ABSENT;
+    }
+
+    char* cwd = getcwd(NULL, 0);
+    if (cwd == NULL) {
+        close(fd);
+        return RESIDENT_UNHEALTHY;
+    }
+    bool sent = true;
+    for (int i=1; sent && i < argc; i++) sent = resident_send_string(fd, FRAME_ARGUMENT, argv[i]);
+    for (char** env = environ; sent && *env != NULL; env++) sent = resident_send_string(fd, FRAME_ENVIRONMENT, *env);
+    sent = sent && resident_send_string(fd, FRAME_DIRECTORY, cwd) && resident_send(fd, FRAME_RUN, NULL, 0);
+    free(cwd);
+
+    // Until the JVM is ready, the application has not run and may still be started normally
+    struct timeval timeout = { RESIDENT_READY_TIMEOUT / 1000, 0 };
+    setsockopt(fd, SOL_SOCKET, SO_RCVTIMEO, &timeout, sizeof(timeout));
+    unsigned char header[5];
+    int got = sent ? resident_recv_all(fd, header, sizeof(header)) : 0;
+    if (got != 1) {
+        close(fd);
+        // Closed by a JVM which is shutting down
+        return got == 0 ? RESIDENT_ABSENT : RESIDENT_UNHEALTHY;
+    }
+    if (header[4] != FRAME_READY || !resident_forward(fd, resident_u32(header), -1)) {
+        close(fd);
+        return RESIDENT_UNHEALTHY;
+    }
+    timeout.tv_sec = 0;
+    setsockopt(fd, SOL_SOCKET, SO_RCVTIMEO, &timeout, sizeof(timeout));
+
+    while (resident_recv_all(fd, header, sizeof(header)) == 1) {
+        uint32_t len = resident_u32(header);
+        bool ok;
+        switch (header[4]) {
+            case FRAME_STDOUT:
+                ok = resident_forward(fd, len, STDOUT_FILENO);
+                break;
+            case FRAME_STDERR:
+                ok = resident_forward(fd, len, STDERR_FILENO);
+                break;
+            case FRAME_STDIN_REQUEST:
+                ok = resident_forward(fd, len, -1) && resident_send_stdin(fd);
+                break;
+            case FRAME_EXIT: {
+                unsigned char status[4];
+                if (len != 4 || resident_recv_all(fd, status, 4) != 1) {
+                    ok = false;
+                    break;
+                }
+                close(fd);
+                *outStatus = (int) resident_u32(status);
+                return RESIDENT_DONE;
+            }
+            default:
+                ok = resident_forward(fd, len, -1);
+                break;
+        }
+        if (!ok) break;
+    }
+    close(fd);
+    fprintf(stderr, "Lost connection to resident JVM\n");
+    *outStatus = 1;
+    return RESIDENT_DONE;
+}
+
+// START
+
+static pid_t resident_spawn(const char* cmd, const char* logPath) {
+    pid_t pid = fork();
+    if (pid != 0) return pid;
+
+    // Detached from the terminal, so that it outlives the launcher & ignores its signals
+    setsid();
+    int in = open("/dev/null", O_RDONLY);
+    int log = open(logPath, O_WRONLY | O_CREAT | O_TRUNC, 0600);
+    if (in == -1 || log == -1 || chdir("/") != 0) _exit(127);
+    dup2(in, STDIN_FILENO);
+    dup2(log, STDOUT_FILENO);
+    dup2(log, STDERR_FILENO);
+    if (in > STDERR_FILENO) close(in);
+    if (log > STDERR_FILENO) close(log);
+    execl("/bin/sh", "sh", "-c", cmd, (char*) NULL);
+    _exit(127);
+}
+
+// Starts a JVM and makes the call once it accepts calls. The JVM exits with status 0 without serving if another
+// JVM holds the socket, which is then waited on instead; it may be shutting down, in which case a JVM is started
+// again.
+static resident_result resident_start(
+        const payload* p,
+        const char* base,
+        const char* socketPath,
+        int argc,
+        char** argv,
+        resident_prepare_fn prepare,
+        int* outStatus
+) {
+    char* failedPath = resident_path(base, FAILED_EXT);
+    if (resident_backing_off(failedPath)) {
+        free(failedPath);
+        return RESIDENT_ABSENT;
+    }
+    char* logPath = resident_path(base, LOG_EXT);
+
+    char* binary;
+    char* classpath;
+    prepare(p, &binary, &classpath);
+    fflush(stdout);
+    size_t cmdSize = strlen(binary) + strlen(classpath) + strlen(SERVER_CLASS) + strlen(socketPath) +
+            strlen(p->main_class) + strlen(LAUNCH_FLAGS) + sizeof(SPAWN_FMT) + 10;
+    char* cmd = (char*) PTR_CHECK(malloc(cmdSize));
+    snprintf(cmd, cmdSize, SPAWN_FMT, binary, classpath, SERVER_CLASS, socketPath, RESIDENT_IDLE_TIMEOUT,
+             p->main_class, LAUNCH_FLAGS);
+    free(binary);
+    free(classpath);
+
+    resident_result ret = RESIDENT_ABSENT;
+    bool failed = false;
+    int spawns = 0;
+    pid_t pid = -1;
+    long elapsed = 0;
+    long raceStart = 0;
+    long delay = 2;
+    while (true) {
+        if (pid == -1) {
+            if (spawns == RESIDENT_MAX_SPAWNS) break;
+            pid = resident_spawn(cmd, logPath);
+            spawns++;
+            if (pid == -1) {
+                failed = true;
+                break;
+            }
+        }
+
+        ret = resident_call(socketPath, argc, argv, outStatus);
+        if (ret != RESIDENT_ABSENT) break;
+        if (elapsed >= RESIDENT_START_TIMEOUT) {
+            failed = true;
+            break;
+        }
+        resident_sleep(delay);
+        elapsed += delay;
+        if (delay < 50) delay <<= 1;
+
+        if (pid > 0) {
+            int status;
+            if (waitpid(pid, &status, WNOHANG) != pid) continue;
+            if (!WIFEXITED(status) || WEXITSTATUS(status) != 0) {
+                failed = true;
+                break;
+            }
+            // Lost the race for the socket
+            pid = 0;
+            raceStart = elapsed;
+        } else if (elapsed - raceStart >= RESIDENT_RACE_TIMEOUT) {
+            pid = -1;
+        }
+    }
+    free(cmd);
+
+    if (failed) {
+        resident_mark_failed(failedPath);
+    } else if (ret == RESIDENT_DONE) {
+        unlink(failedPath);
+    }
+    free(failedPath);
+    free(logPath);
+    return ret;
+}
+
+bool resident_run(const payload* p, int argc, char** argv, resident_prepare_fn prepare, int* outStatus) {
+    char* base = resident_base_path(p);
+    if (base == NULL) return false;
+    char* socketPath = resident_path(base, SOCKET_EXT);
+
+    resident_result result = RESIDENT_UNHEALTHY;
+    if (strlen(socketPath) < sizeof(((struct sockaddr_un*) NULL)->sun_path)) {
+        fflush(stdout);
+        result = resident_call(socketPath, argc, argv, outStatus);
+        if (result == RESIDENT_ABSENT)
+            result = resident_start(p, base, socketPath, argc, argv, prepare, outStatus);
+    }
+    free(socketPath);
+    free(base);
+    return result == RESIDENT_DONE;
+}
+#endif
+
+#ifdef WIN32
+bool resident_run(const payload* p, int argc, char** argv, resident_prepare_fn prepare, int* outStatus) {
+    return false;
+}
+#endif
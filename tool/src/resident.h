@@ -0,0 +1,18 @@
+#ifndef JARSTRAP_RESIDENT_H
+#define JARSTRAP_RESIDENT_H
+
+#include <stdbool.h>
+#include "payload.h"
+
+// Runs the application in a JVM which stays resident between launches, spoken to over a Unix domain socket. The
+// server side is ResidentServer.java, the wire format is described in ResidentProtocol.java. Linux only.
+
+// Supplies the Java binary & class path to start the resident JVM with, extracting the payload as needed
+typedef void (*resident_prepare_fn)(const payload* p, char** outBinary, char** outClasspath);
+
+// Runs the application in the resident JVM of the payload, starting the JVM if none is running. Returns false if the
+// application should be started normally instead, in which case it has not run. Otherwise the exit status of the
+// application is written to outStatus.
+bool resident_run(const payload* p, int argc, char** argv, resident_prepare_fn prepare, int* outStatus);
+
+#endif
@@ -0,0 +1,24 @@
+# Cross compiles the stub for Windows with a MinGW-w64 toolchain, e.g.
+#   cmake -DCMAKE_TOOLCHAIN_FILE=toolchain/mingw-w64.cmake -DJARSTRAP_MINGW_PREFIX=/usr/bin/i686-w64-mingw32 ..
+# JARSTRAP_MINGW_PREFIX is the path to the tools without their "-gcc", "-objcopy" etc. suffix
+
+set(CMAKE_SYSTEM_NAME Windows)
+if(NOT JARSTRAP_MINGW_PREFIX)
+    set(JARSTRAP_MINGW_PREFIX x86_64-w64-mingw32)
+endif()
+# Toolchain files are also read by the compiler checks, which only see the listed variables
+list(APPEND CMAKE_TRY_COMPILE_PLATFORM_VARIABLES JARSTRAP_MINGW_PREFIX)
+
+get_filename_component(_jarstrap_triple "${JARSTRAP_MINGW_PREFIX}" NAME)
+string(REGEX MATCH "^[^-]+" CMAKE_SYSTEM_PROCESSOR "${_jarstrap_triple}")
+
+set(CMAKE_C_COMPILER "${JARSTRAP_MINGW_PREFIX}-gcc")
+set(CMAKE_RC_COMPILER "${JARSTRAP_MINGW_PREFIX}-windres")
+# Used by add_resource() in place of the objcopy.exe found next to a native MinGW
+set(CMAKE_OBJCOPY "${JARSTRAP_MINGW_PREFIX}-objcopy" CACHE FILEPATH "objcopy of the MinGW-w64 toolchain")
+
+# Only the host's programs can run, everything else comes from the toolchain
+set(CMAKE_FIND_ROOT_PATH_MODE_PROGRAM NEVER)
+
+# Link libgcc & winpthread statically, so the executable does not depend on DLLs of the toolchain
+set(CMAKE_EXE_LINKER_FLAGS_INIT "-static")